@@ -0,0 +1,81 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.rtmp;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.red5.server.net.rtmp.message.Constants;
+
+/**
+ * Server side handshakes per second: decodes a client C1 and builds the S0+S1+S2 response, as the
+ * I/O threads do for every new connection. {@code plain} is the un-versioned handshake, {@code
+ * digest} the versioned handshake with the client and server digests and {@code rtmpe} adds the
+ * Diffie-Hellman key exchange and RC4 setup of RTMPE. Several threads handshake at once, like a
+ * burst of clients reconnecting after a failover.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class HandshakeBenchmark {
+
+  @Param({"plain", "digest", "rtmpe"})
+  public String type;
+
+  private byte handshakeType;
+
+  private byte[] c1;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    handshakeType =
+        "rtmpe".equals(type) ? RTMPConnection.RTMP_ENCRYPTED : RTMPConnection.RTMP_NON_ENCRYPTED;
+    c1 = new byte[Constants.HANDSHAKE_SIZE];
+    new Random(42).nextBytes(c1);
+    if ("plain".equals(type)) {
+      // a zero version makes it an un-versioned handshake
+      c1[4] = 0;
+    } else {
+      // client side of the versioned handshake, using the digest and key offsets of scheme 1
+      InboundHandshake client = new InboundHandshake(handshakeType);
+      c1[4] = 10;
+      if ("rtmpe".equals(type)) {
+        byte[] publicKey = client.getPublicKey(client.generateKeyPair());
+        System.arraycopy(publicKey, 0, c1, client.getDHOffset(1, c1, 0), publicKey.length);
+      }
+      int digestPos = client.getDigestOffset(1, c1, 0);
+      client.calculateDigest(digestPos, c1, 0, RTMPHandshake.GENUINE_FP_KEY, 30, c1, digestPos);
+    }
+    if (handshake() == null) {
+      throw new IllegalStateException("Handshake was rejected: " + type);
+    }
+  }
+
+  @Benchmark
+  public IoBuffer handshake() {
+    InboundHandshake handshake = new InboundHandshake(handshakeType);
+    return handshake.doHandshake(IoBuffer.wrap(c1));
+  }
+}
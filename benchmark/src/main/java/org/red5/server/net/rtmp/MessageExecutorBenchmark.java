@@ -0,0 +1,94 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.rtmp;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.red5.server.scheduling.VirtualThreadTaskExecutor;
+
+/**
+ * Dispatches one received message per connection through the per-connection serial executors, as
+ * the message executor of red5-core.xml does, where every message runs a service call blocking
+ * for {@code blockMillis}, like an application handler waiting on a database. Scores are rounds per
+ * second, a round completes when every connection handled its message. With {@code
+ * virtualThreads=true} the calls run on virtual threads; on a JVM without virtual threads both
+ * modes use the thread pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageExecutorBenchmark {
+
+  @Param({"false", "true"})
+  public boolean virtualThreads;
+
+  @Param({"1000"})
+  public int connections;
+
+  @Param({"1"})
+  public int blockMillis;
+
+  private VirtualThreadTaskExecutor executor;
+
+  private SerialExecutor[] lanes;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    // pool settings of red5.properties
+    executor = new VirtualThreadTaskExecutor();
+    executor.setVirtualThreads(virtualThreads);
+    executor.setCorePoolSize(8);
+    executor.setMaxPoolSize(8);
+    executor.setQueueCapacity(20000);
+    executor.setDaemon(true);
+    executor.setThreadNamePrefix("RTMPConnectionExecutor-");
+    executor.initialize();
+    lanes = new SerialExecutor[connections];
+    for (int i = 0; i < connections; i++) {
+      lanes[i] = new SerialExecutor(executor);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  @Benchmark
+  public void blockingInvoke() throws InterruptedException {
+    CountDownLatch done = new CountDownLatch(connections);
+    for (SerialExecutor lane : lanes) {
+      lane.execute(
+          () -> {
+            try {
+              Thread.sleep(blockMillis);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            done.countDown();
+          });
+    }
+    done.await();
+  }
+}
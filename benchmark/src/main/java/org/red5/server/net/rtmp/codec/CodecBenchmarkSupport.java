@@ -0,0 +1,266 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.rtmp.codec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.server.api.Red5;
+import org.red5.server.net.rtmp.RTMPConnection;
+import org.red5.server.net.rtmp.RTMPMinaConnection;
+import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.IRTMPEvent;
+import org.red5.server.net.rtmp.event.Invoke;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.net.rtmp.message.Constants;
+import org.red5.server.net.rtmp.message.Header;
+import org.red5.server.net.rtmp.message.Packet;
+import org.red5.server.net.rtmp.status.Status;
+import org.red5.server.net.rtmp.status.StatusCodes;
+import org.red5.server.service.PendingCall;
+
+/**
+ * Fixtures shared by the RTMP codec benchmarks: connections in the connected state, representative
+ * media / command payloads and "last" headers which force the encoder and decoder down a specific
+ * chunk header type.
+ */
+public final class CodecBenchmarkSupport implements Constants {
+
+  /** Stream id used for all media packets. */
+  public static final int STREAM_ID = 1;
+
+  /** Typical frame interval of a 30fps video stream. */
+  public static final int VIDEO_INTERVAL = 33;
+
+  /** Typical frame interval of a 44.1kHz AAC stream. */
+  public static final int AUDIO_INTERVAL = 23;
+
+  /** Payload kinds flowing through the codec. */
+  public enum Payload {
+    /** AAC raw frame */
+    AUDIO(TYPE_AUDIO_DATA, 6, 256, (byte) 0xaf),
+    /** AVC inter frame */
+    VIDEO_INTER(TYPE_VIDEO_DATA, 5, 8 * 1024, (byte) 0x27),
+    /** AVC key frame */
+    VIDEO_KEY(TYPE_VIDEO_DATA, 5, 64 * 1024, (byte) 0x17),
+    /** NetStream status invoke */
+    INVOKE(TYPE_INVOKE, 3, 0, (byte) 0);
+
+    private final byte dataType;
+
+    private final int channelId;
+
+    private final int bodySize;
+
+    private final byte flags;
+
+    Payload(byte dataType, int channelId, int bodySize, byte flags) {
+      this.dataType = dataType;
+      this.channelId = channelId;
+      this.bodySize = bodySize;
+      this.flags = flags;
+    }
+
+    public byte getDataType() {
+      return dataType;
+    }
+
+    public int getChannelId() {
+      return channelId;
+    }
+
+    /**
+     * Returns a body template for the payload, the first byte carries the FLV codec / frame flags.
+     *
+     * @return body bytes or null for commands
+     */
+    public byte[] newBody() {
+      if (bodySize == 0) {
+        return null;
+      }
+      byte[] body = new byte[bodySize];
+      new Random(bodySize).nextBytes(body);
+      body[0] = flags;
+      // AAC raw or AVC NALU packet, never configuration data
+      body[1] = 1;
+      return body;
+    }
+  }
+
+  private CodecBenchmarkSupport() {}
+
+  /**
+   * Creates a connection in the connected state using the given chunk size for both directions and
+   * binds it to the calling thread, as the encoder expects.
+   *
+   * @param chunkSize read and write chunk size
+   * @return connection
+   */
+  public static RTMPConnection newConnection(int chunkSize) {
+    RTMPConnection conn = new RTMPMinaConnection();
+    RTMP rtmp = conn.getState();
+    rtmp.setState(RTMP.STATE_CONNECTED);
+    rtmp.setReadChunkSize(chunkSize);
+    rtmp.setWriteChunkSize(chunkSize);
+    Red5.setConnectionLocal(conn);
+    return conn;
+  }
+
+  /**
+   * Creates a new message for the payload; media bodies are read-only views of the template just
+   * as the live consumers hand them to the connection.
+   *
+   * @param payload payload kind
+   * @param body body template, ignored for commands
+   * @param timestamp message timestamp
+   * @return message
+   */
+  public static IRTMPEvent newMessage(Payload payload, byte[] body, int timestamp) {
+    IRTMPEvent message;
+    switch (payload) {
+      case AUDIO:
+        message = new AudioData(IoBuffer.wrap(body).asReadOnlyBuffer());
+        break;
+      case VIDEO_INTER:
+      case VIDEO_KEY:
+        message = new VideoData(IoBuffer.wrap(body).asReadOnlyBuffer());
+        break;
+      default:
+        Status status =
+            new Status(StatusCodes.NS_PLAY_START, Status.STATUS, "Started playing stream1.");
+        status.setClientid(STREAM_ID);
+        status.setDetails("stream1");
+        message = new Invoke(new PendingCall("onStatus", new Object[] {status}));
+        break;
+    }
+    message.setTimestamp(timestamp);
+    return message;
+  }
+
+  /**
+   * Creates the header for a message of the given payload.
+   *
+   * @param payload payload kind
+   * @param timestamp message timestamp
+   * @return header
+   */
+  public static Header newHeader(Payload payload, int timestamp) {
+    Header header = new Header();
+    header.setChannelId(payload.getChannelId());
+    header.setDataType(payload.getDataType());
+    header.setStreamId(payload == Payload.INVOKE ? 0 : STREAM_ID);
+    header.setTimer(timestamp);
+    return header;
+  }
+
+  /**
+   * Creates a previous header which makes the codec select the requested header type for the given
+   * header.
+   *
+   * @param headerType chunk header type to force
+   * @param header header of the message being coded
+   * @param bodySize encoded body size of the message
+   * @return last header or null for a new (type 0) header
+   */
+  public static Header lastHeaderFor(Header.HeaderType headerType, Header header, int bodySize) {
+    if (headerType == Header.HeaderType.HEADER_NEW) {
+      return null;
+    }
+    Header lastHeader = header.clone();
+    lastHeader.setSize(bodySize);
+    switch (headerType) {
+      case HEADER_SAME_SOURCE:
+        lastHeader.setSize(bodySize + 1);
+        lastHeader.setTimer(header.getTimer() - VIDEO_INTERVAL);
+        break;
+      case HEADER_TIMER_CHANGE:
+        lastHeader.setTimer(header.getTimer() - VIDEO_INTERVAL);
+        break;
+      default:
+        lastHeader.setTimer(header.getTimer());
+        break;
+    }
+    return lastHeader;
+  }
+
+  /**
+   * Returns the body size the encoder produces for a message.
+   *
+   * @param encoder encoder
+   * @param payload payload kind
+   * @param body body template
+   * @return encoded body size
+   */
+  public static int encodedBodySize(RTMPProtocolEncoder encoder, Payload payload, byte[] body) {
+    if (body != null) {
+      return body.length;
+    }
+    IoBuffer data = encoder.encodeMessage(newHeader(payload, 0), newMessage(payload, null, 0));
+    return data.position() != 0 ? data.position() : data.limit();
+  }
+
+  /**
+   * Builds one second of a typical live stream: 30fps video with a key frame every second, AAC
+   * audio and a single status invoke, interleaved in timestamp order.
+   *
+   * @param baseTimestamp timestamp of the first frame
+   * @return frames in send order
+   */
+  public static List<Frame> newStreamSecond(int baseTimestamp) {
+    byte[] audio = Payload.AUDIO.newBody();
+    byte[] inter = Payload.VIDEO_INTER.newBody();
+    byte[] key = Payload.VIDEO_KEY.newBody();
+    List<Frame> frames = new ArrayList<>(80);
+    frames.add(new Frame(Payload.INVOKE, null, baseTimestamp));
+    int videoTs = 0, audioTs = 0;
+    while (videoTs < 1000 || audioTs < 1000) {
+      if (videoTs <= audioTs) {
+        if (videoTs == 0) {
+          frames.add(new Frame(Payload.VIDEO_KEY, key, baseTimestamp));
+        } else {
+          frames.add(new Frame(Payload.VIDEO_INTER, inter, baseTimestamp + videoTs));
+        }
+        videoTs += VIDEO_INTERVAL;
+      } else {
+        frames.add(new Frame(Payload.AUDIO, audio, baseTimestamp + audioTs));
+        audioTs += AUDIO_INTERVAL;
+      }
+    }
+    return frames;
+  }
+
+  /** A message to be sent, from which fresh packets are created for every encode. */
+  public static final class Frame {
+
+    private final Payload payload;
+
+    private final byte[] body;
+
+    private final int timestamp;
+
+    public Frame(Payload payload, byte[] body, int timestamp) {
+      this.payload = payload;
+      this.body = body;
+      this.timestamp = timestamp;
+    }
+
+    public Payload getPayload() {
+      return payload;
+    }
+
+    /**
+     * Creates a packet ready for encoding.
+     *
+     * @return packet
+     */
+    public Packet newPacket() {
+      return new Packet(newHeader(payload, timestamp), newMessage(payload, body, timestamp));
+    }
+  }
+}
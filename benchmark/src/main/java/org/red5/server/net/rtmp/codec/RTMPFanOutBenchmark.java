@@ -0,0 +1,90 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.rtmp.codec;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.red5.server.api.Red5;
+import org.red5.server.net.rtmp.RTMPConnection;
+import org.red5.server.net.rtmp.codec.CodecBenchmarkSupport.Payload;
+import org.red5.server.net.rtmp.event.BaseEvent;
+import org.red5.server.net.rtmp.message.ChunkedBody;
+import org.red5.server.net.rtmp.message.Packet;
+
+/**
+ * Encodes one live frame for every subscriber of a broadcast, as the live fan-out does, either
+ * chunking the body per connection or sharing one chunked body between all the subscribers. Scores
+ * are frames per second, the work per frame grows with the subscriber count.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RTMPFanOutBenchmark {
+
+  @Param({"128", "4096"})
+  public int chunkSize;
+
+  @Param({"AUDIO", "VIDEO_INTER", "VIDEO_KEY"})
+  public Payload payload;
+
+  @Param({"100"})
+  public int subscribers;
+
+  @Param({"false", "true"})
+  public boolean shared;
+
+  private RTMPConnection[] conns;
+
+  private RTMPProtocolEncoder encoder;
+
+  private byte[] body;
+
+  private int timestamp;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    encoder = new RTMPProtocolEncoder();
+    body = payload.newBody();
+    conns = new RTMPConnection[subscribers];
+    for (int i = 0; i < subscribers; i++) {
+      conns[i] = CodecBenchmarkSupport.newConnection(chunkSize);
+    }
+  }
+
+  @Benchmark
+  public void encodeFrame(Blackhole bh) {
+    timestamp += CodecBenchmarkSupport.VIDEO_INTERVAL;
+    ChunkedBody chunkedBody = shared ? new ChunkedBody() : null;
+    for (RTMPConnection conn : conns) {
+      Red5.setConnectionLocal(conn);
+      BaseEvent message = (BaseEvent) CodecBenchmarkSupport.newMessage(payload, body, timestamp);
+      message.setChunkedBody(chunkedBody);
+      IoBuffer out =
+          encoder.encodePacket(
+              new Packet(CodecBenchmarkSupport.newHeader(payload, timestamp), message));
+      bh.consume(out);
+      out.free();
+    }
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.rtmp.codec;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.red5.server.api.Red5;
+import org.red5.server.net.protocol.RTMPDecodeState;
+import org.red5.server.net.rtmp.RTMPConnection;
+import org.red5.server.net.rtmp.codec.CodecBenchmarkSupport.Payload;
+import org.red5.server.net.rtmp.message.Header;
+import org.red5.server.net.rtmp.message.Packet;
+
+/**
+ * Inbound path of every packet: {@link RTMPProtocolDecoder#decodeBuffer(RTMPConnection, IoBuffer)}
+ * and {@link RTMPProtocolDecoder#decodePacket(RTMPConnection, RTMPDecodeState, IoBuffer)}. The
+ * input is produced by the encoder with the same chunk size and header type. Run with <code>
+ * -prof gc</code> to get the bytes allocated per packet (<code>gc.alloc.rate.norm</code>).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RTMPProtocolDecoderBenchmark {
+
+  @Param({"128", "4096", "65536"})
+  public int chunkSize;
+
+  @Param({"AUDIO", "VIDEO_INTER", "VIDEO_KEY", "INVOKE"})
+  public Payload payload;
+
+  @Param({"HEADER_NEW", "HEADER_SAME_SOURCE", "HEADER_TIMER_CHANGE", "HEADER_CONTINUE"})
+  public Header.HeaderType headerType;
+
+  private RTMPConnection conn;
+
+  private RTMPProtocolDecoder decoder;
+
+  private Header lastHeader;
+
+  private byte[] encoded;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    // encode the packet on its own connection so the decoder starts from a clean state
+    RTMPConnection encoderConn = CodecBenchmarkSupport.newConnection(chunkSize);
+    RTMPProtocolEncoder encoder = new RTMPProtocolEncoder();
+    byte[] body = payload.newBody();
+    Header header = CodecBenchmarkSupport.newHeader(payload, 1000);
+    lastHeader =
+        CodecBenchmarkSupport.lastHeaderFor(
+            headerType, header, CodecBenchmarkSupport.encodedBodySize(encoder, payload, body));
+    encoderConn.getState().setLastWriteHeader(payload.getChannelId(), lastHeader);
+    IoBuffer out =
+        encoder.encodePacket(
+            new Packet(header, CodecBenchmarkSupport.newMessage(payload, body, 1000)));
+    encoded = new byte[out.remaining()];
+    out.get(encoded);
+    conn = CodecBenchmarkSupport.newConnection(chunkSize);
+    decoder = new RTMPProtocolDecoder();
+  }
+
+  /** Decodes all chunks of a single packet through the buffer level entry point. */
+  @Benchmark
+  public void decodeBuffer(Blackhole bh) {
+    conn.getState().setLastReadHeader(payload.getChannelId(), lastHeader);
+    bh.consume(decoder.decodeBuffer(conn, IoBuffer.wrap(encoded)));
+  }
+
+  /** Decodes all chunks of a single packet, one decodePacket call per chunk. */
+  @Benchmark
+  public void decodePacket(Blackhole bh) {
+    conn.getState().setLastReadHeader(payload.getChannelId(), lastHeader);
+    RTMPDecodeState state = conn.getDecoderState();
+    IoBuffer in = IoBuffer.wrap(encoded);
+    Packet packet = null;
+    while (in.hasRemaining()) {
+      packet = decoder.decodePacket(conn, state, in);
+    }
+    bh.consume(packet);
+  }
+
+  /** Keeps the decoder's thread local connection bound if the harness switches threads. */
+  @Setup(Level.Iteration)
+  public void bindConnection() {
+    Red5.setConnectionLocal(conn);
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.rtmp.codec;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.red5.server.api.Red5;
+import org.red5.server.net.rtmp.RTMPConnection;
+import org.red5.server.net.rtmp.codec.CodecBenchmarkSupport.Payload;
+import org.red5.server.net.rtmp.message.Header;
+import org.red5.server.net.rtmp.message.Packet;
+
+/**
+ * Outbound path of every packet: {@link RTMPProtocolEncoder#encodePacket(Packet)} and {@link
+ * RTMPProtocolEncoder#encodeHeader(Header, Header, IoBuffer)}. Run with <code>-prof gc</code> to get
+ * the bytes allocated per packet (<code>gc.alloc.rate.norm</code>).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RTMPProtocolEncoderBenchmark {
+
+  @Param({"128", "4096", "65536"})
+  public int chunkSize;
+
+  @Param({"AUDIO", "VIDEO_INTER", "VIDEO_KEY", "INVOKE"})
+  public Payload payload;
+
+  @Param({"HEADER_NEW", "HEADER_SAME_SOURCE", "HEADER_TIMER_CHANGE", "HEADER_CONTINUE"})
+  public Header.HeaderType headerType;
+
+  private RTMPConnection conn;
+
+  private RTMPProtocolEncoder encoder;
+
+  private byte[] body;
+
+  private Header header;
+
+  private Header lastHeader;
+
+  private IoBuffer headerBuffer;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    conn = CodecBenchmarkSupport.newConnection(chunkSize);
+    encoder = new RTMPProtocolEncoder();
+    body = payload.newBody();
+    header = CodecBenchmarkSupport.newHeader(payload, 1000);
+    lastHeader =
+        CodecBenchmarkSupport.lastHeaderFor(
+            headerType, header, CodecBenchmarkSupport.encodedBodySize(encoder, payload, body));
+    headerBuffer = IoBuffer.allocate(32);
+  }
+
+  /** Encodes a single packet with the configured payload, chunk size and header type. */
+  @Benchmark
+  public void encodePacket(Blackhole bh) {
+    Packet packet =
+        new Packet(header.clone(), CodecBenchmarkSupport.newMessage(payload, body, 1000));
+    conn.getState().setLastWriteHeader(payload.getChannelId(), lastHeader);
+    IoBuffer out = encoder.encodePacket(packet);
+    bh.consume(out);
+    out.free();
+  }
+
+  /** Encodes a single packet to header and body slices, as written with gather writes enabled. */
+  @Benchmark
+  public void encodePacketSlices(Blackhole bh) {
+    Packet packet =
+        new Packet(header.clone(), CodecBenchmarkSupport.newMessage(payload, body, 1000));
+    conn.getState().setLastWriteHeader(payload.getChannelId(), lastHeader);
+    bh.consume(encoder.encodePacketSlices(packet));
+  }
+
+  /** Encodes only the chunk header of the configured header type. */
+  @Benchmark
+  public void encodeHeader(Blackhole bh) {
+    headerBuffer.clear();
+    encoder.encodeHeader(header.clone(), lastHeader, headerBuffer);
+    bh.consume(headerBuffer);
+  }
+
+  /** Keeps the encoder's thread local connection bound if the harness switches threads. */
+  @Setup(Level.Iteration)
+  public void bindConnection() {
+    Red5.setConnectionLocal(conn);
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.rtmp.codec;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.red5.server.api.Red5;
+import org.red5.server.net.rtmp.RTMPConnection;
+import org.red5.server.net.rtmp.codec.CodecBenchmarkSupport.Frame;
+import org.red5.server.net.rtmp.codec.CodecBenchmarkSupport.Payload;
+
+/**
+ * Encodes and decodes one second of an interleaved live stream (30fps AVC, AAC audio and a status
+ * invoke), letting the codec pick the header types as it does in production. Scores are seconds of
+ * media per second; divide the allocation numbers by the frame count for per packet figures.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RTMPStreamCodecBenchmark {
+
+  @Param({"128", "4096", "65536"})
+  public int chunkSize;
+
+  private RTMPConnection encoderConn;
+
+  private RTMPConnection decoderConn;
+
+  private RTMPProtocolEncoder encoder;
+
+  private RTMPProtocolDecoder decoder;
+
+  private List<Frame> frames;
+
+  private byte[] encoded;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    frames = CodecBenchmarkSupport.newStreamSecond(1000);
+    decoderConn = CodecBenchmarkSupport.newConnection(chunkSize);
+    decoder = new RTMPProtocolDecoder();
+    encoderConn = CodecBenchmarkSupport.newConnection(chunkSize);
+    encoder = new RTMPProtocolEncoder();
+    IoBuffer stream = IoBuffer.allocate(256 * 1024).setAutoExpand(true);
+    for (Frame frame : frames) {
+      stream.put(encoder.encodePacket(frame.newPacket()));
+    }
+    stream.flip();
+    encoded = new byte[stream.remaining()];
+    stream.get(encoded);
+  }
+
+  @Benchmark
+  public void encodeStreamSecond(Blackhole bh) {
+    Red5.setConnectionLocal(encoderConn);
+    RTMP rtmp = encoderConn.getState();
+    for (Payload payload : Payload.values()) {
+      rtmp.setLastWriteHeader(payload.getChannelId(), null);
+    }
+    for (Frame frame : frames) {
+      IoBuffer out = encoder.encodePacket(frame.newPacket());
+      bh.consume(out);
+      out.free();
+    }
+  }
+
+  @Benchmark
+  public void decodeStreamSecond(Blackhole bh) {
+    Red5.setConnectionLocal(decoderConn);
+    bh.consume(decoder.decodeBuffer(decoderConn, IoBuffer.wrap(encoded)));
+  }
+}
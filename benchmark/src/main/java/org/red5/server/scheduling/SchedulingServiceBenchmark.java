@@ -0,0 +1,86 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.scheduling;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.red5.server.api.scheduling.IScheduledJob;
+import org.red5.server.api.scheduling.ISchedulingService;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Jobs added and removed per second while 100k periodic jobs are running, as with 20k VOD viewers
+ * each holding a few play engine, playlist and persistence jobs. Several threads add and remove at
+ * once, like viewers starting and stopping plays. {@code jdk} is the {@link JDKSchedulingService},
+ * {@code wheel} the {@link WheelSchedulingService}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class SchedulingServiceBenchmark {
+
+  @Param({"jdk", "wheel"})
+  public String service;
+
+  @Param({"100000"})
+  public int jobs;
+
+  private ISchedulingService scheduler;
+
+  private final LongAdder executions = new LongAdder();
+
+  private final IScheduledJob job = svc -> executions.increment();
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    if ("wheel".equals(service)) {
+      WheelSchedulingService wheel = new WheelSchedulingService();
+      wheel.afterPropertiesSet();
+      scheduler = wheel;
+    } else {
+      JDKSchedulingService jdk = new JDKSchedulingService();
+      jdk.afterPropertiesSet();
+      scheduler = jdk;
+    }
+    // spread the first runs over the interval, as viewers arrive over time
+    for (int i = 0; i < jobs; i++) {
+      scheduler.addScheduledJobAfterDelay(100, job, ThreadLocalRandom.current().nextInt(100));
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    ((DisposableBean) scheduler).destroy();
+  }
+
+  @Benchmark
+  public String addAndRemove() {
+    String name = scheduler.addScheduledJob(100, job);
+    scheduler.removeScheduledJob(name);
+    return name;
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.service;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Client RPCs per second through the {@link ServiceInvoker}, for a service with overloaded methods
+ * like a typical application handler. {@code position} is a position update whose AMF numbers are
+ * converted to ints, {@code chat} a chat message returning a result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServiceInvokerBenchmark {
+
+  @Param({"position", "chat"})
+  public String call;
+
+  private ServiceInvoker invoker;
+
+  private GameService service;
+
+  private String methodName;
+
+  private Object[] args;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    invoker = new ServiceInvoker();
+    service = new GameService();
+    if ("position".equals(call)) {
+      methodName = "updatePosition";
+      args = new Object[] {"player-1", 120d, 48d};
+    } else {
+      methodName = "chat";
+      args = new Object[] {"room-1", "hello"};
+    }
+    if (!invoke()) {
+      throw new IllegalStateException("Call failed: " + call);
+    }
+  }
+
+  @Benchmark
+  public boolean invoke() {
+    return invoker.invoke(new PendingCall(methodName, args), service);
+  }
+
+  public static class GameService {
+
+    private int x, y;
+
+    private int messages;
+
+    public void updatePosition(String id, int x, int y) {
+      this.x = x;
+      this.y = y;
+    }
+
+    public void updatePosition(String id, int x, int y, int z) {
+      this.x = x;
+      this.y = y;
+    }
+
+    public String chat(String room, String message) {
+      messages++;
+      return room;
+    }
+
+    public String chat(String message) {
+      messages++;
+      return message;
+    }
+
+    public int getMessages() {
+      return messages;
+    }
+
+    public int getX() {
+      return x;
+    }
+
+    public int getY() {
+      return y;
+    }
+  }
+}
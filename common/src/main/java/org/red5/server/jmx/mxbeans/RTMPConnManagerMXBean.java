@@ -0,0 +1,46 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+package org.red5.server.jmx.mxbeans;
+
+import javax.management.MXBean;
+
+/**
+ * Manager of the RTMP connections and their keep-alive sweeper.
+ *
+ * @author The Red5 Project
+ */
+@MXBean
+public interface RTMPConnManagerMXBean {
+
+  /**
+   * Returns the number of managed connections.
+   *
+   * @return connections
+   */
+  public int getConnectionCount();
+
+  /**
+   * Returns how long the last full keep-alive sweep over all shards took.
+   *
+   * @return sweep duration in microseconds, -1 if the sweeper is not running
+   */
+  public long getSweepDuration();
+
+  /**
+   * Returns how long the longest sweep of a single shard took.
+   *
+   * @return shard sweep duration in microseconds, -1 if the sweeper is not running
+   */
+  public long getMaxShardSweepDuration();
+
+  /**
+   * Returns the number of keep-alive checks run by the sweeper.
+   *
+   * @return keep-alive checks
+   */
+  public long getKeepAliveCount();
+}
@@ -42,4 +42,6 @@ public interface RTMPConnectionMXBean extends AttributeStoreMXBean {
   public long getDroppedMessages();
 
   public long getPendingMessages();
+
+  public int getReceivedQueueSize();
 }
@@ -13,4 +13,6 @@ import javax.management.MXBean;
 public interface RTMPMinaConnectionMXBean extends RTMPConnectionMXBean {
 
   public void invokeMethod(String method);
+
+  public long getOutboundQueuedBytes();
 }
@@ -22,6 +22,16 @@ public interface RTMPMinaTransportMXBean {
 
   public String getStatistics();
 
+  public int getAdmissionInFlight();
+
+  public int getAdmissionWaiting();
+
+  public long getAdmissionAccepted();
+
+  public long getAdmissionQueued();
+
+  public long getAdmissionRejected();
+
   public void start() throws Exception;
 
   public void stop();
@@ -18,10 +18,17 @@ import java.util.Map;
  * @author Steven Gong (steven.gong@gmail.com)
  */
 public interface IMessageInput {
+  /**
+   * Pulled while the provider has not read its next message yet. Unlike null it does not end the
+   * stream, the pull is retried later.
+   */
+  public static final IMessage NOT_READY = new AbstractMessage();
+
   /**
    * Pull message from this input endpoint. Return w/o waiting.
    *
-   * @return The pulled message or null if message is not available.
+   * @return The pulled message, {@link #NOT_READY} if it is not read yet or null if message is not
+   *     available.
    * @throws IOException on error
    */
   IMessage pullMessage() throws IOException;
@@ -30,7 +37,8 @@ public interface IMessageInput {
    * Pull message from this input endpoint. Wait wait milliseconds if message is not available.
    *
    * @param wait milliseconds to wait when message is not available.
-   * @return The pulled message or null if message is not available.
+   * @return The pulled message, {@link #NOT_READY} if it is still not read after waiting or null if
+   *     message is not available.
    */
   IMessage pullMessage(long wait);
 
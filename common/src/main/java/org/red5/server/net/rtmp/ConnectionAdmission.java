@@ -0,0 +1,292 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.rtmp;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.mina.core.session.IoSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Admission stage for new connections. A session holds an admission from its creation until its
+ * connect invoke was handled or it closes, so the handshakes and scope connects running at once are
+ * bounded. Sessions over the limit wait with their reads suspended, leaving their handshake bytes in
+ * the socket, and are admitted in arrival order; those waiting longer than the maximum wait are
+ * closed by a periodic sweep. Once the wait queue is full new sessions are rejected and closed, so
+ * the clients back off and retry. The handshake timeout of a session only starts once it is
+ * admitted.
+ *
+ * @author The Red5 Project
+ */
+public class ConnectionAdmission {
+
+  private static final Logger log = LoggerFactory.getLogger(ConnectionAdmission.class);
+
+  /** Session attribute holding the admission of an admitted session */
+  private static final String ADMITTED = "rtmp.admission";
+
+  /** Session attribute holding the admission of a waiting session */
+  private static final String WAITING = "rtmp.admission.waiting";
+
+  private final int maxInFlight;
+
+  private final int maxQueued;
+
+  private final long maxWait;
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  private final AtomicInteger waiting = new AtomicInteger();
+
+  private final Queue<Waiter> queue = new ConcurrentLinkedQueue<>();
+
+  private final AtomicLong accepted = new AtomicLong();
+
+  private final AtomicLong queued = new AtomicLong();
+
+  private final AtomicLong rejected = new AtomicLong();
+
+  /** Closes the sessions waiting longer than the maximum wait */
+  private ScheduledExecutorService sweeper;
+
+  /**
+   * Creates an admission stage.
+   *
+   * @param maxInFlight sessions admitted at once
+   * @param maxQueued sessions waiting for admission at most
+   * @param maxWait milliseconds a session may wait, 0 to wait without limit
+   */
+  public ConnectionAdmission(int maxInFlight, int maxQueued, long maxWait) {
+    this.maxInFlight = maxInFlight;
+    this.maxQueued = maxQueued;
+    this.maxWait = maxWait;
+  }
+
+  /**
+   * Admits a new session, or makes it wait for admission.
+   *
+   * @param session new session
+   * @return true if the session was admitted or waits, false if it was rejected and must be closed
+   */
+  public boolean admit(IoSession session) {
+    return admit(session, null);
+  }
+
+  /**
+   * Admits a new session, or makes it wait for admission.
+   *
+   * @param session new session
+   * @param onAdmitted run once the session is admitted, such as the start of its handshake timeout
+   * @return true if the session was admitted or waits, false if it was rejected and must be closed
+   */
+  public boolean admit(IoSession session, Runnable onAdmitted) {
+    if (tryAcquire()) {
+      grant(session, onAdmitted);
+      return true;
+    }
+    if (waiting.incrementAndGet() <= maxQueued) {
+      session.setAttribute(WAITING, this);
+      session.suspendRead();
+      queue.offer(new Waiter(session, onAdmitted));
+      queued.incrementAndGet();
+      // an admission may have been released before the session was queued
+      promote();
+      return true;
+    }
+    waiting.decrementAndGet();
+    rejected.incrementAndGet();
+    return false;
+  }
+
+  /**
+   * Releases the admission held by the session, or takes it out of the wait queue. Does nothing if
+   * the session has neither.
+   *
+   * @param session session
+   */
+  public static void release(IoSession session) {
+    if (session != null) {
+      Object admission = session.removeAttribute(ADMITTED);
+      if (admission instanceof ConnectionAdmission) {
+        ((ConnectionAdmission) admission).released();
+      }
+      admission = session.removeAttribute(WAITING);
+      if (admission instanceof ConnectionAdmission) {
+        // the queue entry is skipped when it comes up
+        ((ConnectionAdmission) admission).waiting.decrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Returns whether the session is admitted or waiting by an admission stage, which then starts its
+   * handshake timeout.
+   *
+   * @param session session
+   * @return true if the admission of the session is controlled
+   */
+  public static boolean isControlled(IoSession session) {
+    return session != null
+        && (session.containsAttribute(ADMITTED) || session.containsAttribute(WAITING));
+  }
+
+  /** Starts closing the sessions waiting longer than the maximum wait, if there is one. */
+  public void start() {
+    if (maxWait > 0 && sweeper == null) {
+      sweeper =
+          Executors.newSingleThreadScheduledExecutor(
+              runnable -> {
+                Thread thread = new Thread(runnable, "AdmissionSweeper");
+                thread.setDaemon(true);
+                return thread;
+              });
+      long interval = Math.max(10L, Math.min(1000L, maxWait / 10));
+      sweeper.scheduleWithFixedDelay(this::sweep, interval, interval, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /** Stops the sweep of the waiting sessions. */
+  public void stop() {
+    if (sweeper != null) {
+      sweeper.shutdownNow();
+      sweeper = null;
+    }
+  }
+
+  /** Closes the sessions which waited longer than the maximum wait, oldest first. */
+  void sweep() {
+    long now = System.currentTimeMillis();
+    Waiter waiter;
+    while ((waiter = queue.peek()) != null && now - waiter.queuedAt > maxWait) {
+      // the waiter may have been admitted meanwhile
+      if (queue.remove(waiter) && waiter.session.removeAttribute(WAITING) != null) {
+        log.debug("Session {} waited too long for admission", waiter.session.getId());
+        waiting.decrementAndGet();
+        rejected.incrementAndGet();
+        waiter.session.closeNow();
+      }
+    }
+  }
+
+  private void released() {
+    inFlight.decrementAndGet();
+    promote();
+  }
+
+  /** Admits waiting sessions while admissions are available. */
+  private void promote() {
+    while (!queue.isEmpty() && tryAcquire()) {
+      Waiter waiter = queue.poll();
+      if (waiter == null) {
+        inFlight.decrementAndGet();
+        continue;
+      }
+      IoSession session = waiter.session;
+      if (session.removeAttribute(WAITING) == null) {
+        // closed while waiting
+        inFlight.decrementAndGet();
+        continue;
+      }
+      waiting.decrementAndGet();
+      if (maxWait > 0 && System.currentTimeMillis() - waiter.queuedAt > maxWait) {
+        log.debug("Session {} waited too long for admission", session.getId());
+        inFlight.decrementAndGet();
+        rejected.incrementAndGet();
+        session.closeNow();
+        continue;
+      }
+      grant(session, waiter.onAdmitted);
+      session.resumeRead();
+    }
+  }
+
+  private boolean tryAcquire() {
+    int current;
+    do {
+      current = inFlight.get();
+      if (current >= maxInFlight) {
+        return false;
+      }
+    } while (!inFlight.compareAndSet(current, current + 1));
+    return true;
+  }
+
+  private void grant(IoSession session, Runnable onAdmitted) {
+    session.setAttribute(ADMITTED, this);
+    accepted.incrementAndGet();
+    if (onAdmitted != null) {
+      onAdmitted.run();
+    }
+  }
+
+  /**
+   * Returns the number of sessions holding an admission.
+   *
+   * @return sessions in handshake or connect
+   */
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  /**
+   * Returns the number of sessions waiting for admission.
+   *
+   * @return waiting sessions
+   */
+  public int getWaiting() {
+    return waiting.get();
+  }
+
+  /**
+   * Returns the number of sessions admitted so far.
+   *
+   * @return admitted sessions
+   */
+  public long getAccepted() {
+    return accepted.get();
+  }
+
+  /**
+   * Returns the number of sessions which had to wait for admission so far.
+   *
+   * @return queued sessions
+   */
+  public long getQueued() {
+    return queued.get();
+  }
+
+  /**
+   * Returns the number of sessions rejected so far, because the wait queue was full or they waited
+   * too long.
+   *
+   * @return rejected sessions
+   */
+  public long getRejected() {
+    return rejected.get();
+  }
+
+  private static final class Waiter {
+
+    final IoSession session;
+
+    final Runnable onAdmitted;
+
+    final long queuedAt = System.currentTimeMillis();
+
+    Waiter(IoSession session, Runnable onAdmitted) {
+      this.session = session;
+      this.onAdmitted = onAdmitted;
+    }
+  }
+}
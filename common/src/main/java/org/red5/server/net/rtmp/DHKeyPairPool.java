@@ -0,0 +1,128 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.rtmp;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.crypto.spec.DHParameterSpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Diffie-Hellman key pairs for encrypted handshakes, generated ahead of time by a background
+ * thread. Generating a pair is the most expensive step of an RTMPE handshake; taking one from the
+ * pool keeps bursts of reconnecting clients off the I/O threads. Every pair is handed out once.
+ * When the pool is empty the pair is generated by the caller.
+ *
+ * <p>The pool size is set with the {@code rtmp.dh_pool_size} system property, 0 disables the pool.
+ *
+ * @author The Red5 Project
+ */
+public class DHKeyPairPool {
+
+  private static final Logger log = LoggerFactory.getLogger(DHKeyPairPool.class);
+
+  private static final DHKeyPairPool instance =
+      new DHKeyPairPool(Integer.getInteger("rtmp.dh_pool_size", 32));
+
+  private final int capacity;
+
+  private final BlockingQueue<KeyPair> keyPairs;
+
+  private final AtomicBoolean refilling = new AtomicBoolean();
+
+  private final ExecutorService refiller;
+
+  /**
+   * Creates a pool holding up to the given number of key pairs.
+   *
+   * @param capacity pool size, 0 to generate every pair on demand
+   */
+  public DHKeyPairPool(int capacity) {
+    this.capacity = capacity;
+    if (capacity > 0) {
+      keyPairs = new ArrayBlockingQueue<>(capacity);
+      refiller =
+          Executors.newSingleThreadExecutor(
+              runnable -> {
+                Thread thread = new Thread(runnable, "DHKeyPairPool");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+              });
+    } else {
+      keyPairs = null;
+      refiller = null;
+    }
+  }
+
+  public static DHKeyPairPool getInstance() {
+    return instance;
+  }
+
+  /**
+   * Takes a key pair from the pool, generating it if the pool is empty. The pool is refilled in the
+   * background once it is half empty.
+   *
+   * @return key pair
+   * @throws GeneralSecurityException if the pair cannot be generated
+   */
+  public KeyPair take() throws GeneralSecurityException {
+    if (keyPairs == null) {
+      return generate();
+    }
+    KeyPair keyPair = keyPairs.poll();
+    if (keyPairs.size() <= capacity / 2) {
+      refill();
+    }
+    return keyPair != null ? keyPair : generate();
+  }
+
+  /**
+   * Returns the number of key pairs ready to be taken.
+   *
+   * @return available key pairs
+   */
+  public int getAvailable() {
+    return keyPairs != null ? keyPairs.size() : 0;
+  }
+
+  private void refill() {
+    if (refilling.compareAndSet(false, true)) {
+      refiller.execute(
+          () -> {
+            try {
+              KeyPairGenerator keyGen = newGenerator();
+              while (keyPairs.size() < capacity) {
+                keyPairs.offer(keyGen.generateKeyPair());
+              }
+            } catch (Exception e) {
+              log.warn("Key pair pool refill failed", e);
+            } finally {
+              refilling.set(false);
+            }
+          });
+    }
+  }
+
+  private static KeyPair generate() throws GeneralSecurityException {
+    return newGenerator().generateKeyPair();
+  }
+
+  private static KeyPairGenerator newGenerator() throws GeneralSecurityException {
+    KeyPairGenerator keyGen = KeyPairGenerator.getInstance("DH");
+    keyGen.initialize(new DHParameterSpec(RTMPHandshake.DH_MODULUS, RTMPHandshake.DH_BASE));
+    return keyGen;
+  }
+}
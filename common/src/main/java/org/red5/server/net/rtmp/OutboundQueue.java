@@ -0,0 +1,289 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.rtmp;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.codec.AudioCodec;
+import org.red5.codec.VideoCodec;
+import org.red5.io.IoConstants;
+import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.IRTMPEvent;
+import org.red5.server.net.rtmp.event.Notify;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.net.rtmp.message.Packet;
+import org.red5.server.stream.IStreamData;
+
+/**
+ * Bounded queue of the packets waiting to be written to a connection. Protocol control packets are
+ * taken first, then the invokes and notifications of the connection, and then the packets of the
+ * streams, which keep their arrival order so media, codec configurations and stream notifications
+ * reach the client as they were sent. When the queued bytes would exceed the budget, media packets
+ * are evicted by priority class, video inter frames first, then video key frames and audio, oldest
+ * first within a class; control, invoke, notification and codec configuration packets are never
+ * evicted. Once a video packet of a stream is dropped, the following inter frames of that stream are
+ * dropped until its next key frame.
+ *
+ * @author The Red5 Project
+ */
+public class OutboundQueue {
+
+  /** Priority classes, most important first */
+  public enum Priority {
+    CONTROL,
+    INVOKE,
+    CONFIG,
+    AUDIO,
+    VIDEO_KEY,
+    VIDEO_INTER;
+
+    boolean isEvictable() {
+      return this.compareTo(AUDIO) >= 0;
+    }
+  }
+
+  /** Size counted for packets without a media body */
+  private static final int MIN_PACKET_SIZE = 64;
+
+  private static final Priority[] PRIORITIES = Priority.values();
+
+  private final int maxBytes;
+
+  /** Protocol control packets */
+  private final ArrayDeque<Packet> control = new ArrayDeque<>();
+
+  /** Invokes and notifications of the connection, not of a stream */
+  private final ArrayDeque<Packet> invokes = new ArrayDeque<>();
+
+  /** Packets of the streams in arrival order */
+  private final ArrayDeque<Packet> streams = new ArrayDeque<>();
+
+  /** Streams whose inter frames are dropped until the next key frame */
+  private final Set<Number> waitingForKeyFrame = new HashSet<>();
+
+  private int size;
+
+  private long bytes;
+
+  /**
+   * Creates a queue holding up to the given number of bytes of media.
+   *
+   * @param maxBytes byte budget
+   */
+  public OutboundQueue(int maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Queues a packet, evicting lower priority packets if the byte budget is exceeded.
+   *
+   * @param packet packet
+   * @return the packets dropped, possibly including the offered one
+   */
+  public synchronized List<Packet> offer(Packet packet) {
+    Priority priority = priorityOf(packet);
+    Number streamId = packet.getHeader().getStreamId();
+    if (priority == Priority.VIDEO_KEY) {
+      waitingForKeyFrame.remove(streamId);
+    } else if (priority == Priority.VIDEO_INTER && waitingForKeyFrame.contains(streamId)) {
+      return Collections.singletonList(packet);
+    }
+    int packetSize = sizeOf(packet);
+    List<Packet> dropped = new ArrayList<>(0);
+    if (priority.isEvictable()) {
+      // evict the less or equally important media, lowest priority and oldest first
+      for (int p = PRIORITIES.length - 1;
+          p >= priority.ordinal() && bytes + packetSize > maxBytes;
+          p--) {
+        evict(PRIORITIES[p], packetSize, dropped);
+      }
+      boolean undecodable =
+          priority == Priority.VIDEO_INTER && waitingForKeyFrame.contains(streamId);
+      if (undecodable || bytes + packetSize > maxBytes) {
+        if (packet.getMessage() instanceof VideoData) {
+          waitingForKeyFrame.add(streamId);
+        }
+        dropped.add(packet);
+        return dropped;
+      }
+    }
+    if (priority == Priority.CONTROL) {
+      control.offerLast(packet);
+    } else if (priority == Priority.INVOKE && isConnectionLevel(streamId)) {
+      invokes.offerLast(packet);
+    } else {
+      streams.offerLast(packet);
+    }
+    size++;
+    bytes += packetSize;
+    return dropped;
+  }
+
+  /**
+   * Takes the next packet: control first, then connection invokes, then stream packets in arrival
+   * order.
+   *
+   * @return packet or null if the queue is empty
+   */
+  public synchronized Packet poll() {
+    Packet packet = control.pollFirst();
+    if (packet == null) {
+      packet = invokes.pollFirst();
+      if (packet == null) {
+        packet = streams.pollFirst();
+      }
+    }
+    if (packet != null) {
+      size--;
+      bytes -= sizeOf(packet);
+    }
+    return packet;
+  }
+
+  /**
+   * Drops all the queued packets.
+   *
+   * @return the packets dropped
+   */
+  public synchronized List<Packet> clear() {
+    List<Packet> dropped = new ArrayList<>(size);
+    dropped.addAll(control);
+    dropped.addAll(invokes);
+    dropped.addAll(streams);
+    control.clear();
+    invokes.clear();
+    streams.clear();
+    size = 0;
+    bytes = 0;
+    waitingForKeyFrame.clear();
+    return dropped;
+  }
+
+  public synchronized boolean isEmpty() {
+    return size == 0;
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+
+  /**
+   * Returns the number of bytes queued.
+   *
+   * @return bytes
+   */
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  public int getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * Evicts the oldest stream packets of a priority class until the packet fits. Dropping a video
+   * packet makes the inter frames of its stream queued after it undecodable, up to the next key
+   * frame, so they are dropped along with it; without a later key frame the stream waits for one.
+   */
+  private void evict(Priority priority, int packetSize, List<Packet> dropped) {
+    Set<Number> broken = new HashSet<>();
+    Iterator<Packet> it = streams.iterator();
+    while (it.hasNext()) {
+      Packet queued = it.next();
+      Priority queuedPriority = priorityOf(queued);
+      Number streamId = queued.getHeader().getStreamId();
+      boolean drop;
+      if (broken.contains(streamId) && queuedPriority == Priority.VIDEO_INTER) {
+        drop = true;
+      } else {
+        if (queuedPriority == Priority.VIDEO_KEY) {
+          broken.remove(streamId);
+        }
+        drop = queuedPriority == priority && bytes + packetSize > maxBytes;
+      }
+      if (drop) {
+        it.remove();
+        size--;
+        bytes -= sizeOf(queued);
+        dropped.add(queued);
+        if (queued.getMessage() instanceof VideoData) {
+          broken.add(streamId);
+        }
+      } else if (broken.isEmpty() && bytes + packetSize <= maxBytes) {
+        break;
+      }
+    }
+    waitingForKeyFrame.addAll(broken);
+  }
+
+  /** Whether a stream id is the one of the connection, for packets not sent on a stream. */
+  private static boolean isConnectionLevel(Number streamId) {
+    return streamId == null || streamId.intValue() == 0;
+  }
+
+  /**
+   * Returns the priority class of a packet.
+   *
+   * @param packet packet
+   * @return priority
+   */
+  public static Priority priorityOf(Packet packet) {
+    IRTMPEvent event = packet.getMessage();
+    if (event instanceof VideoData) {
+      // read from the body, the VideoData constructors leave the frame type unknown
+      IoBuffer data = ((VideoData) event).getData();
+      if (data == null || !data.hasRemaining()) {
+        return Priority.VIDEO_INTER;
+      }
+      int first = data.get(data.position()) & 0xff;
+      if (data.remaining() > 1
+          && VideoCodec.getConfigured()
+              .contains(VideoCodec.valueOfById(first & IoConstants.MASK_VIDEO_CODEC))
+          && data.get(data.position() + 1) == 0) {
+        // sequence header, nothing of the stream decodes without it
+        return Priority.CONFIG;
+      }
+      boolean key =
+          ((first & IoConstants.MASK_VIDEO_FRAMETYPE) >> 4) == IoConstants.FLAG_FRAMETYPE_KEYFRAME;
+      return key ? Priority.VIDEO_KEY : Priority.VIDEO_INTER;
+    } else if (event instanceof AudioData) {
+      IoBuffer data = ((AudioData) event).getData();
+      if (data != null
+          && data.remaining() > 1
+          && AudioCodec.getConfigured()
+              .contains(
+                  AudioCodec.valueOfById(
+                      (data.get(data.position()) & IoConstants.MASK_SOUND_FORMAT) >> 4))
+          && data.get(data.position() + 1) == 0) {
+        return Priority.CONFIG;
+      }
+      return Priority.AUDIO;
+    } else if (event instanceof Notify) {
+      // invokes and status messages are notifications as well
+      return Priority.INVOKE;
+    }
+    return Priority.CONTROL;
+  }
+
+  private static int sizeOf(Packet packet) {
+    IRTMPEvent event = packet.getMessage();
+    if (event instanceof IStreamData) {
+      IoBuffer data = ((IStreamData<?>) event).getData();
+      if (data != null) {
+        return Math.max(MIN_PACKET_SIZE, data.remaining());
+      }
+    }
+    return MIN_PACKET_SIZE;
+  }
+}
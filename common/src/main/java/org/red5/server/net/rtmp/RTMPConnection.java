@@ -21,13 +21,11 @@ import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.Semaphore;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
@@ -72,6 +70,7 @@ import org.red5.server.service.PendingCall;
 import org.red5.server.so.FlexSharedObjectMessage;
 import org.red5.server.so.ISharedObjectEvent;
 import org.red5.server.so.SharedObjectMessage;
+import org.red5.server.so.SharedObjectMessage.SharedBody;
 import org.red5.server.stream.AbstractClientStream;
 import org.red5.server.stream.ClientBroadcastStream;
 import org.red5.server.stream.OutputStream;
@@ -82,9 +81,6 @@ import org.red5.server.util.ScopeUtils;
 import org.springframework.core.task.TaskRejectedException;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
-import org.springframework.util.concurrent.ListenableFuture;
-import org.springframework.util.concurrent.ListenableFutureCallback;
-import org.springframework.util.concurrent.ListenableFutureTask;
 
 /**
  * RTMP connection. Stores information about client streams, data transfer channels, pending RPC
@@ -243,7 +239,7 @@ public abstract class RTMPConnection extends BaseConnection
   /** Maximum time in milliseconds allowed to process received message */
   protected long maxHandlingTimeout = 500L;
 
-  /** Maximum time in milliseconds to wait for a message. */
+  /** Maximum time in milliseconds to wait for a message, unused since messages are not polled. */
   private long maxPollTimeout = 1000L;
 
   /** Bandwidth limit type / enforcement. (0=hard,1=soft,2=dynamic) */
@@ -285,17 +281,26 @@ public abstract class RTMPConnection extends BaseConnection
   /** Keep alive task. */
   protected ScheduledFuture<?> keepAliveTask;
 
-  /** Executor for received RTMP messages. */
-  protected transient ExecutorService receivedPacketExecutor = Executors.newSingleThreadExecutor();
+  /** Whether the keep-alive is run by a sweeper of the connection manager instead of a task */
+  protected volatile boolean keepAliveSwept;
 
-  /** Future which takes packets from the queue and passes them to the handler. */
-  protected transient Future<?> receivedPacketFuture;
+  /** Time from which the sweeper runs the keep-alive, 0 until the connection is established */
+  private volatile long keepAliveStart;
+
+  /** Time of the last keep-alive check by the sweeper */
+  private volatile long lastKeepAlive;
+
+  /** Bytes read by the last keep-alive check */
+  private final AtomicLong keepAliveBytesRead = new AtomicLong(0);
+
+  /** Time the last keep-alive check saw new data */
+  private volatile long keepAliveBytesReadTime;
 
   /**
-   * Queue for received RTMP packets. This is a transfer queue from which packets are passed to a
-   * handler.
+   * Executor for received RTMP messages, keeps them in order while sharing the threads of the
+   * message executor with the other connections.
    */
-  protected volatile LinkedTransferQueue<Packet> receivedPacketQueue = new LinkedTransferQueue<>();
+  protected transient volatile SerialExecutor receivedPacketExecutor;
 
   /**
    * Creates anonymous RTMP connection without scope.
@@ -472,8 +477,13 @@ public abstract class RTMPConnection extends BaseConnection
   }
 
   /** Starts measurement. */
-  private void startRoundTripMeasurement() {
-    if (scheduler != null) {
+  void startRoundTripMeasurement() {
+    if (keepAliveSwept) {
+      // the sweeper starts pinging after 2s, like the task below
+      if (pingInterval > 0) {
+        keepAliveStart = System.currentTimeMillis() + 2000;
+      }
+    } else if (scheduler != null) {
       if (pingInterval > 0) {
         if (isDebug) {
           log.debug("startRoundTripMeasurement - {}", sessionId);
@@ -506,6 +516,7 @@ public abstract class RTMPConnection extends BaseConnection
 
   /** Stops measurement. */
   private void stopRoundTripMeasurement() {
+    keepAliveStart = 0;
     if (keepAliveTask != null) {
       boolean cancelled = keepAliveTask.cancel(true);
       keepAliveTask = null;
@@ -1348,7 +1359,8 @@ public abstract class RTMPConnection extends BaseConnection
   }
 
   /**
-   * Handle the incoming message.
+   * Handle the incoming message. Messages are handled one at a time in the order they were
+   * received, on the shared message executor.
    *
    * @param packet incoming message packet
    */
@@ -1360,104 +1372,63 @@ public abstract class RTMPConnection extends BaseConnection
     if (maxHandlingTimeout > 0) {
       packet.setExpirationTime(System.currentTimeMillis() + maxHandlingTimeout);
     }
-    // queue the packet
-    if (receivedPacketQueue.offer(packet)) {
-      // increment the queue size
-      receivedQueueSizeUpdater.incrementAndGet(this);
-    }
-    // create the future for processing the queue as needed
-    if (receivedPacketFuture == null) {
-      final RTMPConnection conn = this;
-      receivedPacketFuture =
-          receivedPacketExecutor.submit(
-              () -> {
-                Thread.currentThread().setName(String.format("RTMPRecv@%s", sessionId));
+    // increment the queue size
+    receivedQueueSizeUpdater.incrementAndGet(this);
+    final ReceivedMessageTask task = new ReceivedMessageTask(this, packet);
+    getReceivedPacketExecutor()
+        .execute(
+            () -> {
+              // decrement the queue size
+              receivedQueueSizeUpdater.decrementAndGet(this);
+              // keep processing unless we pass the error state
+              if (state.getState() < RTMP.STATE_ERROR) {
+                if (isTrace) {
+                  log.trace("Handle received packet: {}", packet);
+                }
+                long startTime = System.currentTimeMillis();
                 try {
-                  do {
-                    // DTS appears to be off only by < 10ms
-                    Packet p =
-                        receivedPacketQueue.poll(
-                            maxPollTimeout, TimeUnit.MILLISECONDS); // wait for packet with timeout
-                    if (p != null) {
-                      if (isTrace) {
-                        log.trace("Handle received packet: {}", p);
-                      }
-                      // decrement the queue size
-                      receivedQueueSizeUpdater.decrementAndGet(this);
-                      // call directly to the handler
-                      // handler.messageReceived(conn, p);
-                      // create a task to handle the packet
-                      ReceivedMessageTask task = new ReceivedMessageTask(conn, p);
-                      try {
-                        @SuppressWarnings("unchecked")
-                        ListenableFuture<Packet> future =
-                            (ListenableFuture<Packet>)
-                                executor.submitListenable(new ListenableFutureTask<Packet>(task));
-                        future.addCallback(
-                            new ListenableFutureCallback<Packet>() {
-
-                              long startTime = System.currentTimeMillis();
-
-                              int getProcessingTime() {
-                                return (int) (System.currentTimeMillis() - startTime);
-                              }
-
-                              @SuppressWarnings("null")
-                              public void onFailure(Throwable t) {
-                                log.warn(
-                                    "onFailure - processingTime: {} msgtype: {} task: {}",
-                                    getProcessingTime(),
-                                    getMessageType(packet),
-                                    task);
-                              }
-
-                              @SuppressWarnings("null")
-                              public void onSuccess(Packet packet) {
-                                log.debug(
-                                    "onSuccess - processingTime: {} msgtype: {} task: {}",
-                                    getProcessingTime(),
-                                    getMessageType(packet),
-                                    task);
-                              }
-                            });
-                      } catch (TaskRejectedException tre) {
-                        Throwable[] suppressed = tre.getSuppressed();
-                        for (Throwable t : suppressed) {
-                          log.warn("Suppressed exception on {}", task, t);
-                        }
-                        log.info("Rejected task: {}", task);
-                      } catch (Throwable e) {
-                        log.warn("Incoming message failed task: {}", task, e);
-                        if (isDebug) {
-                          log.debug(
-                              "Execution rejected on {} - {} lock permits - decode: {} encode: {}",
-                              getSessionId(),
-                              RTMP.states[getStateCode()],
-                              decoderLock.availablePermits(),
-                              encoderLock.availablePermits());
-                        }
-                      }
-                    }
-                  } while (state.getState()
-                      < RTMP.STATE_ERROR); // keep processing unless we pass the error state
-                } catch (InterruptedException e) {
-                  log.debug(
-                      "Interrupted while waiting for message {} state: {}",
-                      sessionId,
-                      RTMP.states[getStateCode()],
-                      e);
-                } catch (Exception e) {
-                  log.error(
-                      "Error processing received message {} state: {}",
-                      sessionId,
-                      RTMP.states[getStateCode()],
-                      e);
-                } finally {
-                  receivedPacketFuture = null;
-                  receivedPacketQueue.clear();
+                  task.call();
+                  if (isDebug) {
+                    log.debug(
+                        "onSuccess - processingTime: {} msgtype: {} task: {}",
+                        System.currentTimeMillis() - startTime,
+                        getMessageType(packet),
+                        task);
+                  }
+                } catch (Throwable t) {
+                  log.warn(
+                      "onFailure - processingTime: {} msgtype: {} task: {}",
+                      System.currentTimeMillis() - startTime,
+                      getMessageType(packet),
+                      task,
+                      t);
                 }
-              });
+              }
+            });
+  }
+
+  /**
+   * Returns the serial executor handling the received messages of this connection, creating it on
+   * the message executor or, if none was set, on a pool shared by all the connections.
+   *
+   * @return serial executor
+   */
+  protected SerialExecutor getReceivedPacketExecutor() {
+    if (receivedPacketExecutor == null) {
+      synchronized (this) {
+        if (receivedPacketExecutor == null) {
+          Executor pool = executor != null ? executor : SharedReceivePool.POOL;
+          receivedPacketExecutor =
+              new SerialExecutor(
+                  pool,
+                  task -> {
+                    receivedQueueSizeUpdater.decrementAndGet(this);
+                    log.info("Rejected task on {}: {}", sessionId, task);
+                  });
+        }
+      }
     }
+    return receivedPacketExecutor;
   }
 
   /**
@@ -1530,12 +1501,37 @@ public abstract class RTMPConnection extends BaseConnection
    */
   public void sendSharedObjectMessage(
       String name, int currentVersion, boolean persistent, Set<ISharedObjectEvent> events) {
+    sendSharedObjectMessage(name, currentVersion, persistent, events, null, null);
+  }
+
+  /**
+   * Send a shared object message whose body is shared with the other connections receiving the
+   * same update, so it is encoded once per encoding.
+   *
+   * @param name shared object name
+   * @param currentVersion the current version
+   * @param persistent toggle
+   * @param events shared object events
+   * @param amf0Body body shared by the AMF0 connections or null
+   * @param amf3Body body shared by the AMF3 connections or null
+   */
+  public void sendSharedObjectMessage(
+      String name,
+      int currentVersion,
+      boolean persistent,
+      Set<ISharedObjectEvent> events,
+      SharedBody amf0Body,
+      SharedBody amf3Body) {
     // create a new sync message for every client to avoid concurrent access through multiple
     // threads
-    SharedObjectMessage syncMessage =
-        state.getEncoding() == Encoding.AMF3
-            ? new FlexSharedObjectMessage(null, name, currentVersion, persistent)
-            : new SharedObjectMessage(null, name, currentVersion, persistent);
+    SharedObjectMessage syncMessage;
+    if (state.getEncoding() == Encoding.AMF3) {
+      syncMessage = new FlexSharedObjectMessage(null, name, currentVersion, persistent);
+      syncMessage.setSharedBody(amf3Body);
+    } else {
+      syncMessage = new SharedObjectMessage(null, name, currentVersion, persistent);
+      syncMessage.setSharedBody(amf0Body);
+    }
     syncMessage.addEvents(events);
     try {
       // get the channel for so updates
@@ -1631,6 +1627,16 @@ public abstract class RTMPConnection extends BaseConnection
     this.maxInactivity = maxInactivity;
   }
 
+  /**
+   * Sets whether the keep-alive is run by the sweeper of the connection manager instead of a task
+   * per connection.
+   *
+   * @param keepAliveSwept true if the connection manager sweeps this connection
+   */
+  public void setKeepAliveSwept(boolean keepAliveSwept) {
+    this.keepAliveSwept = keepAliveSwept;
+  }
+
   /** Inactive state event handler. */
   protected abstract void onInactive();
 
@@ -1724,6 +1730,11 @@ public abstract class RTMPConnection extends BaseConnection
     return maxPollTimeout;
   }
 
+  /**
+   * @param maxPollTimeout ignored, received messages are pushed to the message executor
+   * @deprecated received messages are no longer polled
+   */
+  @Deprecated
   public void setMaxPollTimeout(long maxPollTimeout) {
     this.maxPollTimeout = maxPollTimeout;
   }
@@ -1837,91 +1848,143 @@ public abstract class RTMPConnection extends BaseConnection
     }
   }
 
-  /** Task that keeps connection alive and disconnects if client is dead. */
-  private class KeepAliveTask implements Runnable {
+  /** Pool for the received messages of connections without a message executor. */
+  private static final class SharedReceivePool {
+
+    static final ExecutorService POOL = SerialExecutor.newPool("RTMPRecv-");
+  }
 
-    private final AtomicLong lastBytesRead = new AtomicLong(0);
+  /**
+   * Returns the number of received messages waiting to be handled.
+   *
+   * @return received message queue size
+   */
+  public int getReceivedQueueSize() {
+    return currentQueueSize();
+  }
 
-    private volatile long lastBytesReadTime = 0;
+  /**
+   * Runs the keep-alive when its ping interval has passed, unless the connection is not
+   * established yet. Called by the sweeper of the connection manager for swept connections.
+   *
+   * @param now current time
+   * @return true if the keep-alive ran
+   */
+  public boolean sweepKeepAlive(long now) {
+    long start = keepAliveStart;
+    // the sweep may come a little early, a half interval keeps the connection to one ping a round
+    if (start == 0 || now < start || now - lastKeepAlive < pingInterval / 2) {
+      return false;
+    }
+    lastKeepAlive = now;
+    keepAlive();
+    return true;
+  }
 
-    public void run() {
-      // we dont ping until in connected state
-      if (state.getState() == RTMP.STATE_CONNECTED) {
-        // ensure the job is not already running
-        if (running.compareAndSet(false, true)) {
-          if (isTrace) {
-            log.trace("Running keep-alive for {}", getSessionId());
-          }
-          try {
-            // first check connected
-            if (isConnected()) {
-              // get now
-              long now = System.currentTimeMillis();
-              // get the current bytes read count on the connection
-              long currentReadBytes = getReadBytes();
-              // get our last bytes read count
-              long previousReadBytes = lastBytesRead.get();
+  /** Pings the client unless it sent data since the last check, disconnects it if it is dead. */
+  private void keepAlive() {
+    // we dont ping until in connected state
+    if (state.getState() == RTMP.STATE_CONNECTED) {
+      // ensure the job is not already running
+      if (running.compareAndSet(false, true)) {
+        if (isTrace) {
+          log.trace("Running keep-alive for {}", getSessionId());
+        }
+        try {
+          // first check connected
+          if (isConnected()) {
+            // get now
+            long now = System.currentTimeMillis();
+            // get the current bytes read count on the connection
+            long currentReadBytes = getReadBytes();
+            // get our last bytes read count
+            long previousReadBytes = keepAliveBytesRead.get();
+            if (isTrace) {
+              log.trace(
+                  "Time now: {} current read count: {} last read count: {}",
+                  new Object[] {now, currentReadBytes, previousReadBytes});
+            }
+            if (currentReadBytes > previousReadBytes) {
               if (isTrace) {
-                log.trace(
-                    "Time now: {} current read count: {} last read count: {}",
-                    new Object[] {now, currentReadBytes, previousReadBytes});
+                log.trace("Client is still alive, no ping needed");
               }
-              if (currentReadBytes > previousReadBytes) {
-                if (isTrace) {
-                  log.trace("Client is still alive, no ping needed");
-                }
-                // client has sent data since last check and thus is not dead. No need to ping
-                if (lastBytesRead.compareAndSet(previousReadBytes, currentReadBytes)) {
-                  // update the timestamp to match our update
-                  lastBytesReadTime = now;
-                }
-              } else {
-                // client didn't send response to ping command and didn't sent data for too long,
-                // disconnect
-                long lastPingTime = lastPingSentOn.get();
-                long lastPongTime = lastPongReceivedOn.get();
-                if (lastPongTime > 0
-                    && (lastPingTime - lastPongTime > maxInactivity)
-                    && (now - lastBytesReadTime > maxInactivity)) {
-                  log.warn(
-                      "Closing connection - inactivity timeout: session=[{}], lastPongReceived=[{} ms ago], lastPingSent=[{} ms ago], lastDataRx=[{} ms ago]",
-                      new Object[] {
-                        getSessionId(),
-                        (lastPingTime - lastPongTime),
-                        (now - lastPingTime),
-                        (now - lastBytesReadTime)
-                      });
-                  // the following line deals with a very common support request
-                  log.warn(
-                      "Client on session=[{}] has not responded to our ping for [{} ms] and we haven't received data for [{} ms]",
-                      new Object[] {
-                        getSessionId(), (lastPingTime - lastPongTime), (now - lastBytesReadTime)
-                      });
-                  onInactive();
-                } else {
-                  // send ping command to client to trigger sending of data
-                  ping();
-                }
+              // client has sent data since last check and thus is not dead. No need to ping
+              if (keepAliveBytesRead.compareAndSet(previousReadBytes, currentReadBytes)) {
+                // update the timestamp to match our update
+                keepAliveBytesReadTime = now;
               }
             } else {
-              if (isDebug) {
-                log.debug(
-                    "No longer connected, clean up connection. Connection state: {}",
-                    RTMP.states[state.getState()]);
+              // client didn't send response to ping command and didn't sent data for too long,
+              // disconnect
+              long lastPingTime = lastPingSentOn.get();
+              long lastPongTime = lastPongReceivedOn.get();
+              if (lastPongTime > 0
+                  && (lastPingTime - lastPongTime > maxInactivity)
+                  && (now - keepAliveBytesReadTime > maxInactivity)) {
+                log.warn(
+                    "Closing connection - inactivity timeout: session=[{}], lastPongReceived=[{} ms ago], lastPingSent=[{} ms ago], lastDataRx=[{} ms ago]",
+                    new Object[] {
+                      getSessionId(),
+                      (lastPingTime - lastPongTime),
+                      (now - lastPingTime),
+                      (now - keepAliveBytesReadTime)
+                    });
+                // the following line deals with a very common support request
+                log.warn(
+                    "Client on session=[{}] has not responded to our ping for [{} ms] and we haven't received data for [{} ms]",
+                    new Object[] {
+                      getSessionId(), (lastPingTime - lastPongTime), (now - keepAliveBytesReadTime)
+                    });
+                closeInactive();
+              } else {
+                // send ping command to client to trigger sending of data
+                ping();
               }
-              onInactive();
             }
-          } catch (Exception e) {
-            log.warn("Exception in keepalive for {}", getSessionId(), e);
-          } finally {
-            // reset running flag
-            running.compareAndSet(true, false);
+          } else {
+            if (isDebug) {
+              log.debug(
+                  "No longer connected, clean up connection. Connection state: {}",
+                  RTMP.states[state.getState()]);
+            }
+            closeInactive();
           }
+        } catch (Exception e) {
+          log.warn("Exception in keepalive for {}", getSessionId(), e);
+        } finally {
+          // reset running flag
+          running.compareAndSet(true, false);
         }
       }
     }
   }
 
+  /**
+   * Handles an inactive connection found by the keep-alive. The sweeper hands it to the message
+   * executor, so closing one connection does not hold up the sweep of the others.
+   */
+  private void closeInactive() {
+    if (keepAliveSwept) {
+      Executor pool = executor != null ? executor : SharedReceivePool.POOL;
+      try {
+        pool.execute(this::onInactive);
+      } catch (RejectedExecutionException e) {
+        // the connection is found again by the next sweep
+        log.warn("Closing of inactive {} rejected, retrying on the next sweep", getSessionId());
+      }
+    } else {
+      onInactive();
+    }
+  }
+
+  /** Task that keeps connection alive and disconnects if client is dead. */
+  private class KeepAliveTask implements Runnable {
+
+    public void run() {
+      keepAlive();
+    }
+  }
+
   /** Task that waits for a valid handshake and disconnects the client if none is received. */
   private class WaitForHandshakeTask implements Runnable {
 
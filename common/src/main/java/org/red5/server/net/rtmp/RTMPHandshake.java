@@ -9,10 +9,10 @@ package org.red5.server.net.rtmp;
 
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.KeyFactory;
 import java.security.KeyPair;
-import java.security.KeyPairGenerator;
 import java.security.PublicKey;
 import java.security.Security;
 import java.security.spec.KeySpec;
@@ -22,7 +22,6 @@ import javax.crypto.Cipher;
 import javax.crypto.KeyAgreement;
 import javax.crypto.Mac;
 import javax.crypto.interfaces.DHPublicKey;
-import javax.crypto.spec.DHParameterSpec;
 import javax.crypto.spec.DHPublicKeySpec;
 import javax.crypto.spec.SecretKeySpec;
 import org.apache.commons.codec.binary.Hex;
@@ -1089,6 +1088,17 @@ public abstract class RTMPHandshake implements IHandshake {
   // start as an fp of at least version 9.0.115.0
   protected boolean fp9Handshake = true;
 
+  /** Mac instances are costly to look up, each thread keeps one and re-keys it per digest */
+  private static final ThreadLocal<Mac> hmacSHA256 =
+      ThreadLocal.withInitial(
+          () -> {
+            try {
+              return Mac.getInstance("Hmac-SHA256", BouncyCastleProvider.PROVIDER_NAME);
+            } catch (GeneralSecurityException e) {
+              throw new IllegalStateException("Hmac-SHA256 is not available", e);
+            }
+          });
+
   static {
     // add bouncycastle security provider
     Security.addProvider(new BouncyCastleProvider());
@@ -1166,11 +1176,9 @@ public abstract class RTMPHandshake implements IHandshake {
    */
   protected KeyPair generateKeyPair() {
     KeyPair keyPair = null;
-    DHParameterSpec keySpec = new DHParameterSpec(DH_MODULUS, DH_BASE);
     try {
-      KeyPairGenerator keyGen = KeyPairGenerator.getInstance("DH");
-      keyGen.initialize(keySpec);
-      keyPair = keyGen.generateKeyPair();
+      // pairs are generated ahead of time, each one is used once
+      keyPair = DHKeyPairPool.getInstance().take();
       keyAgreement = KeyAgreement.getInstance("DH");
       // key agreement is initialized with "this" ends private key
       keyAgreement.init(keyPair.getPrivate());
@@ -1336,16 +1344,11 @@ public abstract class RTMPHandshake implements IHandshake {
       // Hex.encodeHexString(Arrays.copyOfRange(digest, digestOffset, digestOffset +
       // DIGEST_LENGTH)));
     }
-    byte[] calcDigest;
     try {
-      Mac hmac = Mac.getInstance("Hmac-SHA256", BouncyCastleProvider.PROVIDER_NAME);
-      hmac.init(new SecretKeySpec(Arrays.copyOf(key, keyLen), "HmacSHA256"));
-      byte[] actualMessage = Arrays.copyOfRange(message, messageOffset, messageOffset + messageLen);
-      calcDigest = hmac.doFinal(actualMessage);
-      // if (log.isTraceEnabled()) {
-      // log.trace("Calculated digest: {}", Hex.encodeHexString(calcDigest));
-      // }
-      System.arraycopy(calcDigest, 0, digest, digestOffset, DIGEST_LENGTH);
+      Mac hmac = hmacSHA256.get();
+      hmac.init(new SecretKeySpec(key, 0, keyLen, "HmacSHA256"));
+      hmac.update(message, messageOffset, messageLen);
+      hmac.doFinal(digest, digestOffset);
     } catch (InvalidKeyException e) {
       log.error("Invalid key", e);
     } catch (Exception e) {
@@ -11,12 +11,18 @@ import java.beans.ConstructorProperties;
 import java.lang.management.ManagementFactory;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 import javax.management.StandardMBean;
@@ -28,9 +34,14 @@ import org.red5.server.api.IConnection;
 import org.red5.server.api.scope.IScope;
 import org.red5.server.jmx.mxbeans.RTMPMinaConnectionMXBean;
 import org.red5.server.net.rtmp.codec.RTMP;
+import org.red5.server.net.rtmp.event.AudioData;
 import org.red5.server.net.rtmp.event.ClientBW;
+import org.red5.server.net.rtmp.event.IRTMPEvent;
 import org.red5.server.net.rtmp.event.ServerBW;
+import org.red5.server.net.rtmp.event.VideoData;
 import org.red5.server.net.rtmp.message.Packet;
+import org.red5.server.net.rtmp.message.PacketBatch;
+import org.red5.server.stream.IStreamData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.jmx.export.annotation.ManagedResource;
@@ -62,6 +73,42 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
 
   protected boolean bandwidthDetection = true;
 
+  /** Time in milliseconds audio and video packets may wait to be written together, 0 disables */
+  protected int writeCoalesceWindow;
+
+  /** Size in bytes of waiting packets at which they are written without waiting any longer */
+  protected int writeCoalesceBytes = 16384;
+
+  /** Packets waiting to be written as one batch, also the lock for the coalescing state */
+  private final transient List<Packet> coalesced = new ArrayList<>();
+
+  /** Body size of the waiting packets */
+  private int coalescedBytes;
+
+  /** Flush of the waiting packets at the end of the window */
+  private transient ScheduledFuture<?> coalesceFlush;
+
+  /** Packets and batches taken from the coalescing state, written in order outside of its lock */
+  private final transient Queue<Object> coalescedWrites = new ConcurrentLinkedQueue<>();
+
+  /** Whether a thread is writing the coalesced writes */
+  private final transient AtomicBoolean writingCoalesced = new AtomicBoolean();
+
+  /** Body size of the packets held back by the coalescing and not handed to the session yet */
+  private final transient AtomicInteger coalescedHeldBytes = new AtomicInteger();
+
+  /** Bytes of media which may wait in the outbound queue, 0 writes packets without queueing */
+  protected int outboundQueueMaxBytes;
+
+  /** Bytes scheduled for writing on the session under which queued packets are handed over */
+  protected int outboundWriteBytes = 65536;
+
+  /** Packets waiting for the session to catch up, control first */
+  private transient OutboundQueue outboundQueue;
+
+  /** Lock serializing the hand over of queued packets to the session */
+  private final transient Object outboundLock = new Object();
+
   /** Constructs a new RTMPMinaConnection. */
   @ConstructorProperties(value = {"persistent"})
   public RTMPMinaConnection() {
@@ -71,7 +118,13 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
   @Override
   public boolean connect(IScope newScope, Object[] params) {
     log.debug("Connect scope: {}", newScope);
-    boolean success = super.connect(newScope, params);
+    boolean success;
+    try {
+      success = super.connect(newScope, params);
+    } finally {
+      // the connect was handled, let the next pending session in
+      ConnectionAdmission.release(ioSession);
+    }
     if (success) {
       // get control channel if available
       Optional<Channel> opt = Optional.ofNullable(getChannel(2));
@@ -102,6 +155,19 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
   @Override
   public void close() {
     if (closing.compareAndSet(false, true)) {
+      // packets waiting to be coalesced are not written anymore
+      synchronized (coalesced) {
+        if (coalesceFlush != null) {
+          coalesceFlush.cancel(false);
+          coalesceFlush = null;
+        }
+        coalesced.clear();
+        coalescedWrites.clear();
+        coalescedHeldBytes.set(0);
+      }
+      if (outboundQueue != null) {
+        outboundQueue.clear();
+      }
       super.close();
       log.debug("IO Session closing: {}", (ioSession != null ? ioSession.isClosing() : null));
       if (ioSession != null && !ioSession.isClosing()) {
@@ -212,6 +278,84 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
     this.bandwidthDetection = bandwidthDetection;
   }
 
+  /**
+   * @return the write coalescing window in milliseconds
+   */
+  public int getWriteCoalesceWindow() {
+    return writeCoalesceWindow;
+  }
+
+  /**
+   * Sets the time audio and video packets may be held back so that they are written together with
+   * the following ones. Other packets flush them. Zero, the default, writes every packet on its own.
+   *
+   * @param writeCoalesceWindow window in milliseconds
+   */
+  public void setWriteCoalesceWindow(int writeCoalesceWindow) {
+    this.writeCoalesceWindow = writeCoalesceWindow;
+  }
+
+  /**
+   * @return the body size at which waiting packets are written before the window ends
+   */
+  public int getWriteCoalesceBytes() {
+    return writeCoalesceBytes;
+  }
+
+  /**
+   * Sets the body size at which the waiting audio and video packets are written before the end of
+   * the coalescing window.
+   *
+   * @param writeCoalesceBytes size in bytes
+   */
+  public void setWriteCoalesceBytes(int writeCoalesceBytes) {
+    this.writeCoalesceBytes = writeCoalesceBytes;
+  }
+
+  /**
+   * @return the outbound queue budget in bytes
+   */
+  public int getOutboundQueueMaxBytes() {
+    return outboundQueueMaxBytes;
+  }
+
+  /**
+   * Sets the bytes of audio and video which may wait for a slow connection. Packets then go through
+   * a queue where control messages pass the stream packets, which keep their order, and, when the
+   * budget is exceeded, video inter frames are dropped first, then key frames and audio; control,
+   * invoke and codec configuration messages are never dropped. Zero, the default, hands every
+   * packet to the session right away.
+   *
+   * @param outboundQueueMaxBytes budget in bytes
+   */
+  public void setOutboundQueueMaxBytes(int outboundQueueMaxBytes) {
+    this.outboundQueueMaxBytes = outboundQueueMaxBytes;
+    outboundQueue = outboundQueueMaxBytes > 0 ? new OutboundQueue(outboundQueueMaxBytes) : null;
+  }
+
+  /**
+   * @return the scheduled write bytes under which queued packets are handed to the session
+   */
+  public int getOutboundWriteBytes() {
+    return outboundWriteBytes;
+  }
+
+  /**
+   * Sets the bytes scheduled for writing on the session under which queued packets are handed
+   * over; packets beyond it wait in the outbound queue where they can still be dropped.
+   *
+   * @param outboundWriteBytes size in bytes
+   */
+  public void setOutboundWriteBytes(int outboundWriteBytes) {
+    this.outboundWriteBytes = outboundWriteBytes;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getOutboundQueuedBytes() {
+    return outboundQueue != null ? outboundQueue.getBytes() : 0;
+  }
+
   /** {@inheritDoc} */
   @Override
   public boolean isReaderIdle() {
@@ -317,6 +461,22 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
     return idle;
   }
 
+  /**
+   * Starts waiting for a valid handshake, unless the session is under admission control: the wait
+   * then starts once the session is admitted, see {@link #onAdmitted()}.
+   */
+  @Override
+  public void startWaitForHandshake() {
+    if (!ConnectionAdmission.isControlled(ioSession)) {
+      super.startWaitForHandshake();
+    }
+  }
+
+  /** Starts waiting for a valid handshake once the session was admitted. */
+  public void onAdmitted() {
+    super.startWaitForHandshake();
+  }
+
   /** {@inheritDoc} */
   @Override
   protected void onInactive() {
@@ -349,6 +509,152 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
   /** {@inheritDoc} */
   @Override
   public void write(Packet out) {
+    if (ioSession != null) {
+      if (outboundQueue != null) {
+        List<Packet> dropped = outboundQueue.offer(out);
+        if (!dropped.isEmpty()) {
+          log.debug("Outbound queue full, dropped {} packets", dropped.size());
+          dropped.forEach(packet -> messageDropped());
+        }
+        drainOutboundQueue();
+      } else {
+        send(out);
+      }
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void messageSent(Packet message) {
+    super.messageSent(message);
+    if (outboundQueue != null && !outboundQueue.isEmpty()) {
+      drainOutboundQueue();
+    }
+  }
+
+  /**
+   * Hands queued packets over to the session, most important first, as long as the bytes
+   * scheduled for writing on the session, plus those held back by the write coalescing, stay below
+   * the outbound write size.
+   */
+  private void drainOutboundQueue() {
+    synchronized (outboundLock) {
+      while (ioSession.getScheduledWriteBytes() + coalescedHeldBytes.get() < outboundWriteBytes) {
+        Packet packet = outboundQueue.poll();
+        if (packet == null) {
+          break;
+        }
+        send(packet);
+      }
+    }
+  }
+
+  private void send(Packet out) {
+    if (writeCoalesceWindow > 0 && scheduler != null) {
+      writeCoalesced(out);
+    } else {
+      writeMessage(out);
+    }
+  }
+
+  /**
+   * Holds audio and video packets back for up to the coalescing window, so that the packets
+   * produced meanwhile go to the socket in a single write. Any other packet first flushes the
+   * waiting ones and is written right away.
+   *
+   * @param out packet
+   */
+  private void writeCoalesced(Packet out) {
+    IRTMPEvent event = out.getMessage();
+    synchronized (coalesced) {
+      if (event instanceof AudioData || event instanceof VideoData) {
+        int size = bodySize(out);
+        coalesced.add(out);
+        coalescedBytes += size;
+        coalescedHeldBytes.addAndGet(size);
+        if (coalescedBytes >= writeCoalesceBytes) {
+          takeCoalesced();
+        } else if (coalesceFlush == null) {
+          coalesceFlush =
+              scheduler.schedule(this::flushWrites, Instant.now().plusMillis(writeCoalesceWindow));
+        }
+      } else {
+        takeCoalesced();
+        coalescedWrites.add(out);
+      }
+    }
+    writeTakenCoalesced();
+  }
+
+  /** Writes the audio and video packets waiting to be coalesced, if any. */
+  public void flushWrites() {
+    synchronized (coalesced) {
+      takeCoalesced();
+    }
+    writeTakenCoalesced();
+  }
+
+  /**
+   * Moves the waiting packets to the writes to perform, the caller holds the coalescing lock. The
+   * write itself, which may wait for the encoder, happens once the lock is released.
+   */
+  private void takeCoalesced() {
+    if (coalesceFlush != null) {
+      coalesceFlush.cancel(false);
+      coalesceFlush = null;
+    }
+    int count = coalesced.size();
+    if (count == 1) {
+      coalescedWrites.add(coalesced.get(0));
+    } else if (count > 1) {
+      coalescedWrites.add(new PacketBatch(new ArrayList<>(coalesced)));
+    }
+    coalesced.clear();
+    coalescedBytes = 0;
+  }
+
+  /**
+   * Writes the packets and batches taken from the coalescing state in order. A single thread
+   * writes at a time, the others leave their writes to it instead of waiting.
+   */
+  private void writeTakenCoalesced() {
+    while (!coalescedWrites.isEmpty() && writingCoalesced.compareAndSet(false, true)) {
+      try {
+        Object next;
+        while ((next = coalescedWrites.poll()) != null) {
+          int size = 0;
+          if (next instanceof PacketBatch) {
+            for (Packet packet : ((PacketBatch) next).getPackets()) {
+              size += bodySize(packet);
+            }
+          } else {
+            size = bodySize((Packet) next);
+          }
+          writeMessage(next);
+          coalescedHeldBytes.addAndGet(-size);
+        }
+      } finally {
+        writingCoalesced.set(false);
+      }
+    }
+  }
+
+  /** Body size of an audio or video packet, 0 for other packets. */
+  private static int bodySize(Packet packet) {
+    IRTMPEvent event = packet.getMessage();
+    if (event instanceof AudioData || event instanceof VideoData) {
+      IoBuffer data = ((IStreamData<?>) event).getData();
+      return data != null ? data.remaining() : 0;
+    }
+    return 0;
+  }
+
+  /**
+   * Writes a packet or a batch of packets to the session.
+   *
+   * @param out packet or packet batch
+   */
+  private void writeMessage(Object out) {
     if (ioSession != null) {
       final Semaphore lock = getLock();
       // if (log.isTraceEnabled()) {
@@ -363,7 +669,12 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
               if (log.isTraceEnabled()) {
                 log.trace("Writing message");
               }
-              writingMessage(out);
+              // counted as pending only once handed over, messageSent follows each of them
+              if (out instanceof PacketBatch) {
+                ((PacketBatch) out).getPackets().forEach(this::writingMessage);
+              } else {
+                writingMessage((Packet) out);
+              }
               ioSession.write(out);
             }
             break;
@@ -0,0 +1,137 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.rtmp;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs tasks one at a time and in submission order on top of a shared executor. Any number of
+ * serial executors can share a pool of a few threads; each one occupies at most one pool thread
+ * at a time and hands the thread back after a batch of tasks, so that a busy connection cannot
+ * starve the others. When the pool rejects an executor, the tasks waiting in it are dropped.
+ *
+ * @author The Red5 Project
+ */
+public class SerialExecutor implements Executor {
+
+  private static final Logger log = LoggerFactory.getLogger(SerialExecutor.class);
+
+  /** Number of tasks run before the pool thread is handed back */
+  private static final int BATCH_SIZE = 16;
+
+  private final Executor pool;
+
+  private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+  private final AtomicBoolean scheduled = new AtomicBoolean();
+
+  /** Notified of each task dropped on rejection */
+  private final Consumer<Runnable> rejectedHandler;
+
+  /**
+   * Creates a serial executor running on the given pool.
+   *
+   * @param pool shared executor
+   */
+  public SerialExecutor(Executor pool) {
+    this(pool, null);
+  }
+
+  /**
+   * Creates a serial executor running on the given pool.
+   *
+   * @param pool shared executor
+   * @param rejectedHandler notified of each task dropped when the pool rejects this executor
+   */
+  public SerialExecutor(Executor pool, Consumer<Runnable> rejectedHandler) {
+    this.pool = pool;
+    this.rejectedHandler = rejectedHandler;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void execute(Runnable task) {
+    tasks.offer(task);
+    schedule();
+  }
+
+  private void schedule() {
+    if (scheduled.compareAndSet(false, true)) {
+      try {
+        pool.execute(this::drain);
+      } catch (RejectedExecutionException e) {
+        // the pool is saturated, drop the waiting tasks rather than running them on the caller
+        int dropped = 0;
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+          dropped++;
+          if (rejectedHandler != null) {
+            rejectedHandler.accept(task);
+          }
+        }
+        log.info("Serial batch rejected by {}, dropped {} tasks", pool, dropped);
+        scheduled.set(false);
+        // tasks added after the last poll found the batch still scheduled
+        if (!tasks.isEmpty()) {
+          schedule();
+        }
+      }
+    }
+  }
+
+  private void drain() {
+    try {
+      for (int i = 0; i < BATCH_SIZE; i++) {
+        Runnable task = tasks.poll();
+        if (task == null) {
+          break;
+        }
+        try {
+          task.run();
+        } catch (Throwable t) {
+          log.warn("Serial task failed: {}", task, t);
+        }
+      }
+    } finally {
+      scheduled.set(false);
+      // tasks added after the last poll or left over from the batch
+      if (!tasks.isEmpty()) {
+        schedule();
+      }
+    }
+  }
+
+  /**
+   * Creates a pool of daemon threads, one per available processor, for serial executors.
+   *
+   * @param threadNamePrefix prefix of the thread names
+   * @return executor service
+   */
+  public static ExecutorService newPool(String threadNamePrefix) {
+    final AtomicInteger threadCount = new AtomicInteger();
+    ThreadFactory threadFactory =
+        runnable -> {
+          Thread thread = new Thread(runnable, threadNamePrefix + threadCount.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        };
+    return Executors.newFixedThreadPool(
+        Runtime.getRuntime().availableProcessors(), threadFactory);
+  }
+}
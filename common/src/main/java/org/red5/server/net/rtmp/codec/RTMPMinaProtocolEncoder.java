@@ -9,6 +9,7 @@ package org.red5.server.net.rtmp.codec;
 
 import java.lang.ref.WeakReference;
 import java.util.LinkedList;
+import java.util.List;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.codec.ProtocolCodecException;
@@ -17,6 +18,8 @@ import org.apache.mina.filter.codec.ProtocolEncoderOutput;
 import org.red5.server.api.Red5;
 import org.red5.server.net.IConnectionManager;
 import org.red5.server.net.rtmp.RTMPConnection;
+import org.red5.server.net.rtmp.message.Packet;
+import org.red5.server.net.rtmp.message.PacketBatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,6 +32,9 @@ public class RTMPMinaProtocolEncoder extends ProtocolEncoderAdapter {
 
   private int targetChunkSize = 2048;
 
+  /** Whether or not packets are written as slices of their body instead of a copy */
+  private boolean gatherWrites;
+
   /** {@inheritDoc} */
   public void encode(IoSession session, Object message, ProtocolEncoderOutput out)
       throws ProtocolCodecException {
@@ -57,25 +63,48 @@ public class RTMPMinaProtocolEncoder extends ProtocolEncoderAdapter {
         }
         Boolean interrupted = false;
         try {
-          // get the buffer
-          final IoBuffer buf =
-              message instanceof IoBuffer ? (IoBuffer) message : encoder.encode(message);
-          if (buf != null) {
-            int requestedWriteChunkSize = conn.getState().getWriteChunkSize();
-            log.trace(
-                "Requested chunk size: {} target chunk size: {}",
-                requestedWriteChunkSize,
-                targetChunkSize);
-            if (buf.remaining() <= targetChunkSize * 2) {
-              log.trace("Writing output data");
-              out.write(buf);
-            } else {
-              int sentChunks =
-                  Chunker.chunkAndWrite(out, buf, requestedWriteChunkSize, targetChunkSize);
-              log.trace("Wrote {} chunks", sentChunks);
+          if (message instanceof PacketBatch) {
+            // coalesced packets are encoded back to back into one buffer and written at once
+            List<Packet> packets = ((PacketBatch) message).getPackets();
+            IoBuffer buf = IoBuffer.allocate(2048).setAutoExpand(true);
+            for (Packet packet : packets) {
+              IoBuffer encoded = encoder.encodePacket(packet);
+              if (encoded != null) {
+                buf.put(encoded);
+                encoded.free();
+              }
+            }
+            buf.flip();
+            log.trace("Writing {} coalesced packets, {} bytes", packets.size(), buf.remaining());
+            out.write(buf);
+          } else if (gatherWrites && message instanceof Packet) {
+            // header and body slices are queued as they are, the body is not copied
+            List<IoBuffer> slices = encoder.encodePacketSlices((Packet) message);
+            log.trace("Writing {} slices", slices.size());
+            for (IoBuffer slice : slices) {
+              out.write(slice);
             }
           } else {
-            log.trace("Response buffer was null after encoding");
+            // get the buffer
+            final IoBuffer buf =
+                message instanceof IoBuffer ? (IoBuffer) message : encoder.encode(message);
+            if (buf != null) {
+              int requestedWriteChunkSize = conn.getState().getWriteChunkSize();
+              log.trace(
+                  "Requested chunk size: {} target chunk size: {}",
+                  requestedWriteChunkSize,
+                  targetChunkSize);
+              if (buf.remaining() <= targetChunkSize * 2) {
+                log.trace("Writing output data");
+                out.write(buf);
+              } else {
+                int sentChunks =
+                    Chunker.chunkAndWrite(out, buf, requestedWriteChunkSize, targetChunkSize);
+                log.trace("Wrote {} chunks", sentChunks);
+              }
+            } else {
+              log.trace("Response buffer was null after encoding");
+            }
           }
         } catch (InterruptedException ex) {
           log.error("InterruptedException during encode", ex);
@@ -149,6 +178,32 @@ public class RTMPMinaProtocolEncoder extends ProtocolEncoderAdapter {
     this.targetChunkSize = targetChunkSize;
   }
 
+  /**
+   * @return whether packets are written as header and body slices
+   */
+  public boolean isGatherWrites() {
+    return gatherWrites;
+  }
+
+  /**
+   * Write packets as a sequence of chunk header slices and read-only body slices instead of copying
+   * them into a single buffer.
+   *
+   * @param gatherWrites true to write slices
+   */
+  public void setGatherWrites(boolean gatherWrites) {
+    this.gatherWrites = gatherWrites;
+  }
+
+  /**
+   * Setter for the smallest write chunk size for which packets are written as slices
+   *
+   * @param minSliceChunkSize minimum chunk size
+   */
+  public void setMinSliceChunkSize(int minSliceChunkSize) {
+    encoder.setMinSliceChunkSize(minSliceChunkSize);
+  }
+
   /** Output data chunker. */
   private static final class Chunker {
 
@@ -16,6 +16,7 @@ import java.util.List;
 import java.util.Map;
 import org.apache.commons.codec.binary.Hex;
 import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.buffer.IoBufferAllocator;
 import org.red5.io.amf.AMF;
 import org.red5.io.amf.Output;
 import org.red5.io.amf3.AMF3;
@@ -23,6 +24,7 @@ import org.red5.io.object.DataTypes;
 import org.red5.io.object.Deserializer;
 import org.red5.io.object.Input;
 import org.red5.io.object.StreamAction;
+import org.red5.io.utils.PooledBufferAllocator;
 import org.red5.server.api.IConnection.Encoding;
 import org.red5.server.api.Red5;
 import org.red5.server.net.protocol.ProtocolException;
@@ -257,6 +259,11 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
 
     } finally {
       rtmp.setLastReadPacket(channelId, null);
+      if (PooledBufferAllocator.isPooled(buf)) {
+        // the decoded media holds its own reference to the pooled body
+        PooledBufferAllocator.release(buf);
+        packet.clearData();
+      }
     }
     return packet;
   }
@@ -615,12 +622,12 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
 
   /** {@inheritDoc} */
   public AudioData decodeAudioData(IoBuffer in) {
-    return new AudioData(in.asReadOnlyBuffer());
+    return new AudioData(PooledBufferAllocator.retain(in.asReadOnlyBuffer()));
   }
 
   /** {@inheritDoc} */
   public VideoData decodeVideoData(IoBuffer in) {
-    return new VideoData(in.asReadOnlyBuffer());
+    return new VideoData(PooledBufferAllocator.retain(in.asReadOnlyBuffer()));
   }
 
   /**
@@ -1119,21 +1126,21 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
    * @param in The IoBuffer containing the data to be read
    * @param buf The packet buffer to write the chunk into
    * @param rtmp The RTMP state used to get the chunk size
-   * @return The chunk of data read
    */
-  private byte[] readChunk(IoBuffer in, IoBuffer buf, RTMP rtmp) {
+  private void readChunk(IoBuffer in, IoBuffer buf, RTMP rtmp) {
     int length = Math.min(buf.remaining(), rtmp.getReadChunkSize());
-    byte[] chunk = Arrays.copyOfRange(in.array(), in.position(), in.position() + length);
     if (isTrace) {
       log.trace(
           "Read chunkSize: {}, length: {}, chunk: {}",
           rtmp.getReadChunkSize(),
           length,
-          Hex.encodeHexString(chunk));
+          in.getHexDump(length));
     }
-    in.skip(length);
-    buf.put(chunk);
-    return chunk;
+    // copy straight from the input buffer, heap or direct
+    int limit = in.limit();
+    in.limit(in.position() + length);
+    buf.put(in);
+    in.limit(limit);
   }
 
   /**
@@ -1148,8 +1155,19 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
     Packet packet = rtmp.getLastReadPacket(channelId);
     if (packet == null) {
       log.trace("Creating new packet");
-      // create a new packet
-      packet = new Packet(header.clone());
+      // create a new packet, media bodies go into pooled buffers when pooling is enabled
+      IoBufferAllocator allocator = IoBuffer.getAllocator();
+      byte dataType = header.getDataType();
+      if (allocator instanceof PooledBufferAllocator
+          && (dataType == TYPE_AUDIO_DATA || dataType == TYPE_VIDEO_DATA)) {
+        packet =
+            new Packet(
+                header.clone(),
+                ((PooledBufferAllocator) allocator)
+                    .allocatePooled(header.getSize(), IoBuffer.isUseDirectBuffer()));
+      } else {
+        packet = new Packet(header.clone());
+      }
       // store the packet based on its channel id
 
       rtmp.setLastReadPacket(channelId, packet);
@@ -14,6 +14,7 @@ import java.util.Map;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.io.object.Output;
 import org.red5.io.object.Serializer;
+import org.red5.io.utils.PooledBufferAllocator;
 import org.red5.server.api.IConnection.Encoding;
 import org.red5.server.api.Red5;
 import org.red5.server.api.service.IPendingServiceCall;
@@ -25,6 +26,7 @@ import org.red5.server.net.rtmp.RTMPUtils;
 import org.red5.server.net.rtmp.codec.RTMP.LiveTimestampMapping;
 import org.red5.server.net.rtmp.event.Aggregate;
 import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.BaseEvent;
 import org.red5.server.net.rtmp.event.BytesRead;
 import org.red5.server.net.rtmp.event.ChunkSize;
 import org.red5.server.net.rtmp.event.ClientBW;
@@ -40,6 +42,7 @@ import org.red5.server.net.rtmp.event.SetBuffer;
 import org.red5.server.net.rtmp.event.Unknown;
 import org.red5.server.net.rtmp.event.VideoData;
 import org.red5.server.net.rtmp.event.VideoData.FrameType;
+import org.red5.server.net.rtmp.message.ChunkedBody;
 import org.red5.server.net.rtmp.message.Constants;
 import org.red5.server.net.rtmp.message.Header;
 import org.red5.server.net.rtmp.message.Packet;
@@ -50,6 +53,8 @@ import org.red5.server.net.rtmp.status.StatusObject;
 import org.red5.server.service.Call;
 import org.red5.server.so.ISharedObjectEvent;
 import org.red5.server.so.ISharedObjectMessage;
+import org.red5.server.so.SharedObjectMessage;
+import org.red5.server.so.SharedObjectMessage.SharedBody;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -94,6 +99,9 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
   /** The overhead size added to the total length */
   private static final int LENGTH_FIELD_OVERHEAD = 4;
 
+  /** Smallest write chunk size for which packets are encoded to slices of the message body */
+  private int minSliceChunkSize = 4096;
+
   /**
    * Encodes object with given protocol state to byte buffer
    *
@@ -126,6 +134,36 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
    * @return Encoded data
    */
   public IoBuffer encodePacket(Packet packet) {
+    return encodePacket(packet, null);
+  }
+
+  /**
+   * Encode packet as a list of buffers to be written in order, without copying the message body.
+   * Chunk headers are written to a small buffer and sliced, the body chunks are read-only slices of
+   * the message body. With a chunk size below the minimum slice chunk size the packet is copied into
+   * a single buffer as by {@link #encodePacket(Packet)}, since the per buffer write overhead
+   * outweighs the saved copy for small chunks.
+   *
+   * @param packet RTMP packet
+   * @return Encoded data buffers, empty if the message was dropped
+   */
+  public List<IoBuffer> encodePacketSlices(Packet packet) {
+    List<IoBuffer> slices = new ArrayList<>();
+    IoBuffer out = encodePacket(packet, slices);
+    if (out != null) {
+      slices.add(out);
+    }
+    return slices;
+  }
+
+  /**
+   * Encode packet into a single buffer, or into the given slices when they are usable.
+   *
+   * @param packet RTMP packet
+   * @param slices list collecting header and body slices or null to copy into a single buffer
+   * @return Encoded data or null if the packet was encoded to slices or dropped
+   */
+  private IoBuffer encodePacket(Packet packet, List<IoBuffer> slices) {
     IoBuffer out = null;
     Header header = packet.getHeader();
     int channelId = header.getChannelId();
@@ -167,30 +205,48 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
         if (log.isTraceEnabled()) {
           log.trace("Channel id: {} chunkSize: {}", channelId, chunkSize);
         }
-        // attempt to properly guess the size of the buffer we'll need
-        int bufSize = dataLen + MAX_HEADER_SIZE + (numChunks * 2);
-        // log.trace("Allocated buffer size: {}", bufSize);
-        out = IoBuffer.allocate(bufSize, false);
-        out.setAutoExpand(true);
-        do {
-          // encode the header
+        ChunkedBody chunkedBody = getChunkedBody(message);
+        // pooled bodies are recycled once released, slices must not outlive the message
+        if (slices != null
+            && chunkSize >= minSliceChunkSize
+            && !PooledBufferAllocator.isPooled(data)) {
+          lastHeader = encodeSlices(header, lastHeader, data, chunkSize, chunkedBody, slices);
+        } else {
+          // attempt to properly guess the size of the buffer we'll need
+          int bufSize = dataLen + MAX_HEADER_SIZE + (numChunks * 2);
+          // log.trace("Allocated buffer size: {}", bufSize);
+          out = IoBuffer.allocate(bufSize, false);
+          out.setAutoExpand(true);
+          // encode the header of the first chunk
           encodeHeader(header, lastHeader, out);
-          // write a chunk
-          byte[] buf = new byte[Math.min(chunkSize, data.remaining())];
-          data.get(buf);
-          // log.trace("Buffer: {}", Hex.encodeHexString(buf));
-          out.put(buf);
           // move header over to last header
           lastHeader = header.clone();
-        } while (data.hasRemaining());
+          if (chunkedBody != null && !header.isExtended()) {
+            // the body and its continue headers were chunked once for all subscribers of the stream
+            out.put(chunkedBody.getChunks(data, chunkSize, channelId));
+          } else {
+            do {
+              // write a chunk
+              byte[] buf = new byte[Math.min(chunkSize, data.remaining())];
+              data.get(buf);
+              // log.trace("Buffer: {}", Hex.encodeHexString(buf));
+              out.put(buf);
+              if (data.hasRemaining()) {
+                // encode the continue header
+                encodeHeader(header, lastHeader, out);
+                lastHeader = header.clone();
+              }
+            } while (data.hasRemaining());
+          }
+          data.free();
+          out.flip();
+        }
         // collapse the time stamps on the last header after decode is complete
         lastHeader.setTimerBase(lastHeader.getTimer());
         // clear the delta
         lastHeader.setTimerDelta(0);
         // set last write header
         rtmp.setLastWriteHeader(channelId, lastHeader);
-        data.free();
-        out.flip();
         data = null;
       }
     }
@@ -198,6 +254,71 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
     return out;
   }
 
+  /**
+   * Encode the chunks of a message as header slices followed by read-only body slices. The data
+   * buffer is referenced by the slices and must not be freed.
+   *
+   * @param header RTMP message header
+   * @param lastHeader Previous header
+   * @param data message body
+   * @param chunkSize write chunk size
+   * @param chunkedBody shared chunked body or null
+   * @param slices list collecting the slices
+   * @return header of the last chunk
+   */
+  private Header encodeSlices(
+      Header header,
+      Header lastHeader,
+      IoBuffer data,
+      int chunkSize,
+      ChunkedBody chunkedBody,
+      List<IoBuffer> slices) {
+    if (!data.isReadOnly()) {
+      data = data.asReadOnlyBuffer();
+    }
+    int numChunks = Math.max(1, (data.remaining() + chunkSize - 1) / chunkSize);
+    // continue headers take up to 3 bytes and 4 more for an extended timestamp
+    IoBuffer headers = IoBuffer.allocate(MAX_HEADER_SIZE + (numChunks - 1) * 7, false);
+    encodeHeader(header, lastHeader, headers);
+    lastHeader = header.clone();
+    if (chunkedBody != null && !header.isExtended()) {
+      slices.add(headers.flip());
+      // the body and its continue headers were chunked once for all subscribers of the stream
+      byte[] chunks = chunkedBody.getChunks(data, chunkSize, header.getChannelId());
+      slices.add(IoBuffer.wrap(chunks).asReadOnlyBuffer());
+      return lastHeader;
+    }
+    int headerStart = 0;
+    do {
+      slices.add(headers.getSlice(headerStart, headers.position() - headerStart));
+      int len = Math.min(chunkSize, data.remaining());
+      if (len > 0) {
+        slices.add(data.getSlice(len));
+      }
+      if (data.hasRemaining()) {
+        headerStart = headers.position();
+        encodeHeader(header, lastHeader, headers);
+        lastHeader = header.clone();
+      }
+    } while (data.hasRemaining());
+    return lastHeader;
+  }
+
+  /**
+   * Returns the chunked body shared by the subscribers of a live stream, if the message has one.
+   * Extended timestamps repeat the timestamp of the connection in every chunk header, so they are
+   * always chunked per connection.
+   *
+   * @param message RTMP message
+   * @return shared chunked body or null
+   */
+  private static ChunkedBody getChunkedBody(IRTMPEvent message) {
+    if (message instanceof AudioData || message instanceof VideoData) {
+      return ((BaseEvent) message).getChunkedBody();
+    }
+    return null;
+  }
+
   /**
    * Determine if this message should be dropped. If the traffic from server to client is congested,
    * then drop LIVE messages to help alleviate congestion.
@@ -666,6 +787,14 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
 
   /** {@inheritDoc} */
   public IoBuffer encodeFlexSharedObject(ISharedObjectMessage so) {
+    SharedBody sharedBody = getSharedBody(so);
+    if (sharedBody != null) {
+      return sharedBody.get(() -> newFlexSharedObjectBody(so));
+    }
+    return newFlexSharedObjectBody(so);
+  }
+
+  private IoBuffer newFlexSharedObjectBody(ISharedObjectMessage so) {
     final IoBuffer out = IoBuffer.allocate(128);
     out.setAutoExpand(true);
     out.put((byte) 0x00); // unknown (not AMF version)
@@ -675,12 +804,31 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
 
   /** {@inheritDoc} */
   public IoBuffer encodeSharedObject(ISharedObjectMessage so) {
+    SharedBody sharedBody = getSharedBody(so);
+    if (sharedBody != null) {
+      return sharedBody.get(() -> newSharedObjectBody(so));
+    }
+    return newSharedObjectBody(so);
+  }
+
+  private IoBuffer newSharedObjectBody(ISharedObjectMessage so) {
     final IoBuffer out = IoBuffer.allocate(128);
     out.setAutoExpand(true);
     doEncodeSharedObject(so, out);
     return out;
   }
 
+  /**
+   * Returns the body shared by the messages of an update sent to many connections, it is encoded by
+   * the first connection writing it.
+   *
+   * @param so shared object message
+   * @return shared body or null
+   */
+  private static SharedBody getSharedBody(ISharedObjectMessage so) {
+    return so instanceof SharedObjectMessage ? ((SharedObjectMessage) so).getSharedBody() : null;
+  }
+
   /**
    * Perform the actual encoding of the shared object contents.
    *
@@ -1075,6 +1223,20 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
     this.dropLiveFuture = dropLiveFuture;
   }
 
+  /**
+   * Setter for the smallest write chunk size for which {@link #encodePacketSlices(Packet)} slices
+   * the message body instead of copying it.
+   *
+   * @param minSliceChunkSize minimum chunk size
+   */
+  public void setMinSliceChunkSize(int minSliceChunkSize) {
+    this.minSliceChunkSize = minSliceChunkSize;
+  }
+
+  public int getMinSliceChunkSize() {
+    return minSliceChunkSize;
+  }
+
   public void setDropEncoded(boolean dropEncoded) {
     this.dropEncoded = dropEncoded;
   }
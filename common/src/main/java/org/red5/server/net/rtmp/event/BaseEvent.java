@@ -13,6 +13,7 @@ import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.red5.server.api.event.IEventListener;
+import org.red5.server.net.rtmp.message.ChunkedBody;
 import org.red5.server.net.rtmp.message.Constants;
 import org.red5.server.net.rtmp.message.Header;
 import org.slf4j.Logger;
@@ -49,6 +50,9 @@ public abstract class BaseEvent implements Constants, IRTMPEvent, Externalizable
   /** Event references count */
   protected AtomicInteger refcount = new AtomicInteger(1);
 
+  /** Pre-chunked body shared by the subscribers of a live stream */
+  protected transient ChunkedBody chunkedBody;
+
   public BaseEvent() {
     // set a default type
     this(Type.SERVER, null);
@@ -111,6 +115,24 @@ public abstract class BaseEvent implements Constants, IRTMPEvent, Externalizable
     this.header = header;
   }
 
+  /**
+   * Returns the pre-chunked body shared with the other copies of this event, if any.
+   *
+   * @return shared chunked body or null
+   */
+  public ChunkedBody getChunkedBody() {
+    return chunkedBody;
+  }
+
+  /**
+   * Shares a pre-chunked body between copies of the same live stream event.
+   *
+   * @param chunkedBody shared chunked body
+   */
+  public void setChunkedBody(ChunkedBody chunkedBody) {
+    this.chunkedBody = chunkedBody;
+  }
+
   /** {@inheritDoc} */
   public boolean hasSource() {
     return source != null;
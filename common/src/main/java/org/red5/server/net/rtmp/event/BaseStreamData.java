@@ -2,6 +2,7 @@ package org.red5.server.net.rtmp.event;
 
 import java.io.*;
 import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.io.utils.PooledBufferAllocator;
 import org.red5.server.api.stream.IStreamPacket;
 import org.red5.server.stream.IStreamData;
 
@@ -64,6 +65,7 @@ public abstract class BaseStreamData<T extends BaseStreamData<T>> extends BaseEv
       data = null;
       localData.clear();
       localData.free();
+      PooledBufferAllocator.release(localData);
     }
   }
 
@@ -80,15 +82,10 @@ public abstract class BaseStreamData<T extends BaseStreamData<T>> extends BaseEv
   public void writeExternal(ObjectOutput out) throws IOException {
     super.writeExternal(out);
     if (data != null) {
-      if (data.hasArray()) {
-        out.writeObject(data.array());
-      } else {
-        byte[] array = new byte[data.remaining()];
-        data.mark();
-        data.get(array);
-        data.reset();
-        out.writeObject(array);
-      }
+      // copy the readable bytes, the buffer may be a view of a larger array or of a mapped file
+      byte[] array = new byte[data.remaining()];
+      data.buf().duplicate().get(array);
+      out.writeObject(array);
     } else {
       out.writeObject(null);
     }
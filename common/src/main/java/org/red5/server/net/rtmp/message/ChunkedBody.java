@@ -0,0 +1,79 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.rtmp.message;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.server.net.rtmp.RTMPUtils;
+
+/**
+ * Pre-chunked body of a live stream message, shared by every subscriber of the stream. The body is
+ * split into chunks and the type 3 (continue) chunk headers are interleaved once per write chunk
+ * size and channel id; a connection then only has to encode the header of the first chunk itself.
+ * The encoded bytes are everything following the first chunk header, so they only depend on the
+ * body, the chunk size and the channel id.
+ */
+public final class ChunkedBody {
+
+  /** Encoded bodies keyed by chunk size (high word) and channel id (low word) */
+  private final ConcurrentMap<Long, byte[]> encoded = new ConcurrentHashMap<>(4);
+
+  /**
+   * Returns the chunked body for the given chunk size and channel, creating it from the data if no
+   * subscriber encoded it yet. The data position is left untouched.
+   *
+   * @param data message body, positioned at its start
+   * @param chunkSize write chunk size of the connection
+   * @param channelId channel id the message is written to
+   * @return body chunks separated by their continue headers
+   */
+  public byte[] getChunks(IoBuffer data, int chunkSize, int channelId) {
+    Long key = ((long) chunkSize << 32) | channelId;
+    byte[] chunks = encoded.get(key);
+    if (chunks == null) {
+      chunks = encode(data.duplicate(), chunkSize, channelId);
+      byte[] existing = encoded.putIfAbsent(key, chunks);
+      if (existing != null) {
+        chunks = existing;
+      }
+    }
+    return chunks;
+  }
+
+  /**
+   * Returns the number of chunk layouts encoded so far.
+   *
+   * @return layout count
+   */
+  public int size() {
+    return encoded.size();
+  }
+
+  private static byte[] encode(IoBuffer data, int chunkSize, int channelId) {
+    int dataLen = data.remaining();
+    int numChunks = Math.max(1, (dataLen + chunkSize - 1) / chunkSize);
+    IoBuffer continueHeader = IoBuffer.allocate(3, false);
+    RTMPUtils.encodeHeaderByte(continueHeader, Constants.HEADER_CONTINUE, channelId);
+    continueHeader.flip();
+    byte[] header = new byte[continueHeader.remaining()];
+    continueHeader.get(header);
+    byte[] chunks = new byte[dataLen + (numChunks - 1) * header.length];
+    int offset = 0;
+    do {
+      if (offset > 0) {
+        System.arraycopy(header, 0, chunks, offset, header.length);
+        offset += header.length;
+      }
+      int len = Math.min(chunkSize, data.remaining());
+      data.get(chunks, offset, len);
+      offset += len;
+    } while (data.hasRemaining());
+    return chunks;
+  }
+}
@@ -61,6 +61,20 @@ public class Packet implements Externalizable {
     data = IoBuffer.allocate(header.getSize()).setAutoExpand(true);
   }
 
+  /**
+   * Create packet with given header, reading its body into the given buffer.
+   *
+   * @param header Packet header
+   * @param data Buffer for the packet body
+   */
+  public Packet(Header header, IoBuffer data) {
+    if (log.isTraceEnabled()) {
+      log.trace("Header: {}", header);
+    }
+    this.header = header;
+    this.data = data;
+  }
+
   /**
    * Create packet with given header and event context.
    *
@@ -0,0 +1,42 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.rtmp.message;
+
+import java.util.List;
+
+/**
+ * Packets written to a connection as a single write. The encoder puts them one after the other
+ * into one buffer, so the whole batch goes to the socket with a single write call.
+ */
+public final class PacketBatch {
+
+  private final List<Packet> packets;
+
+  /**
+   * Creates a batch of packets, in write order.
+   *
+   * @param packets packets
+   */
+  public PacketBatch(List<Packet> packets) {
+    this.packets = packets;
+  }
+
+  /**
+   * Returns the packets of the batch, in write order.
+   *
+   * @return packets
+   */
+  public List<Packet> getPackets() {
+    return packets;
+  }
+
+  @Override
+  public String toString() {
+    return "PacketBatch [packets=" + packets.size() + "]";
+  }
+}
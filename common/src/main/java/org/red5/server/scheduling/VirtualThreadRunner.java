@@ -0,0 +1,100 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.scheduling;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureTask;
+
+/**
+ * Runs the immediate tasks of {@link VirtualThreadTaskExecutor} and {@link
+ * VirtualThreadTaskScheduler} on virtual threads, with an optional bound on the tasks running or
+ * waiting at once. Beyond the bound tasks are rejected, as by a pool with a full queue.
+ *
+ * @author The Red5 Project
+ */
+final class VirtualThreadRunner {
+
+  private static final Logger log = LoggerFactory.getLogger(VirtualThreadRunner.class);
+
+  private final ExecutorService executor;
+
+  /** Permits for the tasks in flight, null when unbounded */
+  private final Semaphore permits;
+
+  VirtualThreadRunner(ExecutorService executor, int maxTasks) {
+    this.executor = executor;
+    this.permits = maxTasks > 0 ? new Semaphore(maxTasks) : null;
+  }
+
+  /**
+   * Creates a runner, or returns null when the JVM does not support virtual threads.
+   *
+   * @param threadNamePrefix prefix of the thread names
+   * @param maxTasks tasks in flight at once, 0 for no limit
+   * @param owner name of the executor falling back to its pool, for the log
+   * @return runner or null
+   */
+  static VirtualThreadRunner create(String threadNamePrefix, int maxTasks, String owner) {
+    ExecutorService executor = VirtualThreads.newExecutor(threadNamePrefix);
+    if (executor == null) {
+      log.warn("Virtual threads are not supported by this JVM, {} uses its thread pool", owner);
+      return null;
+    }
+    return new VirtualThreadRunner(executor, maxTasks);
+  }
+
+  void execute(Runnable task) {
+    if (permits != null) {
+      if (!permits.tryAcquire()) {
+        throw new TaskRejectedException("Virtual thread executor is full, rejected: " + task);
+      }
+      try {
+        executor.execute(
+            () -> {
+              try {
+                task.run();
+              } finally {
+                permits.release();
+              }
+            });
+      } catch (RejectedExecutionException e) {
+        permits.release();
+        throw new TaskRejectedException("Virtual thread executor rejected: " + task, e);
+      }
+    } else {
+      executor.execute(task);
+    }
+  }
+
+  Future<?> submit(Runnable task) {
+    return submitListenable(Executors.callable(task));
+  }
+
+  <T> Future<T> submit(Callable<T> task) {
+    return submitListenable(task);
+  }
+
+  <T> ListenableFuture<T> submitListenable(Callable<T> task) {
+    ListenableFutureTask<T> future = new ListenableFutureTask<>(task);
+    execute(future);
+    return future;
+  }
+
+  void shutdown() {
+    executor.shutdown();
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.scheduling;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.util.concurrent.ListenableFuture;
+
+/**
+ * Task scheduler which can run its immediate tasks on virtual threads. Only the tasks handed to
+ * {@code execute} and {@code submit} move to virtual threads, scheduled and periodic tasks stay on
+ * the scheduler pool. With virtual threads disabled, or when the JVM does not support them, it is
+ * a plain {@link ThreadPoolTaskScheduler}.
+ *
+ * @author The Red5 Project
+ */
+public class VirtualThreadTaskScheduler extends ThreadPoolTaskScheduler {
+
+  private static final long serialVersionUID = 5417316232750211208L;
+
+  private boolean virtualThreads;
+
+  private transient VirtualThreadRunner virtualRunner;
+
+  @Override
+  protected ExecutorService initializeExecutor(
+      ThreadFactory threadFactory, RejectedExecutionHandler rejectedExecutionHandler) {
+    ExecutorService executor = super.initializeExecutor(threadFactory, rejectedExecutionHandler);
+    if (virtualThreads) {
+      virtualRunner = VirtualThreadRunner.create(getThreadNamePrefix(), 0, "task scheduler");
+    }
+    return executor;
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    if (virtualRunner != null) {
+      virtualRunner.execute(task);
+    } else {
+      super.execute(task);
+    }
+  }
+
+  @Deprecated
+  @Override
+  public void execute(Runnable task, long startTimeout) {
+    if (virtualRunner != null) {
+      virtualRunner.execute(task);
+    } else {
+      super.execute(task, startTimeout);
+    }
+  }
+
+  @Override
+  public Future<?> submit(Runnable task) {
+    return virtualRunner != null ? virtualRunner.submit(task) : super.submit(task);
+  }
+
+  @Override
+  public <T> Future<T> submit(Callable<T> task) {
+    return virtualRunner != null ? virtualRunner.submit(task) : super.submit(task);
+  }
+
+  @Override
+  public ListenableFuture<?> submitListenable(Runnable task) {
+    return virtualRunner != null
+        ? virtualRunner.submitListenable(Executors.callable(task))
+        : super.submitListenable(task);
+  }
+
+  @Override
+  public <T> ListenableFuture<T> submitListenable(Callable<T> task) {
+    return virtualRunner != null
+        ? virtualRunner.submitListenable(task)
+        : super.submitListenable(task);
+  }
+
+  @Override
+  public void shutdown() {
+    if (virtualRunner != null) {
+      virtualRunner.shutdown();
+    }
+    super.shutdown();
+  }
+
+  /**
+   * Returns whether tasks run on virtual threads.
+   *
+   * @return true if tasks run on virtual threads
+   */
+  public boolean isVirtualThreadsActive() {
+    return virtualRunner != null;
+  }
+
+  public boolean isVirtualThreads() {
+    return virtualThreads;
+  }
+
+  /**
+   * Runs the immediate tasks on virtual threads if the JVM supports them. Must be set before the
+   * scheduler is initialized.
+   *
+   * @param virtualThreads true to use virtual threads
+   */
+  public void setVirtualThreads(boolean virtualThreads) {
+    this.virtualThreads = virtualThreads;
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.scheduling;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Access to virtual threads. The server is built for Java 11, so the virtual thread API is looked
+ * up at runtime; on a JVM without virtual threads (before Java 21, or 19 and 20 without preview
+ * features) {@link #isSupported()} returns false and callers keep their platform thread pools.
+ *
+ * @author The Red5 Project
+ */
+public final class VirtualThreads {
+
+  private static final Logger log = LoggerFactory.getLogger(VirtualThreads.class);
+
+  private static final Method ofVirtual;
+
+  private static final Method builderName;
+
+  private static final Method builderFactory;
+
+  private static final Method newThreadPerTaskExecutor;
+
+  private static final Method isVirtual;
+
+  static {
+    Method of = null, name = null, factory = null, newExecutor = null, virtual = null;
+    try {
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      of = Thread.class.getMethod("ofVirtual");
+      name = builderClass.getMethod("name", String.class, long.class);
+      factory = builderClass.getMethod("factory");
+      newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+      virtual = Thread.class.getMethod("isVirtual");
+      // preview releases declare the api but refuse to create virtual threads
+      of.invoke(null);
+    } catch (Throwable t) {
+      log.debug("Virtual threads are not available: {}", t.toString());
+      of = null;
+    }
+    ofVirtual = of;
+    builderName = name;
+    builderFactory = factory;
+    newThreadPerTaskExecutor = newExecutor;
+    isVirtual = virtual;
+  }
+
+  private VirtualThreads() {}
+
+  /**
+   * Returns whether this JVM can create virtual threads.
+   *
+   * @return true if virtual threads are available
+   */
+  public static boolean isSupported() {
+    return ofVirtual != null;
+  }
+
+  /**
+   * Returns whether the given thread is a virtual thread.
+   *
+   * @param thread thread
+   * @return true for a virtual thread
+   */
+  public static boolean isVirtual(Thread thread) {
+    if (isVirtual != null) {
+      try {
+        return (Boolean) isVirtual.invoke(thread);
+      } catch (Exception e) {
+        log.debug("Thread.isVirtual failed", e);
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Creates a factory of virtual threads named with the given prefix followed by a counter.
+   *
+   * @param threadNamePrefix prefix of the thread names
+   * @return thread factory or null if virtual threads are not supported
+   */
+  public static ThreadFactory newThreadFactory(String threadNamePrefix) {
+    if (isSupported()) {
+      try {
+        Object builder = ofVirtual.invoke(null);
+        builder = builderName.invoke(builder, threadNamePrefix, 0L);
+        return (ThreadFactory) builderFactory.invoke(builder);
+      } catch (Exception e) {
+        log.warn("Virtual thread factory could not be created", e);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Creates an executor starting a new virtual thread for each task.
+   *
+   * @param threadNamePrefix prefix of the thread names
+   * @return executor service or null if virtual threads are not supported
+   */
+  public static ExecutorService newExecutor(String threadNamePrefix) {
+    ThreadFactory threadFactory = newThreadFactory(threadNamePrefix);
+    if (threadFactory != null) {
+      try {
+        return (ExecutorService) newThreadPerTaskExecutor.invoke(null, threadFactory);
+      } catch (Exception e) {
+        log.warn("Virtual thread executor could not be created", e);
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,473 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.scheduling;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.red5.logging.Red5LoggerFactory;
+import org.red5.server.api.scheduling.IScheduledJob;
+import org.red5.server.api.scheduling.ISchedulingService;
+import org.red5.server.jmx.mxbeans.WheelSchedulingServiceMXBean;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Scheduling service that uses a hashed timing wheel as backend. A single ticker thread advances
+ * the wheel every tick and hands the due jobs in batches to a pool of worker threads. Adding and
+ * removing a job is a queue offer, placing it in the wheel and unlinking it is done by the ticker,
+ * so both take constant time however many jobs are scheduled. Jobs fire up to one tick late.
+ *
+ * <p>Periodic jobs never overlap: the next run is placed in the wheel once the current one
+ * finished, one interval after the previous deadline, or at once if that has passed.
+ *
+ * @author The Red5 Project
+ */
+@ManagedResource(objectName = "org.red5.server:name=schedulingService,type=WheelSchedulingService")
+public class WheelSchedulingService
+    implements ISchedulingService, WheelSchedulingServiceMXBean, InitializingBean, DisposableBean {
+
+  private static Logger log = Red5LoggerFactory.getLogger(WheelSchedulingService.class);
+
+  /** Due jobs handed to a worker at once */
+  private static final int BATCH_SIZE = 64;
+
+  /** Added jobs placed in the wheel per tick at most */
+  private static final int MAX_ADDED_PER_TICK = 100000;
+
+  /** Tick duration in milliseconds */
+  protected int tickDuration = 10;
+
+  /** Buckets of the wheel, rounded up to a power of two */
+  protected int ticksPerWheel = 512;
+
+  protected int threadCount = Runtime.getRuntime().availableProcessors() * 2;
+
+  /** Scheduled jobs keyed by name */
+  protected ConcurrentMap<String, Job> jobs = new ConcurrentHashMap<>();
+
+  protected AtomicInteger jobDetailCounter = new AtomicInteger();
+
+  private boolean interruptOnRemove = true;
+
+  /** Jobs to place in the wheel */
+  private final Queue<Job> added = new ConcurrentLinkedQueue<>();
+
+  /** Removed jobs to unlink from the wheel */
+  private final Queue<Job> cancelled = new ConcurrentLinkedQueue<>();
+
+  private final AtomicLong executed = new AtomicLong();
+
+  private Bucket[] wheel;
+
+  private long tickNanos;
+
+  private long startTime = System.nanoTime();
+
+  /** Current tick, only used by the ticker */
+  private long tick;
+
+  private Thread ticker;
+
+  private ExecutorService workers;
+
+  private volatile boolean running;
+
+  public void afterPropertiesSet() throws Exception {
+    log.debug("Initializing...");
+    int size = Integer.highestOneBit(Math.max(ticksPerWheel - 1, 1)) << 1;
+    wheel = new Bucket[size];
+    for (int i = 0; i < size; i++) {
+      wheel[i] = new Bucket();
+    }
+    tickNanos = TimeUnit.MILLISECONDS.toNanos(tickDuration);
+    AtomicInteger workerCount = new AtomicInteger();
+    workers =
+        Executors.newFixedThreadPool(
+            threadCount,
+            runnable -> {
+              Thread thread =
+                  new Thread(runnable, "WheelSchedulingWorker-" + workerCount.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+    running = true;
+    ticker = new Thread(this::tick, "WheelSchedulingTicker");
+    ticker.setDaemon(true);
+    ticker.start();
+  }
+
+  /**
+   * @return the threadCount
+   */
+  public int getThreadCount() {
+    return threadCount;
+  }
+
+  /**
+   * @param threadCount the threadCount to set
+   */
+  public void setThreadCount(int threadCount) {
+    this.threadCount = threadCount;
+  }
+
+  /** {@inheritDoc} */
+  public int getTickDuration() {
+    return tickDuration;
+  }
+
+  /**
+   * @param tickDuration tick duration in milliseconds
+   */
+  public void setTickDuration(int tickDuration) {
+    this.tickDuration = tickDuration;
+  }
+
+  /**
+   * @return the ticksPerWheel
+   */
+  public int getTicksPerWheel() {
+    return ticksPerWheel;
+  }
+
+  /**
+   * @param ticksPerWheel buckets of the wheel
+   */
+  public void setTicksPerWheel(int ticksPerWheel) {
+    this.ticksPerWheel = ticksPerWheel;
+  }
+
+  /** {@inheritDoc} */
+  public String addScheduledJob(int interval, IScheduledJob job) {
+    return schedule(job, interval, interval);
+  }
+
+  /** {@inheritDoc} */
+  public String addScheduledOnceJob(Date date, IScheduledJob job) {
+    return schedule(job, date.getTime() - System.currentTimeMillis(), 0);
+  }
+
+  /** {@inheritDoc} */
+  public String addScheduledOnceJob(long timeDelta, IScheduledJob job) {
+    return schedule(job, timeDelta, 0);
+  }
+
+  /** {@inheritDoc} */
+  public String addScheduledJobAfterDelay(int interval, IScheduledJob job, int delay) {
+    return schedule(job, delay, interval);
+  }
+
+  private String schedule(IScheduledJob job, long delay, long interval) {
+    String name = getJobName();
+    Job entry = new Job(name, job, TimeUnit.MILLISECONDS.toNanos(interval));
+    entry.deadline = System.nanoTime() - startTime + TimeUnit.MILLISECONDS.toNanos(delay);
+    jobs.put(name, entry);
+    added.offer(entry);
+    return name;
+  }
+
+  /**
+   * Getter for job name.
+   *
+   * @return Job name
+   */
+  public String getJobName() {
+    return "ScheduledJob_" + jobDetailCounter.getAndIncrement();
+  }
+
+  /** {@inheritDoc} */
+  public List<String> getScheduledJobNames() {
+    if (running) {
+      return new ArrayList<>(jobs.keySet());
+    } else {
+      log.warn("No scheduler is available");
+    }
+    return Collections.emptyList();
+  }
+
+  /** {@inheritDoc} */
+  public int getScheduledJobCount() {
+    return jobs.size();
+  }
+
+  /** {@inheritDoc} */
+  public long getExecutedCount() {
+    return executed.get();
+  }
+
+  /** {@inheritDoc} */
+  public void pauseScheduledJob(String name) {
+    Job job = jobs.get(name);
+    if (job != null) {
+      job.paused = true;
+    }
+  }
+
+  /** {@inheritDoc} */
+  public void resumeScheduledJob(String name) {
+    Job job = jobs.get(name);
+    if (job != null) {
+      job.paused = false;
+    }
+  }
+
+  /** {@inheritDoc} */
+  public void removeScheduledJob(String name) {
+    Job job = jobs.remove(name);
+    if (job != null) {
+      job.cancel(interruptOnRemove);
+      cancelled.offer(job);
+    } else {
+      log.debug("No key found for job: {} or the job was done", name);
+    }
+  }
+
+  public void destroy() throws Exception {
+    running = false;
+    if (ticker != null) {
+      log.debug("Destroying...");
+      ticker.interrupt();
+      workers.shutdownNow();
+    }
+    jobs.clear();
+    added.clear();
+    cancelled.clear();
+  }
+
+  public boolean isInterruptOnRemove() {
+    return interruptOnRemove;
+  }
+
+  public void setInterruptOnRemove(boolean interruptOnRemove) {
+    this.interruptOnRemove = interruptOnRemove;
+  }
+
+  /** Ticker loop: unlinks the removed jobs, places the added ones and runs the due bucket. */
+  private void tick() {
+    List<Job> due = new ArrayList<>();
+    while (running) {
+      long deadline = waitForNextTick();
+      if (deadline < 0) {
+        break;
+      }
+      for (Job job; (job = cancelled.poll()) != null; ) {
+        if (job.bucket != null) {
+          job.bucket.remove(job);
+        }
+      }
+      for (int i = 0; i < MAX_ADDED_PER_TICK; i++) {
+        Job job = added.poll();
+        if (job == null) {
+          break;
+        }
+        if (!job.cancelled) {
+          long calculated = job.deadline / tickNanos;
+          job.remainingRounds = (calculated - tick) / wheel.length;
+          wheel[(int) (Math.max(calculated, tick) & (wheel.length - 1))].add(job);
+        }
+      }
+      wheel[(int) (tick & (wheel.length - 1))].expire(deadline, due);
+      for (int from = 0; from < due.size(); from += BATCH_SIZE) {
+        Job[] batch =
+            due.subList(from, Math.min(from + BATCH_SIZE, due.size())).toArray(new Job[0]);
+        try {
+          workers.execute(
+              () -> {
+                for (Job job : batch) {
+                  run(job);
+                }
+              });
+        } catch (RejectedExecutionException e) {
+          log.debug("Workers are shut down");
+        }
+      }
+      due.clear();
+      tick++;
+    }
+  }
+
+  /**
+   * Sleeps until the end of the current tick.
+   *
+   * @return end of the tick in nanoseconds since the start, -1 when stopped
+   */
+  private long waitForNextTick() {
+    long deadline = tickNanos * (tick + 1);
+    while (true) {
+      long current = System.nanoTime() - startTime;
+      long sleepMs = (deadline - current + 999999) / 1000000;
+      if (sleepMs <= 0) {
+        return current;
+      }
+      try {
+        Thread.sleep(sleepMs);
+      } catch (InterruptedException e) {
+        if (!running) {
+          return -1;
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs a due job on a worker thread and places its next run in the wheel.
+   *
+   * @param job due job
+   */
+  private void run(Job job) {
+    if (job.cancelled) {
+      return;
+    }
+    if (!job.paused) {
+      synchronized (job) {
+        if (job.cancelled) {
+          return;
+        }
+        job.runner = Thread.currentThread();
+      }
+      try {
+        job.job.execute(this);
+        executed.incrementAndGet();
+      } catch (Throwable e) {
+        log.warn("Job {} execution failed", job.job, e);
+      } finally {
+        synchronized (job) {
+          job.runner = null;
+        }
+        // an interrupt from removing the job must not reach the next job
+        Thread.interrupted();
+      }
+    }
+    if (job.interval > 0) {
+      if (!job.cancelled) {
+        job.deadline = Math.max(job.deadline + job.interval, System.nanoTime() - startTime);
+        added.offer(job);
+      }
+    } else {
+      jobs.remove(job.name, job);
+    }
+  }
+
+  /** Scheduled job and its place in the wheel. */
+  static final class Job {
+
+    final String name;
+
+    final IScheduledJob job;
+
+    /** Interval in nanoseconds, 0 for a job which runs once */
+    final long interval;
+
+    /** Next run in nanoseconds since the start */
+    long deadline;
+
+    /** Turns of the wheel left before the job is due, only used by the ticker */
+    long remainingRounds;
+
+    Bucket bucket;
+
+    Job next;
+
+    Job previous;
+
+    volatile boolean cancelled;
+
+    volatile boolean paused;
+
+    /** Thread running the job, guarded by the job */
+    private Thread runner;
+
+    Job(String name, IScheduledJob job, long interval) {
+      this.name = name;
+      this.job = job;
+      this.interval = interval;
+    }
+
+    void cancel(boolean interrupt) {
+      cancelled = true;
+      if (interrupt) {
+        synchronized (this) {
+          if (runner != null) {
+            runner.interrupt();
+          }
+        }
+      }
+    }
+  }
+
+  /** Doubly linked list of the jobs in one slot of the wheel, only used by the ticker. */
+  static final class Bucket {
+
+    private Job head;
+
+    private Job tail;
+
+    void add(Job job) {
+      job.bucket = this;
+      job.next = null;
+      job.previous = tail;
+      if (tail == null) {
+        head = job;
+      } else {
+        tail.next = job;
+      }
+      tail = job;
+    }
+
+    void remove(Job job) {
+      if (job.previous == null) {
+        head = job.next;
+      } else {
+        job.previous.next = job.next;
+      }
+      if (job.next == null) {
+        tail = job.previous;
+      } else {
+        job.next.previous = job.previous;
+      }
+      job.bucket = null;
+      job.next = null;
+      job.previous = null;
+    }
+
+    /**
+     * Moves the jobs due by the deadline to the given list and counts down the others.
+     *
+     * @param deadline end of the current tick
+     * @param due due jobs
+     */
+    void expire(long deadline, List<Job> due) {
+      Job job = head;
+      while (job != null) {
+        Job next = job.next;
+        if (job.cancelled) {
+          remove(job);
+        } else if (job.remainingRounds <= 0 && job.deadline <= deadline) {
+          remove(job);
+          due.add(job);
+        } else {
+          job.remainingRounds--;
+        }
+        job = next;
+      }
+    }
+  }
+}
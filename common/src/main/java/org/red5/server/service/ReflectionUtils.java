@@ -7,10 +7,16 @@
 
 package org.red5.server.service;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 import org.red5.io.utils.ConversionUtils;
 import org.red5.server.api.IConnection;
@@ -18,7 +24,11 @@ import org.red5.server.api.service.IServiceCall;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-/** Provides a means for locating methods within service classes using reflection. */
+/**
+ * Provides a means for locating methods within service classes using reflection. Resolved methods
+ * are cached per service class, method name and argument types, so repeated calls only convert
+ * their arguments.
+ */
 public class ReflectionUtils {
 
   private static final Logger log = LoggerFactory.getLogger(ReflectionUtils.class);
@@ -28,6 +38,40 @@ public class ReflectionUtils {
   // used to prevent extra object creation when a method with a set of params is not found
   private static final Object[] NULL_RETURN = new Object[] {null, null};
 
+  // how the arguments of a call are passed to a resolved method
+  private static final int PASS_ARGS = 0, CONVERT_ARGS = 1, CONVERT_WITH_CONNECTION = 2;
+
+  // the lookup modes of the key, the list lookup is used by shared objects
+  private static final int LOOKUP_LIST = 0, LOOKUP_CALL = 1, LOOKUP_CALL_WITH_CONNECTION = 2;
+
+  private static final MethodType INVOKER_TYPE =
+      MethodType.methodType(Object.class, Object.class, Object[].class);
+
+  // rethrows what the target method throws wrapped in an InvocationTargetException
+  private static final MethodHandle WRAP_TARGET_EXCEPTION;
+
+  static {
+    try {
+      WRAP_TARGET_EXCEPTION =
+          MethodHandles.lookup()
+              .findStatic(
+                  ReflectionUtils.class,
+                  "wrapTargetException",
+                  MethodType.methodType(Object.class, Throwable.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  // resolved methods per service class, tied to the lifetime of the class
+  private static final ClassValue<ConcurrentMap<MethodKey, ResolvedMethod>> resolvedMethods =
+      new ClassValue<ConcurrentMap<MethodKey, ResolvedMethod>>() {
+        @Override
+        protected ConcurrentMap<MethodKey, ResolvedMethod> computeValue(Class<?> type) {
+          return new ConcurrentHashMap<>();
+        }
+      };
+
   // Note for .26 update is to ensure other service methods don't fail when a method is not found
   // See https://github.com/Red5/red5-server/commit/d4096a4d7b35b2b92905154a9e18edea04268fb4
 
@@ -48,6 +92,27 @@ public class ReflectionUtils {
     }
     // return value(s)
     Object[] methodResult = NULL_RETURN;
+    Object[] args = listArgs.toArray();
+    // convert the args to their class types
+    final Class<?>[] callParams = ConversionUtils.convertParams(args);
+    // use the method resolved by a previous call with the same argument types
+    final MethodKey key = new MethodKey(methodName, callParams, LOOKUP_LIST);
+    final ConcurrentMap<MethodKey, ResolvedMethod> cache = resolvedMethods.get(service.getClass());
+    ResolvedMethod resolved = cache.get(key);
+    if (resolved != null) {
+      try {
+        return new Object[] {
+          resolved.method,
+          resolved.passing == PASS_ARGS
+              ? listArgs
+              : ConversionUtils.convertParams(args, resolved.paramTypes)
+        };
+      } catch (Exception e) {
+        log.debug("Arguments not convertible for {}, searching again", resolved.method);
+      }
+    }
+    // how the matched method is passed the arguments
+    int passing = PASS_ARGS;
     // get all the name matched methods once, then filter out the ones that contain a $
     final Set<Method> methods =
         Arrays.stream(service.getClass().getMethods())
@@ -58,9 +123,6 @@ public class ReflectionUtils {
       if (isDebug) {
         log.debug("Named method(s) {}: {} found in {}", methods.size(), methodName, service);
       }
-      Object[] args = listArgs.toArray();
-      // convert the args to their class types
-      final Class<?>[] callParams = ConversionUtils.convertParams(args);
       // search for method with matching parameters
       for (Method method : methods) {
         // track method parameters count
@@ -100,6 +162,7 @@ public class ReflectionUtils {
               log.trace("Found method {} {} - parameters: {}", methodName, method, paramTypes);
             }
             methodResult = new Object[] {method, convertedArgs};
+            passing = CONVERT_ARGS;
             break;
           } catch (Exception e) {
             log.warn(
@@ -114,6 +177,9 @@ public class ReflectionUtils {
       if (isTrace) {
         log.trace("Method name: {} result: {}", methodName, methodResult[0]);
       }
+      if (methodResult[0] != null) {
+        cache.put(key, new ResolvedMethod((Method) methodResult[0], passing, null));
+      }
     }
     return methodResult;
   }
@@ -126,7 +192,8 @@ public class ReflectionUtils {
    * @param call service call interested in the method
    * @param service service to search for the method, if given
    * @param methodName method name to find
-   * @return Method/params pairs or null if not found
+   * @return Method/params/invoker triple, or Method/params pair of nulls if not found; the invoker
+   *     is a method handle taking the service and the params, or null if reflection must be used
    */
   public static Object[] findMethod(
       IConnection conn, IServiceCall call, Object service, String methodName) {
@@ -150,27 +217,34 @@ public class ReflectionUtils {
     final Object[] args = call.getArguments();
     // convert the args to their class types
     Class<?>[] callParams = ConversionUtils.convertParams(args);
+    // use the method resolved by a previous call with the same argument types
+    final MethodKey key =
+        new MethodKey(
+            methodName, callParams, conn != null ? LOOKUP_CALL_WITH_CONNECTION : LOOKUP_CALL);
+    final ConcurrentMap<MethodKey, ResolvedMethod> cache = resolvedMethods.get(service.getClass());
+    ResolvedMethod resolved = cache.get(key);
+    if (resolved != null) {
+      try {
+        Object[] params;
+        if (resolved.passing == PASS_ARGS) {
+          params = args;
+        } else if (resolved.passing == CONVERT_ARGS) {
+          params = ConversionUtils.convertParams(args, resolved.paramTypes);
+        } else {
+          params = ConversionUtils.convertParams(withConnection(conn, args), resolved.paramTypes);
+        }
+        return new Object[] {resolved.method, params, resolved.invoker};
+      } catch (Exception e) {
+        log.debug("Arguments not convertible for {}, searching again", resolved.method);
+      }
+    }
+    // how the matched method is passed the arguments
+    int passing = PASS_ARGS;
     // XXX(paul) someday this will be deprecated as its an extremely legacy feature to have a method
     // with a
     // connection as the first parameter
     // build an array with the incoming args and the current connection as the first element
-    final Object[] argsWithConnection;
-    if (args != null) {
-      argsWithConnection = new Object[args.length + 1];
-      argsWithConnection[0] = conn;
-      for (int i = 0; i < args.length; i++) {
-        if (isDebug) {
-          log.debug(
-              "Arg: {} type: {} => {}",
-              i,
-              (args[i] != null ? args[i].getClass().getName() : null),
-              args[i]);
-        }
-        argsWithConnection[i + 1] = args[i];
-      }
-    } else {
-      argsWithConnection = conn != null ? new Object[] {conn} : new Object[0];
-    }
+    final Object[] argsWithConnection = withConnection(conn, args);
     // get all the name matched methods once, then filter out the ones that contain a $
     final Set<Method> methods =
         Arrays.stream(service.getClass().getMethods())
@@ -228,6 +302,7 @@ public class ReflectionUtils {
               log.trace("Found method {} {} - parameters: {}", methodName, method, paramTypes);
             }
             methodResult = new Object[] {method, convertedArgs};
+            passing = CONVERT_ARGS;
             break;
           } catch (Exception e) {
             log.warn(
@@ -249,6 +324,7 @@ public class ReflectionUtils {
               log.trace("Found method {} {} - parameters: {}", methodName, method, paramTypes);
             }
             methodResult = new Object[] {method, convertedArgs};
+            passing = CONVERT_WITH_CONNECTION;
             break;
           } catch (Exception e) {
             log.warn(
@@ -271,8 +347,127 @@ public class ReflectionUtils {
             Arrays.asList(callParams));
         call.setStatus(Call.STATUS_METHOD_NOT_FOUND);
         call.setException(new MethodNotFoundException(methodName, args));
+      } else {
+        Method method = (Method) methodResult[0];
+        MethodHandle invoker = invokerFor(method);
+        cache.put(key, new ResolvedMethod(method, passing, invoker));
+        methodResult = new Object[] {method, methodResult[1], invoker};
       }
     }
     return methodResult;
   }
+
+  /**
+   * Returns the arguments with the connection as the first element.
+   *
+   * @param conn current connection
+   * @param args call arguments
+   * @return connection and arguments
+   */
+  private static Object[] withConnection(IConnection conn, Object[] args) {
+    final Object[] argsWithConnection;
+    if (args != null) {
+      argsWithConnection = new Object[args.length + 1];
+      argsWithConnection[0] = conn;
+      for (int i = 0; i < args.length; i++) {
+        if (isDebug) {
+          log.debug(
+              "Arg: {} type: {} => {}",
+              i,
+              (args[i] != null ? args[i].getClass().getName() : null),
+              args[i]);
+        }
+        argsWithConnection[i + 1] = args[i];
+      }
+    } else {
+      argsWithConnection = conn != null ? new Object[] {conn} : new Object[0];
+    }
+    return argsWithConnection;
+  }
+
+  /**
+   * Returns a method handle invoking the method with the service and an array of parameters. What
+   * the method throws comes out wrapped in an InvocationTargetException, as with reflection, while
+   * a mismatch of the service or parameters with the method is thrown as is.
+   *
+   * @param method method
+   * @return invoker or null if the method is not accessible through a handle
+   */
+  private static MethodHandle invokerFor(Method method) {
+    try {
+      MethodHandle target = MethodHandles.publicLookup().unreflect(method);
+      MethodHandle handler =
+          WRAP_TARGET_EXCEPTION.asType(
+              MethodType.methodType(target.type().returnType(), Throwable.class));
+      return MethodHandles.catchException(target, Throwable.class, handler)
+          .asSpreader(Object[].class, method.getParameterCount())
+          .asType(INVOKER_TYPE);
+    } catch (IllegalAccessException e) {
+      log.debug("No method handle for {}, using reflection", method);
+      return null;
+    }
+  }
+
+  @SuppressWarnings("unused")
+  private static Object wrapTargetException(Throwable t) throws InvocationTargetException {
+    throw new InvocationTargetException(t);
+  }
+
+  /** Key of a resolved method within its service class. */
+  private static final class MethodKey {
+
+    private final String name;
+
+    private final Class<?>[] argTypes;
+
+    private final int lookup;
+
+    private final int hash;
+
+    MethodKey(String name, Class<?>[] argTypes, int lookup) {
+      this.name = name;
+      this.argTypes = argTypes;
+      this.lookup = lookup;
+      hash = (name.hashCode() * 31 + Arrays.hashCode(argTypes)) * 31 + lookup;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof MethodKey)) {
+        return false;
+      }
+      MethodKey other = (MethodKey) obj;
+      return hash == other.hash
+          && lookup == other.lookup
+          && name.equals(other.name)
+          && Arrays.equals(argTypes, other.argTypes);
+    }
+  }
+
+  /** Method resolved for a key and how its arguments are passed. */
+  private static final class ResolvedMethod {
+
+    final Method method;
+
+    final Class<?>[] paramTypes;
+
+    final int passing;
+
+    final MethodHandle invoker;
+
+    ResolvedMethod(Method method, int passing, MethodHandle invoker) {
+      this.method = method;
+      this.paramTypes = method.getParameterTypes();
+      this.passing = passing;
+      this.invoker = invoker;
+    }
+  }
 }
@@ -7,8 +7,10 @@
 
 package org.red5.server.service;
 
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
 import java.util.HashSet;
 import java.util.Set;
 import org.red5.server.api.IConnection;
@@ -134,13 +136,15 @@ public class ServiceInvoker implements IServiceInvoker {
         }
         */
         Object result = null;
-        log.debug("Invoking method: {}", method.toString());
+        log.debug("Invoking method: {}", method);
+        // resolved methods come with a method handle, unless reflection has to be used
+        MethodHandle invoker = methodResult.length > 2 ? (MethodHandle) methodResult[2] : null;
         if (method.getReturnType().equals(Void.TYPE)) {
-          method.invoke(service, params);
+          invoke(method, invoker, service, params);
           call.setStatus(Call.STATUS_SUCCESS_VOID);
           log.debug("result: void");
         } else {
-          result = method.invoke(service, params);
+          result = invoke(method, invoker, service, params);
           call.setStatus(result == null ? Call.STATUS_SUCCESS_NULL : Call.STATUS_SUCCESS_RESULT);
           log.debug("result: {}", result);
         }
@@ -167,4 +171,30 @@ public class ServiceInvoker implements IServiceInvoker {
     }
     return invoked;
   }
+
+  /**
+   * Invokes the method through its handle if there is one. Exceptions thrown by the method are
+   * wrapped in an InvocationTargetException either way; the handle wraps them itself, so the
+   * WrongMethodTypeException or ClassCastException of a mismatched call are not taken for them.
+   *
+   * @param method method
+   * @param invoker method handle taking the service and the params, or null
+   * @param service service
+   * @param params parameters
+   * @return method result
+   * @throws Exception on failure
+   */
+  private static Object invoke(Method method, MethodHandle invoker, Object service, Object[] params)
+      throws Exception {
+    if (invoker == null) {
+      return method.invoke(service, params);
+    }
+    try {
+      return invoker.invokeExact(service, params);
+    } catch (Exception | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new UndeclaredThrowableException(t);
+    }
+  }
 }
@@ -11,6 +11,7 @@ import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -39,6 +40,7 @@ import org.red5.server.net.rtmp.RTMPConnection;
 import org.red5.server.net.rtmp.codec.RTMP;
 import org.red5.server.net.rtmp.message.Constants;
 import org.red5.server.so.ISharedObjectEvent.Type;
+import org.red5.server.so.SharedObjectMessage.SharedBody;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -120,6 +122,15 @@ public class SharedObject extends AttributeStore
   /** Whether or not this shared object is closed */
   protected volatile AtomicBoolean closed = new AtomicBoolean(false);
 
+  /**
+   * Milliseconds over which the changes are collected before they are sent to the listeners, 0 to
+   * send every update at once
+   */
+  protected transient volatile long dispatchInterval;
+
+  /** Whether a dispatch to the listeners is scheduled */
+  protected final transient AtomicBoolean dispatchScheduled = new AtomicBoolean();
+
   /** Constructs a new SharedObject. */
   public SharedObject() {
     // This is used by the persistence framework
@@ -243,9 +254,36 @@ public class SharedObject extends AttributeStore
     this.persistent = persistent;
   }
 
+  /**
+   * Returns the dispatch interval.
+   *
+   * @return milliseconds over which changes are collected, 0 if every update is sent at once
+   */
+  public long getDispatchInterval() {
+    return dispatchInterval;
+  }
+
+  /**
+   * Sets the dispatch interval. With an interval, the listeners receive the changes once per
+   * interval, each key with its last value only; the client making a change is still answered at
+   * once.
+   *
+   * @param dispatchInterval milliseconds over which changes are collected, 0 to send every update
+   *     at once
+   */
+  public void setDispatchInterval(long dispatchInterval) {
+    this.dispatchInterval = dispatchInterval;
+  }
+
   /** Send update notification over data channel of RTMP connection */
   protected synchronized void sendUpdates() {
     log.debug("sendUpdates");
+    sendOwnerUpdates();
+    sendListenerUpdates();
+  }
+
+  /** Send the pending owner events to the source of the update */
+  protected synchronized void sendOwnerUpdates() {
     // get the current version
     final int currentVersion = version.get();
     log.debug("Current version: {}", currentVersion);
@@ -275,6 +313,14 @@ public class SharedObject extends AttributeStore
         log.trace("No owner events to send");
       }
     }
+  }
+
+  /** Send the pending sync events to all the listeners */
+  protected synchronized void sendListenerUpdates() {
+    // get the current version
+    final int currentVersion = version.get();
+    // get the name
+    final String name = getName();
     // tell all the listeners
     if (!syncEvents.isEmpty()) {
       // get the listeners
@@ -290,6 +336,9 @@ public class SharedObject extends AttributeStore
         // get all current sync events
         final TreeSet<ISharedObjectEvent> events = new TreeSet<>(syncEvents);
         syncEvents.removeAll(events);
+        coalesce(events);
+        // the update is encoded once per encoding and shared by all the clients
+        final SharedBody amf0Body = new SharedBody(), amf3Body = new SharedBody();
         // updates all registered clients of this shared object
         listeners.stream()
             .filter(listener -> listener != source)
@@ -301,7 +350,8 @@ public class SharedObject extends AttributeStore
                       () -> {
                         if (con.isConnected()) {
                           Red5.setConnectionLocal(con);
-                          con.sendSharedObjectMessage(name, currentVersion, persistent, events);
+                          con.sendSharedObjectMessage(
+                              name, currentVersion, persistent, events, amf0Body, amf3Body);
                           Red5.setConnectionLocal(null);
                         } else {
                           log.trace(
@@ -321,6 +371,40 @@ public class SharedObject extends AttributeStore
     }
   }
 
+  /**
+   * Removes the data events superseded by a later change of the same key, so every key is sent with
+   * its last value only. Messages and clears are kept.
+   *
+   * @param events events ordered by time
+   */
+  protected static void coalesce(TreeSet<ISharedObjectEvent> events) {
+    if (events.size() > 1) {
+      Set<String> changed = new HashSet<>();
+      Iterator<ISharedObjectEvent> it = events.descendingIterator();
+      while (it.hasNext()) {
+        ISharedObjectEvent event = it.next();
+        Type type = event.getType();
+        if ((type == Type.CLIENT_UPDATE_DATA || type == Type.CLIENT_DELETE_DATA)
+            && !changed.add(event.getKey())) {
+          it.remove();
+        }
+      }
+    }
+  }
+
+  /** Schedules a dispatch to the listeners at the end of the dispatch interval, unless pending */
+  private void scheduleDispatch() {
+    if (dispatchScheduled.compareAndSet(false, true)) {
+      SharedObjectService.scheduleTask(
+          () -> {
+            // changes made while sending are picked up by the next dispatch
+            dispatchScheduled.set(false);
+            sendListenerUpdates();
+          },
+          dispatchInterval);
+    }
+  }
+
   /** Send notification about modification of SO */
   protected void notifyModified() {
     log.debug("notifyModified - updaters: {}", updateCounter.get());
@@ -332,7 +416,13 @@ public class SharedObject extends AttributeStore
       if (storage == null || !storage.save(this)) {
         log.warn("Could not store shared object");
       }
-      sendUpdates();
+      if (dispatchInterval > 0) {
+        // answer the source now, merge the changes for the listeners
+        sendOwnerUpdates();
+        scheduleDispatch();
+      } else {
+        sendUpdates();
+      }
     }
   }
 
@@ -662,6 +752,23 @@ public class SharedObject extends AttributeStore
     ownerMessage.setPersistent(persistent);
   }
 
+  /**
+   * Restores a persistent shared object created with the no-args constructor from the name and
+   * attributes kept by its persistence store, as {@link #deserialize(Input)} does from its
+   * serialized form. No update is sent for the restored attributes.
+   *
+   * @param name SO name
+   * @param values attributes
+   */
+  public void restore(String name, Map<String, Object> values) {
+    log.debug("restore - name: {}", name);
+    this.name = name;
+    persistent = true;
+    super.setAttributes(values);
+    ownerMessage.setName(name);
+    ownerMessage.setPersistent(persistent);
+  }
+
   /** {@inheritDoc} */
   public void setStore(IPersistenceStore store) {
     this.storage = store;
@@ -14,6 +14,8 @@ import java.util.List;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Supplier;
+import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.server.api.event.IEventListener;
 import org.red5.server.net.rtmp.event.BaseEvent;
 import org.slf4j.Logger;
@@ -38,6 +40,9 @@ public class SharedObjectMessage extends BaseEvent implements ISharedObjectMessa
   /** Whether SO persistent */
   private boolean persistent;
 
+  /** Encoded body shared with the messages of the same update to other connections */
+  private transient SharedBody sharedBody;
+
   public SharedObjectMessage() {}
 
   /**
@@ -66,6 +71,25 @@ public class SharedObjectMessage extends BaseEvent implements ISharedObjectMessa
     this.persistent = persistent;
   }
 
+  /**
+   * Returns the encoded body shared with the messages of the same update to other connections.
+   *
+   * @return shared body or null if the message is encoded on its own
+   */
+  public SharedBody getSharedBody() {
+    return sharedBody;
+  }
+
+  /**
+   * Sets the encoded body shared with the messages of the same update to other connections. All
+   * messages sharing a body must have the same name, version, events and type.
+   *
+   * @param sharedBody shared body
+   */
+  public void setSharedBody(SharedBody sharedBody) {
+    this.sharedBody = sharedBody;
+  }
+
   /** Resets the version and events to an initial state. */
   public void reset() {
     version = 0;
@@ -225,4 +249,25 @@ public class SharedObjectMessage extends BaseEvent implements ISharedObjectMessa
     out.writeBoolean(persistent);
     out.writeObject(events);
   }
+
+  /**
+   * Body of a shared object update encoded once and sent to every listener of the shared object.
+   */
+  public static final class SharedBody {
+
+    private IoBuffer body;
+
+    /**
+     * Returns the body, encoding it on the first call.
+     *
+     * @param encoder encodes the body, returning the buffer positioned after the data
+     * @return read-only view of the body
+     */
+    public synchronized IoBuffer get(Supplier<IoBuffer> encoder) {
+      if (body == null) {
+        body = encoder.get().flip().asReadOnlyBuffer();
+      }
+      return body.duplicate();
+    }
+  }
 }
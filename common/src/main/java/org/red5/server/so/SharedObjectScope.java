@@ -98,6 +98,27 @@ public class SharedObjectScope extends BasicScope implements ISharedObject, Stat
     so.set(tmp);
   }
 
+  /**
+   * Returns the dispatch interval of the shared object.
+   *
+   * @return milliseconds over which changes are collected, 0 if every update is sent at once
+   */
+  public long getDispatchInterval() {
+    return so.get().getDispatchInterval();
+  }
+
+  /**
+   * Sets the dispatch interval of the shared object. With an interval of 20-50 milliseconds, objects
+   * changed many times per second are sent to the listeners once per interval with the last value
+   * of every key.
+   *
+   * @param dispatchInterval milliseconds over which changes are collected, 0 to send every update
+   *     at once
+   */
+  public void setDispatchInterval(long dispatchInterval) {
+    so.get().setDispatchInterval(dispatchInterval);
+  }
+
   /** {@inheritDoc} */
   @Override
   public void acquire() {
@@ -7,6 +7,7 @@
 
 package org.red5.server.so;
 
+import java.util.Date;
 import java.util.Set;
 import org.red5.server.api.persistence.IPersistable;
 import org.red5.server.api.persistence.IPersistenceStore;
@@ -39,6 +40,9 @@ public class SharedObjectService implements ISharedObjectService {
   /** Persistence class name */
   private String persistenceClassName = "org.red5.server.persistence.RamPersistence";
 
+  /** Dispatch interval of new shared objects in milliseconds, 0 to send every update at once */
+  private long dispatchInterval;
+
   /**
    * Pushes a task to the scheduler for single execution.
    *
@@ -48,6 +52,16 @@ public class SharedObjectService implements ISharedObjectService {
     scheduler.execute(task);
   }
 
+  /**
+   * Pushes a task to the scheduler for single execution after a delay.
+   *
+   * @param task runnable
+   * @param delay milliseconds to wait
+   */
+  public static void scheduleTask(Runnable task, long delay) {
+    scheduler.schedule(task, new Date(System.currentTimeMillis() + delay));
+  }
+
   /**
    * @param maximumEventsPerUpdate the maximumEventsPerUpdate to set
    */
@@ -63,6 +77,16 @@ public class SharedObjectService implements ISharedObjectService {
     persistenceClassName = name;
   }
 
+  /**
+   * Sets the dispatch interval of the shared objects created from now on.
+   *
+   * @param dispatchInterval milliseconds over which changes are collected, 0 to send every update
+   *     at once
+   */
+  public void setDispatchInterval(long dispatchInterval) {
+    this.dispatchInterval = dispatchInterval;
+  }
+
   /**
    * @param scheduler the scheduler to set
    */
@@ -111,9 +135,10 @@ public class SharedObjectService implements ISharedObjectService {
     boolean added = hasSharedObject(scope, name);
     if (!added) {
       log.debug("Attempting to add shared object: {} to {}", name, scope.getName());
-      added =
-          scope.addChildScope(
-              new SharedObjectScope(scope, name, persistent, getStore(scope, persistent)));
+      SharedObjectScope soScope =
+          new SharedObjectScope(scope, name, persistent, getStore(scope, persistent));
+      soScope.setDispatchInterval(dispatchInterval);
+      added = scope.addChildScope(soScope);
       if (!added) {
         added = hasSharedObject(scope, name);
         log.debug("Add failed on create, shared object already exists: {}", added);
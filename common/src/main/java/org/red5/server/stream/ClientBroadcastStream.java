@@ -67,9 +67,11 @@ import org.red5.server.messaging.IPushableConsumer;
 import org.red5.server.messaging.OOBControlMessage;
 import org.red5.server.messaging.PipeConnectionEvent;
 import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.BaseEvent;
 import org.red5.server.net.rtmp.event.IRTMPEvent;
 import org.red5.server.net.rtmp.event.Notify;
 import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.net.rtmp.message.ChunkedBody;
 import org.red5.server.net.rtmp.message.Constants;
 import org.red5.server.net.rtmp.message.Header;
 import org.red5.server.net.rtmp.status.Status;
@@ -339,6 +341,10 @@ public class ClientBroadcastStream extends AbstractClientStream
           try {
             // route to live
             if (livePipe != null) {
+              // audio and video bodies are chunked once for all the subscribers
+              if (rtmpEvent instanceof AudioData || rtmpEvent instanceof VideoData) {
+                ((BaseEvent) rtmpEvent).setChunkedBody(new ChunkedBody());
+              }
               // create new RTMP message, initialize it and push through pipe
               RTMPMessage msg = RTMPMessage.build(rtmpEvent, eventTime);
               livePipe.pushMessage(msg);
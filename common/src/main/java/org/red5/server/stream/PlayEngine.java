@@ -54,6 +54,7 @@ import org.red5.server.messaging.OOBControlMessage;
 import org.red5.server.messaging.PipeConnectionEvent;
 import org.red5.server.net.rtmp.event.Aggregate;
 import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.BaseEvent;
 import org.red5.server.net.rtmp.event.IRTMPEvent;
 import org.red5.server.net.rtmp.event.Notify;
 import org.red5.server.net.rtmp.event.Ping;
@@ -86,6 +87,9 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 
   private static boolean isTrace = log.isTraceEnabled();
 
+  /** Milliseconds to wait for a VOD message still being read when starting or seeking */
+  private static final long READ_WAIT = 100L;
+
   private final AtomicReference<IMessageInput> msgInReference = new AtomicReference<>();
 
   private final AtomicReference<IMessageOutput> msgOutReference = new AtomicReference<>();
@@ -94,6 +98,9 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 
   private ISchedulingService schedulingService;
 
+  /** Shared clock driving the pull and push of file based plays, optional */
+  private PlaybackClock playbackClock;
+
   private IConsumerService consumerService;
 
   private IProviderService providerService;
@@ -165,6 +172,12 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
   /** Flag denoting whether or not the job that closes stream after buffer runs out is scheduled. */
   private volatile String deferredStop;
 
+  /** Push and pull task when driven by the playback clock. */
+  private volatile PlaybackClock.Registration clockedPullAndPush;
+
+  /** Deferred stop task when driven by the playback clock. */
+  private volatile PlaybackClock.Registration clockedDeferredStop;
+
   /**
    * Monitor guarding completion of a given push/pull run. Used to wait for job cancellation to
    * finish.
@@ -199,6 +212,9 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 
   private boolean configsDone;
 
+  /** Whether the provider was told the client buffer is full */
+  private boolean bufferFullSent;
+
   /** Constructs a new PlayEngine. */
   private PlayEngine(Builder builder) {
     subscriberStream = builder.subscriberStream;
@@ -605,13 +621,13 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
       }
     }
     IMessageInput in = msgInReference.get();
-    msg = in.pullMessage();
+    msg = pullVODMessage(in);
     if (msg instanceof RTMPMessage) {
       // Only send first video frame
       IRTMPEvent body = ((RTMPMessage) msg).getBody();
       if (itemLength == 0) {
         while (body != null && !(body instanceof VideoData)) {
-          msg = in.pullMessage();
+          msg = pullVODMessage(in);
           if (msg != null && msg instanceof RTMPMessage) {
             body = ((RTMPMessage) msg).getBody();
           } else {
@@ -627,6 +643,25 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
     return msg;
   }
 
+  /**
+   * Pulls a VOD message when starting or seeking, waiting a little for one still being read.
+   *
+   * @param in message input
+   * @return message or null when none is available
+   * @throws IOException on error
+   */
+  private IMessage pullVODMessage(IMessageInput in) throws IOException {
+    IMessage msg = in.pullMessage();
+    if (msg == IMessageInput.NOT_READY) {
+      msg = in.pullMessage(READ_WAIT);
+      if (msg == IMessageInput.NOT_READY) {
+        // the pull and push job sends it once read
+        return null;
+      }
+    }
+    return msg;
+  }
+
   /**
    * Connects to the data provider.
    *
@@ -835,7 +870,11 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
     if (message instanceof IStreamData) {
       final long now = System.currentTimeMillis();
       // check client buffer size
-      if (isClientBufferFull(now)) {
+      boolean bufferFull = isClientBufferFull(now);
+      if (bufferFull != bufferFullSent) {
+        sendBufferFullCM(bufferFull);
+      }
+      if (bufferFull) {
         return false;
       }
       // get pending message count
@@ -912,9 +951,17 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
   /** Make sure the pull and push processing is running. */
   private void ensurePullAndPushRunning() {
     log.trace("State should be PLAYING to running this task: {}", subscriberStream.getState());
-    if (pullMode && pullAndPush == null && subscriberStream.getState() == StreamState.PLAYING) {
+    if (pullMode
+        && pullAndPush == null
+        && clockedPullAndPush == null
+        && subscriberStream.getState() == StreamState.PLAYING) {
       // client buffer is at least 100ms
-      pullAndPush = subscriberStream.scheduleWithFixedDelay(new PullAndPushRunnable(), 10);
+      if (playbackClock != null) {
+        PullAndPushRunnable job = new PullAndPushRunnable();
+        clockedPullAndPush = playbackClock.register(() -> job.execute(schedulingService), 10);
+      } else {
+        pullAndPush = subscriberStream.scheduleWithFixedDelay(new PullAndPushRunnable(), 10);
+      }
     }
   }
 
@@ -926,6 +973,11 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
       releasePendingMessage();
       pullAndPush = null;
     }
+    if (clockedPullAndPush != null) {
+      clockedPullAndPush.cancel();
+      releasePendingMessage();
+      clockedPullAndPush = null;
+    }
     if (waitLiveJob != null) {
       schedulingService.removeScheduledJob(waitLiveJob);
       waitLiveJob = null;
@@ -1001,6 +1053,10 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
     int eventTime = eventIn.getTimestamp();
     // get the incoming event source type and set on the outgoing event
     event.setSourceType(eventIn.getSourceType());
+    // live frames share their chunked body with the other subscribers
+    if (eventIn instanceof BaseEvent) {
+      ((BaseEvent) event).setChunkedBody(((BaseEvent) eventIn).getChunkedBody());
+    }
     // instance the outgoing message
     RTMPMessage messageOut = RTMPMessage.build(event, eventTime);
     if (isTrace) {
@@ -1304,6 +1360,28 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
     paramMap.put("startTS", (int) item.getStart());
     oobCtrlMsg.setServiceParamMap(paramMap);
     msgInReference.get().sendOOBControlMessage(this, oobCtrlMsg);
+    // a new provider is not paused
+    bufferFullSent = false;
+  }
+
+  /**
+   * Send buffer full control message, a provider reading ahead pauses while the client buffer is
+   * full.
+   *
+   * @param full whether the client buffer is full
+   */
+  private void sendBufferFullCM(boolean full) {
+    bufferFullSent = full;
+    IMessageInput in = msgInReference.get();
+    if (in != null) {
+      OOBControlMessage oobCtrlMsg = new OOBControlMessage();
+      oobCtrlMsg.setTarget(IPassive.KEY);
+      oobCtrlMsg.setServiceName("bufferFull");
+      Map<String, Object> paramMap = new HashMap<String, Object>(1);
+      paramMap.put("full", full);
+      oobCtrlMsg.setServiceParamMap(paramMap);
+      in.sendOOBControlMessage(this, oobCtrlMsg);
+    }
   }
 
   /**
@@ -1731,9 +1809,14 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
     clearWaitJobs();
     // Schedule deferred stop executor.
     log.trace("Ran deferred stop");
-    if (deferredStop == null) {
-      // set deferred stop if we get a job name returned
-      deferredStop = subscriberStream.scheduleWithFixedDelay(new DeferredStopRunnable(), 100);
+    if (deferredStop == null && clockedDeferredStop == null) {
+      if (playbackClock != null) {
+        DeferredStopRunnable job = new DeferredStopRunnable();
+        clockedDeferredStop = playbackClock.register(() -> job.execute(schedulingService), 100);
+      } else {
+        // set deferred stop if we get a job name returned
+        deferredStop = subscriberStream.scheduleWithFixedDelay(new DeferredStopRunnable(), 100);
+      }
     }
   }
 
@@ -1743,6 +1826,10 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
       subscriberStream.cancelJob(deferredStop);
       deferredStop = null;
     }
+    if (clockedDeferredStop != null) {
+      clockedDeferredStop.cancel();
+      clockedDeferredStop = null;
+    }
   }
 
   /** Runnable worker to handle seek operations. */
@@ -1800,7 +1887,7 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
             IMessageInput in = msgInReference.get();
             do {
               try {
-                msg = in.pullMessage();
+                msg = pullVODMessage(in);
               } catch (Throwable err) {
                 log.warn("Error while pulling message", err);
                 break;
@@ -1850,7 +1937,7 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
           int msgSent = 0;
           do {
             try {
-              msg = in.pullMessage();
+              msg = pullVODMessage(in);
               if (msg instanceof RTMPMessage) {
                 RTMPMessage rtmpMessage = (RTMPMessage) msg;
                 IRTMPEvent body = rtmpMessage.getBody();
@@ -1928,6 +2015,10 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
               IMessageInput in = msgInReference.get();
               do {
                 msg = in.pullMessage();
+                if (msg == IMessageInput.NOT_READY) {
+                  // not read yet, pull again on the next run
+                  break;
+                }
                 if (msg != null) {
                   if (msg instanceof RTMPMessage) {
                     RTMPMessage rtmpMessage = (RTMPMessage) msg;
@@ -1983,6 +2074,13 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
     }
   }
 
+  /**
+   * @param playbackClock shared clock driving the pull and push, null to schedule a job per engine
+   */
+  public void setPlaybackClock(PlaybackClock playbackClock) {
+    this.playbackClock = playbackClock;
+  }
+
   /**
    * @param maxPendingVideoFrames the maxPendingVideoFrames to set
    */
@@ -0,0 +1,286 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.stream;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.red5.logging.Red5LoggerFactory;
+import org.red5.server.jmx.mxbeans.PlaybackClockMXBean;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Shared clock driving the pull and push of file based play engines. Instead of one scheduled job
+ * per subscriber, every engine registers a task with the clock. A single ticker thread keeps the
+ * due ticks of all tasks in a priority queue and, once per tick, hands the due tasks in batches to
+ * a pool of worker threads, so thousands of plays wake up in phase rather than one by one.
+ *
+ * <p>A task never overlaps itself: its next due tick is set once the current run finished.
+ *
+ * @author The Red5 Project
+ */
+@ManagedResource(objectName = "org.red5.server:name=playbackClock,type=PlaybackClock")
+public class PlaybackClock implements PlaybackClockMXBean, InitializingBean, DisposableBean {
+
+  private static Logger log = Red5LoggerFactory.getLogger(PlaybackClock.class);
+
+  public static final String BEAN_NAME = "playbackClock";
+
+  /** Tick duration in milliseconds */
+  protected int tickDuration = 10;
+
+  /** Due tasks handed to a worker at once */
+  protected int batchSize = 64;
+
+  protected int threadCount = Runtime.getRuntime().availableProcessors();
+
+  /** Due ticks of the tasks, only used by the ticker */
+  private final PriorityQueue<Registration> schedule = new PriorityQueue<>();
+
+  /** Registered or finished tasks to place in the schedule */
+  private final Queue<Registration> added = new ConcurrentLinkedQueue<>();
+
+  private final AtomicInteger registered = new AtomicInteger();
+
+  private final AtomicLong executed = new AtomicLong();
+
+  private long tickNanos;
+
+  private final long startTime = System.nanoTime();
+
+  private Thread ticker;
+
+  private ExecutorService workers;
+
+  private volatile boolean running;
+
+  public void afterPropertiesSet() throws Exception {
+    log.debug("Initializing...");
+    tickNanos = TimeUnit.MILLISECONDS.toNanos(tickDuration);
+    AtomicInteger workerCount = new AtomicInteger();
+    workers =
+        Executors.newFixedThreadPool(
+            threadCount,
+            runnable -> {
+              Thread thread =
+                  new Thread(runnable, "PlaybackClockWorker-" + workerCount.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+    running = true;
+    ticker = new Thread(this::tick, "PlaybackClockTicker");
+    ticker.setDaemon(true);
+    ticker.start();
+  }
+
+  public void destroy() throws Exception {
+    running = false;
+    if (ticker != null) {
+      log.debug("Destroying...");
+      ticker.interrupt();
+      workers.shutdownNow();
+    }
+    added.clear();
+  }
+
+  /**
+   * Registers a task to run every interval, starting with the next tick.
+   *
+   * @param task task to run
+   * @param interval interval in milliseconds, rounded up to whole ticks
+   * @return registration used to cancel the task
+   */
+  public Registration register(Runnable task, int interval) {
+    long ticks =
+        Math.max(1, (TimeUnit.MILLISECONDS.toNanos(interval) + tickNanos - 1) / tickNanos);
+    Registration registration = new Registration(task, ticks);
+    registration.due = currentTick() + 1;
+    registered.incrementAndGet();
+    added.offer(registration);
+    return registration;
+  }
+
+  /** {@inheritDoc} */
+  public int getRegisteredCount() {
+    return registered.get();
+  }
+
+  /** {@inheritDoc} */
+  public long getExecutedCount() {
+    return executed.get();
+  }
+
+  /** {@inheritDoc} */
+  public int getTickDuration() {
+    return tickDuration;
+  }
+
+  /**
+   * @param tickDuration tick duration in milliseconds
+   */
+  public void setTickDuration(int tickDuration) {
+    this.tickDuration = tickDuration;
+  }
+
+  /**
+   * @return the batchSize
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * @param batchSize due tasks handed to a worker at once
+   */
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * @return the threadCount
+   */
+  public int getThreadCount() {
+    return threadCount;
+  }
+
+  /**
+   * @param threadCount the threadCount to set
+   */
+  public void setThreadCount(int threadCount) {
+    this.threadCount = threadCount;
+  }
+
+  private long currentTick() {
+    return (System.nanoTime() - startTime) / tickNanos;
+  }
+
+  /** Ticker loop: places the added tasks and runs the due ones. */
+  private void tick() {
+    List<Registration> due = new ArrayList<>();
+    long tick = currentTick();
+    while (running) {
+      tick = waitForTick(tick + 1);
+      if (tick < 0) {
+        break;
+      }
+      for (Registration registration; (registration = added.poll()) != null; ) {
+        if (!registration.cancelled) {
+          schedule.offer(registration);
+        }
+      }
+      while (!schedule.isEmpty() && schedule.peek().due <= tick) {
+        Registration registration = schedule.poll();
+        if (!registration.cancelled) {
+          due.add(registration);
+        }
+      }
+      for (int from = 0; from < due.size(); from += batchSize) {
+        Registration[] batch =
+            due.subList(from, Math.min(from + batchSize, due.size()))
+                .toArray(new Registration[0]);
+        try {
+          workers.execute(
+              () -> {
+                for (Registration registration : batch) {
+                  run(registration);
+                }
+              });
+        } catch (RejectedExecutionException e) {
+          log.debug("Workers are shut down");
+        }
+      }
+      due.clear();
+    }
+  }
+
+  /**
+   * Sleeps until the given tick started.
+   *
+   * @return current tick, -1 when stopped
+   */
+  private long waitForTick(long tick) {
+    long deadline = tickNanos * tick;
+    while (true) {
+      long current = System.nanoTime() - startTime;
+      long sleepMs = (deadline - current + 999999) / 1000000;
+      if (sleepMs <= 0) {
+        return current / tickNanos;
+      }
+      try {
+        Thread.sleep(sleepMs);
+      } catch (InterruptedException e) {
+        if (!running) {
+          return -1;
+        }
+      }
+    }
+  }
+
+  private void run(Registration registration) {
+    if (registration.cancelled) {
+      return;
+    }
+    try {
+      registration.task.run();
+    } catch (Throwable t) {
+      log.warn("Playback task failed", t);
+    } finally {
+      executed.incrementAndGet();
+    }
+    if (!registration.cancelled) {
+      registration.due = currentTick() + registration.interval;
+      added.offer(registration);
+    }
+  }
+
+  /** Task registered with the clock. */
+  public final class Registration implements Comparable<Registration> {
+
+    private final Runnable task;
+
+    /** Interval in ticks */
+    private final long interval;
+
+    /** Tick at which the task runs next */
+    private volatile long due;
+
+    private volatile boolean cancelled;
+
+    private Registration(Runnable task, long interval) {
+      this.task = task;
+      this.interval = interval;
+    }
+
+    /** Stops running the task, a run in progress finishes. */
+    public synchronized void cancel() {
+      if (!cancelled) {
+        cancelled = true;
+        registered.decrementAndGet();
+      }
+    }
+
+    public boolean isCancelled() {
+      return cancelled;
+    }
+
+    public int compareTo(Registration other) {
+      return Long.compare(due, other.due);
+    }
+  }
+}
@@ -166,6 +166,14 @@ public class PlaylistSubscriberStream extends AbstractClientStream
         engine =
             new PlayEngine.Builder(this, schedulingService, consumerService, providerService)
                 .build();
+        // the shared playback clock is optional
+        if (ctx.hasBean(PlaybackClock.BEAN_NAME)) {
+          engine.setPlaybackClock((PlaybackClock) ctx.getBean(PlaybackClock.BEAN_NAME));
+        } else if (scope.getParent() != null
+            && scope.getParent().getContext().hasBean(PlaybackClock.BEAN_NAME)) {
+          engine.setPlaybackClock(
+              (PlaybackClock) scope.getParent().getContext().getBean(PlaybackClock.BEAN_NAME));
+        }
       } else {
         throw new IllegalStateException("Scope was null on start playing");
       }
@@ -14,6 +14,7 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.io.IKeyFrameMetaCache;
+import org.red5.io.utils.PooledBufferAllocator;
 import org.red5.server.api.IConnection;
 import org.red5.server.api.scheduling.IScheduledJob;
 import org.red5.server.api.scheduling.ISchedulingService;
@@ -239,7 +240,7 @@ public class RecordingListener implements IRecordingListener {
     if (recording.get()) {
       // store everything we would need to perform a write of the stream data
       CachedEvent event = new CachedEvent();
-      event.setData(packet.getData().duplicate());
+      event.setData(PooledBufferAllocator.retain(packet.getData().duplicate()));
       event.setDataType(packet.getDataType());
       event.setReceivedTime(System.currentTimeMillis());
       event.setTimestamp(packet.getTimestamp());
@@ -306,6 +307,8 @@ public class RecordingListener implements IRecordingListener {
         } else {
           log.debug("Stream data size was 0, recording pipe will not be notified");
         }
+        // the consumer copies the data, a pooled body can go back to the pool
+        PooledBufferAllocator.release(buffer);
       }
     } catch (Exception e) {
       log.warn("Exception while pushing to consumer", e);
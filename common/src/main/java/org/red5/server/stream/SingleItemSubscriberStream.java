@@ -212,6 +212,14 @@ public class SingleItemSubscriberStream extends AbstractClientStream
         engine =
             new PlayEngine.Builder(this, schedulingService, consumerService, providerService)
                 .build();
+        // the shared playback clock is optional
+        if (ctx.hasBean(PlaybackClock.BEAN_NAME)) {
+          engine.setPlaybackClock((PlaybackClock) ctx.getBean(PlaybackClock.BEAN_NAME));
+        } else if (scope.getParent() != null
+            && scope.getParent().getContext().hasBean(PlaybackClock.BEAN_NAME)) {
+          engine.setPlaybackClock(
+              (PlaybackClock) scope.getParent().getContext().getBean(PlaybackClock.BEAN_NAME));
+        }
       } else {
         log.info("Scope was null on start");
       }
@@ -10,6 +10,7 @@ package org.red5.server.stream.consumer;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.io.utils.PooledBufferAllocator;
 import org.red5.server.messaging.IMessage;
 import org.red5.server.messaging.IMessageComponent;
 import org.red5.server.messaging.IPipe;
@@ -151,10 +152,11 @@ public class ConnectionConsumer implements IPushableConsumer, IPipeConnectionLis
           // log.trace("Audio data");
           buf = ((AudioData) msg).getData();
           if (buf != null) {
-            AudioData audioData = new AudioData(buf.asReadOnlyBuffer());
+            AudioData audioData = new AudioData(PooledBufferAllocator.retain(buf.asReadOnlyBuffer()));
             audioData.setHeader(header);
             audioData.setTimestamp(header.getTimer());
             audioData.setSourceType(((AudioData) msg).getSourceType());
+            audioData.setChunkedBody(((AudioData) msg).getChunkedBody());
             audio.write(audioData);
           } else {
             log.warn("Audio data was not found");
@@ -164,10 +166,11 @@ public class ConnectionConsumer implements IPushableConsumer, IPipeConnectionLis
           // log.trace("Video data");
           buf = ((VideoData) msg).getData();
           if (buf != null) {
-            VideoData videoData = new VideoData(buf.asReadOnlyBuffer());
+            VideoData videoData = new VideoData(PooledBufferAllocator.retain(buf.asReadOnlyBuffer()));
             videoData.setHeader(header);
             videoData.setTimestamp(header.getTimer());
             videoData.setSourceType(((VideoData) msg).getSourceType());
+            videoData.setChunkedBody(((VideoData) msg).getChunkedBody());
             video.write(videoData);
           } else {
             log.warn("Video data was not found");
@@ -0,0 +1,111 @@
+package org.red5.server.net.rtmp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+import org.junit.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+public class TestConnectionAdmission {
+
+  @Test
+  public void testQueueAndReject() {
+    ConnectionAdmission admission = new ConnectionAdmission(1, 1, 0);
+    IoSession first = new DummySession();
+    IoSession second = new DummySession();
+    IoSession third = new DummySession();
+    assertTrue(admission.admit(first));
+    assertFalse(first.isReadSuspended());
+    // the second one waits with its reads suspended, the third one is turned away
+    assertTrue(admission.admit(second));
+    assertTrue(second.isReadSuspended());
+    assertFalse(admission.admit(third));
+    assertEquals(1, admission.getInFlight());
+    assertEquals(1, admission.getWaiting());
+    // releasing the first lets the second in
+    ConnectionAdmission.release(first);
+    assertFalse(second.isReadSuspended());
+    assertEquals(1, admission.getInFlight());
+    assertEquals(0, admission.getWaiting());
+    ConnectionAdmission.release(second);
+    // releasing twice does nothing
+    ConnectionAdmission.release(second);
+    assertEquals(0, admission.getInFlight());
+    assertEquals(2, admission.getAccepted());
+    assertEquals(1, admission.getQueued());
+    assertEquals(1, admission.getRejected());
+  }
+
+  @Test
+  public void testClosedWhileWaiting() {
+    ConnectionAdmission admission = new ConnectionAdmission(1, 2, 0);
+    IoSession first = new DummySession();
+    IoSession closed = new DummySession();
+    IoSession next = new DummySession();
+    admission.admit(first);
+    admission.admit(closed);
+    admission.admit(next);
+    ConnectionAdmission.release(closed);
+    assertEquals(1, admission.getWaiting());
+    ConnectionAdmission.release(first);
+    assertTrue(closed.isReadSuspended());
+    assertFalse(next.isReadSuspended());
+    assertEquals(1, admission.getInFlight());
+  }
+
+  @Test
+  public void testSweepClosesExpiredWaiters() throws InterruptedException {
+    ConnectionAdmission admission = new ConnectionAdmission(1, 2, 100);
+    IoSession first = new DummySession();
+    IoSession second = new DummySession();
+    admission.admit(first);
+    admission.admit(second);
+    admission.start();
+    try {
+      // closed without any admission being released
+      for (int i = 0; i < 100 && !second.isClosing(); i++) {
+        Thread.sleep(20);
+      }
+      assertTrue(second.isClosing());
+      assertFalse(first.isClosing());
+      assertEquals(0, admission.getWaiting());
+      assertEquals(1, admission.getRejected());
+    } finally {
+      admission.stop();
+    }
+  }
+
+  @Test
+  public void testHandshakeTimeoutStartsOnAdmission() throws InterruptedException {
+    ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+    scheduler.initialize();
+    try {
+      ConnectionAdmission admission = new ConnectionAdmission(1, 1, 0);
+      IoSession first = new DummySession();
+      IoSession second = new DummySession();
+      RTMPMinaConnection conn = new RTMPMinaConnection();
+      conn.setScheduler(scheduler);
+      conn.setIoSession(second);
+      conn.setMaxHandshakeTimeout(100);
+      admission.admit(first);
+      admission.admit(second, conn::onAdmitted);
+      // as when the session is opened
+      conn.startWaitForHandshake();
+      // queued past the handshake timeout
+      Thread.sleep(300);
+      assertFalse(second.isClosing());
+      ConnectionAdmission.release(first);
+      assertFalse(second.isReadSuspended());
+      // the timeout runs from the admission
+      for (int i = 0; i < 100 && !second.isClosing(); i++) {
+        Thread.sleep(20);
+      }
+      assertTrue(second.isClosing());
+    } finally {
+      scheduler.shutdown();
+    }
+  }
+}
@@ -0,0 +1,32 @@
+package org.red5.server.net.rtmp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+
+import java.security.KeyPair;
+import org.junit.Test;
+
+public class TestDHKeyPairPool {
+
+  @Test
+  public void testRefill() throws Exception {
+    DHKeyPairPool pool = new DHKeyPairPool(4);
+    // the first pair is generated by the caller, the pool fills up behind it
+    KeyPair first = pool.take();
+    assertNotNull(first);
+    for (int i = 0; i < 500 && pool.getAvailable() < 4; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(4, pool.getAvailable());
+    assertNotSame(first, pool.take());
+    assertEquals(3, pool.getAvailable());
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    DHKeyPairPool pool = new DHKeyPairPool(0);
+    assertNotNull(pool.take());
+    assertEquals(0, pool.getAvailable());
+  }
+}
@@ -0,0 +1,148 @@
+package org.red5.server.net.rtmp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.Test;
+import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.IRTMPEvent;
+import org.red5.server.net.rtmp.event.Invoke;
+import org.red5.server.net.rtmp.event.Notify;
+import org.red5.server.net.rtmp.event.Ping;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.net.rtmp.message.Header;
+import org.red5.server.net.rtmp.message.Packet;
+
+public class TestOutboundQueue {
+
+  @Test
+  public void testDecodeOrder() {
+    OutboundQueue queue = new OutboundQueue(100000);
+    Packet metaData = packet(new Notify());
+    Packet config = packet(videoConfig(100));
+    Packet inter = packet(video(false, 1000));
+    Packet key = packet(video(true, 1000));
+    Packet audio = packet(audio(200));
+    Packet status = packet(new Invoke());
+    Packet invoke = packet(new Invoke(), 0);
+    Packet ping = packet(new Ping(Ping.PING_CLIENT, 1));
+    for (Packet packet : new Packet[] {metaData, config, inter, key, audio, status, invoke, ping}) {
+      assertTrue(queue.offer(packet).isEmpty());
+    }
+    // control and connection invokes go first, the packets of the stream keep their order
+    assertSame(ping, queue.poll());
+    assertSame(invoke, queue.poll());
+    assertSame(metaData, queue.poll());
+    assertSame(config, queue.poll());
+    assertSame(inter, queue.poll());
+    assertSame(key, queue.poll());
+    assertSame(audio, queue.poll());
+    assertSame(status, queue.poll());
+    assertNull(queue.poll());
+    assertEquals(0, queue.getBytes());
+  }
+
+  @Test
+  public void testEviction() {
+    OutboundQueue queue = new OutboundQueue(5000);
+    Packet key = packet(video(true, 2000));
+    Packet inter1 = packet(video(false, 1000));
+    Packet inter2 = packet(video(false, 1000));
+    queue.offer(key);
+    queue.offer(inter1);
+    queue.offer(inter2);
+    // audio pushes out the oldest inter frame, which takes the undecodable one after it along
+    List<Packet> dropped = queue.offer(packet(audio(1500)));
+    assertEquals(2, dropped.size());
+    assertSame(inter1, dropped.get(0));
+    assertSame(inter2, dropped.get(1));
+    assertEquals(3500, queue.getBytes());
+    // inter frames are dropped until the next key frame
+    Packet inter3 = packet(video(false, 100));
+    assertSame(inter3, queue.offer(inter3).get(0));
+    assertTrue(queue.offer(packet(video(true, 100))).isEmpty());
+    assertTrue(queue.offer(packet(video(false, 100))).isEmpty());
+    // control and invoke messages are never dropped
+    queue.offer(packet(audio(1300)));
+    assertTrue(queue.offer(packet(new Invoke())).isEmpty());
+    assertTrue(queue.getBytes() > queue.getMaxBytes());
+    assertEquals(6, queue.size());
+  }
+
+  @Test
+  public void testEvictionUpToKeyFrame() {
+    OutboundQueue queue = new OutboundQueue(4000);
+    Packet inter1 = packet(video(false, 1000));
+    Packet inter2 = packet(video(false, 1000));
+    Packet key = packet(video(true, 1000));
+    Packet inter3 = packet(video(false, 500));
+    for (Packet packet : new Packet[] {inter1, inter2, key, inter3}) {
+      queue.offer(packet);
+    }
+    // the inter frames after the next key frame still decode
+    List<Packet> dropped = queue.offer(packet(audio(1000)));
+    assertEquals(2, dropped.size());
+    assertSame(inter1, dropped.get(0));
+    assertSame(inter2, dropped.get(1));
+    assertSame(key, queue.poll());
+    assertSame(inter3, queue.poll());
+    assertTrue(queue.offer(packet(video(false, 100))).isEmpty());
+  }
+
+  @Test
+  public void testConfigNotEvicted() {
+    OutboundQueue queue = new OutboundQueue(3000);
+    Packet videoConfig = packet(videoConfig(1000));
+    Packet audioConfig = packet(audioConfig(1000));
+    assertEquals(OutboundQueue.Priority.CONFIG, OutboundQueue.priorityOf(videoConfig));
+    assertEquals(OutboundQueue.Priority.CONFIG, OutboundQueue.priorityOf(audioConfig));
+    queue.offer(videoConfig);
+    queue.offer(audioConfig);
+    Packet key = packet(video(true, 1500));
+    List<Packet> dropped = queue.offer(key);
+    assertEquals(1, dropped.size());
+    assertSame(key, dropped.get(0));
+    assertSame(videoConfig, queue.poll());
+    assertSame(audioConfig, queue.poll());
+  }
+
+  private static VideoData video(boolean key, int size) {
+    IoBuffer data = IoBuffer.allocate(size);
+    // avc, key or inter frame, nalu
+    data.put(0, (byte) (key ? 0x17 : 0x27));
+    data.put(1, (byte) 1);
+    return new VideoData(data);
+  }
+
+  private static VideoData videoConfig(int size) {
+    IoBuffer data = IoBuffer.allocate(size);
+    // avc sequence header
+    data.put(0, (byte) 0x17);
+    return new VideoData(data);
+  }
+
+  private static AudioData audio(int size) {
+    return new AudioData(IoBuffer.allocate(size));
+  }
+
+  private static AudioData audioConfig(int size) {
+    IoBuffer data = IoBuffer.allocate(size);
+    // aac sequence header
+    data.put(0, (byte) 0xaf);
+    return new AudioData(data);
+  }
+
+  private static Packet packet(IRTMPEvent event) {
+    return packet(event, 1);
+  }
+
+  private static Packet packet(IRTMPEvent event, int streamId) {
+    Header header = new Header();
+    header.setStreamId(streamId);
+    return new Packet(header, event);
+  }
+}
@@ -0,0 +1,191 @@
+package org.red5.server.net.rtmp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.WriteRequest;
+import org.junit.Test;
+import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.IRTMPEvent;
+import org.red5.server.net.rtmp.event.Ping;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.net.rtmp.message.Constants;
+import org.red5.server.net.rtmp.message.Header;
+import org.red5.server.net.rtmp.message.Packet;
+import org.red5.server.net.rtmp.message.PacketBatch;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+public class TestRTMPMinaConnection {
+
+  @Test
+  public void testWriteCoalescing() throws Exception {
+    ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+    scheduler.initialize();
+    final List<Object> written = new CopyOnWriteArrayList<>();
+    DummySession session = new DummySession();
+    session
+        .getFilterChain()
+        .addFirst(
+            "capture",
+            new IoFilterAdapter() {
+              @Override
+              public void filterWrite(
+                  NextFilter nextFilter, IoSession session, WriteRequest writeRequest) {
+                written.add(writeRequest.getMessage());
+              }
+            });
+    RTMPMinaConnection conn = new RTMPMinaConnection();
+    try {
+      conn.setScheduler(scheduler);
+      conn.setIoSession(session);
+      conn.setWriteCoalesceWindow(50);
+      conn.setWriteCoalesceBytes(1000);
+      conn.write(packet(new AudioData(IoBuffer.allocate(100))));
+      conn.write(packet(new AudioData(IoBuffer.allocate(100))));
+      assertTrue(written.isEmpty());
+      // a control message flushes the waiting audio ahead of itself
+      conn.write(packet(new Ping(Ping.PING_CLIENT, 1)));
+      assertEquals(2, written.size());
+      assertEquals(2, ((PacketBatch) written.get(0)).getPackets().size());
+      assertTrue(written.get(1) instanceof Packet);
+      // the byte budget flushes without waiting for the window
+      conn.write(packet(new AudioData(IoBuffer.allocate(600))));
+      conn.write(packet(new AudioData(IoBuffer.allocate(600))));
+      assertEquals(3, written.size());
+      // the end of the window flushes a lone packet
+      conn.write(packet(new AudioData(IoBuffer.allocate(100))));
+      for (int i = 0; i < 100 && written.size() < 4; i++) {
+        Thread.sleep(20);
+      }
+      assertEquals(4, written.size());
+      assertTrue(written.get(3) instanceof Packet);
+    } finally {
+      scheduler.shutdown();
+    }
+  }
+
+  @Test
+  public void testCoalescedWriteDoesNotWaitForEncoder() throws Exception {
+    ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+    scheduler.initialize();
+    final List<Object> written = new CopyOnWriteArrayList<>();
+    DummySession session = new DummySession();
+    session
+        .getFilterChain()
+        .addFirst(
+            "capture",
+            new IoFilterAdapter() {
+              @Override
+              public void filterWrite(
+                  NextFilter nextFilter, IoSession session, WriteRequest writeRequest) {
+                written.add(writeRequest.getMessage());
+              }
+            });
+    RTMPMinaConnection conn = new RTMPMinaConnection();
+    try {
+      conn.setScheduler(scheduler);
+      conn.setIoSession(session);
+      conn.setWriteCoalesceWindow(50);
+      conn.setWriteCoalesceBytes(1000);
+      // the encoder is busy, the first writer waits for it
+      conn.getLock().acquire();
+      Thread writer = new Thread(() -> conn.write(packet(new Ping(Ping.PING_CLIENT, 1))));
+      writer.start();
+      for (int i = 0; i < 100 && conn.getLock().getQueueLength() == 0; i++) {
+        Thread.sleep(10);
+      }
+      // other writers go on without waiting behind it
+      long start = System.currentTimeMillis();
+      conn.write(packet(new AudioData(IoBuffer.allocate(600))));
+      conn.write(packet(new AudioData(IoBuffer.allocate(600))));
+      conn.write(packet(new Ping(Ping.PING_CLIENT, 2)));
+      assertTrue(System.currentTimeMillis() - start < 500);
+      assertTrue(written.isEmpty());
+      conn.getLock().release();
+      writer.join(5000);
+      for (int i = 0; i < 100 && written.size() < 3; i++) {
+        Thread.sleep(10);
+      }
+      // written in order by the waiting writer
+      assertEquals(3, written.size());
+      assertEquals(1, ((Ping) ((Packet) written.get(0)).getMessage()).getValue2().intValue());
+      assertEquals(2, ((PacketBatch) written.get(1)).getPackets().size());
+      assertEquals(2, ((Ping) ((Packet) written.get(2)).getMessage()).getValue2().intValue());
+    } finally {
+      scheduler.shutdown();
+    }
+  }
+
+  @Test
+  public void testOutboundQueueWithCoalescing() throws Exception {
+    ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+    scheduler.initialize();
+    final List<Object> written = new CopyOnWriteArrayList<>();
+    DummySession session = new DummySession();
+    session
+        .getFilterChain()
+        .addFirst(
+            "capture",
+            new IoFilterAdapter() {
+              @Override
+              public void filterWrite(
+                  NextFilter nextFilter, IoSession session, WriteRequest writeRequest) {
+                written.add(writeRequest.getMessage());
+              }
+            });
+    RTMPMinaConnection conn = new RTMPMinaConnection();
+    try {
+      conn.setScheduler(scheduler);
+      conn.setIoSession(session);
+      conn.setWriteCoalesceWindow(60000);
+      conn.setWriteCoalesceBytes(100000);
+      conn.setOutboundQueueMaxBytes(100000);
+      conn.setOutboundWriteBytes(1000);
+      for (int i = 0; i < 20; i++) {
+        conn.write(packet(new AudioData(IoBuffer.allocate(200))));
+      }
+      // the packets held back by the coalescing count against the write size
+      assertTrue(written.isEmpty());
+      assertEquals(3000, conn.getOutboundQueuedBytes());
+      conn.flushWrites();
+      assertEquals(1, written.size());
+      assertEquals(5, ((PacketBatch) written.get(0)).getPackets().size());
+      // once sent, the next packets are handed over
+      conn.messageSent(packet(new AudioData(IoBuffer.allocate(200))));
+      assertEquals(2000, conn.getOutboundQueuedBytes());
+    } finally {
+      scheduler.shutdown();
+    }
+  }
+
+  @Test
+  public void testPendingCountedWhenWritten() throws Exception {
+    DummySession session = new DummySession();
+    RTMPMinaConnection conn = new RTMPMinaConnection();
+    conn.setIoSession(session);
+    Header header = new Header();
+    header.setChannelId(5);
+    header.setStreamId(1);
+    header.setDataType(Constants.TYPE_VIDEO_DATA);
+    conn.write(new Packet(header, new VideoData(IoBuffer.allocate(100))));
+    assertEquals(1, conn.getPendingVideoMessages(1));
+    // not written once the session is closing, so not pending either
+    session.closeNow();
+    conn.write(new Packet(header, new VideoData(IoBuffer.allocate(100))));
+    assertEquals(1, conn.getPendingVideoMessages(1));
+  }
+
+  private static Packet packet(IRTMPEvent event) {
+    Header header = new Header();
+    header.setChannelId(event instanceof Ping ? 2 : 4);
+    header.setStreamId(1);
+    header.setDataType(event instanceof Ping ? Constants.TYPE_PING : Constants.TYPE_AUDIO_DATA);
+    return new Packet(header, event);
+  }
+}
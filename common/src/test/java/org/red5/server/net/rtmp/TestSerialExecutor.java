@@ -0,0 +1,84 @@
+package org.red5.server.net.rtmp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class TestSerialExecutor {
+
+  @Test
+  public void testOrderingOnSharedPool() throws InterruptedException {
+    final int lanes = 50, tasksPerLane = 500;
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      CountDownLatch done = new CountDownLatch(lanes * tasksPerLane);
+      AtomicBoolean overlap = new AtomicBoolean();
+      List<List<Integer>> results = new ArrayList<>();
+      List<SerialExecutor> executors = new ArrayList<>();
+      List<AtomicBoolean> running = new ArrayList<>();
+      for (int i = 0; i < lanes; i++) {
+        results.add(new ArrayList<>());
+        executors.add(new SerialExecutor(pool));
+        running.add(new AtomicBoolean());
+      }
+      for (int t = 0; t < tasksPerLane; t++) {
+        for (int i = 0; i < lanes; i++) {
+          final List<Integer> result = results.get(i);
+          final AtomicBoolean laneRunning = running.get(i);
+          final int seq = t;
+          executors
+              .get(i)
+              .execute(
+                  () -> {
+                    if (!laneRunning.compareAndSet(false, true)) {
+                      overlap.set(true);
+                    }
+                    // unsynchronized on purpose, tasks of a lane never run concurrently
+                    result.add(seq);
+                    laneRunning.set(false);
+                    done.countDown();
+                  });
+        }
+      }
+      assertTrue(done.await(30, TimeUnit.SECONDS));
+      for (int i = 0; i < lanes; i++) {
+        List<Integer> result = results.get(i);
+        assertEquals(tasksPerLane, result.size());
+        for (int t = 0; t < tasksPerLane; t++) {
+          assertEquals(t, result.get(t).intValue());
+        }
+      }
+      assertFalse(overlap.get());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testRejectedTasksAreDropped() {
+    AtomicInteger ran = new AtomicInteger(), dropped = new AtomicInteger();
+    SerialExecutor executor =
+        new SerialExecutor(
+            task -> {
+              throw new RejectedExecutionException();
+            },
+            task -> dropped.incrementAndGet());
+    for (int i = 0; i < 3; i++) {
+      executor.execute(ran::incrementAndGet);
+    }
+    // never run on the submitting thread
+    assertEquals(0, ran.get());
+    assertEquals(3, dropped.get());
+  }
+}
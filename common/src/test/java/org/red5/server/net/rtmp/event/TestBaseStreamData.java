@@ -0,0 +1,25 @@
+package org.red5.server.net.rtmp.event;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.Test;
+
+public class TestBaseStreamData {
+
+  @Test
+  public void testDuplicateCopiesReadableBytes() throws Exception {
+    // a view of a larger array
+    byte[] array = new byte[] {9, 9, 1, 2, 3, 9};
+    VideoData slice = new VideoData(IoBuffer.wrap(array, 2, 3));
+    VideoData copy = slice.duplicate();
+    assertEquals(IoBuffer.wrap(new byte[] {1, 2, 3}), copy.getData());
+    assertEquals(2, slice.getData().position());
+    // no array behind the buffer
+    IoBuffer direct = IoBuffer.allocate(3, true);
+    direct.put(new byte[] {4, 5, 6}).flip();
+    VideoData directData = new VideoData(direct);
+    assertEquals(IoBuffer.wrap(new byte[] {4, 5, 6}), directData.duplicate().getData());
+    assertEquals(0, direct.position());
+  }
+}
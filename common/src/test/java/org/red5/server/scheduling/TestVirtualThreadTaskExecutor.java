@@ -0,0 +1,77 @@
+package org.red5.server.scheduling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.springframework.core.task.TaskRejectedException;
+
+public class TestVirtualThreadTaskExecutor {
+
+  @Test
+  public void testBlockingTasks() throws Exception {
+    VirtualThreadTaskExecutor executor = new VirtualThreadTaskExecutor();
+    executor.setVirtualThreads(true);
+    executor.setCorePoolSize(2);
+    executor.setMaxPoolSize(2);
+    executor.setThreadNamePrefix("TestExecutor-");
+    executor.initialize();
+    try {
+      // falls back to the pool when the jvm has no virtual threads
+      assertEquals(VirtualThreads.isSupported(), executor.isVirtualThreadsActive());
+      assertEquals(
+          VirtualThreads.isSupported(),
+          executor.submit(() -> VirtualThreads.isVirtual(Thread.currentThread())).get());
+      final int tasks = 20;
+      CountDownLatch done = new CountDownLatch(tasks);
+      for (int i = 0; i < tasks; i++) {
+        executor.execute(
+            () -> {
+              try {
+                Thread.sleep(10);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              done.countDown();
+            });
+      }
+      assertTrue(done.await(10, TimeUnit.SECONDS));
+      assertEquals("done", executor.submitListenable(() -> "done").get());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testRunnerBound() throws Exception {
+    VirtualThreadRunner runner = new VirtualThreadRunner(Executors.newCachedThreadPool(), 2);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(2);
+    for (int i = 0; i < 2; i++) {
+      runner.execute(
+          () -> {
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            done.countDown();
+          });
+    }
+    try {
+      runner.execute(() -> {});
+      fail("Third task accepted");
+    } catch (TaskRejectedException e) {
+      // as a pool with a full queue
+    }
+    release.countDown();
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    // permits are handed back once the tasks ended
+    assertEquals("done", runner.submitListenable(() -> "done").get(10, TimeUnit.SECONDS));
+    runner.shutdown();
+  }
+}
@@ -0,0 +1,58 @@
+package org.red5.server.scheduling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class TestWheelSchedulingService {
+
+  @Test
+  public void testJobs() throws Exception {
+    WheelSchedulingService service = new WheelSchedulingService();
+    service.setTicksPerWheel(8);
+    service.afterPropertiesSet();
+    try {
+      CountDownLatch once = new CountDownLatch(1);
+      // further out than one turn of the wheel
+      service.addScheduledOnceJob(200, svc -> once.countDown());
+      CountDownLatch periodic = new CountDownLatch(5);
+      String name = service.addScheduledJob(20, svc -> periodic.countDown());
+      AtomicInteger removed = new AtomicInteger();
+      String removedName =
+          service.addScheduledJobAfterDelay(20, svc -> removed.incrementAndGet(), 100);
+      service.removeScheduledJob(removedName);
+      assertTrue(once.await(5, TimeUnit.SECONDS));
+      assertTrue(periodic.await(5, TimeUnit.SECONDS));
+      assertTrue(service.getScheduledJobNames().contains(name));
+      service.removeScheduledJob(name);
+      Thread.sleep(200);
+      // the once job is gone after it ran, the removed ones never run again
+      assertEquals(0, service.getScheduledJobCount());
+      assertEquals(0, removed.get());
+    } finally {
+      service.destroy();
+    }
+  }
+
+  @Test
+  public void testPause() throws Exception {
+    WheelSchedulingService service = new WheelSchedulingService();
+    service.afterPropertiesSet();
+    try {
+      AtomicInteger runs = new AtomicInteger();
+      String name = service.addScheduledJob(10, svc -> runs.incrementAndGet());
+      service.pauseScheduledJob(name);
+      Thread.sleep(100);
+      assertEquals(0, runs.get());
+      service.resumeScheduledJob(name);
+      Thread.sleep(100);
+      assertTrue(runs.get() > 0);
+    } finally {
+      service.destroy();
+    }
+  }
+}
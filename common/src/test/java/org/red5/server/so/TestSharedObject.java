@@ -0,0 +1,37 @@
+package org.red5.server.so;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import org.junit.Test;
+import org.red5.server.so.ISharedObjectEvent.Type;
+
+public class TestSharedObject {
+
+  @Test
+  public void testCoalesce() throws InterruptedException {
+    TreeSet<ISharedObjectEvent> events = new TreeSet<>();
+    add(events, new SharedObjectEvent(Type.CLIENT_UPDATE_DATA, "x", 1));
+    add(events, new SharedObjectEvent(Type.CLIENT_UPDATE_DATA, "y", 1));
+    add(events, new SharedObjectEvent(Type.CLIENT_SEND_MESSAGE, "hit", List.of()));
+    add(events, new SharedObjectEvent(Type.CLIENT_UPDATE_DATA, "x", 2));
+    add(events, new SharedObjectEvent(Type.CLIENT_DELETE_DATA, "y", null));
+    add(events, new SharedObjectEvent(Type.CLIENT_UPDATE_DATA, "x", 3));
+    SharedObject.coalesce(events);
+    List<ISharedObjectEvent> sent = new ArrayList<>(events);
+    assertEquals(3, sent.size());
+    assertEquals(Type.CLIENT_SEND_MESSAGE, sent.get(0).getType());
+    assertEquals(Type.CLIENT_DELETE_DATA, sent.get(1).getType());
+    assertEquals("y", sent.get(1).getKey());
+    assertEquals(3, sent.get(2).getValue());
+  }
+
+  private static void add(TreeSet<ISharedObjectEvent> events, SharedObjectEvent event)
+      throws InterruptedException {
+    events.add(event);
+    // events are ordered by their nano time stamp
+    Thread.sleep(1);
+  }
+}
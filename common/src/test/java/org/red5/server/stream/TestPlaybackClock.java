@@ -0,0 +1,82 @@
+package org.red5.server.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class TestPlaybackClock {
+
+  @Test
+  public void testManyTasks() throws Exception {
+    PlaybackClock clock = new PlaybackClock();
+    clock.afterPropertiesSet();
+    try {
+      int tasks = 5000;
+      CountDownLatch latch = new CountDownLatch(tasks * 3);
+      List<PlaybackClock.Registration> registrations = new ArrayList<>();
+      for (int i = 0; i < tasks; i++) {
+        AtomicInteger runs = new AtomicInteger();
+        registrations.add(
+            clock.register(
+                () -> {
+                  if (runs.incrementAndGet() <= 3) {
+                    latch.countDown();
+                  }
+                },
+                20));
+      }
+      assertEquals(tasks, clock.getRegisteredCount());
+      assertTrue(latch.await(10, TimeUnit.SECONDS));
+      registrations.forEach(PlaybackClock.Registration::cancel);
+      assertEquals(0, clock.getRegisteredCount());
+      Thread.sleep(100);
+      // cancelled tasks do not run again
+      long executed = clock.getExecutedCount();
+      Thread.sleep(100);
+      assertEquals(executed, clock.getExecutedCount());
+    } finally {
+      clock.destroy();
+    }
+  }
+
+  @Test
+  public void testTaskDoesNotOverlap() throws Exception {
+    PlaybackClock clock = new PlaybackClock();
+    clock.afterPropertiesSet();
+    try {
+      AtomicBoolean running = new AtomicBoolean();
+      AtomicBoolean overlapped = new AtomicBoolean();
+      CountDownLatch latch = new CountDownLatch(5);
+      PlaybackClock.Registration registration =
+          clock.register(
+              () -> {
+                if (!running.compareAndSet(false, true)) {
+                  overlapped.set(true);
+                }
+                try {
+                  // longer than the interval
+                  Thread.sleep(30);
+                } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                }
+                running.set(false);
+                latch.countDown();
+              },
+              10);
+      assertTrue(latch.await(5, TimeUnit.SECONDS));
+      registration.cancel();
+      assertTrue(registration.isCancelled());
+      assertFalse(overlapped.get());
+    } finally {
+      clock.destroy();
+    }
+  }
+}
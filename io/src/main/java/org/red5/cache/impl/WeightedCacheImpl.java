@@ -0,0 +1,629 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.cache.impl;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.cache.ICacheStore;
+import org.red5.cache.ICacheable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Object cache bounded by the total size in bytes of its entries. Entries are held by hard
+ * references, so they are only dropped by eviction and not by the garbage collector.
+ *
+ * <p>Eviction follows the window TinyLFU scheme: new entries go to a small LRU window, entries
+ * leaving the window compete with the least recently used entry of the main area, and the one
+ * requested less often according to a count-min sketch of recent requests is evicted. The main
+ * area is a segmented LRU, entries requested again while on probation are protected. A single
+ * scan of many entries therefore does not flush the hot ones.
+ *
+ * <p>Lookups do not lock, the accesses are buffered and replayed under the lock by the next write
+ * or once enough of them are pending. Accesses are dropped when the buffer is full.
+ *
+ * @author The Red5 Project
+ */
+public class WeightedCacheImpl implements ICacheStore, WeightedCacheMXBean {
+
+  protected static Logger log = LoggerFactory.getLogger(WeightedCacheImpl.class);
+
+  private static final int READ_BUFFER_SIZE = 128;
+
+  private static final int READ_DRAIN_THRESHOLD = 32;
+
+  private static final int NEW = 0, WINDOW = 1, PROBATION = 2, PROTECTED = 3, DEAD = 4;
+
+  private final ConcurrentHashMap<String, Node> data = new ConcurrentHashMap<>();
+
+  /** Guards the queues and the sizes below */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final AccessQueue window = new AccessQueue();
+
+  private final AccessQueue probation = new AccessQueue();
+
+  private final AccessQueue protectedQueue = new AccessQueue();
+
+  private long windowBytes;
+
+  private long protectedBytes;
+
+  private int count;
+
+  private volatile long residentBytes;
+
+  private final Queue<Node> reads = new ConcurrentLinkedQueue<>();
+
+  private final AtomicInteger pendingReads = new AtomicInteger();
+
+  private volatile FrequencySketch sketch = new FrequencySketch(4096);
+
+  private volatile long maxBytes = 64 * 1024 * 1024;
+
+  private volatile int maxEntries;
+
+  private final LongAdder hits = new LongAdder();
+
+  private final LongAdder misses = new LongAdder();
+
+  private final LongAdder evictions = new LongAdder();
+
+  private final LongAdder evictedBytes = new LongAdder();
+
+  private final LongAdder rejections = new LongAdder();
+
+  private ObjectName oName;
+
+  public void init() {
+    log.info("Loading weighted object cache, max bytes: {}", maxBytes);
+    try {
+      MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+      oName = new ObjectName("org.red5.server:type=WeightedCache");
+      mbs.registerMBean(new StandardMBean(this, WeightedCacheMXBean.class, true), oName);
+    } catch (Exception e) {
+      log.warn("Error on jmx registration", e);
+      oName = null;
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Iterator<String> getObjectNames() {
+    return Collections.unmodifiableSet(data.keySet()).iterator();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Iterator<SoftReference<? extends ICacheable>> getObjects() {
+    List<SoftReference<? extends ICacheable>> objects = new ArrayList<>(data.size());
+    for (Node node : data.values()) {
+      objects.add(new SoftReference<ICacheable>(node.value));
+    }
+    return Collections.unmodifiableList(objects).iterator();
+  }
+
+  public boolean offer(String key, IoBuffer obj) {
+    return offer(key, new CacheableImpl(obj));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean offer(String name, Object obj) {
+    if (data.containsKey(name)) {
+      return false;
+    }
+    return add(name, toCacheable(name, obj), true);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void put(String name, Object obj) {
+    add(name, toCacheable(name, obj), false);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public ICacheable get(String name) {
+    sketch.increment(name);
+    Node node = data.get(name);
+    if (node == null) {
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+    if (pendingReads.incrementAndGet() <= READ_BUFFER_SIZE) {
+      reads.offer(node);
+    } else {
+      pendingReads.decrementAndGet();
+    }
+    if (pendingReads.get() >= READ_DRAIN_THRESHOLD && lock.tryLock()) {
+      try {
+        drainReads();
+      } finally {
+        lock.unlock();
+      }
+    }
+    return node.value;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean remove(ICacheable obj) {
+    return remove(obj.getName());
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean remove(String name) {
+    Node node = data.remove(name);
+    if (node == null) {
+      return false;
+    }
+    lock.lock();
+    try {
+      unlink(node);
+    } finally {
+      lock.unlock();
+    }
+    return true;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Limits the number of entries in addition to the size in bytes, 0 means no limit.
+   */
+  @Override
+  public void setMaxEntries(int max) {
+    log.info("Setting max entries for this cache to {}", max);
+    maxEntries = max;
+    if (max > 0) {
+      sketch = new FrequencySketch(max);
+    }
+    evictUnderLock();
+  }
+
+  /**
+   * Sets the number of entries the frequency sketch is sized for, when no maximum number of entries
+   * is set.
+   *
+   * @param expectedEntries expected number of entries
+   */
+  public void setExpectedEntries(int expectedEntries) {
+    sketch = new FrequencySketch(expectedEntries);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void setMaxBytes(long maxBytes) {
+    log.info("Setting max bytes for this cache to {}", maxBytes);
+    this.maxBytes = maxBytes;
+    evictUnderLock();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getSize() {
+    return data.size();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getResidentBytes() {
+    return residentBytes;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public double getHitRatio() {
+    long hitCount = hits.sum();
+    long requests = hitCount + misses.sum();
+    return requests == 0 ? 0 : (double) hitCount / requests;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getEvictionCount() {
+    return evictions.sum();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getEvictedBytes() {
+    return evictedBytes.sum();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getRejectionCount() {
+    return rejections.sum();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void destroy() {
+    if (oName != null) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(oName);
+      } catch (Exception e) {
+        log.warn("Exception unregistering: {}", oName, e);
+      }
+      oName = null;
+    }
+    lock.lock();
+    try {
+      for (Node node : data.values()) {
+        data.remove(node.key, node);
+        unlink(node);
+      }
+      reads.clear();
+      pendingReads.set(0);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static ICacheable toCacheable(String name, Object obj) {
+    ICacheable cacheable = obj instanceof ICacheable ? (ICacheable) obj : new CacheableImpl(obj);
+    cacheable.setName(name);
+    return cacheable;
+  }
+
+  private static int weigh(ICacheable cacheable) {
+    byte[] bytes = cacheable.getBytes();
+    return bytes != null ? Math.max(1, bytes.length) : 1;
+  }
+
+  private boolean add(String name, ICacheable value, boolean onlyIfAbsent) {
+    sketch.increment(name);
+    int weight = weigh(value);
+    if (weight > maxBytes) {
+      log.debug("{} of {} bytes exceeds the cache size", name, weight);
+      rejections.increment();
+      if (!onlyIfAbsent) {
+        // do not keep serving the replaced value
+        remove(name);
+      }
+      return false;
+    }
+    Node node = new Node(name, value, weight);
+    Node old;
+    if (onlyIfAbsent) {
+      old = data.putIfAbsent(name, node);
+      if (old != null) {
+        return false;
+      }
+    } else {
+      old = data.put(name, node);
+    }
+    value.setCached(true);
+    lock.lock();
+    try {
+      if (old != null) {
+        unlink(old);
+      }
+      link(node);
+      drainReads();
+      evict();
+      // may have lost against the entries already in the cache
+      return node.queue != DEAD;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void evictUnderLock() {
+    lock.lock();
+    try {
+      evict();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private long windowMax() {
+    return Math.max(1, maxBytes / 100);
+  }
+
+  private long protectedMax() {
+    return (maxBytes - windowMax()) * 4 / 5;
+  }
+
+  private void link(Node node) {
+    if (node.queue == NEW) {
+      node.queue = WINDOW;
+      window.add(node);
+      windowBytes += node.weight;
+      residentBytes += node.weight;
+      count++;
+    }
+  }
+
+  private void unlink(Node node) {
+    switch (node.queue) {
+      case WINDOW:
+        window.remove(node);
+        windowBytes -= node.weight;
+        break;
+      case PROBATION:
+        probation.remove(node);
+        break;
+      case PROTECTED:
+        protectedQueue.remove(node);
+        protectedBytes -= node.weight;
+        break;
+      default:
+        // not linked yet or already unlinked
+        node.queue = DEAD;
+        return;
+    }
+    node.queue = DEAD;
+    residentBytes -= node.weight;
+    count--;
+  }
+
+  private void drainReads() {
+    for (Node node; (node = reads.poll()) != null; ) {
+      pendingReads.decrementAndGet();
+      switch (node.queue) {
+        case WINDOW:
+          window.moveToEnd(node);
+          break;
+        case PROBATION:
+          probation.remove(node);
+          node.queue = PROTECTED;
+          protectedQueue.add(node);
+          protectedBytes += node.weight;
+          long protectedMax = protectedMax();
+          while (protectedBytes > protectedMax) {
+            Node demoted = protectedQueue.poll();
+            protectedBytes -= demoted.weight;
+            demoted.queue = PROBATION;
+            probation.add(demoted);
+          }
+          break;
+        case PROTECTED:
+          protectedQueue.moveToEnd(node);
+          break;
+        default:
+          break;
+      }
+    }
+  }
+
+  private void evict() {
+    long windowMax = windowMax();
+    while (windowBytes > windowMax) {
+      Node node = window.poll();
+      windowBytes -= node.weight;
+      node.queue = PROBATION;
+      probation.add(node);
+    }
+    while (residentBytes > maxBytes || (maxEntries > 0 && count > maxEntries)) {
+      Node victim = probation.first;
+      if (victim == null) {
+        victim = protectedQueue.first != null ? protectedQueue.first : window.first;
+      } else if (victim != probation.last) {
+        // the most recent arrival on probation only stays if requested more often
+        Node candidate = probation.last;
+        FrequencySketch frequencies = sketch;
+        if (frequencies.frequency(candidate.key) <= frequencies.frequency(victim.key)) {
+          victim = candidate;
+        }
+      }
+      if (victim == null) {
+        break;
+      }
+      evict(victim);
+    }
+  }
+
+  private void evict(Node node) {
+    log.trace("Evicting {}", node.key);
+    data.remove(node.key, node);
+    unlink(node);
+    node.value.setCached(false);
+    evictions.increment();
+    evictedBytes.add(node.weight);
+  }
+
+  private static final class Node {
+
+    final String key;
+
+    final ICacheable value;
+
+    final int weight;
+
+    /** Queue holding the node, guarded by the lock */
+    int queue = NEW;
+
+    Node prev;
+
+    Node next;
+
+    Node(String key, ICacheable value, int weight) {
+      this.key = key;
+      this.value = value;
+      this.weight = weight;
+    }
+  }
+
+  /** Doubly linked list of nodes, least recently used first. */
+  private static final class AccessQueue {
+
+    Node first;
+
+    Node last;
+
+    void add(Node node) {
+      node.prev = last;
+      node.next = null;
+      if (last == null) {
+        first = node;
+      } else {
+        last.next = node;
+      }
+      last = node;
+    }
+
+    void remove(Node node) {
+      if (node.prev == null) {
+        first = node.next;
+      } else {
+        node.prev.next = node.next;
+      }
+      if (node.next == null) {
+        last = node.prev;
+      } else {
+        node.next.prev = node.prev;
+      }
+      node.prev = null;
+      node.next = null;
+    }
+
+    Node poll() {
+      Node node = first;
+      if (node != null) {
+        remove(node);
+      }
+      return node;
+    }
+
+    void moveToEnd(Node node) {
+      if (node != last) {
+        remove(node);
+        add(node);
+      }
+    }
+  }
+
+  /**
+   * Count-min sketch of how often keys were requested, with four 4-bit counters per key. All
+   * counters are halved once the number of increments reaches ten times the table size, so the
+   * frequencies follow the recent requests.
+   */
+  static final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+      0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final AtomicLongArray table;
+
+    private final int mask;
+
+    private final int sampleSize;
+
+    private final AtomicInteger samples = new AtomicInteger();
+
+    FrequencySketch(int expectedEntries) {
+      int length = Integer.highestOneBit(Math.max(64, Math.min(expectedEntries, 1 << 24)) - 1) << 1;
+      table = new AtomicLongArray(length);
+      mask = length - 1;
+      sampleSize = 10 * length;
+    }
+
+    int frequency(Object key) {
+      int hash = spread(key.hashCode());
+      int start = (hash & 3) << 2;
+      int frequency = Integer.MAX_VALUE;
+      for (int i = 0; i < 4; i++) {
+        long value = table.get(indexOf(hash, i));
+        frequency = Math.min(frequency, (int) ((value >>> ((start + i) << 2)) & 0xf));
+      }
+      return frequency;
+    }
+
+    void increment(Object key) {
+      int hash = spread(key.hashCode());
+      int start = (hash & 3) << 2;
+      boolean added = false;
+      for (int i = 0; i < 4; i++) {
+        added |= incrementAt(indexOf(hash, i), start + i);
+      }
+      if (added && samples.incrementAndGet() >= sampleSize) {
+        reset();
+      }
+    }
+
+    private boolean incrementAt(int index, int counter) {
+      int offset = counter << 2;
+      long counterMask = 0xfL << offset;
+      while (true) {
+        long value = table.get(index);
+        if ((value & counterMask) == counterMask) {
+          return false;
+        }
+        if (table.compareAndSet(index, value, value + (1L << offset))) {
+          return true;
+        }
+      }
+    }
+
+    private synchronized void reset() {
+      if (samples.get() < sampleSize) {
+        return;
+      }
+      for (int i = 0; i < table.length(); i++) {
+        long value;
+        do {
+          value = table.get(i);
+        } while (!table.compareAndSet(i, value, (value >>> 1) & RESET_MASK));
+      }
+      samples.set(samples.get() / 2);
+    }
+
+    private int indexOf(int hash, int i) {
+      long h = (hash + SEEDS[i]) * SEEDS[i];
+      h += h >>> 32;
+      return (int) h & mask;
+    }
+
+    private static int spread(int x) {
+      x = ((x >>> 16) ^ x) * 0x45d9f3b;
+      return (x >>> 16) ^ x;
+    }
+  }
+}
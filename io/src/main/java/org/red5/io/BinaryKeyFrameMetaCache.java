@@ -0,0 +1,212 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import org.red5.io.flv.IKeyFrameDataAnalyzer.KeyFrameMeta;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * File-based keyframe metadata cache storing the keyframes in a compact binary file next to the
+ * media file. The file is read in one go and the positions and timestamps are copied out in bulk;
+ * it is not mapped, since on Windows a mapping keeps the file from being replaced or deleted until
+ * the mapping is collected. The header records the modification time and size of the media file,
+ * metadata of a changed file is ignored.
+ *
+ * <p>Metadata saved as XML by {@link FileKeyFrameMetaCache} is converted to the binary format the
+ * first time it is loaded. The XML file is kept unless {@link #setRemoveLegacy(boolean)} is set.
+ *
+ * @author The Red5 Project
+ */
+public class BinaryKeyFrameMetaCache implements IKeyFrameMetaCache {
+
+  private static Logger log = LoggerFactory.getLogger(BinaryKeyFrameMetaCache.class);
+
+  /** Extension of the metadata files */
+  public static final String EXTENSION = ".kfm";
+
+  /** "R5KF" */
+  private static final int MAGIC = 0x52354b46;
+
+  private static final int VERSION = 1;
+
+  /**
+   * Magic, version, modification time, size, duration, video codec, audio codec, flags and
+   * keyframe count
+   */
+  private static final int HEADER_SIZE = 48;
+
+  private static final int AUDIO_ONLY = 1;
+
+  /** Reads the metadata files of older versions */
+  private final FileKeyFrameMetaCache legacyCache = new FileKeyFrameMetaCache();
+
+  private boolean removeLegacy;
+
+  /** {@inheritDoc} */
+  @Override
+  public KeyFrameMeta loadKeyFrameMeta(File file) {
+    File metadataFile = getMetadataFile(file);
+    if (metadataFile.exists()) {
+      try {
+        KeyFrameMeta meta = read(metadataFile, file);
+        if (meta != null) {
+          return meta;
+        }
+      } catch (IOException | RuntimeException e) {
+        log.warn("Could not read keyframe metadata from {}", metadataFile, e);
+      }
+    }
+    return migrate(file);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void removeKeyFrameMeta(File file) {
+    delete(getMetadataFile(file));
+    legacyCache.removeKeyFrameMeta(file);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void saveKeyFrameMeta(File file, KeyFrameMeta meta) {
+    if (meta.positions.length == 0) {
+      // Don't store empty meta informations
+      return;
+    }
+    try {
+      write(getMetadataFile(file), file, meta);
+    } catch (IOException e) {
+      log.error("could not save keyframe data", e);
+    }
+  }
+
+  /**
+   * Sets whether XML metadata files are deleted once converted, false by default so an older
+   * version sharing the files keeps its metadata.
+   *
+   * @param removeLegacy whether XML metadata files are deleted once converted
+   */
+  public void setRemoveLegacy(boolean removeLegacy) {
+    this.removeLegacy = removeLegacy;
+  }
+
+  protected File getMetadataFile(File file) {
+    return new File(file.getAbsolutePath() + EXTENSION);
+  }
+
+  /** Converts the XML metadata of the file, if there is any. */
+  private KeyFrameMeta migrate(File file) {
+    KeyFrameMeta meta = legacyCache.loadKeyFrameMeta(file);
+    if (meta != null) {
+      log.debug("Converting keyframe metadata of {}", file);
+      try {
+        write(getMetadataFile(file), file, meta);
+        if (removeLegacy) {
+          legacyCache.removeKeyFrameMeta(file);
+        }
+      } catch (IOException e) {
+        log.warn("Could not convert keyframe metadata of {}", file, e);
+      }
+    }
+    return meta;
+  }
+
+  private static KeyFrameMeta read(File metadataFile, File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(metadataFile.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+        return null;
+      }
+      ByteBuffer buffer = ByteBuffer.allocate((int) size);
+      while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+        // read until the buffer is full or the end of the file
+      }
+      buffer.flip();
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+        log.debug("Unknown keyframe metadata format: {}", metadataFile);
+        return null;
+      }
+      if (buffer.getLong() != file.lastModified() || buffer.getLong() != file.length()) {
+        // File has changed in the meantime
+        return null;
+      }
+      KeyFrameMeta meta = new KeyFrameMeta();
+      meta.duration = buffer.getLong();
+      meta.videoCodecId = buffer.getInt();
+      meta.audioCodecId = buffer.getInt();
+      meta.audioOnly = (buffer.getInt() & AUDIO_ONLY) != 0;
+      int count = buffer.getInt();
+      if (count <= 0 || buffer.limit() != HEADER_SIZE + count * 12L) {
+        log.debug("Truncated keyframe metadata: {}", metadataFile);
+        return null;
+      }
+      meta.positions = new long[count];
+      buffer.asLongBuffer().get(meta.positions);
+      buffer.position(buffer.position() + count * 8);
+      meta.timestamps = new int[count];
+      buffer.asIntBuffer().get(meta.timestamps);
+      return meta;
+    }
+  }
+
+  /** Writes to a temporary file first, so readers never see a partial file. */
+  private static void write(File metadataFile, File file, KeyFrameMeta meta) throws IOException {
+    int count = meta.positions.length;
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + count * 12);
+    buffer.putInt(MAGIC);
+    buffer.putInt(VERSION);
+    buffer.putLong(file.lastModified());
+    buffer.putLong(file.length());
+    buffer.putLong(meta.duration);
+    buffer.putInt(meta.videoCodecId);
+    buffer.putInt(meta.audioCodecId);
+    buffer.putInt(meta.audioOnly ? AUDIO_ONLY : 0);
+    buffer.putInt(count);
+    buffer.asLongBuffer().put(meta.positions);
+    buffer.position(buffer.position() + count * 8);
+    buffer.asIntBuffer().put(meta.timestamps, 0, count);
+    buffer.rewind();
+    Path target = metadataFile.toPath();
+    Path temp = Files.createTempFile(target.toAbsolutePath().getParent(), ".kfm", ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+      }
+      try {
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private static void delete(File metadataFile) {
+    if (metadataFile.exists()) {
+      if (metadataFile.delete()) {
+        log.debug("Meta file deleted - {}", metadataFile);
+      } else {
+        log.warn("Meta file was not deleted - {}", metadataFile);
+        metadataFile.deleteOnExit();
+      }
+    }
+  }
+}
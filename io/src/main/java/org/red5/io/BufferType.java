@@ -7,9 +7,11 @@
 
 package org.red5.io;
 
-/** Buffer types (auto, direct or heap). */
+/** Buffer types (auto, direct, heap or mapped). */
 public enum BufferType {
   AUTO,
   DIRECT,
-  HEAP
+  HEAP,
+  /** Memory mapped file, where supported */
+  MAPPED
 }
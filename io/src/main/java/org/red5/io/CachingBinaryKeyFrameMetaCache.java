@@ -0,0 +1,48 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io;
+
+import java.io.File;
+import java.io.IOException;
+import org.red5.io.flv.IKeyFrameDataAnalyzer.KeyFrameMeta;
+
+/**
+ * Binary keyframe metadata cache keeping the most recently used metadata in memory. Entries are
+ * keyed by path, modification time and size of the media file.
+ *
+ * @author The Red5 Project
+ */
+public class CachingBinaryKeyFrameMetaCache extends BinaryKeyFrameMetaCache {
+
+  private final FileIndexCache<KeyFrameMeta> inMemoryMetaCache = new FileIndexCache<>(500);
+
+  @Override
+  public KeyFrameMeta loadKeyFrameMeta(File file) {
+    try {
+      return inMemoryMetaCache.get(file, super::loadKeyFrameMeta);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  @Override
+  public void removeKeyFrameMeta(File file) {
+    inMemoryMetaCache.remove(file);
+    super.removeKeyFrameMeta(file);
+  }
+
+  @Override
+  public void saveKeyFrameMeta(File file, KeyFrameMeta meta) {
+    inMemoryMetaCache.remove(file);
+    super.saveKeyFrameMeta(file, meta);
+  }
+
+  public void setMaxCacheEntry(int maxCacheEntry) {
+    inMemoryMetaCache.setMaxEntries(maxCacheEntry);
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of parsed, read-only file indexes shared by the readers of the same file. Entries are keyed
+ * by path, modification time and size, so a changed file is parsed again. Concurrent readers of a
+ * file that is not cached yet wait for a single parse instead of each parsing it. The least
+ * recently used entry is dropped once the maximum number of entries is reached.
+ *
+ * @param <T> index type, must not be modified once loaded
+ * @author The Red5 Project
+ */
+public class FileIndexCache<T> {
+
+  private static Logger log = LoggerFactory.getLogger(FileIndexCache.class);
+
+  /** Parses the index of a file. */
+  @FunctionalInterface
+  public interface Loader<T> {
+
+    T load(File file) throws IOException;
+  }
+
+  private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  private volatile int maxEntries;
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  public FileIndexCache(int maxEntries) {
+    this.maxEntries = maxEntries;
+  }
+
+  /**
+   * Returns the index of the file, parsing it with the loader if it is not cached or the file
+   * changed since.
+   *
+   * @param file file
+   * @param loader parses the index
+   * @return index or null if the loader returned null
+   * @throws IOException when parsing fails
+   */
+  public T get(File file, Loader<T> loader) throws IOException {
+    String path = file.getAbsolutePath();
+    long modified = file.lastModified();
+    long length = file.length();
+    Entry entry;
+    synchronized (entries) {
+      entry = entries.get(path);
+      if (entry == null || entry.modified != modified || entry.length != length) {
+        entry = new Entry(modified, length);
+        if (maxEntries > 0) {
+          entries.put(path, entry);
+          while (entries.size() > maxEntries) {
+            entries.remove(entries.keySet().iterator().next());
+          }
+        }
+      }
+    }
+    return entry.get(file, loader);
+  }
+
+  /**
+   * Drops the index of the file.
+   *
+   * @param file file
+   */
+  public void remove(File file) {
+    synchronized (entries) {
+      entries.remove(file.getAbsolutePath());
+    }
+  }
+
+  public void clear() {
+    synchronized (entries) {
+      entries.clear();
+    }
+  }
+
+  public int getSize() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  public int getMaxEntries() {
+    return maxEntries;
+  }
+
+  /**
+   * @param maxEntries maximum number of cached indexes, 0 disables caching
+   */
+  public void setMaxEntries(int maxEntries) {
+    this.maxEntries = maxEntries;
+    synchronized (entries) {
+      while (entries.size() > maxEntries) {
+        entries.remove(entries.keySet().iterator().next());
+      }
+    }
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  private final class Entry {
+
+    final long modified;
+
+    final long length;
+
+    private T index;
+
+    Entry(long modified, long length) {
+      this.modified = modified;
+      this.length = length;
+    }
+
+    synchronized T get(File file, Loader<T> loader) throws IOException {
+      if (index == null) {
+        misses.incrementAndGet();
+        index = loader.load(file);
+        log.debug("Loaded index of {}", file);
+      } else {
+        hits.incrementAndGet();
+      }
+      return index;
+    }
+  }
+}
@@ -12,7 +12,9 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -23,6 +25,7 @@ import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.codec.AudioCodec;
 import org.red5.codec.VideoCodec;
 import org.red5.io.BufferType;
+import org.red5.io.FileIndexCache;
 import org.red5.io.IKeyFrameMetaCache;
 import org.red5.io.IStreamableFile;
 import org.red5.io.ITag;
@@ -88,9 +91,6 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
   /** Duration in milliseconds. */
   private long duration;
 
-  /** Mapping between file position and timestamp in ms. */
-  private HashMap<Long, Long> posTimeMap;
-
   /** Buffer type / style to use * */
   private static BufferType bufferType = BufferType.AUTO;
 
@@ -99,9 +99,18 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
   /** Use load buffer */
   private boolean useLoadBuf;
 
+  /** Reading from a memory mapped file, tag bodies are slices of the mapping */
+  private boolean mapped;
+
   /** Cache for keyframe informations. */
   private static IKeyFrameMetaCache keyframeCache;
 
+  /** Analyzed keyframes shared by the readers of the same file */
+  private static final FileIndexCache<Index> indexCache = new FileIndexCache<>(256);
+
+  /** Memory mapped files shared by the readers of the same file */
+  private static final FileIndexCache<MappedByteBuffer> mappings = new FileIndexCache<>(64);
+
   /** The header of this FLV file. */
   private FLVHeader header;
 
@@ -134,8 +143,12 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
       log.debug("{}", org.apache.commons.lang3.builder.ToStringBuilder.reflectionToString(this));
     }
     this.file = f;
-    this.fis = new FileInputStream(f);
     this.generateMetadata = generateMetadata;
+    if (bufferType == BufferType.MAPPED && map(f)) {
+      postInitialize();
+      return;
+    }
+    this.fis = new FileInputStream(f);
     channel = fis.getChannel();
     channelSize = channel.size();
     in = null;
@@ -183,6 +196,37 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
     postInitialize();
   }
 
+  /**
+   * Reads from a view of the shared mapping of the file. Files larger than a mapped buffer can
+   * address are read through a channel.
+   *
+   * @param f file
+   * @return true if the file is mapped
+   */
+  private boolean map(File f) {
+    if (f.length() > Integer.MAX_VALUE) {
+      log.debug("File is too large to be mapped: {}", f);
+      return false;
+    }
+    try {
+      MappedByteBuffer mapping =
+          mappings.get(
+              f,
+              file -> {
+                try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                  return fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+                }
+              });
+      // each reader has its own position and limit
+      in = IoBuffer.wrap(mapping.duplicate());
+      mapped = true;
+      return true;
+    } catch (IOException e) {
+      log.warn("Could not map {}, reading through a channel", f, e);
+      return false;
+    }
+  }
+
   public void setKeyFrameCache(IKeyFrameMetaCache keyframeCache) {
     FLVReader.keyframeCache = keyframeCache;
   }
@@ -298,6 +342,10 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
    * @param reload Whether to reload or append
    */
   private void fillBuffer(long amount, boolean reload) {
+    if (in != null && !useLoadBuf) {
+      // the whole file is in the buffer already
+      return;
+    }
     try {
       if (amount > bufferSize) {
         amount = bufferSize;
@@ -322,9 +370,6 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
         in.flip();
         useLoadBuf = true;
       }
-      if (!useLoadBuf) {
-        return;
-      }
       if (reload || in.remaining() < amount) {
         if (!reload) {
           in.compact();
@@ -367,7 +412,7 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
   }
 
   /**
-   * Getter for buffer type (auto, direct or heap).
+   * Getter for buffer type (auto, direct, heap or mapped).
    *
    * @return Value for property 'bufferType'
    */
@@ -379,13 +424,18 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
         return "direct";
       case HEAP:
         return "heap";
+      case MAPPED:
+        return "mapped";
       default:
         return null;
     }
   }
 
   /**
-   * Setter for buffer type.
+   * Setter for buffer type. With "mapped" the files are memory mapped and tag bodies are views of
+   * the mapping. Do not use it where files may still be recorded or otherwise truncated while they
+   * are read: touching a mapped page beyond the new end of the file raises SIGBUS, which the JVM
+   * reports as an InternalError.
    *
    * @param bufferType Value to set for property 'bufferType'
    */
@@ -400,6 +450,10 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
         // Get a direct buffer from buffer pool
         FLVReader.bufferType = BufferType.DIRECT;
         break;
+      case -1081360845: // mapped
+        // Map the files, readers of the same file share the mapping
+        FLVReader.bufferType = BufferType.MAPPED;
+        break;
       case 3005871: // auto
       // Let MINA choose
       default:
@@ -429,6 +483,15 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
     FLVReader.bufferSize = bufferSize;
   }
 
+  /**
+   * Setter for the size of the keyframe index cache.
+   *
+   * @param size maximum number of analyzed files whose keyframes are kept for other readers
+   */
+  public static void setIndexCacheSize(int size) {
+    indexCache.setMaxEntries(size);
+  }
+
   /**
    * Returns the file buffer.
    *
@@ -587,10 +650,15 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
           }
         }
         int bodySize = tag.getBodySize();
-        IoBuffer body = IoBuffer.allocate(bodySize, false);
+        IoBuffer body;
         // XXX Paul: this assists in 'properly' handling damaged FLV files
         long newPosition = getCurrentPosition() + bodySize;
-        if (newPosition <= getTotalBytes()) {
+        if (mapped && newPosition <= getTotalBytes()) {
+          // no copy, the body is a view of the mapped file
+          body = in.getSlice(bodySize);
+          tag.setBody(body);
+        } else if (newPosition <= getTotalBytes()) {
+          body = IoBuffer.allocate(bodySize, false);
           int limit;
           while (getCurrentPosition() < newPosition) {
             fillBuffer(newPosition - getCurrentPosition());
@@ -605,38 +673,40 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
           }
           body.flip();
           tag.setBody(body);
+        } else {
+          body = IoBuffer.allocate(bodySize, false);
         }
         // now that we have a tag body, check that config has been sent for codecs that require them
-        if (body.array().length > 0) {
-          int firstByte = body.array()[0] & 0xff;
+        if (body.capacity() > 0) {
+          int firstByte = body.get(0) & 0xff;
           if (((firstByte & ITag.MASK_SOUND_FORMAT) >> 4) == AudioCodec.AAC.getId()) {
             // read second byte to see if its config data
-            if (body.array()[1] != 0 && !audioConfigRead.get()) {
+            if (body.get(1) != 0 && !audioConfigRead.get()) {
               log.debug("Skipping AAC since config has not beean read yet");
               body.clear();
               body.free();
               tag = null;
-            } else if (body.array()[1] == 0 && audioConfigRead.compareAndSet(false, true)) {
+            } else if (body.get(1) == 0 && audioConfigRead.compareAndSet(false, true)) {
               log.debug("AAC config read");
             }
           } else if ((firstByte & ITag.MASK_VIDEO_CODEC) == VideoCodec.AVC.getId()) {
             // read second byte to see if its config data
-            if (body.array()[1] != 0 && !videoConfigRead.get()) {
+            if (body.get(1) != 0 && !videoConfigRead.get()) {
               log.debug("Skipping AVC since config has not beean read yet");
               body.clear();
               body.free();
               tag = null;
-            } else if (body.array()[1] == 0 && videoConfigRead.compareAndSet(false, true)) {
+            } else if (body.get(1) == 0 && videoConfigRead.compareAndSet(false, true)) {
               log.debug("AVC config read");
             }
           } else if ((firstByte & ITag.MASK_VIDEO_CODEC) == VideoCodec.HEVC.getId()) {
             // read second byte to see if its config data
-            if (body.array()[1] != 0 && !videoConfigRead.get()) {
+            if (body.get(1) != 0 && !videoConfigRead.get()) {
               log.debug("Skipping HEVC since config has not beean read yet");
               body.clear();
               body.free();
               tag = null;
-            } else if (body.array()[1] == 0 && videoConfigRead.compareAndSet(false, true)) {
+            } else if (body.get(1) == 0 && videoConfigRead.compareAndSet(false, true)) {
               log.debug("HEVC config read");
             }
           } else {
@@ -697,18 +767,40 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
     if (keyframeMeta != null) {
       return keyframeMeta;
     }
+    if (file != null) {
+      // analyze the file once, other readers of the file share the result
+      try {
+        Index index =
+            indexCache.get(file, f -> new Index(loadKeyFrames(), firstVideoTag, firstAudioTag));
+        if (index.keyframeMeta != null) {
+          keyframeMeta = index.keyframeMeta;
+          duration = keyframeMeta.duration;
+          firstVideoTag = index.firstVideoTag;
+          firstAudioTag = index.firstAudioTag;
+          return keyframeMeta;
+        }
+        indexCache.remove(file);
+      } catch (IOException e) {
+        log.warn("Exception loading keyframe index", e);
+      }
+    }
+    return loadKeyFrames();
+  }
+
+  /**
+   * Loads the keyframe metadata from the keyframe cache or analyzes the file.
+   *
+   * @return Keyframe metadata
+   */
+  private KeyFrameMeta loadKeyFrames() {
     try {
       lock.lockInterruptibly();
       // check for cached keyframe informations
       if (keyframeCache != null) {
         keyframeMeta = keyframeCache.loadKeyFrameMeta(file);
         if (keyframeMeta != null) {
-          // Keyframe data loaded, create other mappings
+          // Keyframe data loaded
           duration = keyframeMeta.duration;
-          posTimeMap = new HashMap<>();
-          for (int i = 0; i < keyframeMeta.positions.length; i++) {
-            posTimeMap.put(keyframeMeta.positions[i], (long) keyframeMeta.timestamps[i]);
-          }
           return keyframeMeta;
         }
       }
@@ -807,7 +899,6 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
       setCurrentPosition(origPos);
       log.debug("Total valid tags found: {}", totalValidTags);
       keyframeMeta.duration = duration;
-      posTimeMap = new HashMap<Long, Long>();
       if (audioOnly) {
         // The flv only contains audio tags, use their lists
         // to support pause and seeking
@@ -820,7 +911,6 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
       for (int i = 0; i < keyframeMeta.positions.length; i++) {
         keyframeMeta.positions[i] = positionList.get(i);
         keyframeMeta.timestamps[i] = timestampList.get(i);
-        posTimeMap.put((long) positionList.get(i), (long) timestampList.get(i));
       }
       if (keyframeCache != null) {
         keyframeCache.saveKeyFrameMeta(file, keyframeMeta);
@@ -971,6 +1061,20 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
     return duration;
   }
 
+  /** Read-only keyframe analysis of a file, shared by all the readers of the file. */
+  static final class Index {
+
+    private final KeyFrameMeta keyframeMeta;
+
+    private final long firstVideoTag, firstAudioTag;
+
+    Index(KeyFrameMeta keyframeMeta, long firstVideoTag, long firstAudioTag) {
+      this.keyframeMeta = keyframeMeta;
+      this.firstVideoTag = firstVideoTag;
+      this.firstAudioTag = firstAudioTag;
+    }
+  }
+
   /** Used when an unsupported datatype is found in a file. */
   final class UnsupportedDataTypeException extends IOException {
 
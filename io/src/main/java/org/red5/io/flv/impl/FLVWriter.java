@@ -65,6 +65,9 @@ public class FLVWriter implements ITagWriter {
   /** Length of the flv tag in bytes */
   private static final int TAG_HEADER_LENGTH = 11;
 
+  /** Body size reserved for the metadata tag of a flv written in place */
+  private static final int METADATA_RESERVE = 1024;
+
   /** For now all recorded streams carry a stream id of 0. */
   private static final byte[] DEFAULT_STREAM_ID =
       new byte[] {(byte) (0 & 0xff), (byte) (0 & 0xff), (byte) (0 & 0xff)};
@@ -75,6 +78,9 @@ public class FLVWriter implements ITagWriter {
   /** FLV object */
   private static IFLV flv;
 
+  /** Whether new files are written in place */
+  private static boolean writeInPlace;
+
   /** Number of bytes written */
   private volatile long bytesWritten;
 
@@ -108,6 +114,9 @@ public class FLVWriter implements ITagWriter {
   /** Are we appending to an existing file? */
   private boolean append;
 
+  /** Tags are written straight into the flv, the header and metadata are patched on close */
+  private boolean inPlace;
+
   /** Duration of the file. */
   private int duration;
 
@@ -155,7 +164,11 @@ public class FLVWriter implements ITagWriter {
     this.filePath = filePath;
     log.debug("Writing to: {}", filePath);
     try {
-      createDataFile();
+      if (writeInPlace) {
+        createInPlaceFile();
+      } else {
+        createDataFile();
+      }
     } catch (Exception e) {
       log.error("Failed to create FLV writer", e);
     }
@@ -226,8 +239,12 @@ public class FLVWriter implements ITagWriter {
         // move / rename previous flv
         Files.move(path, path.resolveSibling(path.toFile().getName().replace(".flv", ".old")));
         log.debug("Previous flv renamed");
+        createDataFile();
+      } else if (writeInPlace) {
+        createInPlaceFile();
+      } else {
+        createDataFile();
       }
-      createDataFile();
     } catch (Exception e) {
       log.error("Failed to create FLV writer", e);
     }
@@ -295,6 +312,31 @@ public class FLVWriter implements ITagWriter {
    */
   @Override
   public void writeHeader() throws IOException {
+    ByteBuffer buf = createHeader();
+    if (inPlace) {
+      // the tags follow the header already, only the flags are updated
+      long position = fileChannel.position();
+      fileChannel.position(0L);
+      fileChannel.write(buf);
+      fileChannel.position(position);
+      return;
+    }
+    // the final version of the file will go here
+    createOutputFile();
+    // write header to output channel
+    bytesWritten = fileChannel.write(buf);
+    assert ((HEADER_LENGTH + 4) - bytesWritten == 0);
+    log.debug("Header size: {} bytes written: {}", (HEADER_LENGTH + 4), bytesWritten);
+    buf.clear();
+    buf = null;
+  }
+
+  /**
+   * Creates the header bytes, flagging the tracks written so far.
+   *
+   * @return header followed by the first previous tag size
+   */
+  private ByteBuffer createHeader() {
     // create a buffer
     ByteBuffer buf =
         ByteBuffer.allocate(HEADER_LENGTH + 4); // FLVHeader (9 bytes) + PreviousTagSize0 (4 bytes)
@@ -304,14 +346,7 @@ public class FLVWriter implements ITagWriter {
     flvHeader.setFlagVideo(videoCodecId != -1 ? true : false);
     // write the flv header in the buffer
     flvHeader.write(buf);
-    // the final version of the file will go here
-    createOutputFile();
-    // write header to output channel
-    bytesWritten = fileChannel.write(buf);
-    assert ((HEADER_LENGTH + 4) - bytesWritten == 0);
-    log.debug("Header size: {} bytes written: {}", (HEADER_LENGTH + 4), bytesWritten);
-    buf.clear();
-    buf = null;
+    return buf;
   }
 
   /** {@inheritDoc} */
@@ -539,8 +574,10 @@ public class FLVWriter implements ITagWriter {
     } catch (InterruptedException e) {
       log.warn("Exception acquiring lock", e);
     } finally {
-      // update the file information
-      updateInfoFile();
+      // update the file information, a file written in place is readable as it is
+      if (!inPlace) {
+        updateInfoFile();
+      }
       // mark config written flags
       if (onWrittenSetAudioFlag && audioConfigWritten.compareAndSet(false, true)) {
         log.trace("Audio configuration written");
@@ -643,8 +680,10 @@ public class FLVWriter implements ITagWriter {
     } catch (InterruptedException e) {
       log.warn("Exception acquiring lock", e);
     } finally {
-      // update the file information
-      updateInfoFile();
+      // update the file information, a file written in place is readable as it is
+      if (!inPlace) {
+        updateInfoFile();
+      }
       // release lock
       lock.release();
     }
@@ -693,6 +732,21 @@ public class FLVWriter implements ITagWriter {
             path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.READ);
   }
 
+  /**
+   * Create the flv itself with a placeholder for the metadata, the tags are then written straight
+   * after it.
+   *
+   * @throws IOException
+   */
+  private void createInPlaceFile() throws IOException {
+    inPlace = true;
+    createOutputFile();
+    fileChannel.write(createHeader());
+    fileChannel.write(createMetadataTag(0d, -1, -1, METADATA_RESERVE));
+    bytesWritten = fileChannel.position();
+    dataChannel = fileChannel;
+  }
+
   /**
    * Create the stream data file for repair.
    *
@@ -721,10 +775,30 @@ public class FLVWriter implements ITagWriter {
     log.debug(
         "writeMetadataTag - duration: {} video codec: {} audio codec: {}",
         new Object[] {duration, videoCodecId, audioCodecId});
-    IoBuffer buf = IoBuffer.allocate(256);
-    buf.setAutoExpand(true);
-    Output out = new Output(buf);
-    out.writeString("onMetaData");
+    ByteBuffer tagBuffer = createMetadataTag(duration, videoCodecId, audioCodecId, 0);
+    // write the tag
+    if (log.isTraceEnabled()) {
+      log.trace("Writing metadata starting at position: {}", bytesWritten);
+    }
+    // add to the total bytes written
+    bytesWritten += fileChannel.write(tagBuffer);
+    if (log.isTraceEnabled()) {
+      log.trace("Updated position: {}", bytesWritten);
+    }
+    tagBuffer.clear();
+  }
+
+  /**
+   * Create "onMetaData" tag.
+   *
+   * @param duration Duration in seconds.
+   * @param videoCodecId Id of the video codec used while recording.
+   * @param audioCodecId Id of the audio codec used while recording.
+   * @param reserve body size to pad the metadata to, 0 for no padding
+   * @return tag followed by its size, or null if the metadata exceeds the reserved size
+   */
+  private ByteBuffer createMetadataTag(
+      double duration, int videoCodecId, int audioCodecId, int reserve) {
     Map<Object, Object> params = new HashMap<>();
     if (meta != null) {
       params.putAll(meta);
@@ -770,8 +844,23 @@ public class FLVWriter implements ITagWriter {
     }
     // this is actual only supposed to be true if the last video frame is a keyframe
     params.put("canSeekToEnd", true);
-    out.writeMap(params);
-    buf.flip();
+    IoBuffer buf;
+    if (reserve > 0) {
+      // an empty entry first, then one filling the reserved size
+      params.put("padding", "");
+      buf = serializeMetadata(params);
+      int free = reserve - buf.limit();
+      if (free < 0) {
+        log.debug("Metadata size: {} exceeds reserved size: {}", buf.limit(), reserve);
+        return null;
+      }
+      if (free > 0) {
+        params.put("padding", " ".repeat(free));
+        buf = serializeMetadata(params);
+      }
+    } else {
+      buf = serializeMetadata(params);
+    }
     int bodySize = buf.limit();
     log.debug("Metadata size: {}", bodySize);
     // set a var holding the entire tag size including the previous tag length
@@ -817,17 +906,18 @@ public class FLVWriter implements ITagWriter {
     }
     // flip so we can process from the beginning
     tagBuffer.flip();
-    // write the tag
-    if (log.isTraceEnabled()) {
-      log.trace("Writing metadata starting at position: {}", bytesWritten);
-    }
-    // add to the total bytes written
-    bytesWritten += fileChannel.write(tagBuffer);
-    if (log.isTraceEnabled()) {
-      log.trace("Updated position: {}", bytesWritten);
-    }
-    tagBuffer.clear();
     buf.clear();
+    return tagBuffer;
+  }
+
+  private static IoBuffer serializeMetadata(Map<Object, Object> params) {
+    IoBuffer buf = IoBuffer.allocate(256);
+    buf.setAutoExpand(true);
+    Output out = new Output(buf);
+    out.writeString("onMetaData");
+    out.writeMap(params);
+    buf.flip();
+    return buf;
   }
 
   /**
@@ -872,6 +962,10 @@ public class FLVWriter implements ITagWriter {
           log.debug("Flv info file not found");
         }
         tmpFile = null;
+        if (inPlace) {
+          finalizeInPlace();
+          return bytesTransferred;
+        }
         // write the file header
         writeHeader();
         log.debug("Pos post header: {}", fileChannel.position());
@@ -998,6 +1092,22 @@ public class FLVWriter implements ITagWriter {
     return bytesTransferred;
   }
 
+  /** Patches the header and metadata of a flv written in place, no tag is copied. */
+  private void finalizeInPlace() throws IOException {
+    long length = fileChannel.position();
+    fileChannel.position(0L);
+    fileChannel.write(createHeader());
+    ByteBuffer tagBuffer =
+        createMetadataTag(duration * 0.001d, videoCodecId, audioCodecId, METADATA_RESERVE);
+    if (tagBuffer != null) {
+      fileChannel.write(tagBuffer);
+    } else {
+      log.warn("Metadata does not fit the reserved space, it is left unchanged in {}", filePath);
+    }
+    fileChannel.close();
+    log.debug("FLV bytes written in place: {}", length);
+  }
+
   /**
    * Read flv file information from pre-finalization file.
    *
@@ -1094,6 +1204,17 @@ public class FLVWriter implements ITagWriter {
     FLVWriter.flv = flv;
   }
 
+  /**
+   * Sets whether new files are written in place. The tags are then written straight into the flv
+   * after a header and a metadata tag of reserved size, which are patched on close instead of
+   * copying the tags from a data file. Appending still copies the previous file.
+   *
+   * @param writeInPlace true to write in place
+   */
+  public static void setWriteInPlace(boolean writeInPlace) {
+    FLVWriter.writeInPlace = writeInPlace;
+  }
+
   /** {@inheritDoc} */
   @Override
   public int getOffset() {
@@ -0,0 +1,243 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io.mp4;
+
+import java.util.Arrays;
+
+/**
+ * Read-only table of the frames of an MP4 file in playback order, stored column by column in
+ * primitive arrays rather than as one {@link MP4Frame} per sample. A frame is addressed by its
+ * index, key frames are additionally listed in their own column so seeking is a binary search.
+ *
+ * @author The Red5 Project
+ */
+public final class MP4FrameTable {
+
+  /** Key frame flag, stored along with the frame type */
+  private static final byte KEY_FRAME = (byte) 0x80;
+
+  public static final MP4FrameTable EMPTY = new Builder().build();
+
+  private final byte[] types;
+
+  private final long[] offsets;
+
+  private final int[] sizes;
+
+  /** Timestamps in milliseconds */
+  private final int[] times;
+
+  /** Composition time offsets from the ctts atom */
+  private final int[] timeOffsets;
+
+  /** Indexes of the key frames */
+  private final int[] keyFrames;
+
+  private MP4FrameTable(
+      byte[] types, long[] offsets, int[] sizes, int[] times, int[] timeOffsets, int[] keyFrames) {
+    this.types = types;
+    this.offsets = offsets;
+    this.sizes = sizes;
+    this.times = times;
+    this.timeOffsets = timeOffsets;
+    this.keyFrames = keyFrames;
+  }
+
+  public int size() {
+    return types.length;
+  }
+
+  public boolean isEmpty() {
+    return types.length == 0;
+  }
+
+  public byte getType(int frame) {
+    return (byte) (types[frame] & ~KEY_FRAME);
+  }
+
+  public boolean isKeyFrame(int frame) {
+    return (types[frame] & KEY_FRAME) != 0;
+  }
+
+  public long getOffset(int frame) {
+    return offsets[frame];
+  }
+
+  public int getSize(int frame) {
+    return sizes[frame];
+  }
+
+  /**
+   * @param frame frame index
+   * @return timestamp in milliseconds
+   */
+  public int getTime(int frame) {
+    return times[frame];
+  }
+
+  public int getTimeOffset(int frame) {
+    return timeOffsets[frame];
+  }
+
+  public int getKeyFrameCount() {
+    return keyFrames.length;
+  }
+
+  /**
+   * @param keyFrame key frame number
+   * @return index of the frame
+   */
+  public int getKeyFrame(int keyFrame) {
+    return keyFrames[keyFrame];
+  }
+
+  /**
+   * Finds the first key frame at or beyond a file position.
+   *
+   * @param position position in the file
+   * @return index of the frame or -1 if there is none
+   */
+  public int seek(long position) {
+    int low = 0;
+    int high = keyFrames.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (offsets[keyFrames[mid]] < position) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low < keyFrames.length ? keyFrames[low] : -1;
+  }
+
+  public String toString(int frame) {
+    StringBuilder sb = new StringBuilder("MP4Frame type=");
+    sb.append(getType(frame));
+    sb.append(", time=");
+    sb.append(times[frame]);
+    sb.append(", timeOffset=");
+    sb.append(timeOffsets[frame]);
+    sb.append(", size=");
+    sb.append(sizes[frame]);
+    sb.append(", offset=");
+    sb.append(offsets[frame]);
+    sb.append(", keyframe=");
+    sb.append(isKeyFrame(frame));
+    return sb.toString();
+  }
+
+  @Override
+  public String toString() {
+    return "MP4FrameTable [frames=" + types.length + ", keyFrames=" + keyFrames.length + "]";
+  }
+
+  /** Collects the frames in any order and sorts them by time, then offset. */
+  public static final class Builder {
+
+    private byte[] types = new byte[64];
+
+    private long[] offsets = new long[64];
+
+    private int[] sizes = new int[64];
+
+    /** Timestamps in seconds, rounded once sorted */
+    private double[] times = new double[64];
+
+    private int[] timeOffsets = new int[64];
+
+    private int count;
+
+    public Builder add(
+        byte type, long offset, int size, double time, int timeOffset, boolean keyFrame) {
+      if (count == types.length) {
+        int capacity = count << 1;
+        types = Arrays.copyOf(types, capacity);
+        offsets = Arrays.copyOf(offsets, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        times = Arrays.copyOf(times, capacity);
+        timeOffsets = Arrays.copyOf(timeOffsets, capacity);
+      }
+      types[count] = keyFrame ? (byte) (type | KEY_FRAME) : type;
+      offsets[count] = offset;
+      sizes[count] = size;
+      times[count] = time;
+      timeOffsets[count] = timeOffset;
+      count++;
+      return this;
+    }
+
+    public int size() {
+      return count;
+    }
+
+    public MP4FrameTable build() {
+      int[] order = sort();
+      byte[] sortedTypes = new byte[count];
+      long[] sortedOffsets = new long[count];
+      int[] sortedSizes = new int[count];
+      int[] sortedTimes = new int[count];
+      int[] sortedTimeOffsets = new int[count];
+      int keyFrameCount = 0;
+      for (int i = 0; i < count; i++) {
+        int frame = order[i];
+        sortedTypes[i] = types[frame];
+        sortedOffsets[i] = offsets[frame];
+        sortedSizes[i] = sizes[frame];
+        sortedTimes[i] = (int) Math.round(times[frame] * 1000.0);
+        sortedTimeOffsets[i] = timeOffsets[frame];
+        if ((types[frame] & KEY_FRAME) != 0) {
+          keyFrameCount++;
+        }
+      }
+      int[] keyFrames = new int[keyFrameCount];
+      for (int i = 0, k = 0; i < count; i++) {
+        if ((sortedTypes[i] & KEY_FRAME) != 0) {
+          keyFrames[k++] = i;
+        }
+      }
+      return new MP4FrameTable(
+          sortedTypes, sortedOffsets, sortedSizes, sortedTimes, sortedTimeOffsets, keyFrames);
+    }
+
+    private int compare(int a, int b) {
+      int result = Double.compare(times[a], times[b]);
+      return result != 0 ? result : Long.compare(offsets[a], offsets[b]);
+    }
+
+    /**
+     * Bottom-up merge sort of the frame indexes. Audio and video are each added in order already,
+     * merging two pieces that are in order is skipped.
+     */
+    private int[] sort() {
+      int[] order = new int[count];
+      for (int i = 0; i < count; i++) {
+        order[i] = i;
+      }
+      int[] buffer = new int[count];
+      for (int width = 1; width < count; width <<= 1) {
+        for (int low = 0; low < count - width; low += width << 1) {
+          int mid = low + width;
+          int high = Math.min(mid + width, count);
+          if (compare(order[mid - 1], order[mid]) <= 0) {
+            continue;
+          }
+          System.arraycopy(order, low, buffer, low, high - low);
+          for (int i = low, left = low, right = mid; i < high; i++) {
+            if (right >= high || (left < mid && compare(buffer[left], buffer[right]) <= 0)) {
+              order[i] = buffer[left++];
+            } else {
+              order[i] = buffer[right++];
+            }
+          }
+        }
+      }
+      return order;
+    }
+  }
+}
@@ -13,7 +13,6 @@ import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -21,7 +20,6 @@ import java.util.Map;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.jcodec.codecs.h264.mp4.AvcCBox;
@@ -56,6 +54,7 @@ import org.jcodec.containers.mp4.boxes.TrackHeaderBox;
 import org.jcodec.containers.mp4.boxes.TrakBox;
 import org.jcodec.containers.mp4.boxes.VideoSampleEntry;
 import org.jcodec.containers.mp4.boxes.WaveExtension;
+import org.red5.io.FileIndexCache;
 import org.red5.io.IStreamableFile;
 import org.red5.io.ITag;
 import org.red5.io.ITagReader;
@@ -64,7 +63,7 @@ import org.red5.io.amf.Output;
 import org.red5.io.flv.IKeyFrameDataAnalyzer;
 import org.red5.io.flv.impl.Tag;
 import org.red5.io.isobmff.atom.ShortEsdsBox;
-import org.red5.io.mp4.MP4Frame;
+import org.red5.io.mp4.MP4FrameTable;
 import org.red5.io.utils.HexDump;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -116,11 +115,6 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
   /** File dataSource / channel */
   private SeekableByteChannel dataSource;
 
-  /** Mapping between file position and timestamp in ms. */
-  private HashMap<Integer, Long> timePosMap;
-
-  private HashMap<Integer, Long> samplePosMap;
-
   /** Whether or not the clip contains a video track */
   private boolean hasVideo = false;
 
@@ -175,6 +169,9 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
   // samples
   private int[] audioSamples, videoSamples;
 
+  /** Number of entries in the audio and video sample size tables, -1 if there is none */
+  private int audioSampleTotal = -1, videoSampleTotal = -1;
+
   private long audioSampleSize;
 
   // chunk offsets
@@ -190,7 +187,8 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
 
   private int prevVideoTS = -1;
 
-  private List<MP4Frame> frames = new ArrayList<>();
+  /** Frames in playback order */
+  private MP4FrameTable frames = MP4FrameTable.EMPTY;
 
   private long audioCount;
 
@@ -202,14 +200,14 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
   /** Container for metadata and any other tags that should be sent prior to media data. */
   private LinkedList<ITag> firstTags = new LinkedList<>();
 
-  /**
-   * Container for seek points in the video. These are the time stamps for the key frames or
-   * samples.
-   */
-  private LinkedList<Integer> seekPoints;
+  /** Whether the key frames of the video are known, their time stamps are the seek points. */
+  private boolean hasSeekPoints;
 
   private final Semaphore lock = new Semaphore(1, true);
 
+  /** Parsed indexes shared by the readers of the same file */
+  private static final FileIndexCache<Index> indexCache = new FileIndexCache<>(64);
+
   /** Constructs a new MP4Reader. */
   MP4Reader() {}
 
@@ -228,10 +226,18 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
     if (f.exists() && f.canRead()) {
       // create a datasource / channel
       dataSource = NIOUtils.readableChannel(f);
-      // parse the movie
-      parseMovie(dataSource);
-      // analyze the samples/chunks and build the keyframe meta data
-      analyzeFrames();
+      // parse the movie once, other readers of the file share its index and keep their own cursor
+      Index index =
+          indexCache.get(
+              f,
+              file -> {
+                // parse the movie
+                parseMovie(dataSource);
+                // analyze the samples/chunks and build the keyframe meta data
+                analyzeFrames();
+                return new Index(this);
+              });
+      index.apply(this);
       // add meta data
       firstTags.add(createFileMeta());
       // create / add the pre-streaming (decoder config) tags
@@ -971,8 +977,13 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
     // position of the moov atom
     // props.put("moovposition", moovOffset);
     // props.put("chapters", ""); //this is for f4b - books
-    if (seekPoints != null) {
-      log.debug("Seekpoint list size: {}", seekPoints.size());
+    if (hasSeekPoints) {
+      int seekPointCount = frames.getKeyFrameCount();
+      log.debug("Seekpoint list size: {}", seekPointCount);
+      List<Integer> seekPoints = new ArrayList<>(seekPointCount);
+      for (int k = 0; k < seekPointCount; k++) {
+        seekPoints.add(frames.getTime(frames.getKeyFrame(k)));
+      }
       props.put("seekpoints", seekPoints);
     }
     // tags will only appear if there is an "ilst" atom in the file
@@ -990,12 +1001,8 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
       sampleMap.put("sampletype", audioCodecId);
       desc.add(sampleMap);
 
-      if (audioSamples != null) {
-        if (audioSampleDuration > 0) {
-          audioMap.put("length_property", audioSampleDuration * audioSamples.length);
-        }
-        // release some memory
-        audioSamples = null;
+      if (audioSampleTotal >= 0 && audioSampleDuration > 0) {
+        audioMap.put("length_property", audioSampleDuration * audioSampleTotal);
       }
       arr.add(audioMap);
     }
@@ -1010,18 +1017,14 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
       Map<String, String> sampleMap = new HashMap<String, String>(1);
       sampleMap.put("sampletype", videoCodecId);
       desc.add(sampleMap);
-      if (videoSamples != null) {
-        if (videoSampleDuration > 0) {
-          videoMap.put("length_property", videoSampleDuration * videoSamples.length);
-        }
-        // release some memory
-        videoSamples = null;
+      if (videoSampleTotal >= 0 && videoSampleDuration > 0) {
+        videoMap.put("length_property", videoSampleDuration * videoSampleTotal);
       }
       arr.add(videoMap);
     }
     props.put("trackinfo", arr);
     // set this based on existence of seekpoints
-    props.put("canSeekToEnd", (seekPoints != null));
+    props.put("canSeekToEnd", hasSeekPoints);
     out.writeMap(props);
     buf.flip();
     // now that all the meta properties are done, update the duration
@@ -1114,16 +1117,18 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
           return firstTags.removeFirst();
         }
         // get the current frame
-        MP4Frame frame = frames.get(currentFrame);
-        if (frame != null) {
-          log.debug("Playback #{} {}", currentFrame, frame);
-          int sampleSize = frame.getSize();
-          int time = (int) Math.round(frame.getTime() * 1000.0);
+        int frame = currentFrame;
+        if (frame < frames.size()) {
+          if (log.isDebugEnabled()) {
+            log.debug("Playback #{} {}", currentFrame, frames.toString(frame));
+          }
+          int sampleSize = frames.getSize(frame);
+          int time = frames.getTime(frame);
           log.debug("Read tag - time: {}", time);
-          long samplePos = frame.getOffset();
+          long samplePos = frames.getOffset(frame);
           log.debug("Read tag - samplePos {}", samplePos);
           // determine frame type and packet body padding
-          byte type = frame.getType();
+          byte type = frames.getType(frame);
           // assume video type
           int pad = 5;
           if (type == TYPE_AUDIO) {
@@ -1134,7 +1139,7 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
           try {
             // prefix is different for keyframes
             if (type == TYPE_VIDEO) {
-              if (frame.isKeyFrame()) {
+              if (frames.isKeyFrame(frame)) {
                 // log.debug("Writing keyframe prefix");
                 data.put(PREFIX_VIDEO_KEYFRAME);
               } else {
@@ -1201,15 +1206,16 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
    */
   public void analyzeFrames() {
     log.debug("Analyzing frames - video samples/chunks: {}", videoSamplesToChunks);
-    // Maps positions, samples, timestamps to one another
-    timePosMap = new HashMap<>();
-    samplePosMap = new HashMap<>();
+    MP4FrameTable.Builder builder = new MP4FrameTable.Builder();
     // tag == sample
     int sample = 1;
     // position
     Long pos = null;
     // if audio-only, skip this
     if (videoSamplesToChunks != null) {
+      // sync samples are in ascending order, walk them along with the samples
+      int syncIndex = 0;
+      hasSeekPoints = syncSamples != null;
       // handle composite times
       int compositeIndex = 0;
       CompositionOffsetsBox.Entry compositeTimeEntry = null;
@@ -1228,42 +1234,27 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
           long sampleCount = record.getCount(); // record.getSamplesPerChunk();
           pos = videoChunkOffsets[(int) (chunk - 1)];
           while (sampleCount > 0) {
-            // log.debug("Position: {}", pos);
-            samplePosMap.put(sample, pos);
             // calculate ts
             double ts = (videoSampleDuration * (sample - 1)) / videoTimeScale;
             // check to see if the sample is a keyframe
             boolean keyframe = false;
             // some files appear not to have sync samples
             if (syncSamples != null) {
-              keyframe = ArrayUtils.contains(syncSamples, sample);
-              if (seekPoints == null) {
-                seekPoints = new LinkedList<>();
+              while (syncIndex < syncSamples.length && syncSamples[syncIndex] < sample) {
+                syncIndex++;
               }
-              // get the timestamp
-              int frameTs = (int) Math.round(ts * 1000.0);
-              // add each key frames timestamp to the seek points list
-              if (keyframe) {
-                seekPoints.add(frameTs);
-              }
-              timePosMap.put(frameTs, pos);
+              keyframe = syncIndex < syncSamples.length && syncSamples[syncIndex] == sample;
             } else {
               log.debug("No sync samples available");
             }
             // size of the sample
             int size = (int) videoSamples[sample - 1];
-            // create a frame
-            MP4Frame frame = new MP4Frame();
-            frame.setKeyFrame(keyframe);
-            frame.setOffset(pos);
-            frame.setSize(size);
-            frame.setTime(ts);
-            frame.setType(TYPE_VIDEO);
+            int timeOffset = 0;
             // set time offset value from composition records
             if (compositeTimeEntry != null) {
               // how many samples have this offset
               int consecutiveSamples = compositeTimeEntry.getCount();
-              frame.setTimeOffset(compositeTimeEntry.getOffset());
+              timeOffset = compositeTimeEntry.getOffset();
               // increment our count
               compositeIndex++;
               if (compositeIndex - consecutiveSamples == 0) {
@@ -1275,11 +1266,9 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
                 // reset
                 compositeIndex = 0;
               }
-              log.debug("Composite sample #{} {}", sample, frame);
             }
             // add the frame
-            frames.add(frame);
-            log.debug("Sample #{} {}", sample, frame);
+            builder.add(TYPE_VIDEO, pos, size, ts, timeOffset, keyframe);
             // inc and dec stuff
             pos += size;
             sampleCount--;
@@ -1287,7 +1276,6 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
           }
         }
       }
-      log.debug("Sample position map (video): {}", samplePosMap);
     }
     // if video-only, skip this
     if (audioSamplesToChunks != null) {
@@ -1350,14 +1338,8 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
             }
             // set audio sample size
             size = (int) (size != 0 ? size : audioSampleSize);
-            // create a frame
-            MP4Frame frame = new MP4Frame();
-            frame.setOffset(pos);
-            frame.setSize(size);
-            frame.setTime(ts);
-            frame.setType(TYPE_AUDIO);
-            frames.add(frame);
-            // log.debug("Sample #{} {}", sample, frame);
+            // every audio frame is a seek point when there is no video
+            builder.add(TYPE_AUDIO, pos, size, ts, 0, videoSamplesToChunks == null);
             // update counts
             pos += size;
             sampleCount--;
@@ -1367,9 +1349,8 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
       }
     }
     // sort the frames
-    Collections.sort(frames);
-    log.debug("Frames count: {}", frames.size());
-    // log.debug("Frames: {}", frames);
+    frames = builder.build();
+    log.debug("Frames: {}", frames);
     // release some memory
     if (audioSamplesToChunks != null) {
       audioChunkOffsets = null;
@@ -1393,27 +1374,18 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
   public void position(long pos) {
     log.debug("Position: {}", pos);
     log.debug("Current frame: {}", currentFrame);
-    int len = frames.size();
-    MP4Frame frame = null;
-    for (int f = 0; f < len; f++) {
-      frame = frames.get(f);
-      long offset = frame.getOffset();
-      // look for pos to match frame offset or grab the first keyframe
-      // beyond the offset
-      if (pos == offset || (offset > pos && frame.isKeyFrame())) {
-        // ensure that it is a keyframe
-        if (!frame.isKeyFrame()) {
-          log.debug("Frame #{} was not a key frame, so trying again..", f);
-          continue;
-        }
-        log.info("Frame #{} found for seek: {}", f, frame);
-        createPreStreamingTags((int) (frame.getTime() * 1000), true);
-        currentFrame = f;
-        break;
+    // key frame at the position or the first one beyond it
+    int f = frames.seek(pos);
+    if (f >= 0) {
+      log.info("Frame #{} found for seek: {}", f, frames.toString(f));
+      createPreStreamingTags(frames.getTime(f), true);
+      currentFrame = f;
+      if (f > 0) {
+        prevVideoTS = frames.getTime(f - 1);
       }
-      prevVideoTS = (int) (frame.getTime() * 1000);
+    } else if (!frames.isEmpty()) {
+      prevVideoTS = frames.getTime(frames.size() - 1);
     }
-    //
     log.debug("Setting current frame: {}", currentFrame);
   }
 
@@ -1427,10 +1399,8 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
       } catch (IOException e) {
         log.error("Channel close {}", e);
       } finally {
-        if (frames != null) {
-          frames.clear();
-          frames = null;
-        }
+        // the frames are shared with other readers of the file
+        frames = MP4FrameTable.EMPTY;
       }
     }
   }
@@ -1452,29 +1422,113 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
     KeyFrameMeta result = new KeyFrameMeta();
     result.audioOnly = hasAudio && !hasVideo;
     result.duration = duration;
-    if (result.audioOnly) {
-      result.positions = new long[frames.size()];
-      result.timestamps = new int[frames.size()];
-      result.audioOnly = true;
-      for (int i = 0; i < result.positions.length; i++) {
-        frames.get(i).setKeyFrame(true);
-        result.positions[i] = frames.get(i).getOffset();
-        result.timestamps[i] = (int) Math.round(frames.get(i).getTime() * 1000.0);
+    if (result.audioOnly || hasSeekPoints) {
+      // audio frames are all key frames when there is no video
+      int seekPointCount = frames.getKeyFrameCount();
+      result.positions = new long[seekPointCount];
+      result.timestamps = new int[seekPointCount];
+      for (int idx = 0; idx < seekPointCount; idx++) {
+        int frame = frames.getKeyFrame(idx);
+        result.positions[idx] = frames.getOffset(frame);
+        result.timestamps[idx] = frames.getTime(frame);
       }
     } else {
-      if (seekPoints != null) {
-        int seekPointCount = seekPoints.size();
-        result.positions = new long[seekPointCount];
-        result.timestamps = new int[seekPointCount];
-        for (int idx = 0; idx < seekPointCount; idx++) {
-          final Integer ts = seekPoints.get(idx);
-          result.positions[idx] = timePosMap.get(ts);
-          result.timestamps[idx] = ts;
-        }
-      } else {
-        log.warn("Seek points array was null");
-      }
+      log.warn("Seek points array was null");
     }
     return result;
   }
+
+  /**
+   * Setter for the size of the index cache.
+   *
+   * @param size maximum number of parsed files whose index is kept for other readers
+   */
+  public static void setIndexCacheSize(int size) {
+    indexCache.setMaxEntries(size);
+  }
+
+  /**
+   * Read-only result of parsing the movie and analyzing its frames, shared by all the readers of a
+   * file. Readers copy the scalar values and reference the tables, their cursor is their own.
+   */
+  static final class Index {
+
+    private final boolean hasVideo, hasAudio;
+
+    private final String videoCodecId, audioCodecId;
+
+    private final byte[] audioDecoderBytes, videoDecoderBytes;
+
+    private final long duration, timeScale;
+
+    private final int width, height;
+
+    private final double audioTimeScale, videoTimeScale, fps;
+
+    private final int audioChannels, audioCodecType, avcLevel, avcProfile;
+
+    private final long audioSampleDuration, videoSampleDuration;
+
+    private final int audioSampleTotal, videoSampleTotal;
+
+    private final MP4FrameTable frames;
+
+    private final boolean hasSeekPoints;
+
+    Index(MP4Reader reader) {
+      hasVideo = reader.hasVideo;
+      hasAudio = reader.hasAudio;
+      videoCodecId = reader.videoCodecId;
+      audioCodecId = reader.audioCodecId;
+      audioDecoderBytes = reader.audioDecoderBytes;
+      videoDecoderBytes = reader.videoDecoderBytes;
+      duration = reader.duration;
+      timeScale = reader.timeScale;
+      width = reader.width;
+      height = reader.height;
+      audioTimeScale = reader.audioTimeScale;
+      videoTimeScale = reader.videoTimeScale;
+      fps = reader.fps;
+      audioChannels = reader.audioChannels;
+      audioCodecType = reader.audioCodecType;
+      avcLevel = reader.avcLevel;
+      avcProfile = reader.avcProfile;
+      audioSampleDuration = reader.audioSampleDuration;
+      videoSampleDuration = reader.videoSampleDuration;
+      audioSampleTotal = reader.audioSamples != null ? reader.audioSamples.length : -1;
+      videoSampleTotal = reader.videoSamples != null ? reader.videoSamples.length : -1;
+      frames = reader.frames;
+      hasSeekPoints = reader.hasSeekPoints;
+    }
+
+    void apply(MP4Reader reader) {
+      reader.hasVideo = hasVideo;
+      reader.hasAudio = hasAudio;
+      reader.videoCodecId = videoCodecId;
+      reader.audioCodecId = audioCodecId;
+      reader.audioDecoderBytes = audioDecoderBytes;
+      reader.videoDecoderBytes = videoDecoderBytes;
+      reader.duration = duration;
+      reader.timeScale = timeScale;
+      reader.width = width;
+      reader.height = height;
+      reader.audioTimeScale = audioTimeScale;
+      reader.videoTimeScale = videoTimeScale;
+      reader.fps = fps;
+      reader.audioChannels = audioChannels;
+      reader.audioCodecType = audioCodecType;
+      reader.avcLevel = avcLevel;
+      reader.avcProfile = avcProfile;
+      reader.audioSampleDuration = audioSampleDuration;
+      reader.videoSampleDuration = videoSampleDuration;
+      reader.audioSampleTotal = audioSampleTotal;
+      reader.videoSampleTotal = videoSampleTotal;
+      reader.frames = frames;
+      reader.hasSeekPoints = hasSeekPoints;
+      // the parse tables are only needed until the frames are analyzed
+      reader.audioSamples = null;
+      reader.videoSamples = null;
+      reader.compositionTimes = null;
+    }
+  }
 }
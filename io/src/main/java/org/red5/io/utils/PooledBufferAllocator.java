@@ -0,0 +1,325 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.mina.core.buffer.AbstractIoBuffer;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.buffer.IoBufferAllocator;
+
+/**
+ * Buffer allocator with a pool of reference counted buffers, in power of two size classes.
+ *
+ * <p>Buffers from {@link #allocate(int, boolean)} are plain buffers, exactly like those of MINA's
+ * SimpleBufferAllocator, and so is {@code free()} on any buffer: it does nothing. Only buffers
+ * from {@link #allocatePooled(int, boolean)} go back to the pool, once every reference to them was
+ * given back with {@link #release(IoBuffer)}. A pooled buffer starts with one reference; {@link
+ * #retain(IoBuffer)} hands out a view of it holding one more. Views made with {@code duplicate()},
+ * {@code slice()} or {@code asReadOnlyBuffer()} hold no reference and must not outlive the
+ * references of their owners.
+ *
+ * @author The Red5 Project
+ */
+public class PooledBufferAllocator implements IoBufferAllocator {
+
+  /** Smallest size class, 256 bytes */
+  private static final int MIN_SHIFT = 8;
+
+  private final int maxPooledSize;
+
+  private final int maxBuffersPerClass;
+
+  private final Pool[] heapPools;
+
+  private final Pool[] directPools;
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  private final AtomicLong recycled = new AtomicLong();
+
+  /** Creates an allocator pooling up to 32 buffers of each size up to 1MB. */
+  public PooledBufferAllocator() {
+    this(32, 1024 * 1024);
+  }
+
+  /**
+   * Creates an allocator.
+   *
+   * @param maxBuffersPerClass buffers kept per size class and buffer kind
+   * @param maxPooledSize largest buffer size pooled, larger buffers are allocated each time
+   */
+  public PooledBufferAllocator(int maxBuffersPerClass, int maxPooledSize) {
+    this.maxBuffersPerClass = maxBuffersPerClass;
+    this.maxPooledSize = Integer.highestOneBit(Math.max(maxPooledSize, 1 << MIN_SHIFT));
+    int classes = Integer.numberOfTrailingZeros(this.maxPooledSize) - MIN_SHIFT + 1;
+    heapPools = new Pool[classes];
+    directPools = new Pool[classes];
+    for (int i = 0; i < classes; i++) {
+      heapPools[i] = new Pool();
+      directPools[i] = new Pool();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public IoBuffer allocate(int capacity, boolean direct) {
+    return wrap(allocateNioBuffer(capacity, direct));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public ByteBuffer allocateNioBuffer(int capacity, boolean direct) {
+    return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public IoBuffer wrap(ByteBuffer nioBuffer) {
+    return new PooledBuffer(this, nioBuffer, null);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void dispose() {
+    for (int i = 0; i < heapPools.length; i++) {
+      heapPools[i].buffers.clear();
+      directPools[i].buffers.clear();
+    }
+  }
+
+  /**
+   * Allocates a reference counted buffer, taking it from the pool when one of its size class is
+   * available. The buffer has the requested capacity as its limit and holds one reference.
+   *
+   * @param capacity capacity
+   * @param direct true for a direct buffer
+   * @return buffer
+   */
+  public IoBuffer allocatePooled(int capacity, boolean direct) {
+    if (capacity > maxPooledSize) {
+      misses.incrementAndGet();
+      return allocate(capacity, direct);
+    }
+    int sizeClass =
+        Math.max(0, 32 - Integer.numberOfLeadingZeros(Math.max(capacity, 1) - 1) - MIN_SHIFT);
+    Pool pool = direct ? directPools[sizeClass] : heapPools[sizeClass];
+    ByteBuffer buf = pool.buffers.poll();
+    if (buf != null) {
+      pool.size.decrementAndGet();
+      hits.incrementAndGet();
+      buf.clear();
+    } else {
+      misses.incrementAndGet();
+      buf = allocateNioBuffer(1 << (sizeClass + MIN_SHIFT), direct);
+    }
+    buf.limit(capacity);
+    return new PooledBuffer(this, buf, new Ref(this, buf, pool));
+  }
+
+  private void recycle(ByteBuffer buf, Pool pool) {
+    if (pool.size.incrementAndGet() <= maxBuffersPerClass) {
+      pool.buffers.offer(buf);
+      recycled.incrementAndGet();
+    } else {
+      pool.size.decrementAndGet();
+    }
+  }
+
+  /**
+   * Returns whether the buffer is a reference counted buffer or a view of one.
+   *
+   * @param buf buffer
+   * @return true if the buffer comes from the pool
+   */
+  public static boolean isPooled(IoBuffer buf) {
+    return buf instanceof PooledBuffer && ((PooledBuffer) buf).ref != null;
+  }
+
+  /**
+   * Takes one more reference to a pooled buffer. The returned view, with the position, limit and
+   * read-only state of the given buffer, holds the reference until it is passed to {@link
+   * #release(IoBuffer)}. Other buffers are returned as they are.
+   *
+   * @param buf buffer or view of a pooled buffer
+   * @return view holding a reference, or the buffer itself
+   */
+  public static IoBuffer retain(IoBuffer buf) {
+    if (isPooled(buf)) {
+      PooledBuffer pooled = (PooledBuffer) buf;
+      pooled.ref.retain();
+      PooledBuffer view = (PooledBuffer) pooled.duplicate();
+      view.holder.set(true);
+      return view;
+    }
+    return buf;
+  }
+
+  /**
+   * Gives back the reference held by the buffer; the pooled memory is recycled with the last
+   * reference. Does nothing for buffers holding no reference, or whose reference was given back.
+   *
+   * @param buf buffer
+   */
+  public static void release(IoBuffer buf) {
+    if (isPooled(buf)) {
+      PooledBuffer pooled = (PooledBuffer) buf;
+      if (pooled.holder.compareAndSet(true, false)) {
+        pooled.ref.release();
+      }
+    }
+  }
+
+  /**
+   * Returns the number of pooled allocations served from the pool.
+   *
+   * @return hits
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * Returns the number of pooled allocations which had to allocate memory.
+   *
+   * @return misses
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * Returns the number of buffers returned to the pool.
+   *
+   * @return recycled buffers
+   */
+  public long getRecycled() {
+    return recycled.get();
+  }
+
+  /** Free buffers of one size class and kind. */
+  private static final class Pool {
+
+    final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+
+    final AtomicInteger size = new AtomicInteger();
+  }
+
+  /** Reference count of a pooled buffer. */
+  private static final class Ref {
+
+    final PooledBufferAllocator allocator;
+
+    final ByteBuffer buf;
+
+    final Pool pool;
+
+    final AtomicInteger count = new AtomicInteger(1);
+
+    /** Set when an auto-expanding buffer replaced the pooled memory */
+    volatile boolean detached;
+
+    Ref(PooledBufferAllocator allocator, ByteBuffer buf, Pool pool) {
+      this.allocator = allocator;
+      this.buf = buf;
+      this.pool = pool;
+    }
+
+    void retain() {
+      if (count.getAndIncrement() <= 0) {
+        throw new IllegalStateException("Pooled buffer was already released");
+      }
+    }
+
+    void release() {
+      if (count.decrementAndGet() == 0 && !detached) {
+        allocator.recycle(buf, pool);
+      }
+    }
+  }
+
+  private static final class PooledBuffer extends AbstractIoBuffer {
+
+    private ByteBuffer buf;
+
+    private final Ref ref;
+
+    /** Whether this buffer holds one of the references */
+    private final AtomicBoolean holder;
+
+    PooledBuffer(IoBufferAllocator allocator, ByteBuffer buf, Ref ref) {
+      super(allocator, buf.capacity());
+      this.buf = buf;
+      this.ref = ref;
+      this.holder = new AtomicBoolean(ref != null);
+      buf.order(ByteOrder.BIG_ENDIAN);
+    }
+
+    PooledBuffer(PooledBuffer parent, ByteBuffer buf) {
+      super(parent);
+      this.buf = buf;
+      this.ref = parent.ref;
+      this.holder = new AtomicBoolean();
+    }
+
+    @Override
+    public ByteBuffer buf() {
+      return buf;
+    }
+
+    @Override
+    protected void buf(ByteBuffer newBuf) {
+      if (ref != null) {
+        ref.detached = true;
+      }
+      buf = newBuf;
+    }
+
+    @Override
+    protected IoBuffer duplicate0() {
+      return new PooledBuffer(this, buf.duplicate());
+    }
+
+    @Override
+    protected IoBuffer slice0() {
+      return new PooledBuffer(this, buf.slice());
+    }
+
+    @Override
+    protected IoBuffer asReadOnlyBuffer0() {
+      return new PooledBuffer(this, buf.asReadOnlyBuffer());
+    }
+
+    @Override
+    public byte[] array() {
+      return buf.array();
+    }
+
+    @Override
+    public int arrayOffset() {
+      return buf.arrayOffset();
+    }
+
+    @Override
+    public boolean hasArray() {
+      return buf.hasArray();
+    }
+
+    @Override
+    public void free() {
+      // references are given back with release, like simple buffers there is nothing to free
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package org.red5.cache.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.Test;
+
+public class WeightedCacheImplTest {
+
+  private static CacheableImpl segment(int size) {
+    return new CacheableImpl(IoBuffer.wrap(new byte[size]));
+  }
+
+  @Test
+  public void testByteBudget() {
+    WeightedCacheImpl cache = new WeightedCacheImpl();
+    cache.setMaxBytes(10000);
+    for (int i = 0; i < 100; i++) {
+      cache.put("segment-" + i, segment(1000));
+      assertTrue(cache.getResidentBytes() <= 10000);
+    }
+    assertEquals(10, cache.getSize());
+    assertEquals(10000, cache.getResidentBytes());
+    assertEquals(90, cache.getEvictionCount());
+    assertEquals(90000, cache.getEvictedBytes());
+    // larger than the whole cache
+    assertFalse(cache.offer("movie", segment(20000)));
+    assertEquals(1, cache.getRejectionCount());
+    cache.destroy();
+    assertEquals(0, cache.getSize());
+    assertEquals(0, cache.getResidentBytes());
+  }
+
+  @Test
+  public void testHotEntriesSurviveScan() {
+    WeightedCacheImpl cache = new WeightedCacheImpl();
+    cache.setMaxBytes(20000);
+    for (int i = 0; i < 10; i++) {
+      cache.put("hot-" + i, segment(1000));
+    }
+    for (int round = 0; round < 5; round++) {
+      for (int i = 0; i < 10; i++) {
+        assertNotNull(cache.get("hot-" + i));
+      }
+    }
+    // requested once each, as when a viewer plays a cold file through
+    for (int i = 0; i < 1000; i++) {
+      if (cache.get("cold-" + i) == null) {
+        cache.offer("cold-" + i, segment(1000));
+      }
+    }
+    for (int i = 0; i < 10; i++) {
+      assertNotNull("hot-" + i, cache.get("hot-" + i));
+    }
+    assertTrue(cache.getResidentBytes() <= 20000);
+    assertEquals(60, cache.getHitCount());
+    assertEquals(1000, cache.getMissCount());
+    assertEquals(60 / 1060d, cache.getHitRatio(), 0.0001);
+  }
+
+  @Test
+  public void testReplaceAndRemove() {
+    WeightedCacheImpl cache = new WeightedCacheImpl();
+    cache.put("segment", segment(100));
+    assertFalse(cache.offer("segment", segment(200)));
+    assertEquals(100, cache.getResidentBytes());
+    cache.put("segment", segment(300));
+    assertEquals(300, cache.get("segment").getBytes().length);
+    assertEquals(300, cache.getResidentBytes());
+    assertTrue(cache.remove("segment"));
+    assertNull(cache.get("segment"));
+    assertEquals(0, cache.getResidentBytes());
+  }
+}
@@ -0,0 +1,102 @@
+package org.red5.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.red5.io.flv.IKeyFrameDataAnalyzer.KeyFrameMeta;
+
+public class BinaryKeyFrameMetaCacheTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private static KeyFrameMeta meta() {
+    KeyFrameMeta meta = new KeyFrameMeta();
+    meta.duration = 2000;
+    meta.audioOnly = true;
+    meta.videoCodecId = 7;
+    meta.audioCodecId = 10;
+    meta.positions = new long[] {13, 1024, 1L << 33};
+    meta.timestamps = new int[] {0, 1000, 2000};
+    return meta;
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    File file = folder.newFile("movie.flv");
+    Files.write(file.toPath(), new byte[] {1, 2, 3});
+    BinaryKeyFrameMetaCache cache = new BinaryKeyFrameMetaCache();
+    assertNull(cache.loadKeyFrameMeta(file));
+    cache.saveKeyFrameMeta(file, meta());
+    KeyFrameMeta loaded = cache.loadKeyFrameMeta(file);
+    assertNotNull(loaded);
+    assertEquals(2000, loaded.duration);
+    assertTrue(loaded.audioOnly);
+    assertEquals(7, loaded.videoCodecId);
+    assertEquals(10, loaded.audioCodecId);
+    assertArrayEquals(meta().positions, loaded.positions);
+    assertArrayEquals(meta().timestamps, loaded.timestamps);
+    // the file changed
+    Files.write(file.toPath(), new byte[] {1, 2, 3, 4});
+    assertNull(cache.loadKeyFrameMeta(file));
+    cache.removeKeyFrameMeta(file);
+    assertFalse(new File(file.getPath() + BinaryKeyFrameMetaCache.EXTENSION).exists());
+  }
+
+  @Test
+  public void testMigrateXml() throws Exception {
+    File file = folder.newFile("movie.flv");
+    Files.write(file.toPath(), new byte[] {1, 2, 3});
+    new FileKeyFrameMetaCache().saveKeyFrameMeta(file, meta());
+    File xml = new File(file.getPath() + ".meta");
+    assertTrue(xml.exists());
+    CachingBinaryKeyFrameMetaCache cache = new CachingBinaryKeyFrameMetaCache();
+    KeyFrameMeta loaded = cache.loadKeyFrameMeta(file);
+    assertNotNull(loaded);
+    assertArrayEquals(meta().positions, loaded.positions);
+    assertArrayEquals(meta().timestamps, loaded.timestamps);
+    // kept by default
+    assertTrue(xml.exists());
+    assertTrue(new File(file.getPath() + BinaryKeyFrameMetaCache.EXTENSION).exists());
+    assertSame(loaded, cache.loadKeyFrameMeta(file));
+    // converted file is read by a new cache
+    assertArrayEquals(
+        meta().positions, new BinaryKeyFrameMetaCache().loadKeyFrameMeta(file).positions);
+  }
+
+  @Test
+  public void testRemoveLegacy() throws Exception {
+    File file = folder.newFile("movie.flv");
+    Files.write(file.toPath(), new byte[] {1, 2, 3});
+    new FileKeyFrameMetaCache().saveKeyFrameMeta(file, meta());
+    File xml = new File(file.getPath() + ".meta");
+    BinaryKeyFrameMetaCache cache = new BinaryKeyFrameMetaCache();
+    cache.setRemoveLegacy(true);
+    assertNotNull(cache.loadKeyFrameMeta(file));
+    assertFalse(xml.exists());
+    assertTrue(new File(file.getPath() + BinaryKeyFrameMetaCache.EXTENSION).exists());
+  }
+
+  @Test
+  public void testCachingFileCacheKeepsXml() throws Exception {
+    File file = folder.newFile("movie.flv");
+    Files.write(file.toPath(), new byte[] {1, 2, 3});
+    CachingFileKeyFrameMetaCache cache = new CachingFileKeyFrameMetaCache();
+    assertTrue(cache instanceof FileKeyFrameMetaCache);
+    cache.saveKeyFrameMeta(file, meta());
+    assertTrue(new File(file.getPath() + ".meta").exists());
+    assertFalse(new File(file.getPath() + BinaryKeyFrameMetaCache.EXTENSION).exists());
+    KeyFrameMeta loaded = cache.loadKeyFrameMeta(file);
+    assertArrayEquals(meta().positions, loaded.positions);
+    assertSame(loaded, cache.loadKeyFrameMeta(file));
+  }
+}
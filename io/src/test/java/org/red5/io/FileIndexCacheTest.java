@@ -0,0 +1,81 @@
+package org.red5.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileIndexCacheTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testConcurrentReadersParseOnce() throws Exception {
+    File file = folder.newFile("movie.mp4");
+    Files.write(file.toPath(), new byte[] {1, 2, 3});
+    FileIndexCache<Object> cache = new FileIndexCache<>(4);
+    AtomicInteger parses = new AtomicInteger();
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Object>> results = new ArrayList<>();
+      for (int i = 0; i < 32; i++) {
+        results.add(
+            executor.submit(
+                () -> {
+                  start.await();
+                  return cache.get(
+                      file,
+                      f -> {
+                        parses.incrementAndGet();
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+                        return new Object();
+                      });
+                }));
+      }
+      start.countDown();
+      Object index = results.get(0).get(5, TimeUnit.SECONDS);
+      for (Future<Object> result : results) {
+        assertSame(index, result.get(5, TimeUnit.SECONDS));
+      }
+      assertEquals(1, parses.get());
+      assertEquals(31, cache.getHits());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testChangedFileIsParsedAgain() throws Exception {
+    File file = folder.newFile("movie.flv");
+    Files.write(file.toPath(), new byte[] {1, 2, 3});
+    FileIndexCache<Object> cache = new FileIndexCache<>(1);
+    Object index = cache.get(file, f -> new Object());
+    assertSame(index, cache.get(file, f -> new Object()));
+    // grown while recording
+    Files.write(file.toPath(), new byte[] {1, 2, 3, 4});
+    Object grown = cache.get(file, f -> new Object());
+    assertNotSame(index, grown);
+    file.setLastModified(file.lastModified() - 10000);
+    assertNotSame(grown, cache.get(file, f -> new Object()));
+    // the least recently used file is dropped
+    File other = folder.newFile("other.flv");
+    cache.get(other, f -> new Object());
+    assertEquals(1, cache.getSize());
+    assertEquals(4, cache.getMisses());
+  }
+}
@@ -6,6 +6,9 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.mina.core.buffer.IoBuffer;
 import org.junit.Test;
 import org.red5.io.ITag;
 import org.slf4j.Logger;
@@ -139,4 +142,40 @@ public class FLVReaderTest {
       e.printStackTrace();
     }
   }
+
+  @Test
+  public void testMappedFile() throws IOException {
+    File file = Paths.get("target/test-classes/fixtures/h264_aac.flv").toFile();
+    List<IoBuffer> expected = new ArrayList<>();
+    FLVReader reader = new FLVReader(file, true);
+    while (reader.hasMoreTags()) {
+      ITag tag = reader.readTag();
+      if (tag != null) {
+        expected.add(tag.getBody());
+      }
+    }
+    reader.close();
+    try {
+      FLVReader.setBufferType("mapped");
+      assertEquals("mapped", FLVReader.getBufferType());
+      // two readers sharing the mapping, read in turns
+      FLVReader first = new FLVReader(file, true);
+      FLVReader second = new FLVReader(file, true);
+      int read = 0;
+      while (first.hasMoreTags() && second.hasMoreTags()) {
+        ITag tag = first.readTag();
+        ITag other = second.readTag();
+        if (tag != null) {
+          assertEquals(tag.getDataType() != ITag.TYPE_METADATA, tag.getBody().isDirect());
+          assertEquals(expected.get(read++), tag.getBody());
+          assertEquals(tag.getBody(), other.getBody());
+        }
+      }
+      assertEquals(expected.size(), read);
+      first.close();
+      second.close();
+    } finally {
+      FLVReader.setBufferType("auto");
+    }
+  }
 }
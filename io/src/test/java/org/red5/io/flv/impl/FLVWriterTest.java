@@ -0,0 +1,99 @@
+package org.red5.io.flv.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.red5.io.ITag;
+import org.red5.io.amf.Input;
+import org.red5.io.object.Deserializer;
+
+public class FLVWriterTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  /** Records the tags of a fixture, leaving its metadata out, and returns the duration. */
+  private static long record(File file) throws IOException {
+    FLVReader reader =
+        new FLVReader(Paths.get("target/test-classes/fixtures/h264_aac.flv").toFile(), false);
+    FLVWriter writer = new FLVWriter(file.toPath(), false);
+    long duration = 0;
+    while (reader.hasMoreTags()) {
+      ITag tag = reader.readTag();
+      if (tag != null && tag.getDataType() != ITag.TYPE_METADATA) {
+        writer.writeTag(tag);
+        duration = Math.max(duration, tag.getTimestamp());
+      }
+    }
+    reader.close();
+    writer.close();
+    return duration;
+  }
+
+  private static List<ITag> read(File file) throws IOException {
+    List<ITag> tags = new ArrayList<>();
+    FLVReader reader = new FLVReader(file, false);
+    while (reader.hasMoreTags()) {
+      ITag tag = reader.readTag();
+      if (tag != null) {
+        tags.add(tag);
+      }
+    }
+    reader.close();
+    return tags;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> metadata(ITag tag) {
+    assertEquals(ITag.TYPE_METADATA, tag.getDataType());
+    Input input = new Input(tag.getBody());
+    assertEquals("onMetaData", Deserializer.deserialize(input, String.class));
+    return Deserializer.deserialize(input, Map.class);
+  }
+
+  @Test
+  public void testWriteInPlace() throws IOException {
+    File copied = folder.newFile("copied.flv");
+    long duration = record(copied);
+    File inPlace = folder.newFile("inplace.flv");
+    try {
+      FLVWriter.setWriteInPlace(true);
+      assertEquals(duration, record(inPlace));
+    } finally {
+      FLVWriter.setWriteInPlace(false);
+    }
+    assertFalse(new File(inPlace.getPath() + ".ser").exists());
+    assertFalse(new File(inPlace.getPath() + ".info").exists());
+    byte[] header = Files.readAllBytes(inPlace.toPath());
+    // audio and video flags
+    assertEquals(5, header[4]);
+    List<ITag> expected = read(copied);
+    List<ITag> tags = read(inPlace);
+    assertEquals(expected.size(), tags.size());
+    // padded to the reserved size
+    assertEquals(1024, tags.get(0).getBodySize());
+    Map<String, Object> meta = metadata(tags.get(0));
+    Map<String, Object> expectedMeta = metadata(expected.get(0));
+    assertEquals(duration / 1000d, (Double) meta.get("duration"), 0.0001);
+    expectedMeta.remove("recordeddate");
+    for (String key : expectedMeta.keySet()) {
+      assertEquals(key, expectedMeta.get(key), meta.get(key));
+    }
+    for (int i = 1; i < tags.size(); i++) {
+      assertEquals(expected.get(i).getDataType(), tags.get(i).getDataType());
+      assertEquals(expected.get(i).getTimestamp(), tags.get(i).getTimestamp());
+      assertEquals(expected.get(i).getBody(), tags.get(i).getBody());
+    }
+    assertTrue(tags.size() > 1);
+  }
+}
@@ -0,0 +1,79 @@
+package org.red5.io.mp4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import org.red5.io.IoConstants;
+
+public class MP4FrameTableTest {
+
+  @Test
+  public void testSortMatchesFrames() {
+    Random random = new Random(42);
+    MP4FrameTable.Builder builder = new MP4FrameTable.Builder();
+    List<MP4Frame> frames = new ArrayList<>();
+    // video then audio, each in order, as the reader adds them
+    long pos = 0;
+    for (int sample = 0; sample < 3000; sample++) {
+      int size = 100 + random.nextInt(1000);
+      boolean keyFrame = sample % 30 == 0;
+      builder.add(IoConstants.TYPE_VIDEO, pos, size, sample / 30d, sample % 3, keyFrame);
+      frames.add(frame(IoConstants.TYPE_VIDEO, pos, size, sample / 30d, keyFrame));
+      pos += size + 200;
+    }
+    pos = 100;
+    for (int sample = 0; sample < 4300; sample++) {
+      builder.add(IoConstants.TYPE_AUDIO, pos, 6, sample * 1024 / 44100d, 0, false);
+      frames.add(frame(IoConstants.TYPE_AUDIO, pos, 6, sample * 1024 / 44100d, false));
+      pos += 6;
+    }
+    MP4FrameTable table = builder.build();
+    Collections.sort(frames);
+    assertEquals(frames.size(), table.size());
+    for (int i = 0; i < frames.size(); i++) {
+      MP4Frame frame = frames.get(i);
+      assertEquals(frame.getType(), table.getType(i));
+      assertEquals(frame.getOffset(), table.getOffset(i));
+      assertEquals(frame.getSize(), table.getSize(i));
+      assertEquals(Math.round(frame.getTime() * 1000.0), table.getTime(i));
+      assertEquals(frame.isKeyFrame(), table.isKeyFrame(i));
+    }
+    assertEquals(100, table.getKeyFrameCount());
+  }
+
+  @Test
+  public void testSeek() {
+    MP4FrameTable.Builder builder = new MP4FrameTable.Builder();
+    for (int sample = 0; sample < 100; sample++) {
+      long offset = 1000 + sample * 10;
+      builder.add(IoConstants.TYPE_VIDEO, offset, 10, sample / 10d, 0, sample % 10 == 0);
+    }
+    MP4FrameTable table = builder.build();
+    assertEquals(0, table.seek(0));
+    assertEquals(0, table.seek(1000));
+    assertEquals(10, table.seek(1001));
+    assertEquals(50, table.seek(1500));
+    assertEquals(90, table.seek(1900));
+    assertEquals(-1, table.seek(1901));
+    assertTrue(table.isKeyFrame(table.getKeyFrame(5)));
+    assertFalse(table.isKeyFrame(51));
+    assertTrue(MP4FrameTable.EMPTY.isEmpty());
+    assertEquals(-1, MP4FrameTable.EMPTY.seek(0));
+  }
+
+  private static MP4Frame frame(byte type, long offset, int size, double time, boolean keyFrame) {
+    MP4Frame frame = new MP4Frame();
+    frame.setType(type);
+    frame.setOffset(offset);
+    frame.setSize(size);
+    frame.setTime(time);
+    frame.setKeyFrame(keyFrame);
+    return frame;
+  }
+}
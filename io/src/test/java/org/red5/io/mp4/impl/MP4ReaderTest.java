@@ -51,6 +51,27 @@ public class MP4ReaderTest extends TestCase {
     log.info("----------------------------------------------------------------------------------");
   }
 
+  @Test
+  public void testSharedIndex() throws Exception {
+    File file = new File("target/test-classes/fixtures/sample.mp4");
+    MP4Reader first = new MP4Reader(file);
+    MP4Reader second = new MP4Reader(file);
+    // both readers use the same parsed frames and keep their own position
+    assertEquals(
+        first.analyzeKeyFrames().positions.length, second.analyzeKeyFrames().positions.length);
+    ITag tag = null;
+    for (int t = 0; t < 10; t++) {
+      tag = first.readTag();
+    }
+    ITag other = second.readTag();
+    assertEquals(0, other.getTimestamp());
+    assertTrue(tag.getTimestamp() >= other.getTimestamp());
+    first.close();
+    assertTrue(second.hasMoreTags());
+    assertNotNull(second.readTag());
+    second.close();
+  }
+
   @Test
   public void testBytes() throws Exception {
     // 00 40 94 00 00 00 00 00 00 00 06 ==
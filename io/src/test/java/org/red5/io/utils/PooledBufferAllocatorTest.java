@@ -0,0 +1,52 @@
+package org.red5.io.utils;
+
+import static org.junit.Assert.*;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.Test;
+
+public class PooledBufferAllocatorTest {
+
+  @Test
+  public void testRecycleOnLastRelease() {
+    PooledBufferAllocator allocator = new PooledBufferAllocator(4, 4096);
+    IoBuffer buf = allocator.allocatePooled(1000, false);
+    assertTrue(PooledBufferAllocator.isPooled(buf));
+    assertEquals(1000, buf.limit());
+    assertEquals(1024, buf.capacity());
+    buf.putInt(42);
+    IoBuffer reader = PooledBufferAllocator.retain(buf.asReadOnlyBuffer().flip());
+    assertTrue(reader.isReadOnly());
+    // free is inert, the reader still holds a reference
+    buf.free();
+    PooledBufferAllocator.release(buf);
+    PooledBufferAllocator.release(buf);
+    assertEquals(0, allocator.getRecycled());
+    assertEquals(42, reader.getInt());
+    PooledBufferAllocator.release(reader);
+    assertEquals(1, allocator.getRecycled());
+    // the same memory serves the next buffer of the size class
+    allocator.allocatePooled(600, false);
+    assertEquals(1, allocator.getHits());
+    assertEquals(1, allocator.getMisses());
+  }
+
+  @Test
+  public void testPlainBuffers() {
+    PooledBufferAllocator allocator = new PooledBufferAllocator();
+    IoBuffer buf = allocator.allocate(100, false);
+    assertFalse(PooledBufferAllocator.isPooled(buf));
+    assertSame(buf, PooledBufferAllocator.retain(buf));
+    // oversized buffers are not pooled
+    assertFalse(PooledBufferAllocator.isPooled(allocator.allocatePooled(2 * 1024 * 1024, false)));
+  }
+
+  @Test
+  public void testExpandedBufferIsNotRecycled() {
+    PooledBufferAllocator allocator = new PooledBufferAllocator();
+    IoBuffer buf = allocator.allocatePooled(256, false).setAutoExpand(true);
+    buf.put(new byte[300]);
+    PooledBufferAllocator.release(buf);
+    assertEquals(0, allocator.getRecycled());
+  }
+}
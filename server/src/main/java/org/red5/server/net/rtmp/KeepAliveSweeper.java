@@ -0,0 +1,160 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+package org.red5.server.net.rtmp;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Runs the keep-alive of all RTMP connections from one thread, instead of a scheduled task per
+ * connection. Connections are spread over shards by session id and every tick sweeps the next
+ * shard, so a full round over all connections takes one sweep interval and the pings are spread
+ * over it. Each connection still pings at its own ping interval; the closing of inactive
+ * connections is handed to the message executor so it does not delay the sweep.
+ *
+ * @author The Red5 Project
+ */
+public class KeepAliveSweeper {
+
+  private static final Logger log = LoggerFactory.getLogger(KeepAliveSweeper.class);
+
+  private final Set<RTMPConnection>[] shards;
+
+  private final long interval;
+
+  private ScheduledExecutorService executor;
+
+  /** Next shard to sweep, only used by the sweeper thread */
+  private int next;
+
+  /** Duration of the current round so far, only used by the sweeper thread */
+  private long roundNanos;
+
+  private volatile long sweepDuration = -1;
+
+  private volatile long maxShardSweepDuration = -1;
+
+  private final AtomicLong keepAliveCount = new AtomicLong();
+
+  /**
+   * Creates a sweeper.
+   *
+   * @param shards number of shards
+   * @param interval milliseconds for a round over all shards
+   */
+  @SuppressWarnings("unchecked")
+  public KeepAliveSweeper(int shards, long interval) {
+    this.shards = new Set[Math.max(shards, 1)];
+    for (int i = 0; i < this.shards.length; i++) {
+      this.shards[i] = ConcurrentHashMap.newKeySet();
+    }
+    this.interval = interval;
+  }
+
+  /** Starts sweeping. */
+  public void start() {
+    long tick = Math.max(interval / shards.length, 1);
+    executor =
+        Executors.newSingleThreadScheduledExecutor(
+            new CustomizableThreadFactory("KeepAliveSweeper-"));
+    executor.scheduleAtFixedRate(this::sweep, tick, tick, TimeUnit.MILLISECONDS);
+  }
+
+  /** Stops sweeping. */
+  public void stop() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Adds a connection, it is swept once it is established.
+   *
+   * @param conn connection
+   */
+  public void add(RTMPConnection conn) {
+    shard(conn).add(conn);
+  }
+
+  /**
+   * Removes a connection.
+   *
+   * @param conn connection
+   */
+  public void remove(RTMPConnection conn) {
+    shard(conn).remove(conn);
+  }
+
+  private Set<RTMPConnection> shard(RTMPConnection conn) {
+    return shards[(conn.getSessionId().hashCode() & Integer.MAX_VALUE) % shards.length];
+  }
+
+  /** Sweeps the next shard. */
+  void sweep() {
+    sweep(System.currentTimeMillis());
+  }
+
+  /**
+   * Sweeps the next shard.
+   *
+   * @param now current time
+   */
+  void sweep(long now) {
+    long start = System.nanoTime();
+    for (RTMPConnection conn : shards[next]) {
+      try {
+        if (conn.sweepKeepAlive(now)) {
+          keepAliveCount.incrementAndGet();
+        }
+      } catch (Exception e) {
+        log.warn("Exception in keepalive for {}", conn.getSessionId(), e);
+      }
+    }
+    long duration = System.nanoTime() - start;
+    maxShardSweepDuration = Math.max(maxShardSweepDuration, duration / 1000);
+    roundNanos += duration;
+    if (++next == shards.length) {
+      next = 0;
+      sweepDuration = roundNanos / 1000;
+      roundNanos = 0;
+    }
+  }
+
+  /**
+   * Returns how long the last round over all shards took.
+   *
+   * @return microseconds, -1 before the first round
+   */
+  public long getSweepDuration() {
+    return sweepDuration;
+  }
+
+  /**
+   * Returns how long the longest sweep of a single shard took.
+   *
+   * @return microseconds, -1 before the first sweep
+   */
+  public long getMaxShardSweepDuration() {
+    return maxShardSweepDuration;
+  }
+
+  /**
+   * Returns the number of keep-alive checks run.
+   *
+   * @return keep-alive checks
+   */
+  public long getKeepAliveCount() {
+    return keepAliveCount.get();
+  }
+}
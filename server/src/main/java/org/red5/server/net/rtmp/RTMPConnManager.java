@@ -7,6 +7,7 @@
 
 package org.red5.server.net.rtmp;
 
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -17,25 +18,36 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 import org.red5.server.BaseConnection;
+import org.red5.server.jmx.mxbeans.RTMPConnManagerMXBean;
 import org.red5.server.net.IConnectionManager;
 import org.red5.server.net.rtmpt.RTMPTConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
 /**
- * Responsible for management and creation of RTMP based connections.
+ * Responsible for management and creation of RTMP based connections. With the keep-alive sweep
+ * enabled, a single {@link KeepAliveSweeper} pings and checks the connections instead of a
+ * scheduled task per connection.
  *
  * @author The Red5 Project
  */
 public class RTMPConnManager
-    implements IConnectionManager<BaseConnection>, ApplicationContextAware, DisposableBean {
+    implements IConnectionManager<BaseConnection>,
+        RTMPConnManagerMXBean,
+        ApplicationContextAware,
+        InitializingBean,
+        DisposableBean {
 
   private static final Logger log = LoggerFactory.getLogger(RTMPConnManager.class);
 
@@ -53,6 +65,19 @@ public class RTMPConnManager
 
   protected boolean debug;
 
+  /** Whether the keep-alive of the connections is run by the sweeper */
+  protected boolean keepAliveSweep;
+
+  /** Milliseconds for a sweep over all connections */
+  protected int sweepInterval = 5000;
+
+  /** Number of shards the connections are spread over, one is swept per tick */
+  protected int sweepShards = 16;
+
+  protected KeepAliveSweeper sweeper;
+
+  private ObjectName oName;
+
   public static IConnectionManager<BaseConnection> getInstance() {
     if (instance == null) {
       log.trace("Connection manager instance does not exist");
@@ -67,6 +92,33 @@ public class RTMPConnManager
     return instance;
   }
 
+  @Override
+  public void afterPropertiesSet() throws Exception {
+    if (keepAliveSweep) {
+      sweeper = new KeepAliveSweeper(sweepShards, sweepInterval);
+      sweeper.start();
+      log.debug("Keep-alive sweeper started with {} shards", sweepShards);
+    }
+    try {
+      MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+      String cName = this.getClass().getName();
+      if (cName.indexOf('.') != -1) {
+        cName = cName.substring(cName.lastIndexOf('.')).replaceFirst("[\\.]", "");
+      }
+      oName = new ObjectName(String.format("org.red5.server:type=%s", cName));
+      // don't reregister
+      if (!mbs.isRegistered(oName)) {
+        mbs.registerMBean(new StandardMBean(this, RTMPConnManagerMXBean.class, true), oName);
+      } else {
+        log.debug("Connection manager is already registered in JMX");
+        oName = null;
+      }
+    } catch (Exception e) {
+      log.warn("Error on jmx registration", e);
+      oName = null;
+    }
+  }
+
   public void createConnectionChecker() {
     executor =
         Executors.newScheduledThreadPool(1, new CustomizableThreadFactory("ConnectionChecker-"));
@@ -121,6 +173,10 @@ public class RTMPConnManager
           ((RTMPConnection) conn)
               .setScheduler((ThreadPoolTaskScheduler) applicationContext.getBean("rtmpScheduler"));
         }
+        if (sweeper != null) {
+          ((RTMPConnection) conn).setKeepAliveSwept(true);
+          sweeper.add((RTMPConnection) conn);
+        }
         log.trace("Connection created: {}", conn);
       } catch (Exception ex) {
         log.warn("Exception creating connection", ex);
@@ -170,6 +226,9 @@ public class RTMPConnManager
     BaseConnection conn = connMap.remove(sessionId);
     if (conn != null) {
       log.trace("Connections: {}", conns.decrementAndGet());
+      if (sweeper != null && conn instanceof RTMPConnection) {
+        sweeper.remove((RTMPConnection) conn);
+      }
     }
     return conn;
   }
@@ -215,6 +274,47 @@ public class RTMPConnManager
     return conn;
   }
 
+  /** {@inheritDoc} */
+  public int getConnectionCount() {
+    return connMap.size();
+  }
+
+  /** {@inheritDoc} */
+  public long getSweepDuration() {
+    return sweeper != null ? sweeper.getSweepDuration() : -1;
+  }
+
+  /** {@inheritDoc} */
+  public long getMaxShardSweepDuration() {
+    return sweeper != null ? sweeper.getMaxShardSweepDuration() : -1;
+  }
+
+  /** {@inheritDoc} */
+  public long getKeepAliveCount() {
+    return sweeper != null ? sweeper.getKeepAliveCount() : 0;
+  }
+
+  /**
+   * @param keepAliveSweep true to run the keep-alive of the connections from the sweeper
+   */
+  public void setKeepAliveSweep(boolean keepAliveSweep) {
+    this.keepAliveSweep = keepAliveSweep;
+  }
+
+  /**
+   * @param sweepInterval milliseconds for a sweep over all connections
+   */
+  public void setSweepInterval(int sweepInterval) {
+    this.sweepInterval = sweepInterval;
+  }
+
+  /**
+   * @param sweepShards number of shards the connections are spread over
+   */
+  public void setSweepShards(int sweepShards) {
+    this.sweepShards = sweepShards;
+  }
+
   /**
    * @param debug the debug to set
    */
@@ -232,6 +332,18 @@ public class RTMPConnManager
     if (checkerFuture != null && !checkerFuture.isDone()) {
       checkerFuture.cancel(true);
     }
-    executor.shutdownNow();
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+    if (sweeper != null) {
+      sweeper.stop();
+    }
+    if (oName != null) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(oName);
+      } catch (Exception e) {
+        log.warn("Exception unregistering: {}", oName, e);
+      }
+    }
   }
 }
@@ -27,6 +27,7 @@ import org.red5.server.net.IConnectionManager;
 import org.red5.server.net.rtmp.codec.RTMP;
 import org.red5.server.net.rtmp.codec.RTMPMinaCodecFactory;
 import org.red5.server.net.rtmp.message.Packet;
+import org.red5.server.net.rtmp.message.PacketBatch;
 import org.red5.server.net.rtmpe.RTMPEIoFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -53,6 +54,9 @@ public class RTMPMinaIoHandler extends IoHandlerAdapter {
   /** RTMP events handler */
   protected IRTMPHandler handler;
 
+  /** Admission stage for new sessions, null to admit every session */
+  protected ConnectionAdmission admission;
+
   /** {@inheritDoc} */
   @Override
   public void sessionCreated(IoSession session) throws Exception {
@@ -91,6 +95,11 @@ public class RTMPMinaIoHandler extends IoHandlerAdapter {
       // add the in-bound handshake, defaults to non-encrypted mode
       session.setAttribute(RTMPConnection.RTMP_HANDSHAKE, handshake);
       log.debug("Created: {}", sessionId);
+      // the handshake is only read, and its timeout only starts, once the session is admitted
+      if (admission != null && !admission.admit(session, conn::onAdmitted)) {
+        log.info("Rejecting {}, too many connections pending", session.getRemoteAddress());
+        session.closeNow();
+      }
     } else {
       sessionId = (String) session.getAttribute(RTMPConnection.RTMP_SESSION_ID);
       log.warn("Session previously created: {} id: {}", session.getId(), sessionId);
@@ -142,6 +151,7 @@ public class RTMPMinaIoHandler extends IoHandlerAdapter {
   public void sessionClosed(IoSession session) throws Exception {
     String sessionId = (String) session.getAttribute(RTMPConnection.RTMP_SESSION_ID);
     log.debug("Session closed: {} id: {}", session.getId(), sessionId);
+    ConnectionAdmission.release(session);
     if (isTrace) {
       log.trace("Session attributes: {}", session.getAttributeKeys());
     }
@@ -222,6 +232,10 @@ public class RTMPMinaIoHandler extends IoHandlerAdapter {
           case RTMP.STATE_CONNECTED:
             if (message instanceof Packet) {
               handler.messageSent(conn, (Packet) message);
+            } else if (message instanceof PacketBatch) {
+              for (Packet packet : ((PacketBatch) message).getPackets()) {
+                handler.messageSent(conn, packet);
+              }
             } else if (isDebug) {
               log.debug(
                   "Message was not of Packet type; its type: {}",
@@ -339,6 +353,24 @@ public class RTMPMinaIoHandler extends IoHandlerAdapter {
     this.handler = handler;
   }
 
+  /**
+   * Setter for the admission stage.
+   *
+   * @param admission admission stage, null to admit every session
+   */
+  public void setAdmission(ConnectionAdmission admission) {
+    this.admission = admission;
+  }
+
+  /**
+   * Getter for the admission stage.
+   *
+   * @return admission stage or null
+   */
+  public ConnectionAdmission getAdmission() {
+    return admission;
+  }
+
   /**
    * @param codecFactory the codecFactory to set
    */
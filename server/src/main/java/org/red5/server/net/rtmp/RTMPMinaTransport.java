@@ -32,6 +32,7 @@ import org.apache.mina.transport.socket.SocketSessionConfig;
 import org.apache.mina.transport.socket.nio.NioProcessor;
 import org.apache.mina.transport.socket.nio.NioSession;
 import org.apache.mina.transport.socket.nio.NioSocketAcceptor;
+import org.red5.io.utils.PooledBufferAllocator;
 import org.red5.server.jmx.mxbeans.RTMPMinaTransportMXBean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -73,6 +74,19 @@ public class RTMPMinaTransport implements RTMPMinaTransportMXBean {
 
   protected boolean useHeapBuffers = true;
 
+  protected boolean bufferPooling;
+
+  /** Sessions in handshake or connect at once, 0 for no limit */
+  protected int admissionMaxInFlight;
+
+  /** Sessions waiting for admission at most */
+  protected int admissionMaxQueued = 1000;
+
+  /** Milliseconds a session may wait for admission, 0 for no limit */
+  protected long admissionMaxWait = 10000;
+
+  protected ConnectionAdmission admission;
+
   protected int sendBufferSize = 65536;
 
   protected int receiveBufferSize = 65536;
@@ -106,12 +120,21 @@ public class RTMPMinaTransport implements RTMPMinaTransportMXBean {
       log.info("No RTMP IO Handler associated - using defaults");
       ioHandler = new RTMPMinaIoHandler();
     }
+    if (admissionMaxInFlight > 0 && ioHandler instanceof RTMPMinaIoHandler) {
+      admission =
+          new ConnectionAdmission(admissionMaxInFlight, admissionMaxQueued, admissionMaxWait);
+      ((RTMPMinaIoHandler) ioHandler).setAdmission(admission);
+      admission.start();
+    }
   }
 
   public void start() throws Exception {
     initIOHandler();
     IoBuffer.setUseDirectBuffer(!useHeapBuffers); // this is global, oh well
-    if (useHeapBuffers) {
+    if (bufferPooling) {
+      // decoded media bodies are reference counted and recycled
+      IoBuffer.setAllocator(new PooledBufferAllocator());
+    } else if (useHeapBuffers) {
       // dont pool for heap buffers
       IoBuffer.setAllocator(new SimpleBufferAllocator());
     }
@@ -245,6 +268,9 @@ public class RTMPMinaTransport implements RTMPMinaTransportMXBean {
     }
     // lastly dispose the acceptor without allowing for deadlocks
     acceptor.dispose(false);
+    if (admission != null) {
+      admission.stop();
+    }
     // deregister with jmx
     if (serviceManagerObjectName != null) {
       MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
@@ -360,6 +386,54 @@ public class RTMPMinaTransport implements RTMPMinaTransportMXBean {
     this.useHeapBuffers = useHeapBuffers;
   }
 
+  /**
+   * @param bufferPooling whether audio and video bodies are decoded into pooled buffers
+   */
+  public void setBufferPooling(boolean bufferPooling) {
+    this.bufferPooling = bufferPooling;
+  }
+
+  /**
+   * @param admissionMaxInFlight sessions in handshake or connect at once, 0 for no limit
+   */
+  public void setAdmissionMaxInFlight(int admissionMaxInFlight) {
+    this.admissionMaxInFlight = admissionMaxInFlight;
+  }
+
+  /**
+   * @param admissionMaxQueued sessions waiting for admission at most, further ones are rejected
+   */
+  public void setAdmissionMaxQueued(int admissionMaxQueued) {
+    this.admissionMaxQueued = admissionMaxQueued;
+  }
+
+  /**
+   * @param admissionMaxWait milliseconds a session may wait for admission, 0 for no limit
+   */
+  public void setAdmissionMaxWait(long admissionMaxWait) {
+    this.admissionMaxWait = admissionMaxWait;
+  }
+
+  public int getAdmissionInFlight() {
+    return admission != null ? admission.getInFlight() : 0;
+  }
+
+  public int getAdmissionWaiting() {
+    return admission != null ? admission.getWaiting() : 0;
+  }
+
+  public long getAdmissionAccepted() {
+    return admission != null ? admission.getAccepted() : 0;
+  }
+
+  public long getAdmissionQueued() {
+    return admission != null ? admission.getQueued() : 0;
+  }
+
+  public long getAdmissionRejected() {
+    return admission != null ? admission.getRejected() : 0;
+  }
+
   /**
    * @return the enableMinaLogFilter
    */
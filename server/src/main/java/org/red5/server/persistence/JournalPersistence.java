@@ -0,0 +1,756 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.io.amf.Input;
+import org.red5.io.amf.Output;
+import org.red5.io.object.Deserializer;
+import org.red5.io.object.Serializer;
+import org.red5.server.api.IAttributeStore;
+import org.red5.server.api.IContext;
+import org.red5.server.api.persistence.IPersistable;
+import org.red5.server.api.scheduling.ISchedulingService;
+import org.red5.server.api.scope.IScope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.support.ResourcePatternResolver;
+
+/**
+ * Persistence that appends the changes of the objects of a scope to one journal file. An object is
+ * written in full the first time, after that only its changed and removed attributes are appended,
+ * AMF encoded; objects which are not attribute stores are written in full on every change. Once
+ * the journal grows past the compaction threshold and twice its compacted size, it is rewritten
+ * with one snapshot per object.
+ *
+ * <p>The journal is replayed with a single sequential read when the store is first used; a record
+ * torn by a crash ends the replay and is cut off.
+ *
+ * @author The Red5 Project
+ */
+public class JournalPersistence extends RamPersistence {
+
+  private Logger log = LoggerFactory.getLogger(JournalPersistence.class);
+
+  /** Full object: id, class name and serialized object */
+  private static final byte SNAPSHOT = 1;
+
+  /** Attribute value: id, name and AMF encoded value */
+  private static final byte SET = 2;
+
+  /** Attribute removal: id and name */
+  private static final byte UNSET = 3;
+
+  /** Object removal: id */
+  private static final byte REMOVE = 4;
+
+  /** Scheduler for the journal job */
+  private ISchedulingService schedulingService;
+
+  /** Name of the journal job */
+  private String journalJobName;
+
+  /** Journal directory, relative to the application directory unless absolute */
+  private String path = "persistence";
+
+  /** Journal file name without extension */
+  private String journalName = "root";
+
+  /** Journal file extension */
+  private String extension = ".journal";
+
+  /** Interval to append the changes in milliseconds */
+  private int persistenceInterval = 10000;
+
+  /** Journal size in bytes below which it is not compacted */
+  private long compactionThreshold = 1024 * 1024;
+
+  /** Objects changed since the last append */
+  private final ConcurrentMap<String, IPersistable> modified = new ConcurrentHashMap<>();
+
+  /** Objects in the journal which have not been loaded yet */
+  private final Map<String, Journaled> journaled = new HashMap<>();
+
+  /** Encoded attributes of the loaded objects as last written to the journal */
+  private final Map<String, Map<String, byte[]>> written = new HashMap<>();
+
+  /** Object being rebuilt from the journal, its saves are not journaled */
+  private volatile IPersistable replaying;
+
+  private File file;
+
+  private FileChannel channel;
+
+  /** Journal size after the last compaction */
+  private long compactedSize;
+
+  /**
+   * Create journal persistence from given resource pattern resolver
+   *
+   * @param resolver Resource pattern resolver and loader
+   */
+  public JournalPersistence(ResourcePatternResolver resolver) {
+    super(resolver);
+  }
+
+  /**
+   * Create journal persistence for given scope, journaling to a file named after the scope path
+   *
+   * @param scope Scope
+   */
+  public JournalPersistence(IScope scope) {
+    super(scope);
+    String contextPath = scope.getContextPath();
+    if (contextPath != null && contextPath.length() > 1) {
+      journalName = contextPath.substring(1);
+    }
+    IContext ctx = scope.getContext();
+    if (ctx.hasBean(ISchedulingService.BEAN_NAME)) {
+      schedulingService = (ISchedulingService) ctx.getBean(ISchedulingService.BEAN_NAME);
+    } else {
+      // try the parent
+      schedulingService =
+          (ISchedulingService) scope.getParent().getContext().getBean(ISchedulingService.BEAN_NAME);
+    }
+    journalJobName = schedulingService.addScheduledJob(persistenceInterval, service -> flush());
+  }
+
+  /**
+   * Setter for the journal directory.
+   *
+   * @param path directory, relative to the application directory unless absolute
+   */
+  public void setPath(String path) {
+    this.path = path;
+  }
+
+  /**
+   * Setter for the journal file name.
+   *
+   * @param journalName file name without extension
+   */
+  public void setJournalName(String journalName) {
+    this.journalName = journalName;
+  }
+
+  /**
+   * Setter for extension.
+   *
+   * @param extension New extension.
+   */
+  public void setExtension(String extension) {
+    this.extension = extension;
+  }
+
+  /**
+   * @return the persistenceInterval
+   */
+  public int getPersistenceInterval() {
+    return persistenceInterval;
+  }
+
+  /**
+   * @param persistenceInterval the persistenceInterval to set
+   */
+  public void setPersistenceInterval(int persistenceInterval) {
+    this.persistenceInterval = persistenceInterval;
+  }
+
+  /**
+   * @param compactionThreshold journal size in bytes below which it is not compacted
+   */
+  public void setCompactionThreshold(long compactionThreshold) {
+    this.compactionThreshold = compactionThreshold;
+  }
+
+  /**
+   * Returns the journal file.
+   *
+   * @return journal file
+   */
+  public File getFile() {
+    if (file == null) {
+      File dir = new File(path);
+      if (!dir.isAbsolute()) {
+        try {
+          dir = new File(resources.getResource("/").getFile(), path);
+        } catch (IOException e) {
+          throw new RuntimeException("No application directory for the journal", e);
+        }
+      }
+      file = new File(dir, journalName + extension);
+    }
+    return file;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean save(IPersistable object) {
+    if (super.save(object)) {
+      if (object != replaying) {
+        modified.put(getObjectId(object), object);
+      }
+      return true;
+    }
+    return false;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public IPersistable load(String name) {
+    IPersistable result = super.load(name);
+    if (result == null) {
+      synchronized (this) {
+        result = super.load(name);
+        if (result == null && open()) {
+          Journaled entry = journaled.get(name);
+          if (entry != null) {
+            result = restore(name, entry, null);
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean load(IPersistable object) {
+    String id = getObjectId(object);
+    if (object == replaying || objects.get(id) == object) {
+      // already loaded or being restored
+      return true;
+    }
+    synchronized (this) {
+      if (open()) {
+        Journaled entry = journaled.get(id);
+        if (entry != null) {
+          return restore(id, entry, object) != null;
+        }
+      }
+    }
+    return false;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean remove(IPersistable object) {
+    return remove(getObjectId(object));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean remove(String name) {
+    super.remove(name);
+    modified.remove(name);
+    synchronized (this) {
+      if (open()) {
+        journaled.remove(name);
+        written.remove(name);
+        try {
+          ByteArrayOutputStream batch = new ByteArrayOutputStream();
+          Record record = beginRecord(REMOVE, name);
+          endRecord(record, batch);
+          append(batch);
+        } catch (IOException e) {
+          log.error("Could not journal the removal of {}", name, e);
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /** Appends the changes of the modified objects to the journal, compacting it if it grew. */
+  public synchronized void flush() {
+    if (modified.isEmpty() || !open()) {
+      return;
+    }
+    ByteArrayOutputStream batch = new ByteArrayOutputStream();
+    for (Iterator<Map.Entry<String, IPersistable>> it = modified.entrySet().iterator();
+        it.hasNext(); ) {
+      Map.Entry<String, IPersistable> entry = it.next();
+      it.remove();
+      try {
+        writeChanges(entry.getKey(), entry.getValue(), batch);
+      } catch (Throwable e) {
+        log.error("Error while journaling {} in {}", entry.getValue(), this, e);
+      }
+    }
+    try {
+      append(batch);
+      long size = channel.size();
+      if (size > compactionThreshold && size > compactedSize * 2) {
+        compact();
+      }
+    } catch (IOException e) {
+      log.error("Could not append to journal {}", file, e);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void notifyClose() {
+    // stop the job
+    if (journalJobName != null) {
+      schedulingService.removeScheduledJob(journalJobName);
+      journalJobName = null;
+    }
+    // write any pending changes
+    flush();
+    synchronized (this) {
+      if (channel != null) {
+        try {
+          channel.close();
+        } catch (IOException e) {
+          log.warn("Could not close journal {}", file, e);
+        }
+        channel = null;
+      }
+      journaled.clear();
+      written.clear();
+    }
+    super.notifyClose();
+  }
+
+  /**
+   * Opens the journal on first use, replaying it.
+   *
+   * @return true if the journal is open
+   */
+  private boolean open() {
+    if (channel == null) {
+      File journal = getFile();
+      try {
+        File dir = journal.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+          log.error("Could not create directory {}", dir.getAbsolutePath());
+          return false;
+        }
+        long valid = journal.exists() ? replay(journal) : 0;
+        channel =
+            FileChannel.open(
+                journal.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (channel.size() > valid) {
+          log.warn("Cutting off {} bytes of torn records from {}", channel.size() - valid, journal);
+          channel.truncate(valid);
+        }
+        channel.position(valid);
+        compactedSize = valid;
+      } catch (IOException e) {
+        log.error("Could not open journal {}", journal, e);
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Reads the journal into the index of not yet loaded objects.
+   *
+   * @param journal journal file
+   * @return length of the intact records
+   * @throws IOException on read error
+   */
+  private long replay(File journal) throws IOException {
+    long start = System.currentTimeMillis();
+    long valid = 0;
+    int records = 0;
+    CRC32 crc = new CRC32();
+    try (InputStream is = new BufferedInputStream(Files.newInputStream(journal.toPath()), 65536);
+        DataInputStream in = new DataInputStream(is)) {
+      while (true) {
+        byte[] body;
+        int checksum;
+        try {
+          int length = in.readInt();
+          checksum = in.readInt();
+          if (length <= 0 || valid + 8 + length > journal.length()) {
+            break;
+          }
+          body = new byte[length];
+          in.readFully(body);
+        } catch (EOFException e) {
+          break;
+        }
+        crc.reset();
+        crc.update(body);
+        if ((int) crc.getValue() != checksum) {
+          break;
+        }
+        apply(new DataInputStream(new ByteArrayInputStream(body)));
+        valid += 8 + body.length;
+        records++;
+      }
+    }
+    log.debug(
+        "Replayed {} records of {} in {}ms", records, journal, System.currentTimeMillis() - start);
+    return valid;
+  }
+
+  /**
+   * Applies a journal record to the index.
+   *
+   * @param in record body
+   * @throws IOException on malformed record
+   */
+  private void apply(DataInputStream in) throws IOException {
+    byte op = in.readByte();
+    String id = in.readUTF();
+    Journaled entry;
+    switch (op) {
+      case SNAPSHOT:
+        String className = in.readUTF();
+        journaled.put(id, new Journaled(className, readBytes(in)));
+        break;
+      case SET:
+        entry = journaled.get(id);
+        if (entry != null) {
+          String name = in.readUTF();
+          entry.changes.put(name, readBytes(in));
+        }
+        break;
+      case UNSET:
+        entry = journaled.get(id);
+        if (entry != null) {
+          entry.changes.put(in.readUTF(), null);
+        }
+        break;
+      case REMOVE:
+        journaled.remove(id);
+        break;
+      default:
+        throw new IOException("Unknown journal record " + op);
+    }
+  }
+
+  /**
+   * Rebuilds an object from its snapshot and changes.
+   *
+   * @param id object id
+   * @param entry journal entry
+   * @param object object to initialize or null to create it
+   * @return object or null if it could not be restored
+   */
+  @SuppressWarnings("deprecation")
+  private IPersistable restore(String id, Journaled entry, IPersistable object) {
+    IPersistable result = object;
+    IoBuffer buf = IoBuffer.wrap(entry.snapshot);
+    Input in = new Input(buf);
+    try {
+      if (result == null) {
+        Class<?> theClass = Class.forName(entry.className);
+        try {
+          Constructor<?> constructor = theClass.getConstructor(org.red5.io.object.Input.class);
+          result = (IPersistable) constructor.newInstance(in);
+        } catch (NoSuchMethodException e) {
+          result = (IPersistable) theClass.newInstance();
+          replaying = result;
+          result.deserialize(in);
+        }
+        result.setPath(getObjectPath(id, result.getName()));
+      } else {
+        if (!result.getClass().getName().equals(entry.className)) {
+          log.error("The classes differ: {} != {}", result.getClass().getName(), entry.className);
+          return null;
+        }
+        replaying = result;
+        result.deserialize(in);
+      }
+      replaying = result;
+      if (result.getStore() != this) {
+        result.setStore(this);
+      }
+      if (!entry.changes.isEmpty() && result instanceof IAttributeStore) {
+        IAttributeStore store = (IAttributeStore) result;
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (Map.Entry<String, byte[]> change : entry.changes.entrySet()) {
+          if (change.getValue() != null) {
+            values.put(change.getKey(), decode(change.getValue()));
+          }
+        }
+        if (!values.isEmpty()) {
+          store.setAttributes(values);
+        }
+        for (Map.Entry<String, byte[]> change : entry.changes.entrySet()) {
+          if (change.getValue() == null) {
+            store.removeAttribute(change.getKey());
+          }
+        }
+      }
+      journaled.remove(id);
+      written.put(id, encodeAttributes(result));
+      super.save(result);
+      log.debug("Loaded persistent object {} from {}", result, file);
+    } catch (Exception e) {
+      log.error("Could not restore {} from {}", id, file, e);
+      return null;
+    } finally {
+      replaying = null;
+    }
+    return result;
+  }
+
+  /**
+   * Writes the changes of an object since it was last written, or the whole object.
+   *
+   * @param id object id
+   * @param object object
+   * @param batch records to append
+   * @throws IOException on encoding error
+   */
+  private void writeChanges(String id, IPersistable object, ByteArrayOutputStream batch)
+      throws IOException {
+    Map<String, byte[]> values = written.get(id);
+    if (values == null || !(object instanceof IAttributeStore)) {
+      writeSnapshot(id, object, batch);
+      return;
+    }
+    Map<String, Object> attributes = ((IAttributeStore) object).getAttributes();
+    for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+      String name = attribute.getKey();
+      if (name.startsWith(IPersistable.TRANSIENT_PREFIX)) {
+        continue;
+      }
+      byte[] value = encode(attribute.getValue());
+      if (!Arrays.equals(value, values.get(name))) {
+        values.put(name, value);
+        Record record = beginRecord(SET, id);
+        record.writeUTF(name);
+        writeBytes(record, value);
+        endRecord(record, batch);
+      }
+    }
+    for (Iterator<String> it = values.keySet().iterator(); it.hasNext(); ) {
+      String name = it.next();
+      if (!attributes.containsKey(name)) {
+        it.remove();
+        Record record = beginRecord(UNSET, id);
+        record.writeUTF(name);
+        endRecord(record, batch);
+      }
+    }
+  }
+
+  /**
+   * Writes an object in full.
+   *
+   * @param id object id
+   * @param object object
+   * @param batch records to append
+   * @throws IOException on encoding error
+   */
+  private void writeSnapshot(String id, IPersistable object, ByteArrayOutputStream batch)
+      throws IOException {
+    IoBuffer buf = IoBuffer.allocate(8192).setAutoExpand(true);
+    object.serialize(new Output(buf));
+    buf.flip();
+    byte[] snapshot = new byte[buf.limit()];
+    buf.get(snapshot);
+    Record record = beginRecord(SNAPSHOT, id);
+    record.writeUTF(object.getClass().getName());
+    writeBytes(record, snapshot);
+    endRecord(record, batch);
+    written.put(id, encodeAttributes(object));
+  }
+
+  /**
+   * Rewrites the journal with a snapshot of every object and replaces the old one.
+   *
+   * @throws IOException on write error
+   */
+  private void compact() throws IOException {
+    long start = System.currentTimeMillis();
+    long before = channel.size();
+    ByteArrayOutputStream batch = new ByteArrayOutputStream();
+    for (String id : written.keySet().toArray(new String[0])) {
+      IPersistable object = objects.get(id);
+      if (object != null) {
+        writeSnapshot(id, object, batch);
+      } else {
+        written.remove(id);
+      }
+    }
+    // objects which were not loaded since the journal was opened are carried over as they are
+    for (Map.Entry<String, Journaled> entry : journaled.entrySet()) {
+      Journaled journal = entry.getValue();
+      Record record = beginRecord(SNAPSHOT, entry.getKey());
+      record.writeUTF(journal.className);
+      writeBytes(record, journal.snapshot);
+      endRecord(record, batch);
+      for (Map.Entry<String, byte[]> change : journal.changes.entrySet()) {
+        record = beginRecord(change.getValue() != null ? SET : UNSET, entry.getKey());
+        record.writeUTF(change.getKey());
+        if (change.getValue() != null) {
+          writeBytes(record, change.getValue());
+        }
+        endRecord(record, batch);
+      }
+    }
+    File tmp = new File(file.getPath() + ".tmp");
+    try (FileChannel out =
+        FileChannel.open(
+            tmp.toPath(),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer data = ByteBuffer.wrap(batch.toByteArray());
+      while (data.hasRemaining()) {
+        out.write(data);
+      }
+      out.force(true);
+    }
+    channel.close();
+    try {
+      Files.move(
+          tmp.toPath(),
+          file.toPath(),
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      tmp.delete();
+      throw e;
+    } finally {
+      // the compacted journal, or the original one which is complete when it was not replaced
+      channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+      compactedSize = channel.size();
+      channel.position(compactedSize);
+    }
+    log.debug(
+        "Compacted {} from {} to {} bytes in {}ms",
+        file,
+        before,
+        compactedSize,
+        System.currentTimeMillis() - start);
+  }
+
+  private void append(ByteArrayOutputStream batch) throws IOException {
+    if (batch.size() > 0) {
+      ByteBuffer data = ByteBuffer.wrap(batch.toByteArray());
+      while (data.hasRemaining()) {
+        channel.write(data);
+      }
+      channel.force(false);
+    }
+  }
+
+  private static Record beginRecord(byte op, String id) throws IOException {
+    Record record = new Record();
+    record.writeByte(op);
+    record.writeUTF(id);
+    return record;
+  }
+
+  /** Frames a record with its length and checksum. */
+  private static void endRecord(Record record, ByteArrayOutputStream batch) throws IOException {
+    byte[] body = record.body();
+    CRC32 crc = new CRC32();
+    crc.update(body);
+    DataOutputStream out = new DataOutputStream(batch);
+    out.writeInt(body.length);
+    out.writeInt((int) crc.getValue());
+    out.write(body);
+    out.flush();
+  }
+
+  private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static byte[] readBytes(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  private static byte[] encode(Object value) {
+    IoBuffer buf = IoBuffer.allocate(128).setAutoExpand(true);
+    Serializer.serialize(new Output(buf), value);
+    buf.flip();
+    byte[] bytes = new byte[buf.limit()];
+    buf.get(bytes);
+    return bytes;
+  }
+
+  private static Object decode(byte[] bytes) {
+    return Deserializer.deserialize(new Input(IoBuffer.wrap(bytes)), Object.class);
+  }
+
+  /**
+   * Encodes the persistent attributes of an object as they are written to the journal, unchanged
+   * values are not journaled again.
+   *
+   * @param object object
+   * @return encoded attributes, empty if the object is no attribute store
+   */
+  private static Map<String, byte[]> encodeAttributes(IPersistable object) {
+    Map<String, byte[]> values = new HashMap<>();
+    if (object instanceof IAttributeStore) {
+      for (Map.Entry<String, Object> attribute :
+          ((IAttributeStore) object).getAttributes().entrySet()) {
+        if (!attribute.getKey().startsWith(IPersistable.TRANSIENT_PREFIX)) {
+          values.put(attribute.getKey(), encode(attribute.getValue()));
+        }
+      }
+    }
+    return values;
+  }
+
+  /** Body of a journal record. */
+  private static final class Record extends DataOutputStream {
+
+    Record() {
+      super(new ByteArrayOutputStream());
+    }
+
+    byte[] body() throws IOException {
+      flush();
+      return ((ByteArrayOutputStream) out).toByteArray();
+    }
+  }
+
+  /** Object read from the journal which has not been loaded yet. */
+  private static final class Journaled {
+
+    final String className;
+
+    final byte[] snapshot;
+
+    /** Attribute changes since the snapshot, a null value is a removal */
+    final Map<String, byte[]> changes = new LinkedHashMap<>();
+
+    Journaled(String className, byte[] snapshot) {
+      this.className = className;
+      this.snapshot = snapshot;
+    }
+  }
+}
@@ -0,0 +1,1187 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.io.amf.Input;
+import org.red5.io.amf.Output;
+import org.red5.io.object.Deserializer;
+import org.red5.io.object.Serializer;
+import org.red5.server.api.IAttributeStore;
+import org.red5.server.api.IContext;
+import org.red5.server.api.persistence.IPersistable;
+import org.red5.server.api.scheduling.ISchedulingService;
+import org.red5.server.api.scope.IScope;
+import org.red5.server.so.SharedObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.support.ResourcePatternResolver;
+
+/**
+ * Persistence that keeps the objects of a scope in one memory-mapped file of fixed size pages. Every
+ * attribute of an attribute store is a record of its own, AMF encoded, so single attributes can be
+ * read with {@link #getAttribute(String, String)} and a save only rewrites the attributes whose
+ * encoding changed. Objects which are not attribute stores are kept as one serialized record.
+ *
+ * <p>Data pages are slotted: a directory of record offsets grows from the page header while the
+ * records grow from the page end, so records keep their slot when a page is compacted. Values too
+ * large for a quarter page are stored in a chain of overflow pages. When the file is opened only the
+ * object ids and attribute names are read to build the index; values are decoded when they are
+ * asked for.
+ *
+ * <p>Every record carries a sequence number and a CRC. A changed attribute is written as a new
+ * record and the old one is only deleted once the new one is forced to the file, so after a crash
+ * either is found and the newer one is kept. Records failing their CRC are skipped when the file is
+ * opened.
+ *
+ * @author The Red5 Project
+ */
+public class MappedPersistence extends RamPersistence {
+
+  private Logger log = LoggerFactory.getLogger(MappedPersistence.class);
+
+  /** Page size in bytes */
+  private static final int PAGE_SIZE = 4096;
+
+  private static final int MAGIC = 0x5235504d;
+
+  private static final int VERSION = 2;
+
+  /** Pages mapped when the file is created */
+  private static final int INITIAL_PAGES = 16;
+
+  private static final byte DATA = 1;
+
+  private static final byte OVERFLOW = 2;
+
+  private static final byte FREE = 3;
+
+  /** Record of an object: number, id and class name */
+  private static final byte OBJECT = 1;
+
+  /** Record of an attribute: object number, name and AMF encoded value */
+  private static final byte ATTRIBUTE = 2;
+
+  /** Record of an object which is no attribute store: object number and serialized object */
+  private static final byte SERIALIZED = 3;
+
+  /** Record header: kind, object number and sequence */
+  private static final int RECORD_HEADER = 13;
+
+  /** Record trailer: CRC of the record and of its overflowed value */
+  private static final int CRC = 4;
+
+  /** Flag of records whose value is held in overflow pages */
+  private static final byte OVERFLOWED = (byte) 0x80;
+
+  /** Data page header: type, slot count and start of the records */
+  private static final int PAGE_HEADER = 8;
+
+  /** Slot directory entry: record offset and length */
+  private static final int SLOT = 4;
+
+  /** Overflow page header: type and next page */
+  private static final int OVERFLOW_HEADER = 8;
+
+  /** Records larger than this keep their value in overflow pages */
+  private static final int MAX_INLINE = PAGE_SIZE / 4;
+
+  /** Bits of a record location holding the slot */
+  private static final int SLOT_BITS = 11;
+
+  /** Scheduler for the persistence job */
+  private ISchedulingService schedulingService;
+
+  /** Name of the persistence job */
+  private String storeJobName;
+
+  /** Store directory, relative to the application directory unless absolute */
+  private String path = "persistence";
+
+  /** Store file name without extension */
+  private String storeName = "root";
+
+  /** Store file extension */
+  private String extension = ".red5m";
+
+  /** Interval to write the changes in milliseconds */
+  private int persistenceInterval = 10000;
+
+  /** Objects changed since the last write */
+  private final ConcurrentMap<String, IPersistable> modified = new ConcurrentHashMap<>();
+
+  /** Stored objects by id */
+  private final Map<String, Entry> index = new HashMap<>();
+
+  /** Data pages with room for at least one more inline record */
+  private final Set<Integer> reusable = new LinkedHashSet<>();
+
+  /** Records replaced by new ones, deleted once the new ones are forced to the file */
+  private final List<Integer> stale = new ArrayList<>();
+
+  /** Object being rebuilt from the store, its saves are not written */
+  private volatile IPersistable replaying;
+
+  private File file;
+
+  private FileChannel channel;
+
+  private MappedByteBuffer buffer;
+
+  /** Pages in use, including the header page */
+  private int pageCount;
+
+  /** First page of the free page list or 0 */
+  private int freePages;
+
+  /** Data page new records are added to or 0 */
+  private int tailPage;
+
+  private int nextObjectNo;
+
+  /** Sequence of the last record written */
+  private long sequence;
+
+  /**
+   * Create mapped persistence from given resource pattern resolver
+   *
+   * @param resolver Resource pattern resolver and loader
+   */
+  public MappedPersistence(ResourcePatternResolver resolver) {
+    super(resolver);
+  }
+
+  /**
+   * Create mapped persistence for given scope, storing to a file named after the scope path
+   *
+   * @param scope Scope
+   */
+  public MappedPersistence(IScope scope) {
+    super(scope);
+    String contextPath = scope.getContextPath();
+    if (contextPath != null && contextPath.length() > 1) {
+      storeName = contextPath.substring(1);
+    }
+    IContext ctx = scope.getContext();
+    if (ctx.hasBean(ISchedulingService.BEAN_NAME)) {
+      schedulingService = (ISchedulingService) ctx.getBean(ISchedulingService.BEAN_NAME);
+    } else {
+      // try the parent
+      schedulingService =
+          (ISchedulingService) scope.getParent().getContext().getBean(ISchedulingService.BEAN_NAME);
+    }
+    storeJobName = schedulingService.addScheduledJob(persistenceInterval, service -> flush());
+  }
+
+  /**
+   * Setter for the store directory.
+   *
+   * @param path directory, relative to the application directory unless absolute
+   */
+  public void setPath(String path) {
+    this.path = path;
+  }
+
+  /**
+   * Setter for the store file name.
+   *
+   * @param storeName file name without extension
+   */
+  public void setStoreName(String storeName) {
+    this.storeName = storeName;
+  }
+
+  /**
+   * Setter for extension.
+   *
+   * @param extension New extension.
+   */
+  public void setExtension(String extension) {
+    this.extension = extension;
+  }
+
+  /**
+   * @return the persistenceInterval
+   */
+  public int getPersistenceInterval() {
+    return persistenceInterval;
+  }
+
+  /**
+   * @param persistenceInterval the persistenceInterval to set
+   */
+  public void setPersistenceInterval(int persistenceInterval) {
+    this.persistenceInterval = persistenceInterval;
+  }
+
+  /**
+   * Returns the store file.
+   *
+   * @return store file
+   */
+  public File getFile() {
+    if (file == null) {
+      File dir = new File(path);
+      if (!dir.isAbsolute()) {
+        try {
+          dir = new File(resources.getResource("/").getFile(), path);
+        } catch (IOException e) {
+          throw new RuntimeException("No application directory for the store", e);
+        }
+      }
+      file = new File(dir, storeName + extension);
+    }
+    return file;
+  }
+
+  /**
+   * Reads one attribute of a stored object, without loading the object.
+   *
+   * @param id object id
+   * @param name attribute name
+   * @return attribute value or null if the object or attribute is not stored
+   */
+  public synchronized Object getAttribute(String id, String name) {
+    if (open()) {
+      Entry entry = index.get(id);
+      if (entry != null) {
+        Integer location = entry.keys.get(name);
+        if (location != null) {
+          return decode(value(location));
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the attribute names of a stored object, without loading the object.
+   *
+   * @param id object id
+   * @return attribute names, empty if the object is not stored
+   */
+  public synchronized Set<String> getAttributeNames(String id) {
+    if (open()) {
+      Entry entry = index.get(id);
+      if (entry != null) {
+        return new HashSet<>(entry.keys.keySet());
+      }
+    }
+    return Collections.emptySet();
+  }
+
+  /**
+   * Writes one attribute of a stored object which is not loaded. Loaded objects are changed through
+   * their own setters and saved.
+   *
+   * @param id object id
+   * @param name attribute name
+   * @param value attribute value, null to remove the attribute
+   * @return true if the attribute was written, false if the object is loaded or not stored
+   */
+  public synchronized boolean setAttribute(String id, String name, Object value) {
+    if (objects.containsKey(id) || !open()) {
+      return false;
+    }
+    Entry entry = index.get(id);
+    if (entry == null || entry.serialized != null) {
+      return false;
+    }
+    try {
+      if (value != null) {
+        put(entry, ATTRIBUTE, name, encode(value));
+      } else {
+        Integer location = entry.keys.remove(name);
+        if (location != null) {
+          delete(location);
+        }
+      }
+    } catch (IOException e) {
+      log.error("Could not write attribute {} of {}", name, id, e);
+      return false;
+    } finally {
+      commit();
+    }
+    return true;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean save(IPersistable object) {
+    if (super.save(object)) {
+      if (object != replaying) {
+        modified.put(getObjectId(object), object);
+      }
+      return true;
+    }
+    return false;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public IPersistable load(String name) {
+    IPersistable result = super.load(name);
+    if (result == null) {
+      synchronized (this) {
+        result = super.load(name);
+        if (result == null && open()) {
+          Entry entry = index.get(name);
+          if (entry != null) {
+            result = restore(entry, null);
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean load(IPersistable object) {
+    String id = getObjectId(object);
+    if (object == replaying || objects.get(id) == object) {
+      // already loaded or being restored
+      return true;
+    }
+    synchronized (this) {
+      if (open()) {
+        Entry entry = index.get(id);
+        if (entry != null) {
+          return restore(entry, object) != null;
+        }
+      }
+    }
+    return false;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean remove(IPersistable object) {
+    return remove(getObjectId(object));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean remove(String name) {
+    super.remove(name);
+    modified.remove(name);
+    synchronized (this) {
+      if (open()) {
+        Entry entry = index.remove(name);
+        if (entry != null) {
+          for (Integer location : entry.keys.values()) {
+            delete(location);
+          }
+          if (entry.serialized != null) {
+            delete(entry.serialized);
+          }
+          delete(entry.location);
+          buffer.force();
+        }
+      }
+    }
+    return true;
+  }
+
+  /** Writes the changed attributes of the modified objects to the store. */
+  public synchronized void flush() {
+    if (modified.isEmpty() || !open()) {
+      return;
+    }
+    for (Iterator<Map.Entry<String, IPersistable>> it = modified.entrySet().iterator();
+        it.hasNext(); ) {
+      Map.Entry<String, IPersistable> entry = it.next();
+      it.remove();
+      try {
+        write(entry.getKey(), entry.getValue());
+      } catch (Throwable e) {
+        log.error("Error while saving {} in {}", entry.getValue(), this, e);
+      }
+    }
+    commit();
+  }
+
+  /** Forces the written records to the file, then deletes the records they replace. */
+  private void commit() {
+    buffer.force();
+    if (!stale.isEmpty()) {
+      for (Integer location : stale) {
+        delete(location);
+      }
+      stale.clear();
+      buffer.force();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void notifyClose() {
+    // stop the job
+    if (storeJobName != null) {
+      schedulingService.removeScheduledJob(storeJobName);
+      storeJobName = null;
+    }
+    // write any pending changes
+    flush();
+    synchronized (this) {
+      if (channel != null) {
+        try {
+          channel.close();
+        } catch (IOException e) {
+          log.warn("Could not close store {}", file, e);
+        }
+        channel = null;
+        buffer = null;
+      }
+      index.clear();
+      reusable.clear();
+      stale.clear();
+    }
+    super.notifyClose();
+  }
+
+  /**
+   * Opens and indexes the store file on first use.
+   *
+   * @return true if the store is open
+   */
+  private boolean open() {
+    if (channel == null) {
+      File store = getFile();
+      try {
+        File dir = store.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+          log.error("Could not create directory {}", dir.getAbsolutePath());
+          return false;
+        }
+        channel =
+            FileChannel.open(
+                store.toPath(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        if (channel.size() < PAGE_SIZE) {
+          map(INITIAL_PAGES);
+          pageCount = 1;
+          freePages = 0;
+          buffer.putInt(0, MAGIC);
+          buffer.putInt(4, VERSION);
+          buffer.putInt(8, PAGE_SIZE);
+          writeHeader();
+        } else {
+          map((int) (channel.size() / PAGE_SIZE));
+          if (buffer.getInt(0) != MAGIC
+              || buffer.getInt(4) != VERSION
+              || buffer.getInt(8) != PAGE_SIZE) {
+            throw new IOException("Not a store file");
+          }
+          pageCount = buffer.getInt(12);
+          freePages = buffer.getInt(16);
+          if (pageCount < 1
+              || pageCount > buffer.capacity() / PAGE_SIZE
+              || freePages < 0
+              || freePages >= pageCount) {
+            throw new IOException("Damaged store header");
+          }
+          scan();
+        }
+      } catch (IOException | RuntimeException e) {
+        log.error("Could not open store {}", store, e);
+        index.clear();
+        reusable.clear();
+        tailPage = 0;
+        buffer = null;
+        if (channel != null) {
+          try {
+            channel.close();
+          } catch (IOException ce) {
+            log.debug("Could not close store {}", store, ce);
+          }
+          channel = null;
+        }
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Builds the index from the object and attribute records of the data pages. Records failing their
+   * checks are skipped and their slots cleared; of the records left behind by an interrupted update
+   * the newer one is kept.
+   */
+  private void scan() {
+    long start = System.currentTimeMillis();
+    Map<Integer, Entry> entries = new HashMap<>();
+    List<Integer> superseded = new ArrayList<>();
+    int damaged = 0;
+    for (int page = 1; page < pageCount; page++) {
+      int base = offset(page);
+      if (buffer.get(base) != DATA) {
+        continue;
+      }
+      int count = slotCount(base);
+      if (PAGE_HEADER + count * SLOT > PAGE_SIZE) {
+        log.warn("Skipping page {} of {}, its header is damaged", page, file);
+        continue;
+      }
+      for (int slot = 0; slot < count; slot++) {
+        int at = base + PAGE_HEADER + slot * SLOT;
+        int offset = buffer.getShort(at) & 0xffff;
+        if (offset == 0) {
+          continue;
+        }
+        if (!isIntact(count, offset, buffer.getShort(at + 2) & 0xffff, base + offset)) {
+          // the pages the record may point to are left alone
+          buffer.putInt(at, 0);
+          damaged++;
+          continue;
+        }
+        int pos = base + offset;
+        int objectNo = buffer.getInt(pos + 1);
+        Entry entry = entries.computeIfAbsent(objectNo, Entry::new);
+        int location = (page << SLOT_BITS) | slot;
+        byte kind = (byte) (buffer.get(pos) & ~OVERFLOWED);
+        if (kind == OBJECT) {
+          entry.id = readString(pos + RECORD_HEADER);
+          entry.className =
+              readString(pos + RECORD_HEADER + 2 + (buffer.getShort(pos + RECORD_HEADER) & 0xffff));
+          entry.location = location;
+        } else if (kind == SERIALIZED) {
+          entry.serialized = newer(entry.serialized, location, superseded);
+        } else {
+          String name = readString(pos + RECORD_HEADER);
+          entry.keys.put(name, newer(entry.keys.get(name), location, superseded));
+        }
+        nextObjectNo = Math.max(nextObjectNo, objectNo + 1);
+        sequence = Math.max(sequence, buffer.getLong(pos + 5));
+      }
+      if (free(page) >= MAX_INLINE) {
+        reusable.add(page);
+      }
+    }
+    for (Integer location : superseded) {
+      delete(location);
+    }
+    for (Entry entry : entries.values()) {
+      if (entry.id != null) {
+        index.put(entry.id, entry);
+      } else {
+        // left behind by an interrupted removal
+        log.warn("Dropping {} attributes without an object from {}", entry.keys.size(), file);
+        for (Integer location : entry.keys.values()) {
+          delete(location);
+        }
+        if (entry.serialized != null) {
+          delete(entry.serialized);
+        }
+      }
+    }
+    if (damaged > 0) {
+      log.warn("Skipped {} damaged records in {}", damaged, file);
+    }
+    log.debug(
+        "Indexed {} objects in {} pages of {} in {}ms",
+        index.size(),
+        pageCount,
+        file,
+        System.currentTimeMillis() - start);
+  }
+
+  /**
+   * Checks the bounds, the kind and the CRC of a record.
+   *
+   * @param count slot count of the page
+   * @param offset record offset in the page
+   * @param length record length
+   * @param pos record position
+   * @return true if the record is intact
+   */
+  private boolean isIntact(int count, int offset, int length, int pos) {
+    try {
+      if (offset < PAGE_HEADER + count * SLOT
+          || offset + length > PAGE_SIZE
+          || length < RECORD_HEADER + 2 + CRC) {
+        return false;
+      }
+      int end = pos + length - CRC;
+      byte kind = (byte) (buffer.get(pos) & ~OVERFLOWED);
+      boolean overflowed = (buffer.get(pos) & OVERFLOWED) != 0;
+      int at = pos + RECORD_HEADER + 2 + (buffer.getShort(pos + RECORD_HEADER) & 0xffff);
+      byte[] chained = null;
+      if (kind == OBJECT && !overflowed) {
+        if (at + 2 + (buffer.getShort(at) & 0xffff) != end) {
+          return false;
+        }
+      } else if (kind == ATTRIBUTE || kind == SERIALIZED) {
+        if (at + 4 > end) {
+          return false;
+        }
+        int valueLength = buffer.getInt(at);
+        if (overflowed) {
+          if (at + 8 != end) {
+            return false;
+          }
+          chained = readChain(buffer.getInt(at + 4), valueLength);
+        } else if (at + 4 + valueLength != end) {
+          return false;
+        }
+      } else {
+        return false;
+      }
+      CRC32 crc = new CRC32();
+      ByteBuffer view = buffer.duplicate();
+      view.limit(end).position(pos);
+      crc.update(view);
+      if (chained != null) {
+        crc.update(chained);
+      }
+      return (int) crc.getValue() == buffer.getInt(end);
+    } catch (RuntimeException e) {
+      log.debug("Damaged record at {} of {}", pos, file, e);
+      return false;
+    }
+  }
+
+  /**
+   * Returns the newer of two records of the same attribute, adding the other one to the superseded
+   * records.
+   *
+   * @param previous location of the record found before or null
+   * @param location location of the record found
+   * @param superseded superseded records
+   * @return location of the newer record
+   */
+  private Integer newer(Integer previous, int location, List<Integer> superseded) {
+    if (previous == null) {
+      return location;
+    }
+    if (buffer.getLong(position(location) + 5) > buffer.getLong(position(previous) + 5)) {
+      superseded.add(previous);
+      return location;
+    }
+    superseded.add(location);
+    return previous;
+  }
+
+  /**
+   * Rebuilds an object from its records.
+   *
+   * @param entry stored object
+   * @param object object to initialize or null to create it
+   * @return object or null if it could not be restored
+   */
+  private IPersistable restore(Entry entry, IPersistable object) {
+    IPersistable result = object;
+    try {
+      Map<String, Object> values = new LinkedHashMap<>();
+      for (Map.Entry<String, Integer> key : entry.keys.entrySet()) {
+        values.put(key.getKey(), decode(value(key.getValue())));
+      }
+      boolean restored = false;
+      if (result == null) {
+        result =
+            (IPersistable) Class.forName(entry.className).getDeclaredConstructor().newInstance();
+        String name = getObjectName(entry.id);
+        if (result instanceof SharedObject) {
+          // shared objects cannot be renamed, they are restored with their attributes
+          replaying = result;
+          ((SharedObject) result).restore(name, values);
+          restored = true;
+        } else {
+          result.setName(name);
+          result.setPersistent(true);
+        }
+        result.setPath(getObjectPath(entry.id, result.getName()));
+      } else if (!result.getClass().getName().equals(entry.className)) {
+        log.error("The classes differ: {} != {}", result.getClass().getName(), entry.className);
+        return null;
+      }
+      replaying = result;
+      if (result.getStore() != this) {
+        result.setStore(this);
+      }
+      if (entry.serialized != null) {
+        result.deserialize(new Input(IoBuffer.wrap(value(entry.serialized))));
+      } else if (!restored && !values.isEmpty() && result instanceof IAttributeStore) {
+        ((IAttributeStore) result).setAttributes(values);
+      }
+      super.save(result);
+      log.debug("Loaded persistent object {} from {}", result, file);
+    } catch (Exception e) {
+      log.error("Could not restore {} from {}", entry.id, file, e);
+      return null;
+    } finally {
+      replaying = null;
+    }
+    return result;
+  }
+
+  /**
+   * Writes the attributes of an object whose encoding changed, or the whole object.
+   *
+   * @param id object id
+   * @param object object
+   * @throws IOException on write error
+   */
+  private void write(String id, IPersistable object) throws IOException {
+    Entry entry = index.get(id);
+    if (entry == null) {
+      entry = new Entry(nextObjectNo++);
+      entry.id = id;
+      entry.className = object.getClass().getName();
+      byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+      byte[] classBytes = entry.className.getBytes(StandardCharsets.UTF_8);
+      ByteBuffer record =
+          ByteBuffer.allocate(RECORD_HEADER + 4 + idBytes.length + classBytes.length + CRC);
+      record.put(OBJECT).putInt(entry.objectNo).putLong(++sequence);
+      record.putShort((short) idBytes.length).put(idBytes);
+      record.putShort((short) classBytes.length).put(classBytes);
+      entry.location = insert(seal(record, null));
+      index.put(id, entry);
+    }
+    if (object instanceof IAttributeStore) {
+      Map<String, Object> attributes = ((IAttributeStore) object).getAttributes();
+      for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+        String name = attribute.getKey();
+        if (!name.startsWith(IPersistable.TRANSIENT_PREFIX)) {
+          put(entry, ATTRIBUTE, name, encode(attribute.getValue()));
+        }
+      }
+      for (Iterator<Map.Entry<String, Integer>> it = entry.keys.entrySet().iterator();
+          it.hasNext(); ) {
+        Map.Entry<String, Integer> key = it.next();
+        if (!attributes.containsKey(key.getKey())) {
+          it.remove();
+          delete(key.getValue());
+        }
+      }
+    } else {
+      IoBuffer buf = IoBuffer.allocate(8192).setAutoExpand(true);
+      object.serialize(new Output(buf));
+      buf.flip();
+      byte[] bytes = new byte[buf.limit()];
+      buf.get(bytes);
+      put(entry, SERIALIZED, "", bytes);
+    }
+  }
+
+  /**
+   * Writes an attribute or serialized record unless the stored value is the same. The record it
+   * replaces is deleted on the next commit.
+   *
+   * @param entry stored object
+   * @param kind record kind
+   * @param name attribute name, empty for a serialized record
+   * @param value encoded value
+   * @throws IOException on write error
+   */
+  private void put(Entry entry, byte kind, String name, byte[] value) throws IOException {
+    byte[] key = name.getBytes(StandardCharsets.UTF_8);
+    if (key.length > MAX_INLINE) {
+      throw new IOException("Attribute name too long: " + name);
+    }
+    Integer location = kind == SERIALIZED ? entry.serialized : entry.keys.get(name);
+    if (location != null && value(location).equals(ByteBuffer.wrap(value))) {
+      return;
+    }
+    int length = RECORD_HEADER + 6 + key.length + value.length + CRC;
+    boolean overflow = length > MAX_INLINE;
+    ByteBuffer record =
+        ByteBuffer.allocate(overflow ? RECORD_HEADER + 10 + key.length + CRC : length);
+    record.put(overflow ? (byte) (kind | OVERFLOWED) : kind).putInt(entry.objectNo);
+    record.putLong(++sequence);
+    record.putShort((short) key.length).put(key).putInt(value.length);
+    if (overflow) {
+      record.putInt(writeChain(value));
+    } else {
+      record.put(value);
+    }
+    int inserted = insert(seal(record, overflow ? value : null));
+    if (kind == SERIALIZED) {
+      entry.serialized = inserted;
+    } else {
+      entry.keys.put(name, inserted);
+    }
+    if (location != null) {
+      stale.add(location);
+    }
+  }
+
+  /**
+   * Completes a record with the CRC of its content and of its overflowed value.
+   *
+   * @param record record filled up to the CRC
+   * @param chained value held in overflow pages or null
+   * @return record
+   */
+  private static byte[] seal(ByteBuffer record, byte[] chained) {
+    CRC32 crc = new CRC32();
+    crc.update(record.array(), 0, record.position());
+    if (chained != null) {
+      crc.update(chained);
+    }
+    record.putInt((int) crc.getValue());
+    return record.array();
+  }
+
+  /**
+   * Returns the value of an attribute or serialized record, a view of the mapped page if it is
+   * inline.
+   *
+   * @param location record location
+   * @return value
+   */
+  private ByteBuffer value(int location) {
+    int pos = position(location);
+    int at = pos + RECORD_HEADER + 2 + (buffer.getShort(pos + RECORD_HEADER) & 0xffff);
+    int length = buffer.getInt(at);
+    if ((buffer.get(pos) & OVERFLOWED) != 0) {
+      return ByteBuffer.wrap(readChain(buffer.getInt(at + 4), length));
+    }
+    ByteBuffer view = buffer.duplicate();
+    view.limit(at + 4 + length).position(at + 4);
+    return view.slice();
+  }
+
+  /**
+   * Adds a record to the tail page, a page with room or a new page.
+   *
+   * @param record record
+   * @return record location
+   * @throws IOException if the store cannot grow
+   */
+  private int insert(byte[] record) throws IOException {
+    if (tailPage > 0) {
+      int slot = insert(tailPage, record);
+      if (slot >= 0) {
+        return (tailPage << SLOT_BITS) | slot;
+      }
+    }
+    for (Iterator<Integer> it = reusable.iterator(); it.hasNext(); ) {
+      int page = it.next();
+      int slot = insert(page, record);
+      if (slot >= 0) {
+        if (free(page) < MAX_INLINE) {
+          it.remove();
+        }
+        return (page << SLOT_BITS) | slot;
+      }
+      it.remove();
+    }
+    tailPage = allocatePage(DATA);
+    return (tailPage << SLOT_BITS) | insert(tailPage, record);
+  }
+
+  /**
+   * Adds a record to a data page, compacting the page if its free space is fragmented.
+   *
+   * @param page data page
+   * @param record record
+   * @return slot or -1 if the page is full
+   */
+  private int insert(int page, byte[] record) {
+    int base = offset(page);
+    int count = slotCount(base);
+    int slot = 0;
+    while (slot < count && buffer.getShort(base + PAGE_HEADER + slot * SLOT) != 0) {
+      slot++;
+    }
+    int needed = record.length + (slot == count ? SLOT : 0);
+    if (recordStart(base) - PAGE_HEADER - count * SLOT < needed) {
+      if (free(page) < needed) {
+        return -1;
+      }
+      compact(page);
+    }
+    int start = recordStart(base) - record.length;
+    write(base + start, record);
+    buffer.putShort(base + 4, (short) start);
+    buffer.putShort(base + PAGE_HEADER + slot * SLOT, (short) start);
+    buffer.putShort(base + PAGE_HEADER + slot * SLOT + 2, (short) record.length);
+    if (slot == count) {
+      buffer.putShort(base + 2, (short) (count + 1));
+    }
+    return slot;
+  }
+
+  /**
+   * Deletes a record and its overflow pages, freeing its page once it is empty.
+   *
+   * @param location record location
+   */
+  private void delete(int location) {
+    int page = location >>> SLOT_BITS;
+    int base = offset(page);
+    int slot = base + PAGE_HEADER + (location & ((1 << SLOT_BITS) - 1)) * SLOT;
+    int pos = base + (buffer.getShort(slot) & 0xffff);
+    if ((buffer.get(pos) & OVERFLOWED) != 0) {
+      int at = pos + RECORD_HEADER + 2 + (buffer.getShort(pos + RECORD_HEADER) & 0xffff);
+      freeChain(buffer.getInt(at + 4));
+    }
+    buffer.putInt(slot, 0);
+    int count = slotCount(base);
+    while (count > 0 && buffer.getShort(base + PAGE_HEADER + (count - 1) * SLOT) == 0) {
+      count--;
+    }
+    buffer.putShort(base + 2, (short) count);
+    if (page == tailPage) {
+      return;
+    }
+    if (count == 0) {
+      reusable.remove(page);
+      freePage(page);
+    } else if (free(page) >= MAX_INLINE) {
+      reusable.add(page);
+    }
+  }
+
+  /** Moves the records of a data page to its end, keeping their slots. */
+  private void compact(int page) {
+    int base = offset(page);
+    int count = slotCount(base);
+    byte[] image = new byte[PAGE_SIZE];
+    ByteBuffer view = buffer.duplicate();
+    view.position(base);
+    view.get(image);
+    byte[] old = image.clone();
+    ByteBuffer slots = ByteBuffer.wrap(image);
+    int start = PAGE_SIZE;
+    for (int slot = 0; slot < count; slot++) {
+      int at = PAGE_HEADER + slot * SLOT;
+      int offset = slots.getShort(at) & 0xffff;
+      if (offset != 0) {
+        int length = slots.getShort(at + 2) & 0xffff;
+        start -= length;
+        System.arraycopy(old, offset, image, start, length);
+        slots.putShort(at, (short) start);
+      }
+    }
+    slots.putShort(4, (short) start);
+    write(base, image);
+  }
+
+  /**
+   * Returns the bytes a data page could still hold after compaction.
+   *
+   * @param page data page
+   * @return free bytes
+   */
+  private int free(int page) {
+    int base = offset(page);
+    int count = slotCount(base);
+    int used = PAGE_HEADER + count * SLOT;
+    for (int slot = 0; slot < count; slot++) {
+      used += buffer.getShort(base + PAGE_HEADER + slot * SLOT + 2) & 0xffff;
+    }
+    return PAGE_SIZE - used;
+  }
+
+  /**
+   * Writes a value to a chain of overflow pages.
+   *
+   * @param value value
+   * @return first page
+   * @throws IOException if the store cannot grow
+   */
+  private int writeChain(byte[] value) throws IOException {
+    int first = 0;
+    int previous = 0;
+    int pos = 0;
+    do {
+      int page = allocatePage(OVERFLOW);
+      int length = Math.min(PAGE_SIZE - OVERFLOW_HEADER, value.length - pos);
+      ByteBuffer view = buffer.duplicate();
+      view.position(offset(page) + OVERFLOW_HEADER);
+      view.put(value, pos, length);
+      if (previous == 0) {
+        first = page;
+      } else {
+        buffer.putInt(offset(previous) + 4, page);
+      }
+      previous = page;
+      pos += length;
+    } while (pos < value.length);
+    return first;
+  }
+
+  private byte[] readChain(int page, int length) {
+    byte[] value = new byte[length];
+    int pos = 0;
+    while (pos < length) {
+      if (page < 1 || page >= pageCount || buffer.get(offset(page)) != OVERFLOW) {
+        throw new IllegalStateException("Broken overflow chain in " + file);
+      }
+      int chunk = Math.min(PAGE_SIZE - OVERFLOW_HEADER, length - pos);
+      ByteBuffer view = buffer.duplicate();
+      view.position(offset(page) + OVERFLOW_HEADER);
+      view.get(value, pos, chunk);
+      pos += chunk;
+      page = buffer.getInt(offset(page) + 4);
+    }
+    return value;
+  }
+
+  private void freeChain(int page) {
+    while (page != 0) {
+      int next = buffer.getInt(offset(page) + 4);
+      freePage(page);
+      page = next;
+    }
+  }
+
+  /**
+   * Takes a page from the free list or appends one, growing the mapping when needed.
+   *
+   * @param type page type
+   * @return page
+   * @throws IOException if the store cannot grow
+   */
+  private int allocatePage(byte type) throws IOException {
+    int page;
+    if (freePages != 0) {
+      page = freePages;
+      freePages = buffer.getInt(offset(page) + 4);
+    } else {
+      page = pageCount++;
+      if ((long) pageCount * PAGE_SIZE > buffer.capacity()) {
+        long pages = Math.min((long) pageCount * 2, Integer.MAX_VALUE / PAGE_SIZE);
+        if (pages < pageCount) {
+          pageCount--;
+          throw new IOException("Store is full: " + file);
+        }
+        map((int) pages);
+      }
+    }
+    int base = offset(page);
+    buffer.put(base, type);
+    if (type == DATA) {
+      buffer.putShort(base + 2, (short) 0);
+      buffer.putShort(base + 4, (short) PAGE_SIZE);
+    } else {
+      buffer.putInt(base + 4, 0);
+    }
+    writeHeader();
+    return page;
+  }
+
+  private void freePage(int page) {
+    int base = offset(page);
+    buffer.put(base, FREE);
+    buffer.putInt(base + 4, freePages);
+    freePages = page;
+    writeHeader();
+  }
+
+  private void writeHeader() {
+    buffer.putInt(12, pageCount);
+    buffer.putInt(16, freePages);
+  }
+
+  /**
+   * Maps the given number of pages, growing the file if needed.
+   *
+   * @param pages pages
+   * @throws IOException on mapping error
+   */
+  private void map(int pages) throws IOException {
+    long size = (long) pages * PAGE_SIZE;
+    if (channel.size() < size) {
+      channel.write(ByteBuffer.wrap(new byte[1]), size - 1);
+    }
+    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+  }
+
+  private static int offset(int page) {
+    return page * PAGE_SIZE;
+  }
+
+  private int position(int location) {
+    int base = offset(location >>> SLOT_BITS);
+    int slot = location & ((1 << SLOT_BITS) - 1);
+    return base + (buffer.getShort(base + PAGE_HEADER + slot * SLOT) & 0xffff);
+  }
+
+  private int slotCount(int base) {
+    return buffer.getShort(base + 2) & 0xffff;
+  }
+
+  private int recordStart(int base) {
+    return buffer.getShort(base + 4) & 0xffff;
+  }
+
+  private String readString(int pos) {
+    byte[] bytes = new byte[buffer.getShort(pos) & 0xffff];
+    ByteBuffer view = buffer.duplicate();
+    view.position(pos + 2);
+    view.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private void write(int pos, byte[] bytes) {
+    ByteBuffer view = buffer.duplicate();
+    view.position(pos);
+    view.put(bytes);
+  }
+
+  private static byte[] encode(Object value) {
+    IoBuffer buf = IoBuffer.allocate(128).setAutoExpand(true);
+    Serializer.serialize(new Output(buf), value);
+    buf.flip();
+    byte[] bytes = new byte[buf.limit()];
+    buf.get(bytes);
+    return bytes;
+  }
+
+  private static Object decode(ByteBuffer value) {
+    return Deserializer.deserialize(new Input(IoBuffer.wrap(value)), Object.class);
+  }
+
+  /** Stored object with the locations of its records. */
+  private static final class Entry {
+
+    final int objectNo;
+
+    String id;
+
+    String className;
+
+    /** Location of the object record */
+    int location;
+
+    /** Locations of the attribute records by name */
+    final Map<String, Integer> keys = new HashMap<>();
+
+    /** Location of the record of a serialized object or null */
+    Integer serialized;
+
+    Entry(int objectNo) {
+      this.objectNo = objectNo;
+    }
+  }
+}
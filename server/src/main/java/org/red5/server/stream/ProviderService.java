@@ -12,6 +12,9 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.file.Paths;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.red5.logging.Red5LoggerFactory;
 import org.red5.server.api.scope.IBroadcastScope;
 import org.red5.server.api.scope.IScope;
@@ -31,14 +34,23 @@ import org.red5.server.scope.Scope;
 import org.red5.server.stream.provider.FileProvider;
 import org.red5.server.util.ScopeUtils;
 import org.slf4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
 
-public class ProviderService implements IProviderService {
+public class ProviderService implements IProviderService, DisposableBean {
 
   private static final Logger log = Red5LoggerFactory.getLogger(ProviderService.class);
 
   // whether or not to support FCS/FMS/AMS live-wait (default to off)
   private boolean liveWaitSupport;
 
+  // duration of VOD tags read ahead of playback in milliseconds, 0 to read them when pulled
+  private int readAheadDuration;
+
+  // threads reading VOD tags ahead
+  private int readAheadThreads = Runtime.getRuntime().availableProcessors();
+
+  private volatile ExecutorService readAheadExecutor;
+
   /** {@inheritDoc} */
   public InputType lookupProviderInput(IScope scope, String name, int type) {
     InputType result = InputType.NOT_FOUND;
@@ -95,7 +107,11 @@ public class ProviderService implements IProviderService {
       return null;
     }
     IPipe pipe = new InMemoryPullPullPipe();
-    pipe.subscribe(new FileProvider(scope, file), null);
+    FileProvider provider = new FileProvider(scope, file);
+    if (readAheadDuration > 0) {
+      provider.setReadAhead(getReadAheadExecutor(), readAheadDuration);
+    }
+    pipe.subscribe(provider, null);
     return pipe;
   }
 
@@ -245,4 +261,53 @@ public class ProviderService implements IProviderService {
   public void setLiveWaitSupport(boolean liveWaitSupport) {
     this.liveWaitSupport = liveWaitSupport;
   }
+
+  public int getReadAheadDuration() {
+    return readAheadDuration;
+  }
+
+  /**
+   * @param readAheadDuration duration of VOD tags read ahead of playback in milliseconds, held in
+   *     memory by each player, 0 to read them when pulled
+   */
+  public void setReadAheadDuration(int readAheadDuration) {
+    this.readAheadDuration = readAheadDuration;
+  }
+
+  public int getReadAheadThreads() {
+    return readAheadThreads;
+  }
+
+  /**
+   * @param readAheadThreads threads reading VOD tags ahead
+   */
+  public void setReadAheadThreads(int readAheadThreads) {
+    this.readAheadThreads = readAheadThreads;
+  }
+
+  private ExecutorService getReadAheadExecutor() {
+    if (readAheadExecutor == null) {
+      synchronized (this) {
+        if (readAheadExecutor == null) {
+          AtomicInteger threadCount = new AtomicInteger();
+          readAheadExecutor =
+              Executors.newFixedThreadPool(
+                  readAheadThreads,
+                  runnable -> {
+                    Thread thread =
+                        new Thread(runnable, "VODReadAhead-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                  });
+        }
+      }
+    }
+    return readAheadExecutor;
+  }
+
+  public void destroy() throws Exception {
+    if (readAheadExecutor != null) {
+      readAheadExecutor.shutdownNow();
+    }
+  }
 }
@@ -67,6 +67,9 @@ public class ServerStream extends AbstractStream
 
   private static final long WAIT_THRESHOLD = 0;
 
+  /** Milliseconds to wait at a time for a message still being read */
+  private static final long READ_WAIT = 100L;
+
   private static EnumSet<StreamState> PLAYING_OR_PAUSED =
       EnumSet.of(StreamState.PLAYING, StreamState.PAUSED);
 
@@ -744,6 +747,10 @@ public class ServerStream extends AbstractStream
       // Pull message from message input object...
       try {
         message = msgIn.pullMessage();
+        // the push schedule needs the next timestamp, wait while it is being read
+        while (message == IMessageInput.NOT_READY) {
+          message = msgIn.pullMessage(READ_WAIT);
+        }
       } catch (Exception err) {
         log.error("Error while pulling message.", err);
         message = null;
@@ -10,6 +10,7 @@ package org.red5.server.stream.provider;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.Executor;
 import org.red5.io.IStreamableFile;
 import org.red5.io.ITag;
 import org.red5.io.ITagReader;
@@ -20,6 +21,7 @@ import org.red5.server.api.service.IStreamableFileService;
 import org.red5.server.api.stream.IStreamableFileFactory;
 import org.red5.server.messaging.IMessage;
 import org.red5.server.messaging.IMessageComponent;
+import org.red5.server.messaging.IMessageInput;
 import org.red5.server.messaging.IPassive;
 import org.red5.server.messaging.IPipe;
 import org.red5.server.messaging.IPipeConnectionListener;
@@ -73,6 +75,15 @@ public class FileProvider
   /** Position at start */
   private int start;
 
+  /** Pool reading the tags ahead, null to read them when pulled */
+  private Executor readAheadExecutor;
+
+  /** Duration to read ahead in milliseconds */
+  private int readAheadDuration;
+
+  /** Tags read ahead */
+  private TagReadAhead readAhead;
+
   /**
    * Create file provider for given file and scope
    *
@@ -93,46 +104,51 @@ public class FileProvider
     this.start = start;
   }
 
+  /**
+   * Reads the tags ahead of playback on the given pool.
+   *
+   * @param executor I/O pool
+   * @param duration duration to read ahead in milliseconds
+   */
+  public void setReadAhead(Executor executor, int duration) {
+    this.readAheadExecutor = executor;
+    this.readAheadDuration = duration;
+  }
+
   /** {@inheritDoc} */
   public boolean hasVideo() {
+    if (readAhead != null) {
+      return readAhead.access(ITagReader::hasVideo);
+    }
     return (reader != null && reader.hasVideo());
   }
 
   /** {@inheritDoc} */
   public IMessage pullMessage(IPipe pipe) throws IOException {
+    return pullMessage(pipe, 0);
+  }
+
+  /** {@inheritDoc} */
+  public IMessage pullMessage(IPipe pipe, long wait) throws IOException {
     // there is no need for sync here, the readers use semaphore locks
     if (this.pipe == pipe) {
       if (reader == null) {
         init();
       }
-      if (reader.hasMoreTags()) {
-        IRTMPEvent msg = null;
+      if (readAhead != null) {
+        ITag tag = readAhead.poll(wait);
+        if (tag != null) {
+          return toMessage(tag);
+        }
+        if (!readAhead.isEnded()) {
+          // still being read, the consumer pulls again later
+          return IMessageInput.NOT_READY;
+        }
+        log.debug("Tag was null");
+      } else if (reader.hasMoreTags()) {
         ITag tag = reader.readTag();
         if (tag != null) {
-          int timestamp = tag.getTimestamp();
-          switch (tag.getDataType()) {
-            case Constants.TYPE_AUDIO_DATA:
-              msg = new AudioData(tag.getBody());
-              break;
-            case Constants.TYPE_VIDEO_DATA:
-              msg = new VideoData(tag.getBody());
-              break;
-            case Constants.TYPE_INVOKE:
-              msg = new Invoke(tag.getBody());
-              break;
-            case Constants.TYPE_NOTIFY:
-              msg = new Notify(tag.getBody());
-              break;
-            case Constants.TYPE_FLEX_STREAM_SEND:
-              msg = new FlexStreamSend(tag.getBody());
-              break;
-            default:
-              log.warn("Unexpected type? {}", tag.getDataType());
-              msg = new Unknown(tag.getDataType(), tag.getBody());
-          }
-          msg.setTimestamp(timestamp);
-          RTMPMessage rtmpMsg = RTMPMessage.build(msg);
-          return rtmpMsg;
+          return toMessage(tag);
         } else {
           log.debug("Tag was null");
         }
@@ -145,9 +161,34 @@ public class FileProvider
     return null;
   }
 
-  /** {@inheritDoc} */
-  public IMessage pullMessage(IPipe pipe, long wait) throws IOException {
-    return pullMessage(pipe);
+  /** Converts a tag to a message. */
+  private IMessage toMessage(ITag tag) {
+    IRTMPEvent msg = null;
+
+    int timestamp = tag.getTimestamp();
+    switch (tag.getDataType()) {
+      case Constants.TYPE_AUDIO_DATA:
+        msg = new AudioData(tag.getBody());
+        break;
+      case Constants.TYPE_VIDEO_DATA:
+        msg = new VideoData(tag.getBody());
+        break;
+      case Constants.TYPE_INVOKE:
+        msg = new Invoke(tag.getBody());
+        break;
+      case Constants.TYPE_NOTIFY:
+        msg = new Notify(tag.getBody());
+        break;
+      case Constants.TYPE_FLEX_STREAM_SEND:
+        msg = new FlexStreamSend(tag.getBody());
+        break;
+      default:
+        log.warn("Unexpected type? {}", tag.getDataType());
+        msg = new Unknown(tag.getDataType(), tag.getBody());
+    }
+    msg.setTimestamp(timestamp);
+    RTMPMessage rtmpMsg = RTMPMessage.build(msg);
+    return rtmpMsg;
   }
 
   /** {@inheritDoc} */
@@ -183,6 +224,11 @@ public class FileProvider
         if ("init".equals(serviceName)) {
           Integer startTS = (Integer) oobCtrlMsg.getServiceParamMap().get("startTS");
           setStart(startTS);
+        } else if ("bufferFull".equals(serviceName)) {
+          Boolean full = (Boolean) oobCtrlMsg.getServiceParamMap().get("full");
+          if (readAhead != null) {
+            readAhead.setPaused(full);
+          }
         }
       } else if (ISeekableProvider.KEY.equals(target)) {
         if ("seek".equals(serviceName)) {
@@ -217,10 +263,17 @@ public class FileProvider
     if (start > 0) {
       seek(start);
     }
+    if (readAheadExecutor != null && readAheadDuration > 0) {
+      readAhead = new TagReadAhead(reader, readAheadExecutor, readAheadDuration);
+    }
   }
 
   /** Reset */
   private void uninit() {
+    if (readAhead != null) {
+      readAhead.close();
+      readAhead = null;
+    }
     if (reader != null) {
       reader.close();
       reader = null;
@@ -235,7 +288,11 @@ public class FileProvider
         // Seeking not supported
         return ts;
       }
-      keyFrameMeta = ((IKeyFrameDataAnalyzer) reader).analyzeKeyFrames();
+      if (readAhead != null) {
+        keyFrameMeta = readAhead.access(r -> ((IKeyFrameDataAnalyzer) r).analyzeKeyFrames());
+      } else {
+        keyFrameMeta = ((IKeyFrameDataAnalyzer) reader).analyzeKeyFrames();
+      }
     }
     if (keyFrameMeta.positions.length == 0) {
       // no video keyframe metainfo, it's an audio-only FLV we skip the seek for now.
@@ -244,7 +301,7 @@ public class FileProvider
     }
     if (ts >= keyFrameMeta.duration) {
       // Seek at or beyond EOF
-      reader.position(Long.MAX_VALUE);
+      position(Long.MAX_VALUE);
       return (int) keyFrameMeta.duration;
     }
     int frame = -1;
@@ -255,12 +312,21 @@ public class FileProvider
       }
     }
     if (frame > -1) {
-      reader.position(keyFrameMeta.positions[frame]);
+      position(keyFrameMeta.positions[frame]);
       return keyFrameMeta.timestamps[frame];
     } else {
       // Seek at or beyond EOF
-      reader.position(Long.MAX_VALUE);
+      position(Long.MAX_VALUE);
       return (int) keyFrameMeta.duration;
     }
   }
+
+  /** Moves the reader, dropping the tags read ahead. */
+  private void position(long pos) {
+    if (readAhead != null) {
+      readAhead.position(pos);
+    } else {
+      reader.position(pos);
+    }
+  }
 }
@@ -0,0 +1,282 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.stream.provider;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import org.red5.io.ITag;
+import org.red5.io.ITagReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the tags of a file ahead of playback on an I/O pool, so the thread pulling the tags does
+ * not wait on the disk. At most the given duration of tags is read ahead. Reading resumes as tags
+ * are taken, and is paused beyond the next tag while the client buffer is full.
+ *
+ * <p>Each player holds up to the duration of tags in memory, for a 3 second read-ahead of a 2
+ * Mbit/s file about 750 KB.
+ *
+ * <p>Once read-ahead started, the reader must only be accessed through this class.
+ *
+ * @author The Red5 Project
+ */
+public class TagReadAhead {
+
+  private static final Logger log = LoggerFactory.getLogger(TagReadAhead.class);
+
+  /** Bound on the number of tags read ahead, whatever their timestamps */
+  private static final int MAX_TAGS = 2048;
+
+  private final ITagReader reader;
+
+  private final Executor executor;
+
+  /** Duration to read ahead in milliseconds */
+  private final int duration;
+
+  /** Held while the reader is used */
+  private final ReentrantLock readerLock = new ReentrantLock();
+
+  /** Guards the state below */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final Condition changed = lock.newCondition();
+
+  private final ArrayDeque<ITag> tags = new ArrayDeque<>();
+
+  /** Incremented when the reader is positioned, tags read before are dropped */
+  private long generation;
+
+  /** A fill is queued or running */
+  private boolean filling;
+
+  private boolean endOfFile;
+
+  /** Only the next tag is read while paused */
+  private boolean paused;
+
+  private volatile boolean closed;
+
+  private IOException failure;
+
+  /**
+   * @param reader tag reader
+   * @param executor I/O pool reading the tags
+   * @param duration duration to read ahead in milliseconds
+   */
+  public TagReadAhead(ITagReader reader, Executor executor, int duration) {
+    this.reader = reader;
+    this.executor = executor;
+    this.duration = duration;
+  }
+
+  /**
+   * Returns the next tag, waiting at most the given time for it to be read if none was read ahead.
+   *
+   * @param wait milliseconds to wait, 0 to return at once
+   * @return tag or null when none was read yet or at the end of the file, see {@link #isEnded()}
+   * @throws IOException when the tags could not be read
+   */
+  public ITag poll(long wait) throws IOException {
+    lock.lock();
+    try {
+      long nanos = TimeUnit.MILLISECONDS.toNanos(wait);
+      while (tags.isEmpty()) {
+        if (failure != null) {
+          throw failure;
+        }
+        scheduleFill();
+        if (endOfFile || closed || nanos <= 0) {
+          return null;
+        }
+        nanos = changed.awaitNanos(nanos);
+      }
+      ITag tag = tags.poll();
+      scheduleFill();
+      return tag;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted waiting for a tag", e);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return true when all tags were taken, at the end of the file or once closed
+   */
+  public boolean isEnded() {
+    lock.lock();
+    try {
+      return tags.isEmpty() && (endOfFile || closed);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Pauses or resumes reading ahead. While paused only the next tag is read, if none is left.
+   *
+   * @param paused true to pause, when the client buffer is full
+   */
+  public void setPaused(boolean paused) {
+    lock.lock();
+    try {
+      this.paused = paused;
+      scheduleFill();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Moves the reader, dropping the tags read ahead.
+   *
+   * @param pos position in the file
+   */
+  public void position(long pos) {
+    readerLock.lock();
+    try {
+      lock.lock();
+      try {
+        generation++;
+        tags.clear();
+        endOfFile = false;
+        failure = null;
+      } finally {
+        lock.unlock();
+      }
+      reader.position(pos);
+    } finally {
+      readerLock.unlock();
+    }
+    lock.lock();
+    try {
+      scheduleFill();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Runs an operation on the reader while no tag is read.
+   *
+   * @param operation operation
+   * @return result of the operation
+   */
+  public <T> T access(Function<ITagReader, T> operation) {
+    readerLock.lock();
+    try {
+      return operation.apply(reader);
+    } finally {
+      readerLock.unlock();
+    }
+  }
+
+  /** Stops reading ahead, returns once a read in progress finished. The reader is not closed. */
+  public void close() {
+    lock.lock();
+    try {
+      closed = true;
+      tags.clear();
+      changed.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    readerLock.lock();
+    readerLock.unlock();
+  }
+
+  /**
+   * @return number of tags read ahead
+   */
+  public int size() {
+    lock.lock();
+    try {
+      return tags.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Whether enough was read ahead, called with the lock held. */
+  private boolean isFull() {
+    return (paused && !tags.isEmpty())
+        || tags.size() >= MAX_TAGS
+        || (!tags.isEmpty() && tags.peekLast().getTimestamp() - tags.peekFirst().getTimestamp()
+            >= duration);
+  }
+
+  /** Starts a fill unless one is running, called with the lock held. */
+  private void scheduleFill() {
+    if (!filling && !closed && !endOfFile && failure == null && !isFull()) {
+      filling = true;
+      try {
+        executor.execute(this::fill);
+      } catch (RejectedExecutionException e) {
+        filling = false;
+        failure = new IOException("Read-ahead pool is shut down", e);
+        changed.signalAll();
+      }
+    }
+  }
+
+  /** Reads tags until enough were read ahead. */
+  private void fill() {
+    while (true) {
+      long readGeneration;
+      lock.lock();
+      try {
+        if (closed || endOfFile || failure != null || isFull()) {
+          filling = false;
+          return;
+        }
+        readGeneration = generation;
+      } finally {
+        lock.unlock();
+      }
+      ITag tag = null;
+      RuntimeException error = null;
+      readerLock.lock();
+      try {
+        if (!closed && readGeneration == generation && reader.hasMoreTags()) {
+          tag = reader.readTag();
+        }
+      } catch (RuntimeException e) {
+        error = e;
+      } finally {
+        readerLock.unlock();
+      }
+      lock.lock();
+      try {
+        if (readGeneration != generation) {
+          // positioned meanwhile
+          continue;
+        }
+        if (error != null) {
+          log.warn("Error reading ahead", error);
+          failure = new IOException(error);
+        } else if (tag != null) {
+          tags.add(tag);
+        } else {
+          endOfFile = true;
+        }
+        changed.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+}
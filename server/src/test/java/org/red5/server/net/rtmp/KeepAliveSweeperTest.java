@@ -0,0 +1,121 @@
+package org.red5.server.net.rtmp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import org.red5.server.net.rtmp.codec.RTMP;
+import org.red5.server.net.rtmp.event.Ping;
+
+public class KeepAliveSweeperTest {
+
+  /** Established swept connection whose pings are counted instead of written. */
+  private static class SweptConnection extends RTMPMinaConnection {
+
+    final AtomicInteger pings = new AtomicInteger();
+
+    final AtomicReference<Thread> closedOn = new AtomicReference<>();
+
+    final CountDownLatch closed = new CountDownLatch(1);
+
+    SweptConnection(int pingInterval, int maxInactivity) {
+      setKeepAliveSwept(true);
+      setPingInterval(pingInterval);
+      setMaxInactivity(maxInactivity);
+      setStateCode(RTMP.STATE_CONNECTED);
+      startRoundTripMeasurement();
+    }
+
+    @Override
+    public boolean isConnected() {
+      return true;
+    }
+
+    @Override
+    public void ping(Ping ping) {
+      pings.incrementAndGet();
+    }
+
+    @Override
+    protected void onInactive() {
+      closedOn.set(Thread.currentThread());
+      closed.countDown();
+    }
+  }
+
+  @Test
+  public void testRoundCoversEveryConnectionOnce() {
+    int shards = 4;
+    KeepAliveSweeper sweeper = new KeepAliveSweeper(shards, 1000);
+    List<SweptConnection> conns = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      SweptConnection conn = new SweptConnection(1000, 60000);
+      conns.add(conn);
+      sweeper.add(conn);
+    }
+    // pings start 2s after the connection is established
+    long now = System.currentTimeMillis() + 2000;
+    assertEquals(-1, sweeper.getSweepDuration());
+    for (int i = 0; i < shards; i++) {
+      sweeper.sweep(now);
+    }
+    assertEquals(100, conns.stream().mapToInt(conn -> conn.pings.get()).sum());
+    assertEquals(100, sweeper.getKeepAliveCount());
+    assertTrue(sweeper.getSweepDuration() >= 0);
+    // removed connections are no longer swept
+    for (RTMPConnection conn : conns.subList(0, 50)) {
+      sweeper.remove(conn);
+    }
+    now += 1000;
+    for (int i = 0; i < shards; i++) {
+      sweeper.sweep(now);
+    }
+    assertEquals(150, conns.stream().mapToInt(conn -> conn.pings.get()).sum());
+    assertEquals(150, sweeper.getKeepAliveCount());
+  }
+
+  @Test
+  public void testPingInterval() {
+    SweptConnection conn = new SweptConnection(1000, 60000);
+    SweptConnection pending = new SweptConnection(1000, 60000);
+    pending.setStateCode(RTMP.STATE_HANDSHAKE);
+    // taken once both connections started their measurement, so neither starts later
+    long start = System.currentTimeMillis() + 2000;
+    // not before the start of the pings
+    assertFalse(conn.sweepKeepAlive(start - 500));
+    assertTrue(conn.sweepKeepAlive(start));
+    assertEquals(1, conn.pings.get());
+    // a sweep a little early still pings, one well within the interval does not
+    assertFalse(conn.sweepKeepAlive(start + 400));
+    assertTrue(conn.sweepKeepAlive(start + 900));
+    assertEquals(2, conn.pings.get());
+    // no ping before the connection is established
+    assertTrue(pending.sweepKeepAlive(start));
+    assertEquals(0, pending.pings.get());
+    assertFalse(new RTMPMinaConnection().sweepKeepAlive(start));
+  }
+
+  @Test
+  public void testInactiveConnectionIsClosedOffTheSweeper() throws InterruptedException {
+    SweptConnection conn = new SweptConnection(1000, 0);
+    long now = System.currentTimeMillis() + 2000;
+    // pinged twice without an answer or data
+    assertTrue(conn.sweepKeepAlive(now));
+    Thread.sleep(5);
+    assertTrue(conn.sweepKeepAlive(now + 1000));
+    assertEquals(2, conn.pings.get());
+    assertEquals(1, conn.closed.getCount());
+    assertTrue(conn.sweepKeepAlive(now + 2000));
+    assertEquals(2, conn.pings.get());
+    assertTrue(conn.closed.await(5, TimeUnit.SECONDS));
+    assertNotSame(Thread.currentThread(), conn.closedOn.get());
+  }
+}
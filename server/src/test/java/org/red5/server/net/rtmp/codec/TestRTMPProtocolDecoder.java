@@ -12,14 +12,17 @@ import java.util.Arrays;
 import java.util.List;
 import org.apache.commons.codec.binary.Hex;
 import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.buffer.IoBufferAllocator;
 import org.junit.Test;
 import org.red5.io.amf.Output;
 import org.red5.io.utils.IOUtils;
+import org.red5.io.utils.PooledBufferAllocator;
 import org.red5.server.api.Red5;
 import org.red5.server.net.rtmp.IRTMPHandler;
 import org.red5.server.net.rtmp.RTMPConnection;
 import org.red5.server.net.rtmp.RTMPMinaConnection;
 import org.red5.server.net.rtmp.RTMPUtils;
+import org.red5.server.net.rtmp.event.AudioData;
 import org.red5.server.net.rtmp.event.Invoke;
 import org.red5.server.net.rtmp.message.ChunkHeader;
 import org.red5.server.net.rtmp.message.Header;
@@ -414,6 +417,36 @@ public class TestRTMPProtocolDecoder implements IRTMPHandler {
     decoder.decodeBuffer(conn, IoBuffer.wrap(buf));
   }
 
+  @Test
+  public void testDecodePooledAudio() {
+    IoBufferAllocator previous = IoBuffer.getAllocator();
+    PooledBufferAllocator allocator = new PooledBufferAllocator();
+    IoBuffer.setAllocator(allocator);
+    try {
+      RTMPProtocolDecoder dec = new RTMPProtocolDecoder();
+      RTMPConnection conn = new RTMPMinaConnection();
+      conn.getState().setState(RTMP.STATE_CONNECTED);
+      conn.setHandler(this);
+      // audio message of 10 bytes on channel 4, stream 1
+      IoBuffer in =
+          IoBuffer.wrap(
+              IOUtils.hexStringToByteArray("0400000000000a0801000000af010011223344556677"));
+      List<Object> objs = dec.decodeBuffer(conn, in);
+      assertEquals(1, objs.size());
+      Packet packet = (Packet) objs.get(0);
+      AudioData audio = (AudioData) packet.getMessage();
+      assertTrue(PooledBufferAllocator.isPooled(audio.getData()));
+      assertEquals(10, audio.getData().limit());
+      assertEquals((byte) 0xaf, audio.getData().get(0));
+      // the decoder gave back its reference, the body goes back to the pool with the event
+      assertFalse(packet.hasData());
+      audio.release();
+      assertEquals(1, allocator.getRecycled());
+    } finally {
+      IoBuffer.setAllocator(previous);
+    }
+  }
+
   @Test
   public void testNullJsonKV() {
     log.debug("\n testNullJsonKV");
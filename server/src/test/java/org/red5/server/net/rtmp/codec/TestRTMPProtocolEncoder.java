@@ -0,0 +1,138 @@
+package org.red5.server.net.rtmp.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.After;
+import org.junit.Test;
+import org.red5.server.api.Red5;
+import org.red5.server.net.rtmp.RTMPConnection;
+import org.red5.server.net.rtmp.RTMPMinaConnection;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.net.rtmp.message.ChunkedBody;
+import org.red5.server.net.rtmp.message.Constants;
+import org.red5.server.net.rtmp.message.Header;
+import org.red5.server.net.rtmp.message.Packet;
+import org.red5.server.so.ISharedObjectEvent;
+import org.red5.server.so.SharedObjectMessage;
+import org.red5.server.so.SharedObjectMessage.SharedBody;
+
+public class TestRTMPProtocolEncoder {
+
+  @After
+  public void tearDown() {
+    Red5.setConnectionLocal(null);
+  }
+
+  @Test
+  public void testSharedChunkedBody() {
+    byte[] body = new byte[10000];
+    for (int i = 0; i < body.length; i++) {
+      body[i] = (byte) i;
+    }
+    ChunkedBody chunkedBody = new ChunkedBody();
+    for (int chunkSize : new int[] {128, 4096}) {
+      for (int channelId : new int[] {5, 70, 400}) {
+        // the second frame goes out with a relative header
+        byte[] expected = encode(chunkSize, channelId, body, null, 0, 33);
+        // first subscriber fills the shared body, the second one reuses it
+        assertArrayEquals(expected, encode(chunkSize, channelId, body, chunkedBody, 0, 33));
+        assertArrayEquals(expected, encode(chunkSize, channelId, body, chunkedBody, 0, 33));
+      }
+    }
+    assertEquals(6, chunkedBody.size());
+  }
+
+  @Test
+  public void testExtendedTimestampIsChunkedPerConnection() {
+    byte[] body = new byte[1000];
+    int ts = Constants.MEDIUM_INT_MAX + 1;
+    ChunkedBody chunkedBody = new ChunkedBody();
+    assertArrayEquals(encode(128, 6, body, null, ts), encode(128, 6, body, chunkedBody, ts));
+    assertEquals(0, chunkedBody.size());
+  }
+
+  @Test
+  public void testEncodePacketSlices() {
+    byte[] body = new byte[70000];
+    for (int i = 0; i < body.length; i++) {
+      body[i] = (byte) (i * 31);
+    }
+    for (int chunkSize : new int[] {128, 4096, 65536}) {
+      for (int ts : new int[] {33, Constants.MEDIUM_INT_MAX + 1}) {
+        byte[] expected = encode(chunkSize, 6, body, null, false, 0, ts);
+        assertArrayEquals(expected, encode(chunkSize, 6, body, null, true, 0, ts));
+        assertArrayEquals(expected, encode(chunkSize, 6, body, new ChunkedBody(), true, 0, ts));
+      }
+    }
+    // empty bodies still get their header
+    assertArrayEquals(
+        encode(4096, 6, new byte[0], null, false, 0), encode(4096, 6, new byte[0], null, true, 0));
+  }
+
+  @Test
+  public void testSharedObjectBodyEncodedOnce() {
+    RTMPConnection conn = new RTMPMinaConnection();
+    Red5.setConnectionLocal(conn);
+    RTMPProtocolEncoder encoder = new RTMPProtocolEncoder();
+    SharedBody sharedBody = new SharedBody();
+    SharedObjectMessage first = new SharedObjectMessage(null, "lobby", 7, false);
+    first.addEvent(ISharedObjectEvent.Type.CLIENT_UPDATE_DATA, "x", 42);
+    IoBuffer expected = encoder.encodeSharedObject(first);
+    expected.flip();
+    first.setSharedBody(sharedBody);
+    assertEquals(expected, encoder.encodeSharedObject(first));
+    // the next connection gets the body encoded by the first one
+    SharedObjectMessage second = new SharedObjectMessage(null, "lobby", 7, false);
+    second.setSharedBody(sharedBody);
+    IoBuffer body = encoder.encodeSharedObject(second);
+    assertEquals(expected, body);
+    assertTrue(body.isReadOnly());
+  }
+
+  private static byte[] encode(
+      int chunkSize, int channelId, byte[] body, ChunkedBody chunkedBody, int... timestamps) {
+    return encode(chunkSize, channelId, body, chunkedBody, false, timestamps);
+  }
+
+  /** Encodes a video frame per timestamp on a new connection and returns the last one. */
+  private static byte[] encode(
+      int chunkSize,
+      int channelId,
+      byte[] body,
+      ChunkedBody chunkedBody,
+      boolean slices,
+      int... timestamps) {
+    RTMPConnection conn = new RTMPMinaConnection();
+    conn.getState().setState(RTMP.STATE_CONNECTED);
+    conn.getState().setWriteChunkSize(chunkSize);
+    Red5.setConnectionLocal(conn);
+    RTMPProtocolEncoder encoder = new RTMPProtocolEncoder();
+    IoBuffer out = IoBuffer.allocate(body.length).setAutoExpand(true);
+    for (int timestamp : timestamps) {
+      VideoData video = new VideoData(IoBuffer.wrap(body).asReadOnlyBuffer());
+      video.setTimestamp(timestamp);
+      video.setChunkedBody(chunkedBody);
+      Header header = new Header();
+      header.setChannelId(channelId);
+      header.setTimer(timestamp);
+      header.setStreamId(1);
+      header.setDataType(Constants.TYPE_VIDEO_DATA);
+      Packet packet = new Packet(header, video);
+      out.clear();
+      if (slices) {
+        for (IoBuffer slice : encoder.encodePacketSlices(packet)) {
+          out.put(slice);
+        }
+      } else {
+        out.put(encoder.encodePacket(packet));
+      }
+      out.flip();
+    }
+    byte[] encoded = new byte[out.remaining()];
+    out.get(encoded);
+    return encoded;
+  }
+}
@@ -0,0 +1,88 @@
+package org.red5.server.persistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.red5.server.PersistableAttributeStore;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+public class JournalPersistenceTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private JournalPersistence newStore() {
+    JournalPersistence store = new JournalPersistence(new PathMatchingResourcePatternResolver());
+    store.setPath(folder.getRoot().getAbsolutePath());
+    return store;
+  }
+
+  private PersistableAttributeStore newObject() {
+    return new PersistableAttributeStore("test", "counter", "/room", true);
+  }
+
+  @Test
+  public void testReplayDeltas() throws Exception {
+    JournalPersistence store = newStore();
+    PersistableAttributeStore object = newObject();
+    object.setStore(store);
+    object.setAttribute("count", 1);
+    object.setAttribute("title", "room");
+    object.setAttribute("_transientState", "skipped");
+    store.flush();
+    long snapshot = store.getFile().length();
+    object.setAttribute("count", 2);
+    object.removeAttribute("title");
+    store.flush();
+    // only the changed and removed attribute were appended
+    long deltas = store.getFile().length() - snapshot;
+    assertTrue(deltas > 0 && deltas < snapshot);
+    object.setAttribute("count", 3);
+    store.notifyClose();
+    // a torn record at the end is cut off
+    long length = store.getFile().length();
+    try (RandomAccessFile raf = new RandomAccessFile(store.getFile(), "rw")) {
+      raf.seek(length);
+      raf.writeInt(100);
+      raf.writeInt(0);
+    }
+    JournalPersistence replayed = newStore();
+    PersistableAttributeStore restored = newObject();
+    restored.setStore(replayed);
+    assertEquals(3, ((Number) restored.getAttribute("count")).intValue());
+    assertNull(restored.getAttribute("title"));
+    assertNull(restored.getAttribute("_transientState"));
+    replayed.notifyClose();
+    assertEquals(length, store.getFile().length());
+  }
+
+  @Test
+  public void testCompactAndRemove() throws Exception {
+    JournalPersistence store = newStore();
+    store.setCompactionThreshold(1024);
+    PersistableAttributeStore object = newObject();
+    object.setStore(store);
+    for (int i = 0; i < 500; i++) {
+      object.setAttribute("count", i);
+      store.flush();
+    }
+    File journal = store.getFile();
+    assertTrue(journal.length() < 4096);
+    store.notifyClose();
+    JournalPersistence replayed = newStore();
+    PersistableAttributeStore restored = newObject();
+    restored.setStore(replayed);
+    assertEquals(499, ((Number) restored.getAttribute("count")).intValue());
+    assertTrue(replayed.remove(restored));
+    replayed.notifyClose();
+    JournalPersistence removed = newStore();
+    assertFalse(removed.load(newObject()));
+    removed.notifyClose();
+  }
+}
@@ -0,0 +1,181 @@
+package org.red5.server.persistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.red5.server.PersistableAttributeStore;
+import org.red5.server.so.SharedObject;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+public class MappedPersistenceTest {
+
+  private static final String ID = "test/room/counters";
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private MappedPersistence newStore() {
+    MappedPersistence store = new MappedPersistence(new PathMatchingResourcePatternResolver());
+    store.setPath(folder.getRoot().getAbsolutePath());
+    return store;
+  }
+
+  private PersistableAttributeStore newObject() {
+    return new PersistableAttributeStore("test", "counters", "/room", true);
+  }
+
+  @Test
+  public void testAttributesAreStoredPerKey() throws Exception {
+    MappedPersistence store = newStore();
+    PersistableAttributeStore object = newObject();
+    object.setStore(store);
+    for (int i = 0; i < 5000; i++) {
+      object.setAttribute("key" + i, i);
+    }
+    char[] large = new char[20000];
+    Arrays.fill(large, 'x');
+    object.setAttribute("large", new String(large));
+    object.setAttribute("_transientState", "skipped");
+    object.setAttribute("", "unnamed");
+    store.flush();
+    // the new records are written before the old ones are deleted, the next rewrite of every
+    // value with one of the same size reuses the freed pages
+    for (int i = 0; i < 5000; i++) {
+      object.setAttribute("key" + i, i + 1);
+    }
+    large[0] = 'y';
+    object.setAttribute("large", new String(large));
+    store.flush();
+    long size = store.getFile().length();
+    for (int i = 0; i < 5000; i++) {
+      object.setAttribute("key" + i, i + 2);
+    }
+    object.removeAttribute("key0");
+    large[0] = 'z';
+    object.setAttribute("large", new String(large));
+    store.flush();
+    assertEquals(size, store.getFile().length());
+    assertEquals(5, ((Number) store.getAttribute(ID, "key3")).intValue());
+    assertNull(store.getAttribute(ID, "key0"));
+    assertEquals(5001, store.getAttributeNames(ID).size());
+    store.notifyClose();
+    // single keys are read and written without loading the object
+    MappedPersistence reopened = newStore();
+    assertEquals(5001, ((Number) reopened.getAttribute(ID, "key4999")).intValue());
+    assertTrue(reopened.setAttribute(ID, "key1", "changed"));
+    PersistableAttributeStore restored = newObject();
+    restored.setStore(reopened);
+    assertEquals("changed", restored.getAttribute("key1"));
+    assertEquals(5001, ((Number) restored.getAttribute("key4999")).intValue());
+    assertEquals(new String(large), restored.getAttribute("large"));
+    assertEquals("unnamed", restored.getAttribute(""));
+    assertNull(restored.getAttribute("_transientState"));
+    assertFalse(reopened.setAttribute(ID, "key1", "loaded"));
+    reopened.notifyClose();
+  }
+
+  @Test
+  public void testRemoveFreesPages() throws Exception {
+    MappedPersistence store = newStore();
+    PersistableAttributeStore object = newObject();
+    object.setStore(store);
+    for (int i = 0; i < 2000; i++) {
+      object.setAttribute("key" + i, "value" + i);
+    }
+    store.flush();
+    long size = store.getFile().length();
+    assertTrue(store.remove(object));
+    // the freed pages are reused by the next object
+    PersistableAttributeStore other = new PersistableAttributeStore("test", "other", "/room", true);
+    other.setStore(store);
+    for (int i = 0; i < 2000; i++) {
+      other.setAttribute("key" + i, "value" + i);
+    }
+    store.flush();
+    assertEquals(size, store.getFile().length());
+    store.notifyClose();
+    MappedPersistence reopened = newStore();
+    assertFalse(reopened.load(newObject()));
+    assertEquals("value1999", reopened.getAttribute("test/room/other", "key1999"));
+    reopened.notifyClose();
+  }
+
+  @Test
+  public void testLoadSharedObjectByName() throws Exception {
+    MappedPersistence store = newStore();
+    SharedObject so = new SharedObject("chat", "room", true, store);
+    store.save(so);
+    so.setAttribute("topic", "news");
+    store.notifyClose();
+    MappedPersistence reopened = newStore();
+    SharedObject restored = (SharedObject) reopened.load("SHARED_OBJECT/room/chat");
+    assertEquals("chat", restored.getName());
+    assertEquals("room", restored.getPath());
+    assertTrue(restored.isPersistent());
+    assertEquals("news", restored.getAttribute("topic"));
+    reopened.notifyClose();
+  }
+
+  @Test
+  public void testDamagedRecordIsSkipped() throws Exception {
+    MappedPersistence store = newStore();
+    PersistableAttributeStore object = newObject();
+    object.setStore(store);
+    object.setAttribute("kept", "intact value");
+    object.setAttribute("lost", "damaged value");
+    store.flush();
+    store.notifyClose();
+    byte[] content = Files.readAllBytes(store.getFile().toPath());
+    byte[] value = "damaged value".getBytes(StandardCharsets.UTF_8);
+    int pos = indexOf(content, value);
+    assertTrue(pos > 0);
+    try (RandomAccessFile file = new RandomAccessFile(store.getFile(), "rw")) {
+      file.seek(pos);
+      file.write('D');
+    }
+    MappedPersistence reopened = newStore();
+    assertEquals("intact value", reopened.getAttribute(ID, "kept"));
+    assertNull(reopened.getAttribute(ID, "lost"));
+    PersistableAttributeStore restored = newObject();
+    restored.setStore(reopened);
+    assertEquals("intact value", restored.getAttribute("kept"));
+    assertFalse(restored.hasAttribute("lost"));
+    reopened.notifyClose();
+  }
+
+  @Test
+  public void testDamagedHeaderIsNotOpened() throws Exception {
+    MappedPersistence store = newStore();
+    PersistableAttributeStore object = newObject();
+    object.setStore(store);
+    object.setAttribute("key", "value");
+    store.flush();
+    store.notifyClose();
+    try (RandomAccessFile file = new RandomAccessFile(store.getFile(), "rw")) {
+      // page count beyond the end of the file
+      file.seek(12);
+      file.writeInt(Integer.MAX_VALUE);
+    }
+    MappedPersistence reopened = newStore();
+    assertNull(reopened.getAttribute(ID, "key"));
+    assertFalse(reopened.load(newObject()));
+    reopened.notifyClose();
+  }
+
+  private static int indexOf(byte[] content, byte[] value) {
+    for (int i = 0; i <= content.length - value.length; i++) {
+      if (Arrays.equals(Arrays.copyOfRange(content, i, i + value.length), value)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
@@ -1,11 +1,18 @@
 package org.red5.server.service;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.InvocationTargetException;
 import java.util.Arrays;
 import java.util.List;
 import org.junit.Test;
 import org.red5.server.api.IConnection;
+import org.red5.server.api.Red5;
 import org.red5.server.api.service.IServiceCall;
 import org.red5.server.net.rtmp.RTMPMinaConnection;
 import org.slf4j.Logger;
@@ -98,6 +105,69 @@ public class ReflectionUtilsTest {
     }
   }
 
+  @Test
+  public void testResolvedMethodIsReused() {
+    IConnection conn = new DummyConnection();
+    TestService service = new TestService();
+    Object[] first =
+        ReflectionUtils.findMethod(
+            conn, new PendingCall("doTestWithConn", new Object[] {"a", 1}), service, "doTestWithConn");
+    assertNotNull(first[0]);
+    assertNotNull(first[2]);
+    // same argument types, other values
+    Object[] second =
+        ReflectionUtils.findMethod(
+            conn, new PendingCall("doTestWithConn", new Object[] {"b", 2}), service, "doTestWithConn");
+    assertSame(first[0], second[0]);
+    assertSame(first[2], second[2]);
+    Object[] params = (Object[]) second[1];
+    assertSame(conn, params[0]);
+    assertEquals("b", params[1]);
+    assertEquals(2, params[2]);
+    // the call is invoked through the method handle
+    PendingCall call = new PendingCall("doTestWithConn", new Object[] {"c", 3});
+    Red5.setConnectionLocal(conn);
+    try {
+      assertEquals(true, new ServiceInvoker().invoke(call, service));
+    } finally {
+      Red5.setConnectionLocal(null);
+    }
+    assertEquals(Call.STATUS_SUCCESS_VOID, call.getStatus());
+  }
+
+  @Test
+  public void testInvokerWrapsOnlyTargetExceptions() throws Throwable {
+    IConnection conn = new DummyConnection();
+    TestService service = new TestService();
+    Object[] result =
+        ReflectionUtils.findMethod(
+            conn, new PendingCall("doFail", new Object[] {"a"}), service, "doFail");
+    MethodHandle invoker = (MethodHandle) result[2];
+    Object[] params = (Object[]) result[1];
+    try {
+      Object unused = invoker.invokeExact((Object) service, params);
+      fail("Expected an InvocationTargetException");
+    } catch (InvocationTargetException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+    // a service of another type is not an exception of the method
+    try {
+      Object unused = invoker.invokeExact(new Object(), params);
+      fail("Expected a ClassCastException");
+    } catch (ClassCastException e) {
+      // expected
+    }
+    PendingCall call = new PendingCall("doFail", new Object[] {"b"});
+    Red5.setConnectionLocal(conn);
+    try {
+      assertEquals(false, new ServiceInvoker().invoke(call, service));
+    } finally {
+      Red5.setConnectionLocal(null);
+    }
+    assertEquals(Call.STATUS_INVOCATION_EXCEPTION, call.getStatus());
+    assertTrue(call.getException().getCause() instanceof IllegalStateException);
+  }
+
   private class DummyConnection extends RTMPMinaConnection {}
 
   public class TestService {
@@ -128,6 +198,10 @@ public class ReflectionUtilsTest {
       log.info("doTest - Conn, String, and int: {} {}", conn, param0, param1);
     }
 
+    public void doFail(String param) {
+      throw new IllegalStateException(param);
+    }
+
     public void doTestWithConn(IConnection conn, String param0, Integer param1) {
       log.info("doTestWithConn - Connection, String, and Integer: {} {} {}", conn, param0, param1);
     }
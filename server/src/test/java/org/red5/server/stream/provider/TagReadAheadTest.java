@@ -0,0 +1,147 @@
+package org.red5.server.stream.provider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+import org.red5.io.IStreamableFile;
+import org.red5.io.ITag;
+import org.red5.io.ITagReader;
+import org.red5.io.flv.impl.Tag;
+
+public class TagReadAheadTest {
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private static ITag take(TagReadAhead readAhead) throws IOException {
+    return readAhead.poll(1000);
+  }
+
+  @Test
+  public void testBoundedLookahead() throws Exception {
+    CountingReader reader = new CountingReader(1000);
+    TagReadAhead readAhead = new TagReadAhead(reader, executor, 1000);
+    assertEquals(0, take(readAhead).getTimestamp());
+    Thread.sleep(200);
+    // one second of tags past the one taken, no more
+    assertEquals(27, reader.reads.get());
+    assertEquals(26, readAhead.size());
+    for (int i = 1; i < 1000; i++) {
+      assertEquals(i * 40, take(readAhead).getTimestamp());
+    }
+    assertNull(take(readAhead));
+    assertTrue(readAhead.isEnded());
+    readAhead.close();
+  }
+
+  @Test
+  public void testPollDoesNotWait() throws Exception {
+    List<Runnable> fills = new ArrayList<>();
+    TagReadAhead readAhead = new TagReadAhead(new CountingReader(10), fills::add, 1000);
+    // nothing read yet, which is not the end
+    assertNull(readAhead.poll(0));
+    assertFalse(readAhead.isEnded());
+    assertEquals(1, fills.size());
+    fills.remove(0).run();
+    assertEquals(0, readAhead.poll(0).getTimestamp());
+    readAhead.close();
+  }
+
+  @Test
+  public void testPaused() throws Exception {
+    CountingReader reader = new CountingReader(1000);
+    TagReadAhead readAhead = new TagReadAhead(reader, executor, 1000);
+    readAhead.setPaused(true);
+    assertEquals(0, take(readAhead).getTimestamp());
+    Thread.sleep(200);
+    // only the next tag
+    assertEquals(2, reader.reads.get());
+    assertEquals(40, take(readAhead).getTimestamp());
+    readAhead.setPaused(false);
+    Thread.sleep(200);
+    assertEquals(26, readAhead.size());
+    readAhead.close();
+  }
+
+  @Test
+  public void testPosition() throws Exception {
+    CountingReader reader = new CountingReader(100);
+    TagReadAhead readAhead = new TagReadAhead(reader, executor, 1000);
+    for (int i = 0; i < 10; i++) {
+      assertEquals(i * 40, take(readAhead).getTimestamp());
+    }
+    // tags read ahead before are dropped
+    readAhead.position(50);
+    assertEquals(50 * 40, take(readAhead).getTimestamp());
+    assertTrue(readAhead.access(ITagReader::hasMoreTags));
+    readAhead.close();
+    assertNull(take(readAhead));
+  }
+
+  /** Reader of tags 40 milliseconds apart, positioned by tag number. */
+  private static class CountingReader implements ITagReader {
+
+    private final int count;
+
+    private int index;
+
+    final AtomicInteger reads = new AtomicInteger();
+
+    CountingReader(int count) {
+      this.count = count;
+    }
+
+    public void close() {}
+
+    public long getBytesRead() {
+      return index;
+    }
+
+    public long getDuration() {
+      return count * 40;
+    }
+
+    public IStreamableFile getFile() {
+      return null;
+    }
+
+    public int getOffset() {
+      return 0;
+    }
+
+    public long getTotalBytes() {
+      return count;
+    }
+
+    public boolean hasMoreTags() {
+      return index < count;
+    }
+
+    public boolean hasVideo() {
+      return true;
+    }
+
+    public void position(long pos) {
+      index = (int) pos;
+    }
+
+    public ITag readTag() {
+      reads.incrementAndGet();
+      return new Tag(ITag.TYPE_VIDEO, 40 * index++, 0, null, 0);
+    }
+  }
+}